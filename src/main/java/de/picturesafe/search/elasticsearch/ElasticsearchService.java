@@ -19,11 +19,13 @@ package de.picturesafe.search.elasticsearch;
 import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
 import de.picturesafe.search.elasticsearch.model.ElasticsearchInfo;
 import de.picturesafe.search.elasticsearch.model.IndexObject;
+import de.picturesafe.search.elasticsearch.model.ResultFacet;
 import de.picturesafe.search.elasticsearch.model.SearchResult;
 import de.picturesafe.search.elasticsearch.model.SuggestResult;
 import de.picturesafe.search.expression.Expression;
 import de.picturesafe.search.expression.SuggestExpression;
 import de.picturesafe.search.parameter.AccountContext;
+import de.picturesafe.search.parameter.SearchAggregation;
 import de.picturesafe.search.parameter.SearchParameter;
 import org.elasticsearch.client.RestHighLevelClient;
 
@@ -234,6 +236,83 @@ public interface ElasticsearchService {
      */
     SearchResult search(String indexAlias, AccountContext<?> accountContext, Expression expression, SearchParameter searchParameter);
 
+    /**
+     * Counts the documents matching an expression. No hits, facets or total hit tracking limits are involved.
+     *
+     * @param indexAlias        Name of the alias of the index
+     * @param expression        Expression defining the search criteria
+     * @return                  Number of matching documents
+     */
+    long count(String indexAlias, Expression expression);
+
+    /**
+     * Counts the documents matching an expression in the context of an user account.
+     *
+     * @param indexAlias        Name of the alias of the index
+     * @param accountContext    {@link AccountContext} of the current user
+     * @param expression        Expression defining the search criteria
+     * @return                  Number of matching documents
+     */
+    long count(String indexAlias, AccountContext<?> accountContext, Expression expression);
+
+    /**
+     * Checks if at least one document matches an expression. The search terminates on the first match.
+     *
+     * @param indexAlias        Name of the alias of the index
+     * @param expression        Expression defining the search criteria
+     * @return                  TRUE if at least one document matches the expression
+     */
+    boolean exists(String indexAlias, Expression expression);
+
+    /**
+     * Checks if at least one document matches an expression in the context of an user account. The search terminates on the first match.
+     *
+     * @param indexAlias        Name of the alias of the index
+     * @param accountContext    {@link AccountContext} of the current user
+     * @param expression        Expression defining the search criteria
+     * @return                  TRUE if at least one document matches the expression
+     */
+    boolean exists(String indexAlias, AccountContext<?> accountContext, Expression expression);
+
+    /**
+     * Gets the facets of the documents matching an expression without fetching any hits. The shard request cache of elasticsearch will be used,
+     * the results are additionally cached locally until the next write operation on the index alias through this service.
+     *
+     * @param indexAlias        Name of the alias of the index
+     * @param expression        Expression defining the search criteria
+     * @param aggregations      Aggregations defining the facets
+     * @return                  Facets
+     */
+    List<ResultFacet> facets(String indexAlias, Expression expression, List<SearchAggregation> aggregations);
+
+    /**
+     * Gets the facets of the documents matching an expression in the context of an user account without fetching any hits.
+     *
+     * @param indexAlias        Name of the alias of the index
+     * @param accountContext    {@link AccountContext} of the current user
+     * @param expression        Expression defining the search criteria
+     * @param aggregations      Aggregations defining the facets
+     * @return                  Facets
+     */
+    List<ResultFacet> facets(String indexAlias, AccountContext<?> accountContext, Expression expression, List<SearchAggregation> aggregations);
+
+    /**
+     * Searches for documents by executing the expression as stored search template.
+     * <p>
+     * The expression may contain placeholders (see {@link de.picturesafe.search.parameter.TemplateParameter#placeholder(String)}) as values which
+     * will be substituted by the given template parameter values. On first execution the expression is compiled into a stored mustache search
+     * template. Subsequent executions resulting in the same query only send the template ID and the parameter values.
+     *
+     * @param indexAlias            Name of the alias of the index
+     * @param accountContext        {@link AccountContext} of the current user
+     * @param expression            Expression defining the search criteria (containing placeholders)
+     * @param searchParameter       Parameters for the search execution
+     * @param templateParameters    Values of the template parameters
+     * @return                      {@link SearchResult}
+     */
+    SearchResult searchTemplate(String indexAlias, AccountContext<?> accountContext, Expression expression, SearchParameter searchParameter,
+                                Map<String, Object> templateParameters);
+
     /**
      * Creates an Elasticsearch query in JSON format.
      *
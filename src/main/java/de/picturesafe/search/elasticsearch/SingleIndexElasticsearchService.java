@@ -18,12 +18,14 @@ package de.picturesafe.search.elasticsearch;
 
 import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
 import de.picturesafe.search.elasticsearch.model.IndexObject;
+import de.picturesafe.search.elasticsearch.model.ResultFacet;
 import de.picturesafe.search.parameter.AccountContext;
 import de.picturesafe.search.elasticsearch.model.ElasticsearchInfo;
 import de.picturesafe.search.elasticsearch.model.SearchResult;
 import de.picturesafe.search.elasticsearch.model.SuggestResult;
 import de.picturesafe.search.expression.Expression;
 import de.picturesafe.search.expression.SuggestExpression;
+import de.picturesafe.search.parameter.SearchAggregation;
 import de.picturesafe.search.parameter.SearchParameter;
 
 import java.util.Collection;
@@ -186,6 +188,75 @@ public interface SingleIndexElasticsearchService {
      */
     SearchResult search(AccountContext<?> accountContext, Expression expression, SearchParameter searchParameter);
 
+    /**
+     * Counts the documents matching an expression.
+     *
+     * @param expression        Expression defining the search criteria
+     * @return                  Number of matching documents
+     */
+    long count(Expression expression);
+
+    /**
+     * Counts the documents matching an expression in the context of an user account.
+     *
+     * @param accountContext    {@link AccountContext} of the current user
+     * @param expression        Expression defining the search criteria
+     * @return                  Number of matching documents
+     */
+    long count(AccountContext<?> accountContext, Expression expression);
+
+    /**
+     * Checks if at least one document matches an expression.
+     *
+     * @param expression        Expression defining the search criteria
+     * @return                  TRUE if at least one document matches the expression
+     */
+    boolean exists(Expression expression);
+
+    /**
+     * Checks if at least one document matches an expression in the context of an user account.
+     *
+     * @param accountContext    {@link AccountContext} of the current user
+     * @param expression        Expression defining the search criteria
+     * @return                  TRUE if at least one document matches the expression
+     */
+    boolean exists(AccountContext<?> accountContext, Expression expression);
+
+    /**
+     * Gets the facets of the documents matching an expression without fetching any hits.
+     *
+     * @see ElasticsearchService#facets(String, AccountContext, Expression, List)
+     *
+     * @param expression        Expression defining the search criteria
+     * @param aggregations      Aggregations defining the facets
+     * @return                  Facets
+     */
+    List<ResultFacet> facets(Expression expression, List<SearchAggregation> aggregations);
+
+    /**
+     * Gets the facets of the documents matching an expression in the context of an user account without fetching any hits.
+     *
+     * @param accountContext    {@link AccountContext} of the current user
+     * @param expression        Expression defining the search criteria
+     * @param aggregations      Aggregations defining the facets
+     * @return                  Facets
+     */
+    List<ResultFacet> facets(AccountContext<?> accountContext, Expression expression, List<SearchAggregation> aggregations);
+
+    /**
+     * Searches for documents by executing the expression as stored search template.
+     *
+     * @see ElasticsearchService#searchTemplate(String, AccountContext, Expression, SearchParameter, Map)
+     *
+     * @param accountContext        {@link AccountContext} of the current user
+     * @param expression            Expression defining the search criteria (containing placeholders)
+     * @param searchParameter       Parameters for the search execution
+     * @param templateParameters    Values of the template parameters
+     * @return                      {@link SearchResult}
+     */
+    SearchResult searchTemplate(AccountContext<?> accountContext, Expression expression, SearchParameter searchParameter,
+                                Map<String, Object> templateParameters);
+
     /**
      * Gets a document from the index.
      *
@@ -24,6 +24,8 @@ import org.elasticsearch.index.query.Operator;
 public class QueryConfiguration {
 
     private Operator defaultQueryStringOperator = Operator.AND;
+    private boolean downgradeSimpleQueryStrings = true;
+    private boolean groupNestedQueries;
 
     /**
      * Gets the default query string operator.
@@ -40,4 +42,48 @@ public class QueryConfiguration {
     public void setDefaultQueryStringOperator(Operator defaultQueryStringOperator) {
         this.defaultQueryStringOperator = defaultQueryStringOperator;
     }
+
+    /**
+     * Checks if query strings without query string syntax (operators other than the default operator, wildcards, fields, phrases etc.) are
+     * executed as match query.
+     * @return TRUE if simple query strings are executed as match query
+     */
+    public boolean isDowngradeSimpleQueryStrings() {
+        return downgradeSimpleQueryStrings;
+    }
+
+    /**
+     * Sets if query strings without query string syntax (operators other than the default operator, wildcards, fields, phrases etc.) are
+     * executed as match query, which saves the query string parsing on every shard.
+     * @param downgradeSimpleQueryStrings TRUE if simple query strings should be executed as match query
+     */
+    public void setDowngradeSimpleQueryStrings(boolean downgradeSimpleQueryStrings) {
+        this.downgradeSimpleQueryStrings = downgradeSimpleQueryStrings;
+    }
+
+    /**
+     * Checks if sibling expressions on fields of the same nested object are combined into a single nested query (disabled per default).
+     * @return TRUE if expressions on the same nested object are grouped
+     */
+    public boolean isGroupNestedQueries() {
+        return groupNestedQueries;
+    }
+
+    /**
+     * Sets if sibling expressions on fields of the same nested object are combined into a single nested query, which saves block join scans.
+     * Expressions combined by AND have to match the same nested object then, which changes the results compared to the default: if disabled,
+     * every expression is executed as separate nested query and may match a different nested object.
+     * @param groupNestedQueries TRUE if expressions on the same nested object should be grouped
+     */
+    public void setGroupNestedQueries(boolean groupNestedQueries) {
+        this.groupNestedQueries = groupNestedQueries;
+    }
+
+    /**
+     * Gets a key of all settings affecting the generated queries, e.g. to distinguish cached queries generated with different settings.
+     * @return Key of the current settings
+     */
+    public String getSettingsKey() {
+        return defaultQueryStringOperator + ":" + downgradeSimpleQueryStrings + ":" + groupNestedQueries;
+    }
 }
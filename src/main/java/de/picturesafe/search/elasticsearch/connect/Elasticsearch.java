@@ -21,6 +21,7 @@ import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
 import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
 import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
 import de.picturesafe.search.elasticsearch.connect.dto.SearchResultDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchTemplateDto;
 import de.picturesafe.search.elasticsearch.connect.error.AliasAlreadyExistsException;
 import de.picturesafe.search.elasticsearch.connect.error.AliasCreateException;
 import de.picturesafe.search.elasticsearch.connect.error.AliasHasMoreThanOneIndexException;
@@ -232,6 +233,52 @@ public interface Elasticsearch {
      */
     String createQueryJson(QueryDto queryDto, MappingConfiguration mappingConfiguration, IndexPresetConfiguration indexPresetConfiguration, boolean pretty);
 
+    /**
+     * Counts the documents matching a query.
+     *
+     * @param queryDto                      {@link QueryDto}
+     * @param mappingConfiguration          {@link MappingConfiguration}
+     * @param indexPresetConfiguration      {@link IndexPresetConfiguration}
+     * @return                              Number of matching documents
+     */
+    long count(QueryDto queryDto, MappingConfiguration mappingConfiguration, IndexPresetConfiguration indexPresetConfiguration);
+
+    /**
+     * Checks if at least one document matches a query.
+     *
+     * @param queryDto                      {@link QueryDto}
+     * @param mappingConfiguration          {@link MappingConfiguration}
+     * @param indexPresetConfiguration      {@link IndexPresetConfiguration}
+     * @return                              TRUE if at least one document matches the query
+     */
+    boolean exists(QueryDto queryDto, MappingConfiguration mappingConfiguration, IndexPresetConfiguration indexPresetConfiguration);
+
+    /**
+     * Compiles a query into a stored mustache search template.
+     *
+     * @param templateId                    ID of the stored template (an existing template with the same ID will be replaced)
+     * @param queryDto                      {@link QueryDto} containing placeholders for the template parameters
+     * @param mappingConfiguration          {@link MappingConfiguration}
+     * @param indexPresetConfiguration      {@link IndexPresetConfiguration}
+     * @param parameterNames                Names of the template parameters
+     * @return                              {@link SearchTemplateDto} to execute the template
+     */
+    SearchTemplateDto putSearchTemplate(String templateId, QueryDto queryDto, MappingConfiguration mappingConfiguration,
+                                        IndexPresetConfiguration indexPresetConfiguration, Collection<String> parameterNames);
+
+    /**
+     * Searches for documents by executing a stored search template.
+     *
+     * @param searchTemplate                {@link SearchTemplateDto} of the stored template
+     * @param parameters                    Template parameter values
+     * @param queryDto                      {@link QueryDto} the template was compiled from
+     * @param mappingConfiguration          {@link MappingConfiguration}
+     * @param indexPresetConfiguration      {@link IndexPresetConfiguration}
+     * @return                              {@link SearchResultDto}
+     */
+    SearchResultDto searchTemplate(SearchTemplateDto searchTemplate, Map<String, Object> parameters, QueryDto queryDto,
+                                   MappingConfiguration mappingConfiguration, IndexPresetConfiguration indexPresetConfiguration);
+
     /**
      * Gets a document from the index.
      *
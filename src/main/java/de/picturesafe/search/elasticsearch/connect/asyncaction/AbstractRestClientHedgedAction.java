@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.asyncaction;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executes an asynchronous rest client action and waits for the result. If no response has arrived after the hedge delay of the
+ * {@link HedgingPolicy}, a hedged request is sent. The first response is returned and the other request is cancelled.
+ * An instance can only be used once.
+ */
+public abstract class AbstractRestClientHedgedAction<Request, Response> {
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractRestClientHedgedAction.class);
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final HedgingPolicy hedgingPolicy;
+    private final Object lock = new Object();
+    private final AtomicBoolean used = new AtomicBoolean(false);
+    private Response response;
+    private Exception exception;
+    private boolean hedgeResponse;
+    private int pendingRequests;
+
+    protected AbstractRestClientHedgedAction(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    abstract Cancellable asyncAction(RestHighLevelClient client, Request request, ActionListener<Response> listener);
+
+    abstract Request hedgeRequest(Request request);
+
+    abstract String preference(Request request);
+
+    protected HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    public Response action(RestHighLevelClient client, Request request) {
+        if (used.getAndSet(true)) {
+            throw new RuntimeException("Action already triggered once and can not be used again. Please create a new Action");
+        }
+
+        hedgingPolicy.requestStarted();
+        final long start = System.nanoTime();
+        final long hedgeDelay = hedgingPolicy.getHedgeDelayMillis();
+        final Cancellable primary = execute(client, request, false);
+        Cancellable hedge = null;
+        if (hedgeDelay >= 0 && hedgingPolicy.isHedgeable(preference(request)) && !await(start, hedgeDelay) && hedgingPolicy.tryHedge()) {
+            LOG.debug("No response after {} ms, sending hedged request", hedgeDelay);
+            try {
+                hedge = execute(client, hedgeRequest(request), true);
+            } catch (RuntimeException e) {
+                primary.cancel();
+                throw e;
+            }
+        }
+        final boolean done = await(start, TIMEOUT_MILLIS);
+
+        synchronized (lock) {
+            if (response != null) {
+                hedgingPolicy.recordLatency(elapsedMillis(start));
+                if (hedge != null) {
+                    if (hedgeResponse) {
+                        hedgingPolicy.hedgeWon();
+                        primary.cancel();
+                    } else {
+                        hedge.cancel();
+                    }
+                }
+                return response;
+            }
+        }
+
+        primary.cancel();
+        if (hedge != null) {
+            hedge.cancel();
+        }
+        if (done) {
+            throw new RuntimeException("Action failed! " + request, exception);
+        } else {
+            throw new RuntimeException("Action failed due to timeout! " + request);
+        }
+    }
+
+    private Cancellable execute(RestHighLevelClient client, Request request, boolean hedge) {
+        synchronized (lock) {
+            pendingRequests++;
+        }
+        try {
+            return asyncAction(client, request, listener(hedge));
+        } catch (RuntimeException e) {
+            // The listener will never be called, so the request must not be awaited
+            synchronized (lock) {
+                pendingRequests--;
+                lock.notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private ActionListener<Response> listener(boolean hedge) {
+        return new ActionListener<Response>() {
+            @Override
+            public void onResponse(Response result) {
+                synchronized (lock) {
+                    pendingRequests--;
+                    if (response == null) {
+                        response = result;
+                        hedgeResponse = hedge;
+                    }
+                    lock.notifyAll();
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                synchronized (lock) {
+                    pendingRequests--;
+                    if (exception == null) {
+                        exception = e;
+                    }
+                    lock.notifyAll();
+                }
+            }
+        };
+    }
+
+    private boolean await(long start, long maxMillis) {
+        synchronized (lock) {
+            long remaining = maxMillis - elapsedMillis(start);
+            while (response == null && pendingRequests > 0 && remaining > 0) {
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    LOG.error("Failed to wait for the response", e);
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                remaining = maxMillis - elapsedMillis(start);
+            }
+            return response != null || pendingRequests == 0;
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.asyncaction;
+
+import org.apache.commons.lang3.Validate;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Policy for hedged requests: if no response has arrived after the hedge delay, a duplicate request is sent with a different preference, so it may
+ * be executed on other shard copies.
+ * <p>
+ * The hedge delay is the configured percentile of the latencies measured in a sliding window of recent requests. The number of hedged requests is
+ * limited by a budget relative to the number of requests, e.g. a budget of 0.05 allows at most 5% extra load.
+ * <p>
+ * A policy is thread safe and should be shared by all requests of the same kind.
+ */
+public class HedgingPolicy {
+
+    public static final int DEFAULT_WINDOW_SIZE = 1000;
+    public static final int DEFAULT_MIN_SAMPLES = 50;
+
+    private static final String HEDGE_PREFERENCE_PREFIX = "hedge-";
+    private static final String SYSTEM_PREFERENCE_PREFIX = "_";
+
+    private final double percentile;
+    private final double budget;
+    private final int minSamples;
+    private final int updateInterval;
+    private final long[] latencies;
+    private int sampleCount;
+    private int nextSample;
+    private int samplesSinceUpdate;
+    private long hedgeDelay = -1;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param percentile    Percentile of the measured latencies to be used as hedge delay (0 &lt; percentile &lt;= 100)
+     * @param budget        Maximum ratio of hedged requests to requests (0 &lt;= budget &lt;= 1)
+     */
+    public HedgingPolicy(double percentile, double budget) {
+        this(percentile, budget, DEFAULT_WINDOW_SIZE, DEFAULT_MIN_SAMPLES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param percentile    Percentile of the measured latencies to be used as hedge delay (0 &lt; percentile &lt;= 100)
+     * @param budget        Maximum ratio of hedged requests to requests (0 &lt;= budget &lt;= 1)
+     * @param windowSize    Number of recent latencies the percentile is calculated of
+     * @param minSamples    Minimum number of measured latencies before requests will be hedged
+     */
+    public HedgingPolicy(double percentile, double budget, int windowSize, int minSamples) {
+        Validate.isTrue(percentile > 0 && percentile <= 100, "Parameter 'percentile' must be > 0 and <= 100!");
+        Validate.inclusiveBetween(0.0, 1.0, budget, "Parameter 'budget' must be >= 0 and <= 1!");
+        Validate.isTrue(windowSize > 0, "Parameter 'windowSize' must be > 0!");
+        Validate.inclusiveBetween(1, windowSize, minSamples, "Parameter 'minSamples' must be > 0 and <= windowSize!");
+        this.percentile = percentile;
+        this.budget = budget;
+        this.minSamples = minSamples;
+        this.latencies = new long[windowSize];
+        this.updateInterval = Math.max(1, windowSize / 20);
+    }
+
+    /**
+     * Records the latency of a successful request.
+     *
+     * @param latencyMillis Latency in milliseconds
+     */
+    public synchronized void recordLatency(long latencyMillis) {
+        latencies[nextSample] = latencyMillis;
+        nextSample = (nextSample + 1) % latencies.length;
+        sampleCount = Math.min(sampleCount + 1, latencies.length);
+        samplesSinceUpdate++;
+        if (sampleCount >= minSamples && (hedgeDelay < 0 || samplesSinceUpdate >= updateInterval)) {
+            final long[] samples = Arrays.copyOf(latencies, sampleCount);
+            Arrays.sort(samples);
+            hedgeDelay = samples[Math.max(0, (int) Math.ceil(percentile / 100 * sampleCount) - 1)];
+            samplesSinceUpdate = 0;
+        }
+    }
+
+    /**
+     * Gets the delay after which a request should be hedged.
+     *
+     * @return Hedge delay in milliseconds (-1 = not enough latencies measured yet, requests will not be hedged)
+     */
+    public synchronized long getHedgeDelayMillis() {
+        return hedgeDelay;
+    }
+
+    /**
+     * Notifies the policy about the start of a request.
+     */
+    public void requestStarted() {
+        requestCount.incrementAndGet();
+    }
+
+    /**
+     * Tries to acquire a hedged request from the budget.
+     *
+     * @return TRUE if the request may be hedged
+     */
+    public boolean tryHedge() {
+        while (true) {
+            final long fired = hedgesFired.get();
+            if (fired + 1 > budget * requestCount.get()) {
+                return false;
+            }
+            if (hedgesFired.compareAndSet(fired, fired + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Notifies the policy that a hedged request returned the first response.
+     */
+    public void hedgeWon() {
+        hedgesWon.incrementAndGet();
+    }
+
+    /**
+     * Checks if a request with a preference may be hedged. Requests with a built-in preference (starting with '_', e.g. '_local' or '_shards:0')
+     * are not hedged, since their preference restricts the shard copies or nodes executing the request.
+     *
+     * @param preference Preference of the request (may be null)
+     * @return TRUE if the request may be hedged
+     */
+    public boolean isHedgeable(String preference) {
+        return preference == null || !preference.startsWith(SYSTEM_PREFERENCE_PREFIX);
+    }
+
+    /**
+     * Gets the preference for a hedged request, which differs from the preference of the original request. Built-in preferences (see
+     * {@link #isHedgeable(String)}) are kept unchanged.
+     *
+     * @param preference Preference of the original request (may be null)
+     * @return Preference of the hedged request
+     */
+    public String hedgePreference(String preference) {
+        if (preference == null) {
+            return HEDGE_PREFERENCE_PREFIX + hedgesFired.get();
+        }
+        return isHedgeable(preference) ? preference + "-" + HEDGE_PREFERENCE_PREFIX + hedgesFired.get() : preference;
+    }
+
+    /**
+     * Gets the number of requests.
+     *
+     * @return Number of requests
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Gets the number of hedged requests sent.
+     *
+     * @return Number of hedged requests
+     */
+    public long getHedgesFired() {
+        return hedgesFired.get();
+    }
+
+    /**
+     * Gets the number of hedged requests which returned the first response.
+     *
+     * @return Number of hedged requests which won
+     */
+    public long getHedgesWon() {
+        return hedgesWon.get();
+    }
+}
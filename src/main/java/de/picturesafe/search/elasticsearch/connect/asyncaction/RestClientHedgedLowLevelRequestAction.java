@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.asyncaction;
+
+import de.picturesafe.search.elasticsearch.connect.error.ElasticsearchException;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestHighLevelClient;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Performs a search request with the low level rest client, hedged according to a {@link HedgingPolicy}.
+ */
+public class RestClientHedgedLowLevelRequestAction extends AbstractRestClientHedgedAction<Request, Response> {
+
+    private static final String PREFERENCE_PARAMETER = "preference";
+
+    public RestClientHedgedLowLevelRequestAction(HedgingPolicy hedgingPolicy) {
+        super(hedgingPolicy);
+    }
+
+    @Override
+    Cancellable asyncAction(RestHighLevelClient client, Request request, ActionListener<Response> listener) {
+        return client.getLowLevelClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                listener.onFailure(exception);
+            }
+        });
+    }
+
+    @Override
+    Request hedgeRequest(Request request) {
+        final Request hedgeRequest = new Request(request.getMethod(), request.getEndpoint());
+        for (Map.Entry<String, String> parameter : request.getParameters().entrySet()) {
+            if (!parameter.getKey().equals(PREFERENCE_PARAMETER)) {
+                hedgeRequest.addParameter(parameter.getKey(), parameter.getValue());
+            }
+        }
+        hedgeRequest.addParameter(PREFERENCE_PARAMETER, getHedgingPolicy().hedgePreference(preference(request)));
+        final HttpEntity entity = request.getEntity();
+        if (entity != null) {
+            // The entity of the original request may be in use by the async client, the hedged request needs its own copy
+            try {
+                hedgeRequest.setEntity(new ByteArrayEntity(EntityUtils.toByteArray(entity), ContentType.get(entity)));
+            } catch (IOException e) {
+                throw new ElasticsearchException("Failed to copy entity of hedged request!", e);
+            }
+        }
+        hedgeRequest.setOptions(request.getOptions());
+        return hedgeRequest;
+    }
+
+    @Override
+    String preference(Request request) {
+        return request.getParameters().get(PREFERENCE_PARAMETER);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.asyncaction;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+
+/**
+ * Executes a search request, hedged according to a {@link HedgingPolicy}.
+ */
+public class RestClientHedgedSearchAction extends AbstractRestClientHedgedAction<SearchRequest, SearchResponse> {
+
+    public RestClientHedgedSearchAction(HedgingPolicy hedgingPolicy) {
+        super(hedgingPolicy);
+    }
+
+    @Override
+    Cancellable asyncAction(RestHighLevelClient client, SearchRequest searchRequest, ActionListener<SearchResponse> listener) {
+        return client.searchAsync(searchRequest, RequestOptions.DEFAULT, listener);
+    }
+
+    @Override
+    SearchRequest hedgeRequest(SearchRequest searchRequest) {
+        return new SearchRequest(searchRequest).preference(getHedgingPolicy().hedgePreference(searchRequest.preference()));
+    }
+
+    @Override
+    String preference(SearchRequest searchRequest) {
+        return searchRequest.preference();
+    }
+}
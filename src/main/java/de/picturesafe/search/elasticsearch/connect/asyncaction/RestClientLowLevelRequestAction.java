@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.asyncaction;
+
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestHighLevelClient;
+
+/**
+ * Performs a request with the low level rest client.
+ */
+public class RestClientLowLevelRequestAction extends AbstractRestClientAsyncAction<Request, Response> {
+
+    @Override
+    public void asyncAction(RestHighLevelClient client, Request request) {
+        client.getLowLevelClient().performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                RestClientLowLevelRequestAction.this.onFailure(exception);
+            }
+        });
+    }
+}
@@ -19,9 +19,12 @@ package de.picturesafe.search.elasticsearch.connect.context;
 import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
 import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
 import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.parameter.ScriptSortOption;
 import de.picturesafe.search.parameter.SortOption;
+import org.apache.commons.collections.CollectionUtils;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -29,11 +32,15 @@ public class SearchContext {
 
     private final QueryDto queryDto;
     private final MappingConfiguration mappingConfiguration;
+    // Tracked by identity: hashing deep expression trees on every lookup is expensive, and equal clauses in different branches
+    // must not mark each other as processed.
     private final Set<Expression> processedExpressions;
+    private final boolean scoreRequired;
+    private Expression rootExpression;
     private boolean nestedQuery;
 
     public SearchContext(QueryDto queryDto, MappingConfiguration mappingConfiguration) {
-        this(queryDto, mappingConfiguration, new HashSet<>());
+        this(queryDto, mappingConfiguration, Collections.newSetFromMap(new IdentityHashMap<>()));
     }
 
     public SearchContext(QueryDto queryDto, MappingConfiguration mappingConfiguration, boolean nestedQuery) {
@@ -42,21 +49,53 @@ public class SearchContext {
     }
 
     private SearchContext(QueryDto queryDto, MappingConfiguration mappingConfiguration, Set<Expression> processedExpressions) {
+        this(queryDto, mappingConfiguration, processedExpressions, isScoreRequired(queryDto), (queryDto != null) ? queryDto.getExpression() : null);
+    }
+
+    private SearchContext(QueryDto queryDto, MappingConfiguration mappingConfiguration, Set<Expression> processedExpressions, boolean scoreRequired,
+                          Expression rootExpression) {
         this.queryDto = queryDto;
         this.mappingConfiguration = mappingConfiguration;
         this.processedExpressions = processedExpressions;
+        this.scoreRequired = scoreRequired;
+        this.rootExpression = rootExpression;
     }
 
     public SearchContext(SearchContext context, QueryDto queryDto) {
-        this(queryDto, context.mappingConfiguration, context.processedExpressions);
+        this(queryDto, context.mappingConfiguration, context.processedExpressions, context.scoreRequired, queryDto.getExpression());
     }
 
+    /**
+     * Creates a context for a sub expression, sharing the query and the processed expressions with the given context.
+     *
+     * @param context       Parent context
+     * @param expression    Sub expression to become the root expression of the new context
+     */
     public SearchContext(SearchContext context, Expression expression) {
-        this(new QueryDto(context.queryDto, expression), context.mappingConfiguration, context.processedExpressions);
+        this(context.queryDto, context.mappingConfiguration, context.processedExpressions, context.scoreRequired, expression);
     }
 
     public SearchContext(SearchContext context, boolean nestedQuery) {
-        this(context.queryDto, context.mappingConfiguration, nestedQuery);
+        this(context.queryDto, context.mappingConfiguration, Collections.newSetFromMap(new IdentityHashMap<>()), context.scoreRequired,
+                context.rootExpression);
+        this.nestedQuery = nestedQuery;
+    }
+
+    /**
+     * Checks if the scores of the matching documents are required by a query. Scores are not required if the results are sorted by fields only,
+     * in which case the query can be built in filter context.
+     *
+     * @param queryDto  Query
+     * @return          TRUE if the query is sorted by relevance (explicitly or per default), by script or collapsed
+     */
+    public static boolean isScoreRequired(QueryDto queryDto) {
+        if (queryDto == null || CollectionUtils.isEmpty(queryDto.getSortOptions()) || queryDto.getCollapseOption() != null) {
+            // Inner hits of collapsed results are ranked by relevance per default
+            return true;
+        }
+        // Sort scripts may access the score
+        return queryDto.getSortOptions().stream()
+                .anyMatch(s -> s instanceof ScriptSortOption || SortOption.RELEVANCE_NAME.equals(s.getFieldName()));
     }
 
     public QueryDto getQueryDto() {
@@ -67,12 +106,26 @@ public class SearchContext {
         return mappingConfiguration;
     }
 
+    /**
+     * Gets the expression to be processed, which is the expression of the query or one of its sub expressions.
+     *
+     * @return Root expression
+     */
     public Expression getRootExpression() {
-        return queryDto.getExpression();
+        return rootExpression;
+    }
+
+    /**
+     * Sets the expression to be processed. Allows to reuse a context while walking an expression tree.
+     *
+     * @param rootExpression Root expression
+     */
+    public void setRootExpression(Expression rootExpression) {
+        this.rootExpression = rootExpression;
     }
 
     public boolean isRootExpressionProcessed() {
-        return isProcessed(queryDto.getExpression());
+        return isProcessed(rootExpression);
     }
 
     public boolean isProcessed(Expression expression) {
@@ -80,13 +133,17 @@ public class SearchContext {
     }
 
     public void setRootExpressionProcessed() {
-        processedExpressions.add(getRootExpression());
+        processedExpressions.add(rootExpression);
     }
 
     public void setProcessed(Expression expression) {
         processedExpressions.add(expression);
     }
 
+    public boolean isScoreRequired() {
+        return scoreRequired;
+    }
+
     public boolean isNestedQuery() {
         return nestedQuery;
     }
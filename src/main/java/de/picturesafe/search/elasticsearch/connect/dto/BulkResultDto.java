@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.dto;
+
+import de.picturesafe.search.util.logging.CustomJsonToStringStyle;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.List;
+import java.util.Map;
+
+public class BulkResultDto {
+
+    private final Map<String, Boolean> itemResults;
+    private final List<String> failures;
+
+    public BulkResultDto(Map<String, Boolean> itemResults, List<String> failures) {
+        this.itemResults = itemResults;
+        this.failures = failures;
+    }
+
+    /**
+     * Gets the results of the bulk items (only if requested).
+     *
+     * @return Success of the bulk items by document ID
+     */
+    public Map<String, Boolean> getItemResults() {
+        return itemResults;
+    }
+
+    public List<String> getFailures() {
+        return failures;
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * Creates the failure message of a bulk item.
+     *
+     * @param position  Position of the item in the bulk request
+     * @param index     Name of the index
+     * @param id        Document ID
+     * @param message   Failure message
+     * @return          Failure message of the bulk item
+     */
+    public static String failure(int position, String index, String id, String message) {
+        return "[" + position + "]: index [" + index + "], id [" + id + "], message [" + message + "]";
+    }
+
+    public String buildFailureMessage() {
+        return "failure in bulk execution:\n" + String.join("\n", failures);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, new CustomJsonToStringStyle()) //--
+                .append("itemResults", itemResults) //--
+                .append("failures", failures) //--
+                .toString();
+    }
+}
@@ -17,6 +17,7 @@
 package de.picturesafe.search.elasticsearch.connect.dto;
 
 import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.ExpressionFingerprint;
 import de.picturesafe.search.parameter.AccountContext;
 import de.picturesafe.search.parameter.CollapseOption;
 import de.picturesafe.search.parameter.SearchAggregation;
@@ -38,7 +39,8 @@ public class QueryDto {
 
     public enum FieldResolverType {
         DOC_VALUES,
-        SOURCE_VALUES
+        SOURCE_VALUES,
+        AUTO
     }
 
     private final Expression expression;
@@ -52,6 +54,12 @@ public class QueryDto {
     private FieldResolverType fieldResolverType = FieldResolverType.DOC_VALUES;
     private AccountContext<?> accountContext;
     private boolean sortFilter;
+    private Boolean requestCache;
+    private String preference;
+    private String routing;
+    private boolean profile;
+    private String expressionFingerprint;
+    private boolean expressionFingerprinted;
 
     public QueryDto(Expression expression, Locale locale) {
         this.expression = expression;
@@ -95,6 +103,19 @@ public class QueryDto {
         return expression;
     }
 
+    /**
+     * Gets the fingerprint of the expression, see {@link ExpressionFingerprint}. The fingerprint is created on first access.
+     *
+     * @return Fingerprint of the expression or null if the expression cannot be fingerprinted
+     */
+    public String getExpressionFingerprint() {
+        if (!expressionFingerprinted) {
+            expressionFingerprint = ExpressionFingerprint.of(expression);
+            expressionFingerprinted = true;
+        }
+        return expressionFingerprint;
+    }
+
     public Locale getLocale() {
         return locale;
     }
@@ -175,6 +196,42 @@ public class QueryDto {
         return this;
     }
 
+    public Boolean getRequestCache() {
+        return requestCache;
+    }
+
+    public QueryDto requestCache(Boolean requestCache) {
+        this.requestCache = requestCache;
+        return this;
+    }
+
+    public String getPreference() {
+        return preference;
+    }
+
+    public QueryDto preference(String preference) {
+        this.preference = preference;
+        return this;
+    }
+
+    public String getRouting() {
+        return routing;
+    }
+
+    public QueryDto routing(String routing) {
+        this.routing = routing;
+        return this;
+    }
+
+    public boolean isProfile() {
+        return profile;
+    }
+
+    public QueryDto profile(boolean profile) {
+        this.profile = profile;
+        return this;
+    }
+
     @Override
     public int hashCode() {
         return new HashCodeBuilder().append(expression).append(locale).toHashCode();
@@ -194,6 +251,10 @@ public class QueryDto {
                     .append(collapseOption, other.collapseOption)
                     .append(aggregations, other.aggregations)
                     .append(fieldsToResolve, other.fieldsToResolve)
+                    .append(requestCache, other.requestCache)
+                    .append(preference, other.preference)
+                    .append(routing, other.routing)
+                    .append(profile, other.profile)
                     .isEquals();
         }
     }
@@ -202,6 +263,7 @@ public class QueryDto {
     public String toString() {
         return new ToStringBuilder(this, new CustomJsonToStringStyle()) //--
                 .append("expression", expression) //--
+                .append("expressionFingerprint", getExpressionFingerprint()) //--
                 .append("locale", locale) //--
                 .append("queryRange", queryRange) //--
                 .append("sortOptions", sortOptions) //--
@@ -209,6 +271,10 @@ public class QueryDto {
                 .append("aggregations", aggregations) //--
                 .append("fieldsToResolve", fieldsToResolve) //--
                 .append("fieldResolverType", fieldResolverType) //--
+                .append("requestCache", requestCache) //--
+                .append("preference", preference) //--
+                .append("routing", routing) //--
+                .append("profile", profile) //--
                 .toString();
     }
 
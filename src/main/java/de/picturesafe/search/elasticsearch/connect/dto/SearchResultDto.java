@@ -16,6 +16,7 @@
 
 package de.picturesafe.search.elasticsearch.connect.dto;
 
+import de.picturesafe.search.elasticsearch.model.SearchProfile;
 import de.picturesafe.search.util.logging.CustomJsonToStringStyle;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -29,6 +30,7 @@ public class SearchResultDto {
     private final boolean exactCount;
     private final List<SearchHitDto> hits;
     private final List<FacetDto> facetDtoList;
+    private SearchProfile profile;
 
     public SearchResultDto(long totalHitCount, boolean exactCount, List<SearchHitDto> hits, List<FacetDto> facetDtoList) {
         this.totalHitCount = totalHitCount;
@@ -53,6 +55,15 @@ public class SearchResultDto {
         return facetDtoList;
     }
 
+    public SearchProfile getProfile() {
+        return profile;
+    }
+
+    public SearchResultDto profile(SearchProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
     @Override
     public int hashCode() {
         return new HashCodeBuilder()
@@ -19,41 +19,156 @@ package de.picturesafe.search.elasticsearch.connect.filter;
 import de.picturesafe.search.elasticsearch.connect.context.SearchContext;
 import de.picturesafe.search.elasticsearch.connect.filter.expression.ExpressionFilterBuilder;
 import de.picturesafe.search.elasticsearch.connect.filter.expression.ExpressionFilterBuilderContext;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.MustNotExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.OperationExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.util.ExpressionDispatchTable;
 import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
 import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 
 public class ExpressionFilterFactory implements FilterFactory {
 
-    private final List<ExpressionFilterBuilder> expressionFilterBuilders;
+    private final ExpressionDispatchTable<ExpressionFilterBuilder> expressionFilterBuilders;
 
     public ExpressionFilterFactory(List<ExpressionFilterBuilder> expressionFilterBuilders) {
-        this.expressionFilterBuilders = expressionFilterBuilders;
+        this.expressionFilterBuilders = new ExpressionDispatchTable<>(expressionFilterBuilders, ExpressionFilterBuilder::supportsExpressionClass);
     }
 
     @Override
     public List<QueryBuilder> create(SearchContext context) {
         final List<QueryBuilder> result = new ArrayList<>();
-        final QueryBuilder filter = buildFilter(context.getQueryDto().getExpression(), context);
+        final QueryBuilder filter = buildFilter(context.getRootExpression(), context);
         if (filter != null) {
             result.add(filter);
         }
         return result;
     }
 
+    /**
+     * Builds the filter of an expression with the first supporting expression filter builder.
+     * <p>
+     * Operation and must not expressions handled by the standard builders are resolved with an explicit stack instead of recursing through
+     * the builders, so deeply nested expressions cannot overflow the call stack.
+     *
+     * @param expression    Expression
+     * @param context       Search context
+     * @return              Filter or null if no builder created a filter
+     */
     public QueryBuilder buildFilter(Expression expression, SearchContext context) {
-        final ExpressionFilterBuilderContext expressionFilterBuilderContext = new ExpressionFilterBuilderContext(expression, context, this);
-        for (ExpressionFilterBuilder expressionFilterBuilder : expressionFilterBuilders) {
-            if (expressionFilterBuilder.supports(expressionFilterBuilderContext)) {
-                final QueryBuilder filterBuilder = expressionFilterBuilder.buildFilter(expressionFilterBuilderContext);
-                if (filterBuilder != null) {
-                    return filterBuilder;
+        final Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(expression, context, this));
+        QueryBuilder result = null;
+        boolean returned = false;
+
+        while (!stack.isEmpty()) {
+            final Frame frame = stack.peek();
+            if (returned) {
+                frame.addFilter(result);
+                returned = false;
+            }
+
+            if (frame.filters != null) {
+                if (frame.nextOperand < frame.operands.size()) {
+                    stack.push(new Frame(frame.operands.get(frame.nextOperand++), context, this));
+                    continue;
+                }
+                final QueryBuilder filter = frame.combine();
+                if (filter != null) {
+                    frame.builderContext.setProcessed();
+                    stack.pop();
+                    result = filter;
+                    returned = true;
+                    continue;
+                }
+            }
+
+            result = frame.nextCandidate();
+            if (frame.filters == null) {
+                stack.pop();
+                returned = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the expression filter builders.
+     *
+     * @return Dispatch table of the expression filter builders
+     */
+    public ExpressionDispatchTable<ExpressionFilterBuilder> getExpressionFilterBuilders() {
+        return expressionFilterBuilders;
+    }
+
+    private static class Frame {
+
+        private final ExpressionFilterBuilderContext builderContext;
+        private final List<ExpressionFilterBuilder> candidates;
+        private int candidate = -1;
+        // Set while the operands of an operation or must not expression are resolved
+        private List<Expression> operands;
+        private List<QueryBuilder> filters;
+        private int nextOperand;
+
+        Frame(Expression expression, SearchContext context, ExpressionFilterFactory factory) {
+            this.builderContext = new ExpressionFilterBuilderContext(expression, context, factory);
+            this.candidates = factory.expressionFilterBuilders.getCandidates(expression);
+        }
+
+        /**
+         * Tries the remaining candidates. Standard operation and must not builders are not called but start resolving the operands instead.
+         *
+         * @return Filter of the first builder creating one, null if there is none or the operands have to be resolved first
+         */
+        QueryBuilder nextCandidate() {
+            filters = null;
+            while (++candidate < candidates.size()) {
+                final ExpressionFilterBuilder builder = candidates.get(candidate);
+                if (builder.supports(builderContext)) {
+                    if (builder.getClass() == OperationExpressionFilterBuilder.class) {
+                        startOperands(((OperationExpression) builderContext.getExpression()).getOperands());
+                        return null;
+                    } else if (builder.getClass() == MustNotExpressionFilterBuilder.class) {
+                        startOperands(Collections.singletonList(((MustNotExpression) builderContext.getExpression()).getExpression()));
+                        return null;
+                    }
+
+                    final QueryBuilder filter = builder.buildFilter(builderContext);
+                    if (filter != null) {
+                        return filter;
+                    }
                 }
             }
+            return null;
         }
 
-        return null;
+        void startOperands(List<Expression> operands) {
+            this.operands = operands;
+            this.filters = new ArrayList<>(operands.size());
+            this.nextOperand = 0;
+        }
+
+        void addFilter(QueryBuilder filter) {
+            if (filter != null) {
+                filters.add(filter);
+            }
+        }
+
+        QueryBuilder combine() {
+            final Expression expression = builderContext.getExpression();
+            if (expression instanceof OperationExpression) {
+                return OperationExpressionFilterBuilder.combine(((OperationExpression) expression).getOperator(), filters);
+            } else {
+                return filters.isEmpty() ? null : QueryBuilders.boolQuery().mustNot(filters.get(0));
+            }
+        }
     }
 }
@@ -42,6 +42,11 @@ public class DayExpressionFilterBuilder extends AbstractExpressionFilterBuilder
         return expression instanceof DayExpression;
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return DayExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     protected QueryBuilder buildExpressionFilter(ExpressionFilterBuilderContext context) {
         final DayExpression expression = (DayExpression) context.getExpression();
@@ -40,6 +40,11 @@ public class DayRangeExpressionFilterBuilder extends AbstractExpressionFilterBui
         return expression instanceof DayRangeExpression;
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return DayRangeExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     protected QueryBuilder buildExpressionFilter(ExpressionFilterBuilderContext context) {
         final DayRangeExpression dayRangeExpression = (DayRangeExpression) context.getExpression();
@@ -16,11 +16,23 @@
 
 package de.picturesafe.search.elasticsearch.connect.filter.expression;
 
+import de.picturesafe.search.expression.Expression;
 import org.elasticsearch.index.query.QueryBuilder;
 
 public interface ExpressionFilterBuilder {
 
     boolean supports(ExpressionFilterBuilderContext context);
 
+    /**
+     * Checks if the builder may support expressions of a class at all. Used to skip the builder when dispatching expressions, the final
+     * decision is made by {@link #supports(ExpressionFilterBuilderContext)}.
+     *
+     * @param expressionClass   Class of the expression
+     * @return                  FALSE if the builder never supports expressions of the class
+     */
+    default boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return true;
+    }
+
     QueryBuilder buildFilter(ExpressionFilterBuilderContext context);
 }
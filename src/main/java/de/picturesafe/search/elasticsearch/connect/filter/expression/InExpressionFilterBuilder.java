@@ -34,6 +34,11 @@ public class InExpressionFilterBuilder extends AbstractExpressionFilterBuilder {
         return expression instanceof InExpression;
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return InExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     protected QueryBuilder buildExpressionFilter(ExpressionFilterBuilderContext context) {
         final InExpression inExpression = (InExpression) context.getExpression();
@@ -33,6 +33,11 @@ public class IsNullExpressionFilterBuilder extends AbstractExpressionFilterBuild
         return expression instanceof IsNullExpression;
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return IsNullExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     protected QueryBuilder buildExpressionFilter(ExpressionFilterBuilderContext context) {
         final IsNullExpression isNullExpression = (IsNullExpression) context.getExpression();
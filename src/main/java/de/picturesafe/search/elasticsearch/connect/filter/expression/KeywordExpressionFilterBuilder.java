@@ -35,6 +35,11 @@ public class KeywordExpressionFilterBuilder extends AbstractExpressionFilterBuil
         return expression instanceof KeywordExpression;
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return KeywordExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     protected QueryBuilder buildExpressionFilter(ExpressionFilterBuilderContext context) {
         final KeywordExpression keywordExpression = (KeywordExpression) context.getExpression();
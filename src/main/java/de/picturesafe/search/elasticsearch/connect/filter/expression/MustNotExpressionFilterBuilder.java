@@ -29,6 +29,11 @@ public class MustNotExpressionFilterBuilder extends AbstractExpressionFilterBuil
         return expression instanceof MustNotExpression;
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return MustNotExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     protected QueryBuilder buildExpressionFilter(ExpressionFilterBuilderContext context) {
         final QueryBuilder innerFilter = buildInnerFilter(context);
@@ -36,6 +36,11 @@ public class OperationExpressionFilterBuilder implements ExpressionFilterBuilder
         return context.getExpression() instanceof OperationExpression;
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return OperationExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     public QueryBuilder buildFilter(ExpressionFilterBuilderContext context) {
         final OperationExpression operationExpression = (OperationExpression) context.getExpression();
@@ -51,29 +56,38 @@ public class OperationExpressionFilterBuilder implements ExpressionFilterBuilder
             }
         }
 
-        QueryBuilder queryBuilder = null;
-        if (filterBuilders.size() > 0) {
-            if (filterBuilders.size() == 1) {
-                queryBuilder = filterBuilders.get(0);
-            } else {
-                final BoolQueryBuilder bool = QueryBuilders.boolQuery();
-                for (QueryBuilder filter: filterBuilders) {
-                    switch (operationExpression.getOperator()) {
-                        case AND:
-                            bool.must(filter);
-                            break;
-                        case OR:
-                            bool.should(filter);
-                            break;
-                    }
-                }
-                queryBuilder = bool;
-            }
-        }
-
+        final QueryBuilder queryBuilder = combine(operationExpression.getOperator(), filterBuilders);
         if (queryBuilder != null) {
             context.setProcessed();
         }
         return queryBuilder;
     }
+
+    /**
+     * Combines the filters of the operands of an operation expression.
+     *
+     * @param operator          Operator of the operation expression
+     * @param filterBuilders    Filters of the operands (without null values)
+     * @return                  Combined filter or null if there are no filters
+     */
+    public static QueryBuilder combine(OperationExpression.Operator operator, List<QueryBuilder> filterBuilders) {
+        if (filterBuilders.isEmpty()) {
+            return null;
+        } else if (filterBuilders.size() == 1) {
+            return filterBuilders.get(0);
+        }
+
+        final BoolQueryBuilder bool = QueryBuilders.boolQuery();
+        for (QueryBuilder filter: filterBuilders) {
+            switch (operator) {
+                case AND:
+                    bool.must(filter);
+                    break;
+                case OR:
+                    bool.should(filter);
+                    break;
+            }
+        }
+        return bool;
+    }
 }
@@ -42,6 +42,11 @@ public class RangeValueExpressionFilterBuilder extends AbstractExpressionFilterB
         return expression instanceof RangeValueExpression;
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return RangeValueExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     protected QueryBuilder buildExpressionFilter(ExpressionFilterBuilderContext context) {
         final MappingConfiguration mappingConfiguration = context.getMappingConfiguration();
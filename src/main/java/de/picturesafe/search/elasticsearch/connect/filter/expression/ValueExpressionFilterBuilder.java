@@ -31,12 +31,15 @@ import de.picturesafe.search.elasticsearch.connect.filter.valuepreparation.Value
 import de.picturesafe.search.elasticsearch.connect.util.ElasticDateUtils;
 import de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils;
 import de.picturesafe.search.elasticsearch.connect.util.PhraseMatchHelper;
+import de.picturesafe.search.elasticsearch.connect.util.QueryStringClassifier;
 import de.picturesafe.search.expression.Expression;
 import de.picturesafe.search.expression.KeywordExpression;
 import de.picturesafe.search.expression.ValueExpression;
 import org.apache.commons.lang3.Validate;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.ExistsQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.Operator;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 
@@ -50,6 +53,7 @@ import static de.picturesafe.search.expression.ConditionExpression.Comparison.TE
 public class ValueExpressionFilterBuilder extends AbstractExpressionFilterBuilder implements TimeZoneAware {
 
     private final List<ValuePreparer> valuePreparers;
+    private final QueryConfiguration queryConfig;
     private final String timeZone;
 
     private InternalQueryFilterBuilder internalQueryFilterBuilder;
@@ -59,6 +63,7 @@ public class ValueExpressionFilterBuilder extends AbstractExpressionFilterBuilde
 
     public ValueExpressionFilterBuilder(List<ValuePreparer> valuePreparers, QueryConfiguration queryConfig, String timeZone) {
         this.valuePreparers = valuePreparers;
+        this.queryConfig = queryConfig;
         this.timeZone = timeZone;
 
         internalQueryFilterBuilder = new InternalQueryFilterBuilder(queryConfig);
@@ -72,6 +77,11 @@ public class ValueExpressionFilterBuilder extends AbstractExpressionFilterBuilde
         return expression instanceof ValueExpression && !(expression instanceof KeywordExpression);
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return ValueExpression.class.isAssignableFrom(expressionClass) && !KeywordExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     protected QueryBuilder buildExpressionFilter(ExpressionFilterBuilderContext context) {
         final ValueExpression expression = (ValueExpression) context.getExpression();
@@ -98,9 +108,12 @@ public class ValueExpressionFilterBuilder extends AbstractExpressionFilterBuilde
             case NOT_EQ:
                 return QueryBuilders.boolQuery().mustNot(internalFilterBuilder.build(esFieldName, value, context));
             case LIKE:
-                return QueryBuilders.queryStringQuery(value.toString()).field(esFieldName);
+                return likeQuery(value.toString(), esFieldName, fieldConfig);
             case NOT_LIKE:
-                return QueryBuilders.queryStringQuery("NOT (" + value + ")").field(esFieldName);
+                final QueryBuilder likeQuery = likeQuery(value.toString(), esFieldName, fieldConfig);
+                return (likeQuery instanceof MatchQueryBuilder)
+                        ? QueryBuilders.boolQuery().mustNot(likeQuery)
+                        : QueryBuilders.queryStringQuery("NOT (" + value + ")").field(esFieldName);
             case GT:
                 return QueryBuilders.rangeQuery(esFieldName).gt(value);
             case LT:
@@ -124,6 +137,12 @@ public class ValueExpressionFilterBuilder extends AbstractExpressionFilterBuilde
         }
     }
 
+    private QueryBuilder likeQuery(String value, String esFieldName, FieldConfiguration fieldConfig) {
+        // Like queries are query string queries with the default operator OR of Elasticsearch
+        return QueryStringClassifier.createQuery(value, esFieldName, Operator.OR, fieldConfig != null && FieldConfigurationUtils.isTextField(fieldConfig),
+                queryConfig.isDowngradeSimpleQueryStrings());
+    }
+
     private InternalFilterBuilder determineInternalFilterBuilder(ExpressionFilterBuilderContext context, FieldConfiguration fieldConfig, Object value) {
         InternalFilterBuilder filterBuilder = null;
         if (fieldConfig != null) {
@@ -16,11 +16,14 @@
 
 package de.picturesafe.search.elasticsearch.connect.filter.internal;
 
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
 import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
 
 import de.picturesafe.search.elasticsearch.connect.filter.expression.ExpressionFilterBuilderContext;
+import de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils;
+import de.picturesafe.search.elasticsearch.connect.util.QueryStringClassifier;
 import org.elasticsearch.index.query.QueryBuilder;
-import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
 
 public class InternalQueryFilterBuilder implements InternalFilterBuilder {
 
@@ -32,9 +35,13 @@ public class InternalQueryFilterBuilder implements InternalFilterBuilder {
 
     @Override
     public QueryBuilder build(String key, Object value, ExpressionFilterBuilderContext context) {
-        return QueryBuilders.queryStringQuery(convertObject(value)).field(key)
-                        .defaultOperator(queryConfig.getDefaultQueryStringOperator())
-                        .analyzeWildcard(true);
+        final FieldConfiguration fieldConfig = FieldConfigurationUtils.fieldConfiguration(context.getMappingConfiguration(), key);
+        final QueryBuilder queryBuilder = QueryStringClassifier.createQuery(convertObject(value), key, queryConfig.getDefaultQueryStringOperator(),
+                fieldConfig != null && FieldConfigurationUtils.isTextField(fieldConfig), queryConfig.isDowngradeSimpleQueryStrings());
+        if (queryBuilder instanceof QueryStringQueryBuilder) {
+            ((QueryStringQueryBuilder) queryBuilder).analyzeWildcard(true);
+        }
+        return queryBuilder;
     }
 
     private String convertObject(Object value) {
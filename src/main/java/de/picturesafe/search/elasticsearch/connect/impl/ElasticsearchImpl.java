@@ -21,6 +21,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
 import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
 import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
 import de.picturesafe.search.elasticsearch.config.RestClientConfiguration;
 import de.picturesafe.search.elasticsearch.connect.Elasticsearch;
 import de.picturesafe.search.elasticsearch.connect.ElasticsearchAdmin;
@@ -30,18 +31,26 @@ import de.picturesafe.search.elasticsearch.connect.aggregation.resolve.FacetReso
 import de.picturesafe.search.elasticsearch.connect.aggregation.search.AggregationBuilderFactory;
 import de.picturesafe.search.elasticsearch.connect.aggregation.search.AggregationBuilderFactoryRegistry;
 import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientBulkAction;
+import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientCountAction;
 import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientDeleteAction;
 import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientDeleteByQueryAction;
 import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientIndexAction;
 import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientIndexRefreshAction;
+import de.picturesafe.search.elasticsearch.connect.asyncaction.HedgingPolicy;
+import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientHedgedLowLevelRequestAction;
+import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientHedgedSearchAction;
+import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientLowLevelRequestAction;
 import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientSearchAction;
+import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientSearchTemplateAction;
 import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientUpdateByQueryAction;
 import de.picturesafe.search.elasticsearch.connect.context.SearchContext;
+import de.picturesafe.search.elasticsearch.connect.dto.BulkResultDto;
 import de.picturesafe.search.elasticsearch.connect.dto.FacetDto;
 import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
 import de.picturesafe.search.elasticsearch.connect.dto.QueryRangeDto;
 import de.picturesafe.search.elasticsearch.connect.dto.SearchHitDto;
 import de.picturesafe.search.elasticsearch.connect.dto.SearchResultDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchTemplateDto;
 import de.picturesafe.search.elasticsearch.connect.error.AliasAlreadyExistsException;
 import de.picturesafe.search.elasticsearch.connect.error.AliasCreateException;
 import de.picturesafe.search.elasticsearch.connect.error.AliasHasMoreThanOneIndexException;
@@ -51,11 +60,15 @@ import de.picturesafe.search.elasticsearch.connect.error.IndexCreateException;
 import de.picturesafe.search.elasticsearch.connect.error.IndexMissingException;
 import de.picturesafe.search.elasticsearch.connect.error.QuerySyntaxException;
 import de.picturesafe.search.elasticsearch.connect.filter.FilterFactory;
+import de.picturesafe.search.elasticsearch.connect.query.QueryCompiler;
 import de.picturesafe.search.elasticsearch.connect.query.QueryFactory;
 import de.picturesafe.search.elasticsearch.connect.query.QueryFactoryCaller;
+import de.picturesafe.search.elasticsearch.connect.util.BoolQueryFlattener;
 import de.picturesafe.search.elasticsearch.connect.util.ElasticDateUtils;
 import de.picturesafe.search.elasticsearch.connect.util.ElasticExceptionUtils;
+import de.picturesafe.search.elasticsearch.connect.util.ExpressionDispatchTable;
 import de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils;
+import de.picturesafe.search.elasticsearch.connect.util.LazySourceMap;
 import de.picturesafe.search.elasticsearch.connect.util.StringTrimUtility;
 import de.picturesafe.search.elasticsearch.connect.util.logging.SearchRequestSourceToString;
 import de.picturesafe.search.elasticsearch.connect.util.logging.SearchResponseToString;
@@ -70,14 +83,19 @@ import de.picturesafe.search.parameter.ScriptDefinition;
 import de.picturesafe.search.parameter.ScriptSortOption;
 import de.picturesafe.search.parameter.SearchAggregation;
 import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.parameter.TemplateParameter;
 import de.picturesafe.search.util.logging.StopWatchPrettyPrint;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.util.EntityUtils;
 import org.apache.lucene.search.TotalHits;
 import org.elasticsearch.Version;
+import org.elasticsearch.action.admin.cluster.storedscripts.PutStoredScriptRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
@@ -89,13 +107,20 @@ import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.Request;
 import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.client.core.MainResponse;
 import org.elasticsearch.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.document.DocumentField;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.InnerHitBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -106,13 +131,17 @@ import org.elasticsearch.index.reindex.UpdateByQueryRequest;
 import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.script.Script;
 import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.script.mustache.SearchTemplateRequest;
+import org.elasticsearch.script.mustache.SearchTemplateResponse;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHits;
 import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.Aggregations;
 import org.elasticsearch.search.aggregations.support.ValuesSourceAggregationBuilder;
 import org.elasticsearch.search.builder.SearchSourceBuilder;
 import org.elasticsearch.search.collapse.CollapseBuilder;
+import org.elasticsearch.search.profile.ProfileShardResult;
 import org.elasticsearch.search.sort.FieldSortBuilder;
 import org.elasticsearch.search.sort.NestedSortBuilder;
 import org.elasticsearch.search.sort.ScriptSortBuilder;
@@ -151,6 +180,7 @@ import static de.picturesafe.search.elasticsearch.connect.filter.util.FilterFact
 import static de.picturesafe.search.elasticsearch.connect.util.ElasticDocumentUtils.getId;
 import static de.picturesafe.search.elasticsearch.connect.util.ElasticRequestUtils.getRefreshPolicy;
 import static de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils.fieldConfiguration;
+import static de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils.hasDocValues;
 import static de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils.isTextField;
 import static de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils.keywordFieldName;
 import static de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils.sortFieldName;
@@ -166,6 +196,8 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
     protected RestClientConfiguration restClientConfiguration;
     protected RestHighLevelClient restClient;
     protected List<QueryFactory> queryFactories;
+    protected ExpressionDispatchTable<QueryFactory> queryFactoryDispatchTable;
+    protected QueryCompiler queryCompiler;
     protected List<FilterFactory> filterFactories;
     protected String timeZone;
 
@@ -173,6 +205,7 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
     protected FacetConverterChain facetConverterChain;
     protected List<FacetResolver> facetResolvers;
     protected WriteRequestHandler writeRequestHandler;
+    protected QueryConfiguration queryConfiguration;
 
     @Value("${elasticsearch.service.check_cluster_status_timeout:10000}")
     protected long checkClusterStatusTimeout;
@@ -180,8 +213,30 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
     protected int indexingBulkSize;
     @Value("${elasticsearch.service.missing_value_sort_position:LAST}")
     protected MissingValueSortPosition missingValueSortPosition;
+    @Value("${elasticsearch.service.low_level_search.enabled:false}")
+    protected boolean lowLevelSearchEnabled;
+    @Value("${elasticsearch.service.low_level_bulk.enabled:false}")
+    protected boolean lowLevelBulkEnabled;
+    @Value("${elasticsearch.service.request_cache.aggregations_enabled:true}")
+    protected boolean requestCacheAggregationsEnabled = true;
+    @Value("${elasticsearch.service.hedged_search.enabled:false}")
+    protected boolean hedgedSearchEnabled;
+    @Value("${elasticsearch.service.hedged_search.percentile:95}")
+    protected double hedgedSearchPercentile = 95;
+    @Value("${elasticsearch.service.hedged_search.budget:0.05}")
+    protected double hedgedSearchBudget = 0.05;
+    @Value("${elasticsearch.service.query_cache.max_size:0}")
+    protected int queryCacheMaxSize;
+    @Value("${elasticsearch.service.query_cache.ttl_seconds:300}")
+    protected long queryCacheTtlSeconds = 300;
+    @Value("${elasticsearch.service.query_flattening.enabled:true}")
+    protected boolean queryFlatteningEnabled = true;
+
+    private volatile HedgingPolicy hedgingPolicy;
+    private volatile QueryBuilderCache queryBuilderCache;
 
     protected IdFormat idFormat = IdFormat.DEFAULT;
+    protected SearchResponseStreamParser searchResponseStreamParser = new SearchResponseStreamParser();
 
     @Autowired
     public ElasticsearchImpl(ElasticsearchAdmin elasticsearchAdmin,
@@ -192,6 +247,8 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
         this.elasticsearchAdmin = elasticsearchAdmin;
         this.restClientConfiguration = restClientConfiguration;
         this.queryFactories = queryFactories;
+        this.queryFactoryDispatchTable = new ExpressionDispatchTable<>(queryFactories, QueryFactory::supportsExpressionClass);
+        this.queryCompiler = new QueryCompiler(this, queryFactoryDispatchTable, filterFactories);
         this.filterFactories = filterFactories;
         this.timeZone = timeZone;
     }
@@ -216,6 +273,12 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
         this.idFormat = idFormat;
     }
 
+    @Autowired(required = false)
+    public void setQueryConfiguration(QueryConfiguration queryConfiguration) {
+        this.queryConfiguration = queryConfiguration;
+        queryBuilderCache = null;
+    }
+
     @Autowired(required = false)
     public void setWriteRequestHandler(WriteRequestHandler writeRequestHandler) {
         this.writeRequestHandler = writeRequestHandler;
@@ -233,6 +296,139 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
         this.missingValueSortPosition = missingValueSortPosition;
     }
 
+    /**
+     * Sets if searches should be executed with the low level rest client and parsed directly into DTOs, bypassing the response objects of the
+     * high level rest client. Supported facets are terms, range and histogram aggregations, the facet converter chain is not used.
+     *
+     * @param lowLevelSearchEnabled TRUE to enable low level searches
+     */
+    public void setLowLevelSearchEnabled(boolean lowLevelSearchEnabled) {
+        this.lowLevelSearchEnabled = lowLevelSearchEnabled;
+    }
+
+    /**
+     * Sets if the shard request cache should be used for searches without hits (size=0) containing aggregations, unless the request cache is
+     * explicitly set via {@link QueryDto#getRequestCache()}.
+     *
+     * @param requestCacheAggregationsEnabled TRUE to enable the shard request cache for size=0 aggregation searches
+     */
+    public void setRequestCacheAggregationsEnabled(boolean requestCacheAggregationsEnabled) {
+        this.requestCacheAggregationsEnabled = requestCacheAggregationsEnabled;
+    }
+
+    /**
+     * Sets if bulk requests should be executed with the low level rest client. The bulk responses will be trimmed to the IDs and errors of the items.
+     *
+     * @param lowLevelBulkEnabled TRUE to enable low level bulk requests
+     */
+    public void setLowLevelBulkEnabled(boolean lowLevelBulkEnabled) {
+        this.lowLevelBulkEnabled = lowLevelBulkEnabled;
+    }
+
+    /**
+     * Sets if searches should be hedged: if no response has arrived after the configured percentile of the measured search latencies, a duplicate
+     * search is sent with a different preference. The first response is used, the other search is cancelled.
+     *
+     * @param hedgedSearchEnabled TRUE to enable hedged searches
+     */
+    public void setHedgedSearchEnabled(boolean hedgedSearchEnabled) {
+        this.hedgedSearchEnabled = hedgedSearchEnabled;
+    }
+
+    /**
+     * Sets the percentile of the measured search latencies after which a search will be hedged.
+     *
+     * @param hedgedSearchPercentile Percentile (0 &lt; percentile &lt;= 100)
+     */
+    public void setHedgedSearchPercentile(double hedgedSearchPercentile) {
+        this.hedgedSearchPercentile = hedgedSearchPercentile;
+        hedgingPolicy = null;
+    }
+
+    /**
+     * Sets the maximum ratio of hedged searches to searches, e.g. 0.05 for at most 5% extra load.
+     *
+     * @param hedgedSearchBudget Maximum ratio of hedged searches (0 &lt;= budget &lt;= 1)
+     */
+    public void setHedgedSearchBudget(double hedgedSearchBudget) {
+        this.hedgedSearchBudget = hedgedSearchBudget;
+        hedgingPolicy = null;
+    }
+
+    /**
+     * Sets the maximum number of cached query builders (0 = query builders will not be cached).
+     *
+     * @param queryCacheMaxSize Maximum number of cached query builders
+     * @see QueryBuilderCache
+     */
+    public void setQueryCacheMaxSize(int queryCacheMaxSize) {
+        this.queryCacheMaxSize = queryCacheMaxSize;
+        queryBuilderCache = null;
+    }
+
+    /**
+     * Sets the time to live of cached query builders.
+     *
+     * @param queryCacheTtlSeconds Time to live in seconds (less or equal 0 = cached query builders do not expire)
+     */
+    public void setQueryCacheTtlSeconds(long queryCacheTtlSeconds) {
+        this.queryCacheTtlSeconds = queryCacheTtlSeconds;
+        queryBuilderCache = null;
+    }
+
+    /**
+     * Sets if generated bool queries should be flattened before they are sent to elasticsearch.
+     *
+     * @param queryFlatteningEnabled TRUE if generated bool queries should be flattened
+     * @see BoolQueryFlattener
+     */
+    public void setQueryFlatteningEnabled(boolean queryFlatteningEnabled) {
+        this.queryFlatteningEnabled = queryFlatteningEnabled;
+        queryBuilderCache = null;
+    }
+
+    /**
+     * Gets the cache of query builders.
+     *
+     * @return {@link QueryBuilderCache} or null if query builders are not cached
+     */
+    public QueryBuilderCache getQueryBuilderCache() {
+        if (queryCacheMaxSize <= 0) {
+            return null;
+        }
+
+        QueryBuilderCache cache = queryBuilderCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = queryBuilderCache;
+                if (cache == null) {
+                    cache = new QueryBuilderCache(queryCacheMaxSize, queryCacheTtlSeconds, queryConfiguration);
+                    queryBuilderCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Gets the hedging policy of searches, providing the hedge delay and the metrics of hedged searches.
+     *
+     * @return {@link HedgingPolicy}
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        HedgingPolicy policy = hedgingPolicy;
+        if (policy == null) {
+            synchronized (this) {
+                policy = hedgingPolicy;
+                if (policy == null) {
+                    policy = new HedgingPolicy(hedgedSearchPercentile, hedgedSearchBudget);
+                    hedgingPolicy = policy;
+                }
+            }
+        }
+        return policy;
+    }
+
     @PostConstruct
     public void init() {
         this.restClient = restClientConfiguration.getClient();
@@ -289,12 +485,12 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
                         LOG.debug("Adding {} documents to index '{}'.", bulkRequest.numberOfActions(), indexAlias);
 
                         sw.start("add");
-                        final BulkResponse bulkResponse = handleRequest(bulkRequest);
-                        LOG.debug("Bulk add response: {}", bulkResponse);
-                        if (exceptionOnFailure && bulkResponse.hasFailures()) {
-                            throw new ElasticsearchException("Add to index failed: " + bulkResponse.buildFailureMessage());
+                        final BulkResultDto bulkResult = bulk(bulkRequest, true);
+                        LOG.debug("Bulk add result: {}", bulkResult);
+                        if (exceptionOnFailure && bulkResult.hasFailures()) {
+                            throw new ElasticsearchException("Add to index failed: " + bulkResult.buildFailureMessage());
                         }
-                        bulkResponse.forEach(itemResponse -> results.put(itemResponse.getId(), itemResponse.getFailure() == null));
+                        results.putAll(bulkResult.getItemResults());
                         sw.stop();
                     }
                     bulkRequest = null;
@@ -351,8 +547,8 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
                 }
 
                 if (!handleRequestExternally(bulkRequest)) {
-                    final BulkResponse bulkResponse = handleRequest(bulkRequest);
-                    LOG.debug("Bulk remove response: {}", bulkResponse);
+                    final BulkResultDto bulkResult = bulk(bulkRequest, false);
+                    LOG.debug("Bulk remove result: {}", bulkResult);
                 }
                 count += size;
             } while (count < idsAsArray.length);
@@ -501,17 +697,11 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
             @Override
             public SearchResultDto process() {
                 try {
-                    final InternalSearchResponse internalSearchResponse = internalSearch(queryDto, mappingConfiguration, indexPresetConfiguration);
-                    final SearchHits searchHits = internalSearchResponse.searchResponse.getHits();
-                    final TotalHits totalHits = searchHits.getTotalHits();
-
-                    final List<SearchHitDto> searchHitDtos = new ArrayList<>();
-                    for (SearchHit hit : searchHits.getHits()) {
-                        searchHitDtos.add(convertSearchHit(hit, mappingConfiguration));
+                    if (lowLevelSearchEnabled && !queryDto.isProfile()) {
+                        return lowLevelSearch(queryDto, mappingConfiguration, indexPresetConfiguration);
                     }
-                    final List<FacetDto> facetDtos = convertFacets(internalSearchResponse, queryDto, mappingConfiguration);
-
-                    return new SearchResultDto(totalHits.value, totalHits.relation == TotalHits.Relation.EQUAL_TO, searchHitDtos, facetDtos);
+                    final InternalSearchResponse internalSearchResponse = internalSearch(queryDto, mappingConfiguration, indexPresetConfiguration);
+                    return convertSearchResponse(internalSearchResponse, queryDto, mappingConfiguration);
                 } catch (IndexMissingException e) {
                     throw new IndexMissingException(indexPresetConfiguration.getIndexAlias());
                 }
@@ -519,6 +709,133 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
         }.getResult();
     }
 
+    protected SearchResultDto convertSearchResponse(InternalSearchResponse internalSearchResponse, QueryDto queryDto,
+                                                    MappingConfiguration mappingConfiguration) {
+        final SearchHits searchHits = internalSearchResponse.searchResponse.getHits();
+        final TotalHits totalHits = searchHits.getTotalHits();
+
+        final List<SearchHitDto> searchHitDtos = new ArrayList<>();
+        for (SearchHit hit : searchHits.getHits()) {
+            searchHitDtos.add(convertSearchHit(hit, mappingConfiguration));
+        }
+        final List<FacetDto> facetDtos = convertFacets(internalSearchResponse, queryDto, mappingConfiguration);
+        final SearchResultDto searchResultDto = searchResultDto(totalHits, searchHitDtos, facetDtos, queryDto);
+        final Map<String, ProfileShardResult> profileResults = internalSearchResponse.searchResponse.getProfileResults();
+        if (queryDto.isProfile() && MapUtils.isNotEmpty(profileResults)) {
+            searchResultDto.profile(new SearchProfileConverter(queryDto.getExpression()).convert(profileResults));
+        }
+        return searchResultDto;
+    }
+
+    protected SearchResultDto searchResultDto(TotalHits totalHits, List<SearchHitDto> searchHitDtos, List<FacetDto> facetDtos, QueryDto queryDto) {
+        if (totalHits != null) {
+            return new SearchResultDto(totalHits.value, totalHits.relation == TotalHits.Relation.EQUAL_TO, searchHitDtos, facetDtos);
+        } else {
+            // Total hits are not tracked: derive a lower bound from the current page, which is exact if the page is not full
+            final QueryRangeDto queryRange = queryDto.getQueryRange();
+            final int start = (queryRange != null) ? queryRange.getStart() : 0;
+            final int hitCount = searchHitDtos.size();
+            final boolean pageFull = queryRange != null && hitCount >= queryRange.getLimit();
+            final boolean exact = !pageFull && (hitCount > 0 || start == 0);
+            return new SearchResultDto((hitCount > 0) ? start + hitCount : 0, exact, searchHitDtos, facetDtos);
+        }
+    }
+
+    @Override
+    public long count(QueryDto queryDto, MappingConfiguration mappingConfiguration, IndexPresetConfiguration indexPresetConfiguration) {
+        final CountRequest countRequest = new CountRequest(indexPresetConfiguration.getIndexAlias())
+                .preference(queryDto.getPreference())
+                .routing(queryDto.getRouting());
+        final QueryBuilder query = createQueryAndFilter(queryDto, mappingConfiguration);
+        if (query != null) {
+            countRequest.query(query);
+        }
+        QUERY_LOGGER.debug("Count request:\n{}\n{}", queryDto, query);
+
+        try {
+            return new RestClientCountAction().action(restClient, countRequest).getCount();
+        } catch (Exception e) {
+            throw searchFailed(e);
+        }
+    }
+
+    @Override
+    public boolean exists(QueryDto queryDto, MappingConfiguration mappingConfiguration, IndexPresetConfiguration indexPresetConfiguration) {
+        final SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder().size(0).terminateAfter(1).trackTotalHitsUpTo(1).fetchSource(false);
+        final QueryBuilder query = createQueryAndFilter(queryDto, mappingConfiguration);
+        if (query != null) {
+            searchSourceBuilder.query(query);
+        }
+        final SearchRequest searchRequest = new SearchRequest(indexPresetConfiguration.getIndexAlias()).source(searchSourceBuilder)
+                .preference(queryDto.getPreference())
+                .routing(queryDto.getRouting());
+        QUERY_LOGGER.debug("Exists request:\n{}\n{}", queryDto, new SearchRequestSourceToString(searchRequest));
+
+        try {
+            final SearchResponse searchResponse = new RestClientSearchAction().action(restClient, searchRequest);
+            return searchResponse.getHits().getTotalHits() != null && searchResponse.getHits().getTotalHits().value > 0;
+        } catch (Exception e) {
+            throw searchFailed(e);
+        }
+    }
+
+    @Override
+    public SearchTemplateDto putSearchTemplate(String templateId, QueryDto queryDto, MappingConfiguration mappingConfiguration,
+                                               IndexPresetConfiguration indexPresetConfiguration, Collection<String> parameterNames) {
+        Validate.notEmpty(templateId, "Parameter 'templateId' may not be null or empty!");
+        Validate.notNull(parameterNames, "Parameter 'parameterNames' may not be null!");
+
+        final InternalSearchRequest internalSearchRequest = searchRequest(indexPresetConfiguration, queryDto, mappingConfiguration);
+        // The quoted placeholders are kept, mustache renders the parameter values JSON escaped into the strings
+        final String source = internalSearchRequest.searchRequest.source().toString();
+        for (final String name : parameterNames) {
+            final String placeholder = "\"" + TemplateParameter.placeholder(name) + "\"";
+            if (!source.contains(placeholder)) {
+                throw new ElasticsearchException("Template parameter '" + name + "' is not contained as value in query: " + source);
+            }
+        }
+
+        try {
+            final XContentBuilder content = XContentFactory.jsonBuilder().startObject()
+                    .startObject("script").field("lang", "mustache").field("source", source).endObject()
+                    .endObject();
+            final PutStoredScriptRequest request = new PutStoredScriptRequest().id(templateId).content(BytesReference.bytes(content), XContentType.JSON);
+            restClient.putScript(request, RequestOptions.DEFAULT);
+        } catch (Exception e) {
+            throw new ElasticsearchException("Failed to store search template: id=" + templateId, e);
+        }
+        QUERY_LOGGER.debug("Stored search template {}:\n{}", templateId, source);
+        return new SearchTemplateDto(templateId, internalSearchRequest.aggregationFields);
+    }
+
+    @Override
+    public SearchResultDto searchTemplate(SearchTemplateDto searchTemplate, Map<String, Object> parameters, QueryDto queryDto,
+                                          MappingConfiguration mappingConfiguration, IndexPresetConfiguration indexPresetConfiguration) {
+        Validate.notNull(searchTemplate, "Parameter 'searchTemplate' may not be null!");
+
+        final SearchRequest searchRequest = new SearchRequest(indexPresetConfiguration.getIndexAlias())
+                .requestCache(queryDto.getRequestCache())
+                .preference(queryDto.getPreference())
+                .routing(queryDto.getRouting());
+        final SearchTemplateRequest request = new SearchTemplateRequest(searchRequest);
+        request.setScriptType(ScriptType.STORED);
+        request.setScript(searchTemplate.getId());
+        request.setScriptParams(parameters);
+        final UUID queryId = UUID.randomUUID();
+        QUERY_LOGGER.debug("Search template request {}: {} {}", queryId, searchTemplate.getId(), parameters);
+
+        final SearchTemplateResponse response;
+        try {
+            response = new RestClientSearchTemplateAction().action(restClient, request);
+        } catch (Exception e) {
+            throw searchFailed(e);
+        }
+
+        final InternalSearchResponse internalSearchResponse = new InternalSearchResponse(response.getResponse(), searchTemplate.getAggregationFields());
+        QUERY_LOGGER.debug("Search template response {}:\n{},", queryId, new SearchResponseToString(internalSearchResponse.searchResponse));
+        return convertSearchResponse(internalSearchResponse, queryDto, mappingConfiguration);
+    }
+
     @Override
     public Map<String, Object> getDocument(String indexAlias, Object id) {
         Validate.notEmpty(indexAlias, "Parameter 'indexAlias' may not be null or empty!");
@@ -541,7 +858,9 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
                         new CompletionSuggestionBuilder(expression.getName()).prefix(expression.getText()).size(expression.getCount()).skipDuplicates(true));
             }
 
-            final SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder().suggest(suggestBuilder);
+            // Only the suggestions are needed: no hits, no hit count and no sources of the suggested documents
+            final SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder().size(0).trackTotalHits(false).fetchSource(false)
+                    .suggest(suggestBuilder);
             final SearchRequest searchRequest = new SearchRequest(indexAlias).source(searchSourceBuilder);
             final SearchResponse searchResponse = new RestClientSearchAction().action(restClient, searchRequest);
 
@@ -563,37 +882,26 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
 
     @Override
     public QueryBuilder createQuery(SearchContext context) {
-        for (QueryFactory queryFactory : queryFactories) {
-            if (queryFactory.supports(context)) {
-                final QueryBuilder result = queryFactory.create(this, context);
-                if (result != null) {
-                    return result;
-                }
-            }
-        }
-        return null;
+        return queryCompiler.createQuery(context);
     }
 
     protected SearchHitDto convertSearchHit(SearchHit hit, MappingConfiguration mappingConfiguration) {
-        final Map<String, Object> source = hit.getSourceAsMap();
+        final BytesReference source = hit.getSourceRef();
         final Map<String, DocumentField> fields = hit.getFields();
-        final Map<String, Object> attributes = new HashMap<>();
-        if (source != null) {
-            for (Map.Entry<String, Object> entry : source.entrySet()) {
-                final String key = entry.getKey();
-                final Object value = entry.getValue();
-                attributes.put(key, value);
-            }
-        } else if (fields != null) {
+        if (source == null && fields == null) {
+            throw new RuntimeException("Missing data in search result!");
+        }
+
+        final Map<String, Object> fieldValues = new HashMap<>();
+        if (fields != null) {
             for (Map.Entry<String, DocumentField> field : fields.entrySet()) {
                 final String key = field.getKey();
                 final DocumentField documentField = field.getValue();
-                final Object value = documentField.getValue();
-                attributes.put(key, value);
+                final Object value = (documentField.getValues().size() > 1) ? documentField.getValues() : documentField.getValue();
+                fieldValues.put(key, value);
             }
-        } else {
-            throw new RuntimeException("Missing data in search result!");
         }
+        final Map<String, Object> attributes = (source != null) ? new LazySourceMap(source, fieldValues) : fieldValues;
 
         return new SearchHitDto(hit.getId(), attributes).innerHits(convertInnerHits(hit.getInnerHits(), mappingConfiguration));
     }
@@ -613,16 +921,18 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
     }
 
     protected List<FacetDto> convertFacets(InternalSearchResponse internalSearchResponse, QueryDto queryDto, MappingConfiguration mappingConfiguration) {
+        return convertFacets(internalSearchResponse.searchResponse.getAggregations(), internalSearchResponse.aggregationFields, queryDto.getLocale());
+    }
+
+    protected List<FacetDto> convertFacets(Aggregations aggregations, Map<String, String> aggregationFields, Locale locale) {
         final List<FacetDto> result = new ArrayList<>();
 
-        if (internalSearchResponse.searchResponse.getAggregations() != null) {
+        if (aggregations != null) {
             if (facetConverterChain != null) {
-                final Locale locale = queryDto.getLocale();
-
-                for (Aggregation aggregation : internalSearchResponse.searchResponse.getAggregations()) {
+                for (Aggregation aggregation : aggregations) {
                     final FacetConverter facetConverter = facetConverterChain.getFirstResponsible(aggregation);
                     if (facetConverter != null) {
-                        final String fieldName = internalSearchResponse.aggregationFields.get(aggregation.getName());
+                        final String fieldName = aggregationFields.get(aggregation.getName());
                         result.add(facetConverter.convert(aggregation, facetResolver(aggregation), fieldName, locale));
                     } else {
                         LOG.warn("Missing facet converter for aggregation: {}", aggregation);
@@ -654,20 +964,65 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
 
         final SearchResponse searchResponse;
         try {
-            searchResponse = new RestClientSearchAction().action(restClient, internalSearchRequest.searchRequest);
+            searchResponse = hedgedSearchEnabled
+                    ? new RestClientHedgedSearchAction(getHedgingPolicy()).action(restClient, internalSearchRequest.searchRequest)
+                    : new RestClientSearchAction().action(restClient, internalSearchRequest.searchRequest);
         } catch (Exception e) {
-            final ElasticExceptionCause cause = ElasticExceptionUtils.getCause(e);
-            if (QUERY_SYNTAX == cause.getType()) {
-                throw new QuerySyntaxException("Elasticsearch rest client search action failed: Failed to parse query!", cause.getMessage(), e);
-            } else {
-                throw new ElasticsearchException("Elasticsearch rest client search action failed!", e);
-            }
+            throw searchFailed(e);
         }
 
         QUERY_LOGGER.debug("Search response {}:\n{},", queryId, new SearchResponseToString(searchResponse));
         return new InternalSearchResponse(searchResponse, internalSearchRequest.aggregationFields);
     }
 
+    protected SearchResultDto lowLevelSearch(QueryDto queryDto, MappingConfiguration mappingConfiguration,
+                                             IndexPresetConfiguration indexPresetConfiguration) {
+        final InternalSearchRequest internalSearchRequest = searchRequest(indexPresetConfiguration, queryDto, mappingConfiguration);
+        final UUID queryId = UUID.randomUUID();
+        QUERY_LOGGER.debug("Search request {}:\n{}\n{}", queryId, queryDto, new SearchRequestSourceToString(internalSearchRequest.searchRequest));
+
+        final SearchResponseStreamParser.ParsedSearchResponse searchResponse;
+        try {
+            final Request request = lowLevelSearchRequest(internalSearchRequest.searchRequest);
+            final Response response = hedgedSearchEnabled
+                    ? new RestClientHedgedLowLevelRequestAction(getHedgingPolicy()).action(restClient, request)
+                    : new RestClientLowLevelRequestAction().action(restClient, request);
+            final byte[] responseBytes = EntityUtils.toByteArray(response.getEntity());
+            QUERY_LOGGER.debug("Search response {}: {} bytes", queryId, responseBytes.length);
+            searchResponse = searchResponseStreamParser.parse(responseBytes);
+        } catch (Exception e) {
+            throw searchFailed(e);
+        }
+        final List<FacetDto> facetDtos = convertFacets(searchResponse.getAggregations(), internalSearchRequest.aggregationFields, queryDto.getLocale());
+        return searchResultDto(searchResponse.getTotalHits(), searchResponse.getHits(), facetDtos, queryDto);
+    }
+
+    protected Request lowLevelSearchRequest(SearchRequest searchRequest) {
+        final Request request = new Request(HttpPost.METHOD_NAME, "/" + String.join(",", searchRequest.indices()) + "/_search");
+        request.addParameter("typed_keys", "true");
+        request.addParameter("filter_path", SearchResponseStreamParser.FILTER_PATH);
+        if (searchRequest.requestCache() != null) {
+            request.addParameter("request_cache", searchRequest.requestCache().toString());
+        }
+        if (searchRequest.preference() != null) {
+            request.addParameter("preference", searchRequest.preference());
+        }
+        if (searchRequest.routing() != null) {
+            request.addParameter("routing", searchRequest.routing());
+        }
+        request.setJsonEntity(Strings.toString(searchRequest.source()));
+        return request;
+    }
+
+    protected ElasticsearchException searchFailed(Exception e) {
+        final ElasticExceptionCause cause = ElasticExceptionUtils.getCause(e);
+        if (QUERY_SYNTAX == cause.getType()) {
+            return new QuerySyntaxException("Elasticsearch rest client search action failed: Failed to parse query!", cause.getMessage(), e);
+        } else {
+            return new ElasticsearchException("Elasticsearch rest client search action failed!", e);
+        }
+    }
+
     @Override
     public String createQueryJson(QueryDto queryDto, MappingConfiguration mappingConfiguration, IndexPresetConfiguration indexPresetConfiguration,
                                   boolean pretty) {
@@ -688,19 +1043,12 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
     protected InternalSearchRequest searchRequest(IndexPresetConfiguration indexPresetConfiguration, QueryDto queryDto,
                                                   MappingConfiguration mappingConfiguration) {
         final SearchSourceBuilder searchSourceBuilder = searchSourceBuilder(queryDto, indexPresetConfiguration);
-
-        final SearchContext context = new SearchContext(queryDto, mappingConfiguration);
-        final QueryBuilder queryBuilder = createQuery(context);
-        final QueryBuilder filterBuilder = createFilter(filterFactories, context);
-
-        if (filterBuilder != null) {
-            if (queryBuilder == null) {
-                searchSourceBuilder.query(QueryBuilders.boolQuery().filter(filterBuilder));
-            } else {
-                searchSourceBuilder.query(QueryBuilders.boolQuery().must(queryBuilder).filter(filterBuilder));
-            }
-        } else if (queryBuilder != null) {
-            searchSourceBuilder.query(queryBuilder);
+        final QueryBuilder query = createQueryAndFilter(queryDto, mappingConfiguration);
+        if (query != null) {
+            searchSourceBuilder.query(query);
+        }
+        if (!SearchContext.isScoreRequired(queryDto)) {
+            searchSourceBuilder.trackScores(false);
         }
 
         addSortOptionsToSearchRequest(queryDto, mappingConfiguration, searchSourceBuilder);
@@ -708,10 +1056,63 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
         final Map<String, String> aggregationFields = addFacetsToSearchRequest(queryDto, mappingConfiguration, searchSourceBuilder);
         addFieldsToSearchRequest(queryDto, mappingConfiguration, searchSourceBuilder);
 
-        final SearchRequest searchRequest = new SearchRequest(indexPresetConfiguration.getIndexAlias()).source(searchSourceBuilder);
+        final SearchRequest searchRequest = new SearchRequest(indexPresetConfiguration.getIndexAlias()).source(searchSourceBuilder)
+                .requestCache(requestCache(queryDto, searchSourceBuilder))
+                .preference(queryDto.getPreference())
+                .routing(queryDto.getRouting());
         return new InternalSearchRequest(searchRequest, aggregationFields);
     }
 
+    protected Boolean requestCache(QueryDto queryDto, SearchSourceBuilder searchSourceBuilder) {
+        if (queryDto.getRequestCache() != null) {
+            return queryDto.getRequestCache();
+        } else if (requestCacheAggregationsEnabled && searchSourceBuilder.size() == 0 && searchSourceBuilder.aggregations() != null
+                && searchSourceBuilder.aggregations().count() > 0) {
+            return Boolean.TRUE;
+        } else {
+            return null;
+        }
+    }
+
+    protected QueryBuilder createQueryAndFilter(QueryDto queryDto, MappingConfiguration mappingConfiguration) {
+        final QueryBuilderCache cache = getQueryBuilderCache();
+        final String cacheKey = (cache != null) ? cache.key(queryDto, mappingConfiguration) : null;
+        if (cacheKey != null) {
+            final QueryBuilderCache.Entry entry = cache.get(cacheKey, mappingConfiguration);
+            if (entry != null) {
+                return entry.getQueryBuilder();
+            }
+        }
+
+        QueryBuilder queryBuilder = buildQueryAndFilter(queryDto, mappingConfiguration);
+        queryBuilder = (queryFlatteningEnabled && queryBuilder != null) ? BoolQueryFlattener.flatten(queryBuilder) : queryBuilder;
+        if (cacheKey != null) {
+            cache.put(cacheKey, mappingConfiguration, queryBuilder);
+        }
+        return queryBuilder;
+    }
+
+    protected QueryBuilder buildQueryAndFilter(QueryDto queryDto, MappingConfiguration mappingConfiguration) {
+        final SearchContext context = new SearchContext(queryDto, mappingConfiguration);
+        final QueryCompiler.CompiledQuery compiledQuery = queryCompiler.compile(context);
+        final QueryBuilder queryBuilder = compiledQuery.getQuery();
+        final QueryBuilder filterBuilder = compiledQuery.getFilter();
+
+        if (queryBuilder != null && !context.isScoreRequired()) {
+            // Scores would be discarded, so the query can be executed in filter context (cacheable, no scoring)
+            final BoolQueryBuilder boolQuery = QueryBuilders.boolQuery().filter(queryBuilder);
+            return (filterBuilder != null) ? boolQuery.filter(filterBuilder) : boolQuery;
+        } else if (filterBuilder != null) {
+            if (queryBuilder == null) {
+                return QueryBuilders.boolQuery().filter(filterBuilder);
+            } else {
+                return QueryBuilders.boolQuery().must(queryBuilder).filter(filterBuilder);
+            }
+        } else {
+            return queryBuilder;
+        }
+    }
+
     @SuppressWarnings({"unchecked", "rawtypes"})
     protected Map<String, String> addFacetsToSearchRequest(QueryDto queryDto, MappingConfiguration mappingConfiguration,
                                                            SearchSourceBuilder searchRequestBuilder) {
@@ -882,6 +1283,9 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
     protected void addFieldsToSearchRequest(QueryDto queryDto, MappingConfiguration mappingConfiguration, SearchSourceBuilder searchRequestBuilder) {
         final List<String> fields = queryDto.getFieldsToResolve();
         if (CollectionUtils.isEmpty(fields)) {
+            if (queryDto.getFieldResolverType() == QueryDto.FieldResolverType.AUTO) {
+                searchRequestBuilder.fetchSource(false);
+            }
             return;
         }
 
@@ -894,6 +1298,9 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
             case SOURCE_VALUES:
                 addSourceValuesToSearchRequest(fields, searchRequestBuilder);
                 break;
+            case AUTO:
+                addAutoValuesToSearchRequest(fields, searchRequestBuilder, mappingConfiguration);
+                break;
         }
     }
 
@@ -925,13 +1332,33 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
         searchRequestBuilder.fetchSource(includes, excludes);
     }
 
+    protected void addAutoValuesToSearchRequest(List<String> fields, SearchSourceBuilder searchRequestBuilder, MappingConfiguration mappingConfiguration) {
+        final List<String> sourceFields = new ArrayList<>();
+        for (final String field : fields) {
+            if (hasDocValues(fieldConfiguration(mappingConfiguration, field))) {
+                searchRequestBuilder.docValueField(field);
+            } else {
+                sourceFields.add(field);
+            }
+        }
+
+        if (sourceFields.isEmpty()) {
+            searchRequestBuilder.fetchSource(false);
+        } else {
+            addSourceValuesToSearchRequest(sourceFields, searchRequestBuilder);
+        }
+    }
+
     protected SearchSourceBuilder searchSourceBuilder(QueryDto queryDto, IndexPresetConfiguration indexPresetConfiguration) {
         final QueryRangeDto queryRangeDto = queryDto.getQueryRange();
         final SearchSourceBuilder searchSourceBuilder = new SearchSourceBuilder();
+        if (queryDto.isProfile()) {
+            searchSourceBuilder.profile(true);
+        }
         if (queryRangeDto != null) {
             searchSourceBuilder.from(queryRangeDto.getStart()).size(queryRangeDto.getLimit());
             if (queryRangeDto.getMaxTrackTotalHits() != null) {
-                searchSourceBuilder.trackTotalHitsUpTo(queryRangeDto.getMaxTrackTotalHits().intValue());
+                searchSourceBuilder.trackTotalHitsUpTo((int) Math.min(queryRangeDto.getMaxTrackTotalHits(), Integer.MAX_VALUE));
             }
         } else {
             searchSourceBuilder.size(indexPresetConfiguration.getMaxResultWindow());
@@ -1018,6 +1445,27 @@ public class ElasticsearchImpl implements Elasticsearch, QueryFactoryCaller, Tim
         }
     }
 
+    protected BulkResultDto bulk(BulkRequest bulkRequest, boolean itemResults) {
+        if (lowLevelBulkEnabled && LowLevelBulkExecutor.isSupported(bulkRequest)) {
+            try {
+                return new LowLevelBulkExecutor().execute(restClient, bulkRequest, itemResults);
+            } catch (IOException e) {
+                throw new ElasticsearchException("Elasticsearch rest client bulk action failed!", e);
+            }
+        }
+
+        final BulkResponse bulkResponse = handleRequest(bulkRequest);
+        final Map<String, Boolean> results = new HashMap<>();
+        final List<String> failures = new ArrayList<>();
+        for (final BulkItemResponse itemResponse : bulkResponse) {
+            results.put(itemResponse.getId(), !itemResponse.isFailed());
+            if (itemResponse.isFailed()) {
+                failures.add(BulkResultDto.failure(itemResponse.getItemId(), itemResponse.getIndex(), itemResponse.getId(), itemResponse.getFailureMessage()));
+            }
+        }
+        return new BulkResultDto(results, failures);
+    }
+
     protected BulkByScrollResponse handleRequest(AbstractBulkByScrollRequest<?> request) {
         if (request instanceof UpdateByQueryRequest) {
             return new RestClientUpdateByQueryAction().action(restClient, (UpdateByQueryRequest) request);
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.picturesafe.search.elasticsearch.connect.asyncaction.RestClientLowLevelRequestAction;
+import de.picturesafe.search.elasticsearch.connect.dto.BulkResultDto;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes bulk requests with the low level rest client. The response is trimmed with 'filter_path' to the information which is actually used:
+ * the indices, IDs and errors of the items if the item results are requested, otherwise the status codes (keeping the item positions) and errors
+ * only. In the latter case the index and ID of a failed item are taken from the request.
+ * Supported are bulk requests containing index and delete requests.
+ */
+public class LowLevelBulkExecutor {
+
+    public static final String ITEM_RESULTS_FILTER_PATH = "errors,items.*._index,items.*._id,items.*.error";
+    public static final String ERRORS_FILTER_PATH = "errors,items.*.status,items.*.error";
+
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory();
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
+    private static final byte NEWLINE = '\n';
+
+    /**
+     * Checks if a bulk request can be executed.
+     *
+     * @param bulkRequest   Bulk request
+     * @return              TRUE if the bulk request only contains index and delete requests
+     */
+    public static boolean isSupported(BulkRequest bulkRequest) {
+        return bulkRequest.requests().stream().allMatch(request -> request instanceof IndexRequest || request instanceof DeleteRequest);
+    }
+
+    /**
+     * Executes a bulk request.
+     *
+     * @param client        Rest client
+     * @param bulkRequest   Bulk request
+     * @param itemResults   TRUE if the results of all items are needed, FALSE if only failures are needed
+     * @return              Bulk result
+     * @throws IOException  if the request could not be created or the response could not be parsed
+     */
+    public BulkResultDto execute(RestHighLevelClient client, BulkRequest bulkRequest, boolean itemResults) throws IOException {
+        final Response response = new RestClientLowLevelRequestAction().action(client, request(bulkRequest, itemResults));
+        return parse(EntityUtils.toByteArray(response.getEntity()), bulkRequest, itemResults);
+    }
+
+    protected Request request(BulkRequest bulkRequest, boolean itemResults) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (final DocWriteRequest<?> request : bulkRequest.requests()) {
+            writeAction(body, request);
+            if (request instanceof IndexRequest) {
+                final IndexRequest indexRequest = (IndexRequest) request;
+                if (indexRequest.getContentType() == XContentType.JSON) {
+                    indexRequest.source().writeTo(body);
+                } else {
+                    body.write(XContentHelper.convertToJson(indexRequest.source(), false, indexRequest.getContentType()).getBytes(StandardCharsets.UTF_8));
+                }
+                body.write(NEWLINE);
+            }
+        }
+
+        final Request request = new Request(HttpPost.METHOD_NAME, "/_bulk");
+        if (bulkRequest.getRefreshPolicy() != WriteRequest.RefreshPolicy.NONE) {
+            request.addParameter("refresh", bulkRequest.getRefreshPolicy().getValue());
+        }
+        request.addParameter("filter_path", itemResults ? ITEM_RESULTS_FILTER_PATH : ERRORS_FILTER_PATH);
+        request.setEntity(new NByteArrayEntity(body.toByteArray(), NDJSON));
+        return request;
+    }
+
+    private void writeAction(ByteArrayOutputStream body, DocWriteRequest<?> request) throws IOException {
+        try (XContentBuilder action = XContentFactory.jsonBuilder(body)) {
+            action.startObject().startObject(request.opType().getLowercase());
+            action.field("_index", request.index());
+            if (request.id() != null) {
+                action.field("_id", request.id());
+            }
+            if (request.routing() != null) {
+                action.field("routing", request.routing());
+            }
+            action.endObject().endObject();
+        }
+        body.write(NEWLINE);
+    }
+
+    protected BulkResultDto parse(byte[] bytes, BulkRequest bulkRequest, boolean itemResults) throws IOException {
+        final Map<String, Boolean> results = new HashMap<>();
+        final List<String> failures = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected bulk response: " + new String(bytes, StandardCharsets.UTF_8));
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                if ("items".equals(name) && parser.nextToken() == JsonToken.START_ARRAY) {
+                    int position = 0;
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        parseItem(parser, bytes, bulkRequest, position, results, failures);
+                        position++;
+                    }
+                } else {
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new BulkResultDto(results, failures);
+    }
+
+    private void parseItem(JsonParser parser, byte[] bytes, BulkRequest bulkRequest, int position, Map<String, Boolean> results, List<String> failures)
+            throws IOException {
+        // Item object contains the operation type as single field
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            String index = null;
+            String id = null;
+            String error = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+                if ("_index".equals(name)) {
+                    index = parser.getText();
+                } else if ("_id".equals(name)) {
+                    id = parser.getText();
+                } else if ("error".equals(name) && token == JsonToken.START_OBJECT) {
+                    final int start = (int) parser.getTokenLocation().getByteOffset();
+                    parser.skipChildren();
+                    final int end = (int) parser.getCurrentLocation().getByteOffset();
+                    error = errorMessage(bytes, start, end - start);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (id != null) {
+                results.put(id, error == null);
+            }
+            if (error != null) {
+                if (index == null && position < bulkRequest.numberOfActions()) {
+                    index = bulkRequest.requests().get(position).index();
+                    id = bulkRequest.requests().get(position).id();
+                }
+                failures.add(BulkResultDto.failure(position, index, id, error));
+            }
+        }
+    }
+
+    private String errorMessage(byte[] bytes, int offset, int length) throws IOException {
+        // Same message as BulkItemResponse.getFailureMessage() of the high level rest client
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION,
+                bytes, offset, length)) {
+            parser.nextToken();
+            return ElasticsearchException.fromXContent(parser).toString();
+        }
+    }
+}
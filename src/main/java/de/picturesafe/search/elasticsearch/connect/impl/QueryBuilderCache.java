@@ -0,0 +1,154 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.impl;
+
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
+import de.picturesafe.search.elasticsearch.connect.context.SearchContext;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
+import de.picturesafe.search.expression.ExpressionFingerprint;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.util.LruCache;
+import org.elasticsearch.index.query.QueryBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the query builders created for search queries, so equal queries do not pass the query and filter factories again.
+ * <p>
+ * Cache keys consist of the fingerprint of the query expression (see {@link ExpressionFingerprint}), the locale, the sort options, whether scores are
+ * required (see {@link SearchContext#isScoreRequired(QueryDto)}), the settings of the query configuration and the hash code of the mapping
+ * configuration. Queries with expressions that cannot be fingerprinted are not cached. Custom query or filter factories depending on further
+ * query data (e.g. the account context) must not be used with this cache.
+ */
+public class QueryBuilderCache {
+
+    private final LruCache<String, Entry> cache;
+    private final QueryConfiguration queryConfiguration;
+
+    /**
+     * Constructor
+     *
+     * @param maxSize       Maximum number of cached queries
+     * @param ttlSeconds    Time to live of cached queries in seconds (less or equal 0 = queries do not expire)
+     */
+    public QueryBuilderCache(int maxSize, long ttlSeconds) {
+        this(maxSize, ttlSeconds, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxSize               Maximum number of cached queries
+     * @param ttlSeconds            Time to live of cached queries in seconds (less or equal 0 = queries do not expire)
+     * @param queryConfiguration    Query configuration used by the query and filter factories (may be null)
+     */
+    public QueryBuilderCache(int maxSize, long ttlSeconds, QueryConfiguration queryConfiguration) {
+        cache = new LruCache<>(maxSize, ttlSeconds, TimeUnit.SECONDS);
+        this.queryConfiguration = queryConfiguration;
+    }
+
+    /**
+     * Creates the cache key of a query.
+     *
+     * @param queryDto              Query data
+     * @param mappingConfiguration  Mapping configuration
+     * @return                      Cache key or null if the query cannot be cached
+     */
+    public String key(QueryDto queryDto, MappingConfiguration mappingConfiguration) {
+        final String fingerprint = queryDto.getExpressionFingerprint();
+        if (fingerprint == null) {
+            return null;
+        }
+
+        final StringBuilder sb = new StringBuilder(fingerprint).append('|').append(queryDto.getLocale()).append('|').append(queryDto.isSortFilter())
+                .append('|').append(mappingConfiguration.hashCode()).append('|').append(SearchContext.isScoreRequired(queryDto));
+        if (queryConfiguration != null) {
+            // Settings may be changed at runtime
+            sb.append('|').append(queryConfiguration.getSettingsKey());
+        }
+        if (queryDto.getSortOptions() != null) {
+            for (final SortOption sortOption : queryDto.getSortOptions()) {
+                sb.append('|').append(sortOption.getFieldName()).append(':').append(sortOption.getSortDirection()).append(':')
+                        .append(sortOption.getArrayMode());
+                if (sortOption.getFilter() != null) {
+                    final String filterFingerprint = ExpressionFingerprint.of(sortOption.getFilter());
+                    if (filterFingerprint == null) {
+                        return null;
+                    }
+                    sb.append(':').append(filterFingerprint);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Gets a cached query.
+     *
+     * @param key                   Cache key, see {@link #key(QueryDto, MappingConfiguration)}
+     * @param mappingConfiguration  Mapping configuration
+     * @return                      Cached entry or null if the query is not cached
+     */
+    public Entry get(String key, MappingConfiguration mappingConfiguration) {
+        final Entry entry = cache.get(key);
+        return (entry != null && entry.mappingConfiguration.equals(mappingConfiguration)) ? entry : null;
+    }
+
+    /**
+     * Puts a query into the cache.
+     *
+     * @param key                   Cache key, see {@link #key(QueryDto, MappingConfiguration)}
+     * @param mappingConfiguration  Mapping configuration
+     * @param queryBuilder          Query builder (may be null if the query does not need a query builder)
+     */
+    public void put(String key, MappingConfiguration mappingConfiguration, QueryBuilder queryBuilder) {
+        cache.put(key, new Entry(mappingConfiguration, queryBuilder));
+    }
+
+    /**
+     * Gets the ratio of cache hits to cache lookups.
+     *
+     * @return Hit rate (0 if there were no lookups yet)
+     */
+    public double getHitRate() {
+        return cache.getHitRate();
+    }
+
+    /**
+     * Removes all cached queries.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    public static class Entry {
+
+        private final MappingConfiguration mappingConfiguration;
+        private final QueryBuilder queryBuilder;
+
+        Entry(MappingConfiguration mappingConfiguration, QueryBuilder queryBuilder) {
+            this.mappingConfiguration = mappingConfiguration;
+            this.queryBuilder = queryBuilder;
+        }
+
+        public QueryBuilder getQueryBuilder() {
+            return queryBuilder;
+        }
+    }
+}
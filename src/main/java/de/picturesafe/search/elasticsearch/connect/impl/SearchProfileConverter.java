@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.impl;
+
+import de.picturesafe.search.elasticsearch.model.SearchProfile;
+import de.picturesafe.search.elasticsearch.model.SearchProfileEntry;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FieldExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import org.elasticsearch.search.profile.ProfileResult;
+import org.elasticsearch.search.profile.ProfileShardResult;
+import org.elasticsearch.search.profile.query.CollectorResult;
+import org.elasticsearch.search.profile.query.QueryProfileShardResult;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Converts the profile results of a search response into a {@link SearchProfile}.
+ * <p>
+ * Query clauses are mapped back to the field expressions they originate from by matching the field names within the lucene query descriptions.
+ * Leaf clauses are mapped to all matching expressions, compound clauses only if they match a single expression.
+ */
+public class SearchProfileConverter {
+
+    private final Map<Pattern, Expression> fieldExpressions = new LinkedHashMap<>();
+
+    public SearchProfileConverter(Expression expression) {
+        collectFieldExpressions(expression);
+    }
+
+    public SearchProfile convert(Map<String, ProfileShardResult> profileResults) {
+        final List<SearchProfileEntry> entries = new ArrayList<>();
+        long rewriteTime = 0;
+        for (Map.Entry<String, ProfileShardResult> shardResult : new TreeMap<>(profileResults).entrySet()) {
+            final String shardId = shardResult.getKey();
+            for (QueryProfileShardResult queryResult : shardResult.getValue().getQueryProfileResults()) {
+                rewriteTime += queryResult.getRewriteTime();
+                queryResult.getQueryResults().forEach(result -> addProfileResult(entries, shardId, SearchProfileEntry.Type.QUERY, result, 0));
+                if (queryResult.getCollectorResult() != null) {
+                    addCollectorResult(entries, shardId, queryResult.getCollectorResult(), 0);
+                }
+            }
+            if (shardResult.getValue().getAggregationProfileResults() != null) {
+                shardResult.getValue().getAggregationProfileResults().getProfileResults()
+                        .forEach(result -> addProfileResult(entries, shardId, SearchProfileEntry.Type.AGGREGATION, result, 0));
+            }
+        }
+        return new SearchProfile(entries, rewriteTime);
+    }
+
+    private void addProfileResult(List<SearchProfileEntry> entries, String shardId, SearchProfileEntry.Type type, ProfileResult result, int depth) {
+        final List<ProfileResult> children = result.getProfiledChildren();
+        final long childTime = children.stream().mapToLong(ProfileResult::getTime).sum();
+        final String expression = (type == SearchProfileEntry.Type.QUERY) ? expression(result.getLuceneDescription(), children.isEmpty()) : null;
+        entries.add(SearchProfileEntry.builder(shardId, type)
+                .name(result.getQueryName(), result.getLuceneDescription())
+                .time(result.getTime(), Math.max(0, result.getTime() - childTime))
+                .depth(depth)
+                .expression(expression)
+                .build());
+        children.forEach(child -> addProfileResult(entries, shardId, type, child, depth + 1));
+    }
+
+    private void addCollectorResult(List<SearchProfileEntry> entries, String shardId, CollectorResult result, int depth) {
+        final List<CollectorResult> children = result.getProfiledChildren();
+        final long childTime = children.stream().mapToLong(CollectorResult::getTime).sum();
+        entries.add(SearchProfileEntry.builder(shardId, SearchProfileEntry.Type.COLLECTOR)
+                .name(result.getName(), result.getReason())
+                .time(result.getTime(), Math.max(0, result.getTime() - childTime))
+                .depth(depth)
+                .build());
+        children.forEach(child -> addCollectorResult(entries, shardId, child, depth + 1));
+    }
+
+    private String expression(String luceneDescription, boolean leaf) {
+        if (luceneDescription == null) {
+            return null;
+        }
+
+        final Set<Expression> matches = new LinkedHashSet<>();
+        fieldExpressions.forEach((pattern, expression) -> {
+            if (pattern.matcher(luceneDescription).find()) {
+                matches.add(expression);
+            }
+        });
+        if (matches.isEmpty() || (!leaf && matches.size() > 1)) {
+            return null;
+        }
+        return matches.stream().map(Expression::toString).collect(Collectors.joining("; "));
+    }
+
+    private void collectFieldExpressions(Expression expression) {
+        if (expression instanceof OperationExpression) {
+            ((OperationExpression) expression).getOperands().forEach(this::collectFieldExpressions);
+        } else if (expression instanceof MustNotExpression) {
+            collectFieldExpressions(((MustNotExpression) expression).getExpression());
+        } else if (expression instanceof FieldExpression) {
+            final String name = ((FieldExpression) expression).getName();
+            if (name != null) {
+                // Field name at the start of a term, optionally followed by sub fields (e.g. language or keyword fields)
+                fieldExpressions.put(Pattern.compile("(^|[\\s(+\\-#])" + Pattern.quote(name) + "(\\.[\\w]+)*:"), expression);
+            }
+        }
+    }
+}
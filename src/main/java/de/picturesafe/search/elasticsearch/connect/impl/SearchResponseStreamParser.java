@@ -0,0 +1,376 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchHitDto;
+import de.picturesafe.search.elasticsearch.connect.util.LazySourceMap;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.xcontent.ContextParser;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.filter.FilterAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.filter.FiltersAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.filter.ParsedFilter;
+import org.elasticsearch.search.aggregations.bucket.filter.ParsedFilters;
+import org.elasticsearch.search.aggregations.bucket.global.GlobalAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.global.ParsedGlobal;
+import org.elasticsearch.search.aggregations.bucket.histogram.AutoDateHistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.HistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.histogram.ParsedAutoDateHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.ParsedDateHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.ParsedHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.ParsedVariableWidthHistogram;
+import org.elasticsearch.search.aggregations.bucket.histogram.VariableWidthHistogramAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.missing.MissingAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.missing.ParsedMissing;
+import org.elasticsearch.search.aggregations.bucket.nested.NestedAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.nested.ParsedNested;
+import org.elasticsearch.search.aggregations.bucket.nested.ParsedReverseNested;
+import org.elasticsearch.search.aggregations.bucket.nested.ReverseNestedAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.range.DateRangeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.range.GeoDistanceAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.range.ParsedDateRange;
+import org.elasticsearch.search.aggregations.bucket.range.ParsedGeoDistance;
+import org.elasticsearch.search.aggregations.bucket.range.ParsedRange;
+import org.elasticsearch.search.aggregations.bucket.range.RangeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.DoubleTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.LongTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedDoubleTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedLongTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedStringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.StringTerms;
+import org.elasticsearch.search.aggregations.metrics.AvgAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.CardinalityAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.ExtendedStatsAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.MaxAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.MinAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.ParsedAvg;
+import org.elasticsearch.search.aggregations.metrics.ParsedCardinality;
+import org.elasticsearch.search.aggregations.metrics.ParsedExtendedStats;
+import org.elasticsearch.search.aggregations.metrics.ParsedMax;
+import org.elasticsearch.search.aggregations.metrics.ParsedMin;
+import org.elasticsearch.search.aggregations.metrics.ParsedStats;
+import org.elasticsearch.search.aggregations.metrics.ParsedSum;
+import org.elasticsearch.search.aggregations.metrics.ParsedValueCount;
+import org.elasticsearch.search.aggregations.metrics.StatsAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.SumAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.ValueCountAggregationBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Parses the JSON body of a search response (requested with 'typed_keys') directly into search hit DTOs, without building the object
+ * graph of the high level rest client. The sources of the hits are not copied, they are lazy maps backed by slices of the response bytes.
+ * Aggregations are parsed into the aggregation objects of the high level rest client, so they can be converted into facets by the
+ * {@link de.picturesafe.search.elasticsearch.connect.aggregation.resolve.FacetConverterChain}. Aggregation types without a registered parser
+ * are skipped.
+ */
+public class SearchResponseStreamParser {
+
+    /**
+     * Value of the 'filter_path' parameter restricting the search response to the parts which are read by the parser.
+     */
+    public static final String FILTER_PATH = "hits.total,hits.hits._id,hits.hits._source,hits.hits.fields,"
+            + "hits.hits.inner_hits.*.hits.hits._id,hits.hits.inner_hits.*.hits.hits._source,hits.hits.inner_hits.*.hits.hits.fields,aggregations";
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchResponseStreamParser.class);
+    private static final JsonFactory JSON_FACTORY = new ObjectMapper().getFactory();
+
+    private static final List<NamedXContentRegistry.Entry> DEFAULT_AGGREGATION_PARSERS = Arrays.asList(
+            aggregationParser(StringTerms.NAME, ParsedStringTerms::fromXContent),
+            aggregationParser(LongTerms.NAME, ParsedLongTerms::fromXContent),
+            aggregationParser(DoubleTerms.NAME, ParsedDoubleTerms::fromXContent),
+            aggregationParser(RangeAggregationBuilder.NAME, ParsedRange::fromXContent),
+            aggregationParser(DateRangeAggregationBuilder.NAME, ParsedDateRange::fromXContent),
+            aggregationParser(GeoDistanceAggregationBuilder.NAME, ParsedGeoDistance::fromXContent),
+            aggregationParser(HistogramAggregationBuilder.NAME, ParsedHistogram::fromXContent),
+            aggregationParser(DateHistogramAggregationBuilder.NAME, ParsedDateHistogram::fromXContent),
+            aggregationParser(AutoDateHistogramAggregationBuilder.NAME, ParsedAutoDateHistogram::fromXContent),
+            aggregationParser(VariableWidthHistogramAggregationBuilder.NAME, ParsedVariableWidthHistogram::fromXContent),
+            aggregationParser(FilterAggregationBuilder.NAME, ParsedFilter::fromXContent),
+            aggregationParser(FiltersAggregationBuilder.NAME, ParsedFilters::fromXContent),
+            aggregationParser(GlobalAggregationBuilder.NAME, ParsedGlobal::fromXContent),
+            aggregationParser(MissingAggregationBuilder.NAME, ParsedMissing::fromXContent),
+            aggregationParser(NestedAggregationBuilder.NAME, ParsedNested::fromXContent),
+            aggregationParser(ReverseNestedAggregationBuilder.NAME, ParsedReverseNested::fromXContent),
+            aggregationParser(AvgAggregationBuilder.NAME, ParsedAvg::fromXContent),
+            aggregationParser(MinAggregationBuilder.NAME, ParsedMin::fromXContent),
+            aggregationParser(MaxAggregationBuilder.NAME, ParsedMax::fromXContent),
+            aggregationParser(SumAggregationBuilder.NAME, ParsedSum::fromXContent),
+            aggregationParser(ValueCountAggregationBuilder.NAME, ParsedValueCount::fromXContent),
+            aggregationParser(CardinalityAggregationBuilder.NAME, ParsedCardinality::fromXContent),
+            aggregationParser(StatsAggregationBuilder.NAME, ParsedStats::fromXContent),
+            aggregationParser(ExtendedStatsAggregationBuilder.NAME, ParsedExtendedStats::fromXContent));
+
+    private final NamedXContentRegistry registry;
+    private final Set<String> aggregationTypes = new HashSet<>();
+
+    /**
+     * Constructor
+     */
+    public SearchResponseStreamParser() {
+        this(Collections.emptyList());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param aggregationParsers Parsers of additional aggregation types
+     */
+    public SearchResponseStreamParser(List<NamedXContentRegistry.Entry> aggregationParsers) {
+        final List<NamedXContentRegistry.Entry> entries = new ArrayList<>(DEFAULT_AGGREGATION_PARSERS);
+        entries.addAll(aggregationParsers);
+        entries.forEach(entry -> aggregationTypes.add(entry.name.getPreferredName()));
+        this.registry = new NamedXContentRegistry(entries);
+    }
+
+    /**
+     * Parses a search response.
+     *
+     * @param bytes JSON bytes of the search response
+     * @return      Parsed search response
+     * @throws IOException if the response could not be parsed
+     */
+    public ParsedSearchResponse parse(byte[] bytes) throws IOException {
+        final ParsedSearchResponse response = new ParsedSearchResponse();
+        try (JsonParser parser = JSON_FACTORY.createParser(bytes)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+                if ("hits".equals(name)) {
+                    parseHits(parser, bytes, response);
+                } else if ("aggregations".equals(name)) {
+                    parseAggregations(parser, bytes, response);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return response;
+    }
+
+    private void parseHits(JsonParser parser, byte[] bytes, ParsedSearchResponse response) throws IOException {
+        expect(parser.currentToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if ("total".equals(name)) {
+                response.totalHits = parseTotalHits(parser, token);
+            } else if ("hits".equals(name) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    response.hits.add(parseHit(parser, bytes));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private TotalHits parseTotalHits(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return new TotalHits(parser.getLongValue(), TotalHits.Relation.EQUAL_TO);
+        } else if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+
+        long value = 0;
+        TotalHits.Relation relation = TotalHits.Relation.EQUAL_TO;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("value".equals(name)) {
+                value = parser.getLongValue();
+            } else if ("relation".equals(name)) {
+                relation = "gte".equals(parser.getText()) ? TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO : TotalHits.Relation.EQUAL_TO;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new TotalHits(value, relation);
+    }
+
+    private SearchHitDto parseHit(JsonParser parser, byte[] bytes) throws IOException {
+        String id = null;
+        BytesArray source = null;
+        final Map<String, Object> fieldValues = new HashMap<>();
+        Map<String, List<SearchHitDto>> innerHits = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if ("_id".equals(name)) {
+                id = parser.getText();
+            } else if ("_source".equals(name) && token == JsonToken.START_OBJECT) {
+                final int start = (int) parser.getTokenLocation().getByteOffset();
+                parser.skipChildren();
+                final int end = (int) parser.getCurrentLocation().getByteOffset();
+                source = new BytesArray(bytes, start, end - start);
+            } else if ("fields".equals(name) && token == JsonToken.START_OBJECT) {
+                parseFields(parser, fieldValues);
+            } else if ("inner_hits".equals(name) && token == JsonToken.START_OBJECT) {
+                innerHits = parseInnerHits(parser, bytes);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        final Map<String, Object> attributes = (source != null) ? new LazySourceMap(source, fieldValues) : fieldValues;
+        return new SearchHitDto(id, attributes).innerHits(innerHits);
+    }
+
+    private void parseFields(JsonParser parser, Map<String, Object> fieldValues) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            final List<Object> values = new ArrayList<>();
+            if (token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    values.add(readValue(parser));
+                }
+            } else {
+                values.add(readValue(parser));
+            }
+            fieldValues.put(name, (values.size() > 1) ? values : (values.isEmpty() ? null : values.get(0)));
+        }
+    }
+
+    private Object readValue(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                // Objects in fields (e.g. nested fields) are rarely requested, read them into maps
+                return parser.readValueAs(Object.class);
+        }
+    }
+
+    private Map<String, List<SearchHitDto>> parseInnerHits(JsonParser parser, byte[] bytes) throws IOException {
+        final Map<String, List<SearchHitDto>> innerHits = new TreeMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String innerHitsName = parser.getCurrentName();
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+                if ("hits".equals(name)) {
+                    final ParsedSearchResponse inner = new ParsedSearchResponse();
+                    parseHits(parser, bytes, inner);
+                    if (!inner.hits.isEmpty()) {
+                        innerHits.put(innerHitsName, inner.hits);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return innerHits;
+    }
+
+    private void parseAggregations(JsonParser parser, byte[] bytes, ParsedSearchResponse response) throws IOException {
+        expect(parser.currentToken(), JsonToken.START_OBJECT);
+        final int start = (int) parser.getTokenLocation().getByteOffset();
+        parser.skipChildren();
+        final int end = (int) parser.getCurrentLocation().getByteOffset();
+
+        // Aggregations are small compared to the hits, they are parsed into the aggregation objects of the high level rest client to be
+        // converted by the facet converter chain.
+        final List<Aggregation> aggregations = new ArrayList<>();
+        try (XContentParser aggregationsParser
+                     = JsonXContent.jsonXContent.createParser(registry, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, bytes, start, end - start)) {
+            aggregationsParser.nextToken();
+            while (aggregationsParser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                final String typedName = aggregationsParser.currentName();
+                aggregationsParser.nextToken();
+                final String type = StringUtils.substringBefore(typedName, Aggregation.TYPED_KEYS_DELIMITER);
+                final String name = StringUtils.substringAfter(typedName, Aggregation.TYPED_KEYS_DELIMITER);
+                if (aggregationTypes.contains(type)) {
+                    aggregations.add(aggregationsParser.namedObject(Aggregation.class, type, name));
+                } else {
+                    LOG.warn("Missing parser for aggregation: {}", typedName);
+                    aggregationsParser.skipChildren();
+                }
+            }
+        }
+        response.aggregations = new Aggregations(aggregations);
+    }
+
+    private static NamedXContentRegistry.Entry aggregationParser(String type, ContextParser<String, ? extends Aggregation> parser) {
+        return new NamedXContentRegistry.Entry(Aggregation.class, new ParseField(type), (p, c) -> parser.parse(p, (String) c));
+    }
+
+    private static void expect(JsonToken token, JsonToken expected) throws IOException {
+        if (token != expected) {
+            throw new IOException("Unexpected token in search response: expected " + expected + " but was " + token);
+        }
+    }
+
+    /**
+     * Result of parsing a search response
+     */
+    public static class ParsedSearchResponse {
+        private TotalHits totalHits;
+        private final List<SearchHitDto> hits = new ArrayList<>();
+        private Aggregations aggregations;
+
+        public TotalHits getTotalHits() {
+            return totalHits;
+        }
+
+        public List<SearchHitDto> getHits() {
+            return hits;
+        }
+
+        public Aggregations getAggregations() {
+            return aggregations;
+        }
+    }
+}
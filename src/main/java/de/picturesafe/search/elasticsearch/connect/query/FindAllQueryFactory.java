@@ -17,6 +17,7 @@
 package de.picturesafe.search.elasticsearch.connect.query;
 
 import de.picturesafe.search.elasticsearch.connect.context.SearchContext;
+import de.picturesafe.search.expression.Expression;
 import de.picturesafe.search.expression.FindAllExpression;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -30,6 +31,11 @@ public class FindAllQueryFactory implements QueryFactory {
         return context.getRootExpression() instanceof FindAllExpression;
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return FindAllExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     public QueryBuilder create(QueryFactoryCaller caller, SearchContext context) {
         context.setRootExpressionProcessed();
@@ -22,6 +22,7 @@ import de.picturesafe.search.elasticsearch.connect.context.SearchContext;
 import de.picturesafe.search.elasticsearch.connect.error.ElasticsearchException;
 import de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils;
 import de.picturesafe.search.elasticsearch.connect.util.PhraseMatchHelper;
+import de.picturesafe.search.elasticsearch.connect.util.QueryStringClassifier;
 import de.picturesafe.search.expression.Expression;
 import de.picturesafe.search.expression.FulltextExpression;
 import de.picturesafe.search.expression.MustNotExpression;
@@ -29,6 +30,7 @@ import de.picturesafe.search.expression.ValueExpression;
 import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -62,6 +64,12 @@ public class FulltextQueryFactory implements QueryFactory {
                 || (expression instanceof ValueExpression && ((ValueExpression) expression).getName().equals(FieldConfiguration.FIELD_NAME_FULLTEXT)));
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return FulltextExpression.class.isAssignableFrom(expressionClass) || ValueExpression.class.isAssignableFrom(expressionClass)
+                || MustNotExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     public QueryBuilder create(QueryFactoryCaller caller, SearchContext context) {
         final FieldConfiguration fieldConfig
@@ -84,10 +92,11 @@ public class FulltextQueryFactory implements QueryFactory {
         final String value = valueExpression.getValue().toString();
         QueryBuilder queryBuilder = null;
         if (!StringUtils.isBlank(value)) {
-            queryBuilder = QueryBuilders.queryStringQuery(preprocess(value))
-                    .field(FieldConfiguration.FIELD_NAME_FULLTEXT)
-                    .defaultOperator(queryConfig.getDefaultQueryStringOperator())
-                    .analyzeWildcard(containsWildcard(value));
+            queryBuilder = QueryStringClassifier.createQuery(preprocess(value), FieldConfiguration.FIELD_NAME_FULLTEXT,
+                    queryConfig.getDefaultQueryStringOperator(), true, queryConfig.isDowngradeSimpleQueryStrings());
+            if (queryBuilder instanceof QueryStringQueryBuilder) {
+                ((QueryStringQueryBuilder) queryBuilder).analyzeWildcard(containsWildcard(value));
+            }
             applyBoost(queryBuilder, expression);
             if (mustNot) {
                 queryBuilder = QueryBuilders.boolQuery().mustNot(queryBuilder);
@@ -17,6 +17,7 @@
 package de.picturesafe.search.elasticsearch.connect.query;
 
 import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
 import de.picturesafe.search.elasticsearch.connect.context.SearchContext;
 import de.picturesafe.search.elasticsearch.connect.filter.FilterFactory;
 import de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils;
@@ -24,7 +25,9 @@ import de.picturesafe.search.expression.Expression;
 import de.picturesafe.search.expression.FieldExpression;
 import de.picturesafe.search.expression.IsNullExpression;
 import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
 import org.apache.lucene.search.join.ScoreMode;
+import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,10 +41,16 @@ import static de.picturesafe.search.elasticsearch.connect.filter.util.FilterFact
 public class NestedQueryFactory implements QueryFactory {
 
     private final List<FilterFactory> filterFactories;
+    private final QueryConfiguration queryConfig;
 
-    @Autowired
     public NestedQueryFactory(List<FilterFactory> filterFactories) {
+        this(filterFactories, new QueryConfiguration());
+    }
+
+    @Autowired
+    public NestedQueryFactory(List<FilterFactory> filterFactories, QueryConfiguration queryConfig) {
         this.filterFactories = filterFactories;
+        this.queryConfig = queryConfig;
     }
 
     @Override
@@ -56,6 +65,12 @@ public class NestedQueryFactory implements QueryFactory {
                 && !(expression instanceof IsNullExpression));
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return (FieldExpression.class.isAssignableFrom(expressionClass) && !IsNullExpression.class.isAssignableFrom(expressionClass))
+                || MustNotExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     public QueryBuilder create(QueryFactoryCaller caller, SearchContext context) {
         Expression expression = context.getRootExpression();
@@ -71,11 +86,69 @@ public class NestedQueryFactory implements QueryFactory {
         if (fieldConfiguration != null && fieldConfiguration.isNestedObject()) {
             final String objectPath = FieldConfigurationUtils.rootFieldName(fieldConfiguration);
             final QueryBuilder filter = createFilter(filterFactories, new SearchContext(context, true));
-            queryBuilder = (filter != null) ? QueryBuilders.nestedQuery(objectPath, QueryBuilders.boolQuery().filter(filter), ScoreMode.Total) : null;
+            final ScoreMode scoreMode = context.isScoreRequired() ? ScoreMode.Total : ScoreMode.None;
+            queryBuilder = (filter != null) ? QueryBuilders.nestedQuery(objectPath, QueryBuilders.boolQuery().filter(filter), scoreMode) : null;
             context.setProcessed(fieldExpression);
             context.setProcessed(expression);
         }
 
         return queryBuilder;
     }
+
+    /**
+     * Gets the path of the nested object the root expression of a search context can be grouped by, see
+     * {@link #createGroup(SearchContext, String, List, OperationExpression.Operator)}.
+     *
+     * @param context   Search context
+     * @return          Path of the nested object or null if the expression cannot be grouped with others
+     */
+    public String groupPath(SearchContext context) {
+        final Expression expression = context.getRootExpression();
+        if (!queryConfig.isGroupNestedQueries() || expression instanceof MustNotExpression || !supports(context)) {
+            return null;
+        }
+
+        final FieldConfiguration fieldConfiguration
+                = FieldConfigurationUtils.fieldConfiguration(context.getMappingConfiguration(), ((FieldExpression) expression).getName());
+        return (fieldConfiguration != null && fieldConfiguration.isNestedObject()) ? FieldConfigurationUtils.rootFieldName(fieldConfiguration) : null;
+    }
+
+    /**
+     * Creates a single nested query for sibling expressions on fields of the same nested object instead of a nested query per expression. Expressions
+     * combined by AND have to match the same nested object then.
+     *
+     * @param context       Search context
+     * @param objectPath    Path of the nested object, see {@link #groupPath(SearchContext)}
+     * @param expressions   Expressions on fields of the nested object
+     * @param operator      Operator combining the expressions
+     * @return              Nested query or null if the expressions did not yield any filter
+     */
+    public QueryBuilder createGroup(SearchContext context, String objectPath, List<Expression> expressions, OperationExpression.Operator operator) {
+        final Expression rootExpression = context.getRootExpression();
+        final BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery();
+        try {
+            for (Expression expression : expressions) {
+                context.setRootExpression(expression);
+                final QueryBuilder filter = createFilter(filterFactories, new SearchContext(context, true));
+                if (filter != null) {
+                    if (operator == OperationExpression.Operator.AND) {
+                        boolQueryBuilder.filter(filter);
+                    } else {
+                        boolQueryBuilder.should(filter);
+                    }
+                }
+                context.setProcessed(expression);
+            }
+        } finally {
+            context.setRootExpression(rootExpression);
+        }
+
+        if (!boolQueryBuilder.hasClauses()) {
+            return null;
+        }
+        final ScoreMode scoreMode = context.isScoreRequired() ? ScoreMode.Total : ScoreMode.None;
+        // Like the nested query of a single expression, the expressions are executed in filter context and do not contribute to the score
+        final QueryBuilder innerQuery = (operator == OperationExpression.Operator.AND) ? boolQueryBuilder : QueryBuilders.boolQuery().filter(boolQueryBuilder);
+        return QueryBuilders.nestedQuery(objectPath, innerQuery, scoreMode);
+    }
 }
@@ -34,6 +34,11 @@ public class OperationExpressionQueryFactory implements QueryFactory {
         return !context.isRootExpressionProcessed() && context.getRootExpression() instanceof OperationExpression;
     }
 
+    @Override
+    public boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return OperationExpression.class.isAssignableFrom(expressionClass);
+    }
+
     @Override
     public QueryBuilder create(QueryFactoryCaller caller, SearchContext context) {
         final OperationExpression operationExpression = (OperationExpression) context.getRootExpression();
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.query;
+
+import de.picturesafe.search.elasticsearch.connect.context.SearchContext;
+import de.picturesafe.search.elasticsearch.connect.filter.ExpressionFilterFactory;
+import de.picturesafe.search.elasticsearch.connect.filter.FilterFactory;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.ExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.OperationExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.util.ExpressionDispatchTable;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FieldExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static de.picturesafe.search.elasticsearch.connect.filter.util.FilterFactoryUtils.createFilter;
+
+/**
+ * Compiles an expression tree into its query and filter part.
+ * <p>
+ * Operation expressions handled by the standard {@link OperationExpressionQueryFactory} and {@link OperationExpressionFilterBuilder} are
+ * walked once with an explicit stack, building the query and the filter of every operation together and reusing a single search context.
+ * All other expressions are passed to the query factories and filter builders as before. This yields the same query and filter as running
+ * the query factory chain and the filter factories one after another, but handles arbitrarily deep expression trees.
+ * <p>
+ * Operands of an operation on fields of the same nested object are planned as a group and executed as a single nested query (see
+ * {@link NestedQueryFactory#createGroup(SearchContext, String, List, OperationExpression.Operator)}) if enabled by the query configuration.
+ */
+public class QueryCompiler {
+
+    private final QueryFactoryCaller caller;
+    private final ExpressionDispatchTable<QueryFactory> queryFactories;
+    private final List<FilterFactory> filterFactories;
+    private final ExpressionFilterFactory expressionFilterFactory;
+
+    /**
+     * Constructor
+     *
+     * @param caller            Caller used to create the queries of expressions which are not compiled inline
+     * @param queryFactories    Query factories
+     * @param filterFactories   Filter factories
+     */
+    public QueryCompiler(QueryFactoryCaller caller, ExpressionDispatchTable<QueryFactory> queryFactories, List<FilterFactory> filterFactories) {
+        this.caller = caller;
+        this.queryFactories = queryFactories;
+        this.filterFactories = filterFactories;
+        // Filters can only be compiled together with the queries if they are built by a single expression filter factory
+        this.expressionFilterFactory = (filterFactories != null && filterFactories.size() == 1 && filterFactories.get(0) instanceof ExpressionFilterFactory)
+                ? (ExpressionFilterFactory) filterFactories.get(0) : null;
+    }
+
+    /**
+     * Compiles the root expression of a search context.
+     *
+     * @param context   Search context
+     * @return          Query and filter part
+     */
+    public CompiledQuery compile(SearchContext context) {
+        final Expression rootExpression = context.getRootExpression();
+        final Frame root;
+        try {
+            root = walk(context, expressionFilterFactory != null);
+        } finally {
+            context.setRootExpression(rootExpression);
+        }
+        final QueryBuilder filter = (expressionFilterFactory != null) ? root.filter : createFilter(filterFactories, context);
+        return new CompiledQuery(root.query, filter);
+    }
+
+    /**
+     * Creates the query of the root expression of a search context with the first supporting query factory.
+     *
+     * @param context   Search context
+     * @return          Query or null if no factory created a query
+     */
+    public QueryBuilder createQuery(SearchContext context) {
+        final Expression rootExpression = context.getRootExpression();
+        if (isCompiled(context, rootExpression)) {
+            try {
+                return walk(context, false).query;
+            } finally {
+                context.setRootExpression(rootExpression);
+            }
+        }
+        return createQuery(context, 0);
+    }
+
+    private QueryBuilder createQuery(SearchContext context, int firstCandidate) {
+        final List<QueryFactory> candidates = queryFactories.getCandidates(context.getRootExpression());
+        for (int i = firstCandidate; i < candidates.size(); i++) {
+            final QueryFactory queryFactory = candidates.get(i);
+            if (queryFactory.supports(context)) {
+                final QueryBuilder result = queryFactory.create(caller, context);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Frame walk(SearchContext context, boolean withFilter) {
+        final Deque<Frame> stack = new ArrayDeque<>();
+        final Frame root = new Frame(context.getRootExpression(), withFilter);
+        start(root, context);
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            final Frame frame = stack.peek();
+            if (frame.operands != null && frame.nextOperand < frame.operands.size()) {
+                final Expression operandExpression = frame.operands.get(frame.nextOperand++);
+                final Frame operand = new Frame(operandExpression, frame.collectsFilters());
+                final NestedGroup nestedGroup = (frame.nestedGroups != null) ? frame.nestedGroups.get(operandExpression) : null;
+                if (nestedGroup != null) {
+                    // The nested query of the group is created for its first member, the other members are processed by then
+                    if (nestedGroup.members.get(0) == operandExpression) {
+                        operand.query = nestedGroup.factory.createGroup(context, nestedGroup.objectPath, nestedGroup.members,
+                                ((OperationExpression) frame.expression).getOperator());
+                    }
+                    frame.add(operand);
+                } else if (start(operand, context)) {
+                    stack.push(operand);
+                } else {
+                    frame.add(operand);
+                }
+                continue;
+            }
+
+            stack.pop();
+            complete(frame, context);
+            if (!stack.isEmpty()) {
+                stack.peek().add(frame);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Starts the compilation of an expression: operations supported by the standard operation query factory are expanded into their
+     * operands, all other expressions are passed to the query factories and filter builders.
+     *
+     * @return TRUE if the operands of the expression have to be compiled
+     */
+    private boolean start(Frame frame, SearchContext context) {
+        context.setRootExpression(frame.expression);
+        if (isCompiled(context, frame.expression)) {
+            frame.operands = ((OperationExpression) frame.expression).getOperands();
+            frame.compileFilters = frame.withFilter && isFilterCompiled(frame.expression);
+            frame.nestedGroups = planNestedGroups(context, frame.operands);
+            context.setRootExpression(frame.expression);
+            return true;
+        }
+
+        frame.query = caller.createQuery(context);
+        if (frame.withFilter) {
+            frame.filter = expressionFilterFactory.buildFilter(frame.expression, context);
+        }
+        return false;
+    }
+
+    private void complete(Frame frame, SearchContext context) {
+        if (frame.operands == null) {
+            return;
+        }
+
+        final OperationExpression operationExpression = (OperationExpression) frame.expression;
+        context.setRootExpression(operationExpression);
+        if (frame.operands.size() == 1) {
+            frame.query = frame.queries.isEmpty() ? null : frame.queries.get(0);
+        } else if (!frame.queries.isEmpty()) {
+            final BoolQueryBuilder boolQueryBuilder = QueryBuilders.boolQuery();
+            for (QueryBuilder query : frame.queries) {
+                if (operationExpression.getOperator() == OperationExpression.Operator.AND) {
+                    boolQueryBuilder.must(query);
+                } else {
+                    boolQueryBuilder.should(query);
+                }
+            }
+            frame.query = boolQueryBuilder;
+            context.setProcessed(operationExpression);
+        }
+
+        boolean filterCompiled = frame.compileFilters;
+        if (frame.query == null) {
+            // Let the subsequent query factories try, they may consume the operands so the filter has to be built afterwards
+            frame.query = createQuery(context, 1);
+            filterCompiled &= frame.query == null;
+        }
+
+        if (frame.withFilter) {
+            if (filterCompiled) {
+                frame.filter = OperationExpressionFilterBuilder.combine(operationExpression.getOperator(), frame.filters);
+                if (frame.filter != null) {
+                    context.setProcessed(operationExpression);
+                }
+            } else {
+                frame.filter = expressionFilterFactory.buildFilter(operationExpression, context);
+            }
+        }
+    }
+
+    /**
+     * Groups the operands on fields of the same nested object which would be executed by the standard nested query factory.
+     *
+     * @return Groups of at least two operands by their members or null if there are none
+     */
+    private Map<Expression, NestedGroup> planNestedGroups(SearchContext context, List<Expression> operands) {
+        Map<String, NestedGroup> groupsByPath = null;
+        for (Expression operand : operands) {
+            if (operand instanceof FieldExpression) {
+                context.setRootExpression(operand);
+                final NestedQueryFactory nestedQueryFactory = nestedQueryFactory(context);
+                final String objectPath = (nestedQueryFactory != null) ? nestedQueryFactory.groupPath(context) : null;
+                if (objectPath != null) {
+                    if (groupsByPath == null) {
+                        groupsByPath = new HashMap<>();
+                    }
+                    groupsByPath.computeIfAbsent(objectPath, path -> new NestedGroup(nestedQueryFactory, path)).members.add(operand);
+                }
+            }
+        }
+
+        Map<Expression, NestedGroup> result = null;
+        if (groupsByPath != null) {
+            for (NestedGroup group : groupsByPath.values()) {
+                if (group.members.size() > 1) {
+                    if (result == null) {
+                        result = new IdentityHashMap<>();
+                    }
+                    for (Expression member : group.members) {
+                        result.put(member, group);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private NestedQueryFactory nestedQueryFactory(SearchContext context) {
+        for (QueryFactory queryFactory : queryFactories.getCandidates(context.getRootExpression())) {
+            if (queryFactory.supports(context)) {
+                return (queryFactory.getClass() == NestedQueryFactory.class) ? (NestedQueryFactory) queryFactory : null;
+            }
+        }
+        return null;
+    }
+
+    private boolean isCompiled(SearchContext context, Expression expression) {
+        if (!(expression instanceof OperationExpression) || context.isProcessed(expression)) {
+            return false;
+        }
+        final List<QueryFactory> candidates = queryFactories.getCandidates(expression);
+        return !candidates.isEmpty() && candidates.get(0).getClass() == OperationExpressionQueryFactory.class;
+    }
+
+    private boolean isFilterCompiled(Expression expression) {
+        // Only if there is no other builder to try when the operands do not yield a filter
+        final List<ExpressionFilterBuilder> candidates = expressionFilterFactory.getExpressionFilterBuilders().getCandidates(expression);
+        return candidates.size() == 1 && candidates.get(0).getClass() == OperationExpressionFilterBuilder.class;
+    }
+
+    private static class Frame {
+
+        private final Expression expression;
+        private final boolean withFilter;
+        private boolean compileFilters;
+        private List<Expression> operands;
+        private Map<Expression, NestedGroup> nestedGroups;
+        private int nextOperand;
+        private final List<QueryBuilder> queries = new ArrayList<>();
+        private final List<QueryBuilder> filters = new ArrayList<>();
+        private QueryBuilder query;
+        private QueryBuilder filter;
+
+        Frame(Expression expression, boolean withFilter) {
+            this.expression = expression;
+            this.withFilter = withFilter;
+        }
+
+        boolean collectsFilters() {
+            return compileFilters;
+        }
+
+        void add(Frame operand) {
+            if (operand.query != null) {
+                queries.add(operand.query);
+            }
+            if (compileFilters && operand.filter != null) {
+                filters.add(operand.filter);
+            }
+        }
+    }
+
+    private static class NestedGroup {
+
+        private final NestedQueryFactory factory;
+        private final String objectPath;
+        private final List<Expression> members = new ArrayList<>();
+
+        NestedGroup(NestedQueryFactory factory, String objectPath) {
+            this.factory = factory;
+            this.objectPath = objectPath;
+        }
+    }
+
+    /**
+     * Query and filter part of a compiled expression.
+     */
+    public static class CompiledQuery {
+
+        private final QueryBuilder query;
+        private final QueryBuilder filter;
+
+        public CompiledQuery(QueryBuilder query, QueryBuilder filter) {
+            this.query = query;
+            this.filter = filter;
+        }
+
+        public QueryBuilder getQuery() {
+            return query;
+        }
+
+        public QueryBuilder getFilter() {
+            return filter;
+        }
+    }
+}
@@ -17,11 +17,23 @@
 package de.picturesafe.search.elasticsearch.connect.query;
 
 import de.picturesafe.search.elasticsearch.connect.context.SearchContext;
+import de.picturesafe.search.expression.Expression;
 import org.elasticsearch.index.query.QueryBuilder;
 
 public interface QueryFactory {
 
     boolean supports(SearchContext context);
 
+    /**
+     * Checks if the factory may support root expressions of a class at all. Used to skip the factory when dispatching expressions, the final
+     * decision is made by {@link #supports(SearchContext)}.
+     *
+     * @param expressionClass   Class of the root expression
+     * @return                  FALSE if the factory never supports root expressions of the class
+     */
+    default boolean supportsExpressionClass(Class<? extends Expression> expressionClass) {
+        return true;
+    }
+
     QueryBuilder create(QueryFactoryCaller caller, SearchContext context);
 }
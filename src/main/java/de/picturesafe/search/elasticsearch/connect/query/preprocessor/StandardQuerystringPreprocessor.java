@@ -17,6 +17,7 @@ package de.picturesafe.search.elasticsearch.connect.query.preprocessor;
 
 import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
 import de.picturesafe.search.elasticsearch.connect.query.QuerystringPreprocessor;
+import de.picturesafe.search.util.LruCache;
 import de.picturesafe.search.util.logging.CustomJsonToStringStyle;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -28,11 +29,9 @@ import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -72,8 +71,11 @@ public class StandardQuerystringPreprocessor implements QuerystringPreprocessor
     @Value("#{'${elasticsearch.querystring_preprocessor.synonyms.NOT:not nicht -}'.split(' ')}")
     private List<String> synonymsForNot = Arrays.asList("not", "nicht", "-");
 
+    @Value("${elasticsearch.querystring_preprocessor.cache_size:1000}")
+    private int cacheSize = 1000;
+
     private final Lock lock = new ReentrantLock();
-    private volatile Map<String, String> replacements;
+    private volatile Tokenizer tokenizer;
 
     private final AutoBracketOptimizer autoBracketOptimizer = new AutoBracketOptimizer();
     private final DefaultOperatorOptimizer defaultOperatorOptimizer;
@@ -85,30 +87,42 @@ public class StandardQuerystringPreprocessor implements QuerystringPreprocessor
 
     public void setEnabled(boolean enabled) {
         this.enabled = enabled;
+        reset();
     }
 
     public void setAutoBracket(boolean autoBracket) {
         this.autoBracket = autoBracket;
+        reset();
     }
 
     public void setInsertMissingOperators(boolean insertMissingOperators) {
         this.insertMissingOperators = insertMissingOperators;
+        reset();
     }
 
     public void setTokenDelimiters(String tokenDelimiters) {
         this.tokenDelimiters = tokenDelimiters;
+        reset();
     }
 
     public void setSynonymsForAnd(List<String> synonymsForAnd) {
         this.synonymsForAnd = synonymsForAnd;
+        reset();
     }
 
     public void setSynonymsForOr(List<String> synonymsForOr) {
         this.synonymsForOr = synonymsForOr;
+        reset();
     }
 
     public void setSynonymsForNot(List<String> synonymsForNot) {
         this.synonymsForNot = synonymsForNot;
+        reset();
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        reset();
     }
 
     @Override
@@ -117,63 +131,94 @@ public class StandardQuerystringPreprocessor implements QuerystringPreprocessor
     }
 
     private String doProcess(String query) {
-        ensureInitialized();
-        final PreprocessorContext context = new PreprocessorContext();
-
-        for (final StringTokenizer st = new StringTokenizer(query, tokenDelimiters, true); st.hasMoreTokens();) {
-            context.token = st.nextToken();
-            final String normalizedToken = context.token.toLowerCase(REPLACEMENT_LOCALE);
-            boolean tokenAlreadyAdded = false;
-
-            if (!context.isPhrase) {
-                if (context.token.equals(PHRASE_DELIMITER) && !context.isEscape) {
-                    beginPhrase(context);
-                } else if (!context.isEscape && replacements.containsKey(normalizedToken)) {
-                    context.token = replacements.get(normalizedToken);
-                }
-            } else if (context.token.equals(PHRASE_DELIMITER) && !context.isEscape) {
-                endPhrase(context);
-            }
-
-            if (context.isEscape && !context.isPhrase) {
-                concatOrAddToken(context);
-                tokenAlreadyAdded = true;
+        final Tokenizer tokenizer = getTokenizer();
+        if (tokenizer.cache != null) {
+            final String cachedResult = tokenizer.cache.get(query);
+            if (cachedResult != null) {
+                return cachedResult;
             }
+        }
 
-            context.isEscape = context.token != null && context.token.equals(ESCAPE_CHARACTER);
-
-            if (!tokenAlreadyAdded) {
-                if (context.isPhrase) {
-                    context.phrase.append(context.token);
-                } else if (context.isEscape) {
-                    concatOrAddToken(context);
-                } else if (context.token != null) {
-                    context.tokens.addAll(splitByBlanks(context.token));
+        final PreprocessorContext context = new PreprocessorContext();
+        final char[] chars = query.toCharArray();
+        int end;
+        for (int start = 0; start < chars.length; start = end) {
+            end = start + 1;
+            if (!tokenizer.isDelimiter(chars[start])) {
+                while (end < chars.length && !tokenizer.isDelimiter(chars[end])) {
+                    end++;
                 }
             }
+            processToken(context, tokenizer, chars, start, end);
         }
 
         finalizeContext(context);
-        final String result = toString(context.tokens);
+        final String result = toString(context.tokens, query.length());
         LOGGER.debug("{}: {} -> {}", this, query, result);
+        if (tokenizer.cache != null) {
+            tokenizer.cache.put(query, result);
+        }
         return result;
     }
 
-    private void ensureInitialized() {
-        if (replacements == null) {
+    private void processToken(PreprocessorContext context, Tokenizer tokenizer, char[] chars, int start, int end) {
+        final boolean isPhraseDelimiter = end - start == 1 && chars[start] == PHRASE_DELIMITER.charAt(0);
+        String replacement = null;
+
+        if (!context.isPhrase) {
+            if (isPhraseDelimiter && !context.isEscape) {
+                beginPhrase(context);
+            } else if (!context.isEscape) {
+                replacement = tokenizer.synonyms.get(chars, start, end);
+            }
+        } else if (isPhraseDelimiter && !context.isEscape) {
+            context.phrase.append(chars, start, end - start);
+            endPhrase(context);
+            return;
+        }
+
+        if (context.isPhrase) {
+            // Synonyms are not replaced within phrases, so the characters can be appended without creating a token
+            context.isEscape = end - start == 1 && chars[start] == ESCAPE_CHARACTER.charAt(0);
+            context.phrase.append(chars, start, end - start);
+            return;
+        }
+
+        final String token = (replacement != null) ? replacement : tokenizer.token(chars, start, end);
+        final boolean wasEscape = context.isEscape;
+        context.isEscape = token.equals(ESCAPE_CHARACTER);
+        if (wasEscape || context.isEscape) {
+            concatOrAddToken(context, token);
+        } else {
+            addSplitByBlanks(context.tokens, token);
+        }
+    }
+
+    private Tokenizer getTokenizer() {
+        Tokenizer result = tokenizer;
+        if (result == null) {
             lock.lock();
             try {
-                if (replacements == null) {
-                    replacements = new HashMap<>();
-                    synonymsForAnd.forEach(s -> replacements.put(s, TOKEN_AND));
-                    synonymsForOr.forEach(s -> replacements.put(s, TOKEN_OR));
-                    synonymsForNot.forEach(s -> replacements.put(s, TOKEN_NOT));
-                    REPLACABLE_SEPARATORS.stream().filter(s -> tokenDelimiters.contains(s)).forEach(s -> replacements.put(s, " "));
+                result = tokenizer;
+                if (result == null) {
+                    final SynonymTrie synonyms = new SynonymTrie();
+                    synonymsForAnd.forEach(s -> synonyms.put(s, TOKEN_AND));
+                    synonymsForOr.forEach(s -> synonyms.put(s, TOKEN_OR));
+                    synonymsForNot.forEach(s -> synonyms.put(s, TOKEN_NOT));
+                    REPLACABLE_SEPARATORS.stream().filter(s -> tokenDelimiters.contains(s)).forEach(s -> synonyms.put(s, " "));
+                    result = new Tokenizer(tokenDelimiters, synonyms, cacheSize);
+                    tokenizer = result;
                 }
             } finally {
                 lock.unlock();
             }
         }
+        return result;
+    }
+
+    private void reset() {
+        // Settings affect tokenizing and the processed query strings, so the tokenizer including the cache has to be created again
+        tokenizer = null;
     }
 
     private void beginPhrase(PreprocessorContext context) {
@@ -182,29 +227,41 @@ public class StandardQuerystringPreprocessor implements QuerystringPreprocessor
     }
 
     private void endPhrase(PreprocessorContext context) {
-        context.phrase.append(context.token);
         context.tokens.add(context.phrase.toString());
         context.phrase = null;
-        context.token = null;
         context.isPhrase = false;
+        context.isEscape = false;
     }
 
-    private void concatOrAddToken(PreprocessorContext context) {
+    private void concatOrAddToken(PreprocessorContext context, String token) {
         final int index = context.tokens.size() - 1;
         final String lastToken = (context.tokens.size() > 0) ? context.tokens.get(index) : null;
         if (StringUtils.isNotBlank(lastToken)) {
-            context.tokens.set(index, lastToken + context.token);
+            context.tokens.set(index, lastToken + token);
         } else {
-            context.tokens.add(context.token);
+            context.tokens.add(token);
         }
     }
 
-    private List<String> splitByBlanks(String token) {
-        final List<String> result = new ArrayList<>();
-        for (final StringTokenizer st = new StringTokenizer(token, " ", true); st.hasMoreTokens();) {
-            result.add(st.nextToken());
+    private void addSplitByBlanks(List<String> tokens, String token) {
+        if (token.indexOf(' ') < 0) {
+            tokens.add(token);
+            return;
+        }
+
+        int start = 0;
+        for (int i = 0; i < token.length(); i++) {
+            if (token.charAt(i) == ' ') {
+                if (i > start) {
+                    tokens.add(token.substring(start, i));
+                }
+                tokens.add(" ");
+                start = i + 1;
+            }
+        }
+        if (start < token.length()) {
+            tokens.add(token.substring(start));
         }
-        return result;
     }
 
     private void finalizeContext(PreprocessorContext context) {
@@ -228,7 +285,7 @@ public class StandardQuerystringPreprocessor implements QuerystringPreprocessor
     private List<String> normalizeTokens(List<String> tokens) {
         final ArrayList<String> result = new ArrayList<>(tokens.size());
 
-        StringBuilder joinedTokens = new StringBuilder();
+        final StringBuilder joinedTokens = new StringBuilder();
         String previousToken = " ";
         String nextToken;
         for (int i = 0; i < tokens.size(); i++) {
@@ -236,7 +293,7 @@ public class StandardQuerystringPreprocessor implements QuerystringPreprocessor
             if (isBinaryOperator(token)) {
                 if (joinedTokens.length() > 0) {
                     result.add(joinedTokens.toString());
-                    joinedTokens = new StringBuilder();
+                    joinedTokens.setLength(0);
                 }
                 if (!previousToken.endsWith(" ")) {
                     result.add(" ");
@@ -249,7 +306,7 @@ public class StandardQuerystringPreprocessor implements QuerystringPreprocessor
             } else if (StringUtils.isBlank(token) || isBracket(token)) {
                 if (joinedTokens.length() > 0) {
                     result.add(joinedTokens.toString());
-                    joinedTokens = new StringBuilder();
+                    joinedTokens.setLength(0);
                 }
                 result.add(token);
             } else {
@@ -273,8 +330,8 @@ public class StandardQuerystringPreprocessor implements QuerystringPreprocessor
         return token.equals("(") || token.equals(")");
     }
 
-    private String toString(List<String> tokens) {
-        final StringBuilder result = new StringBuilder();
+    private String toString(List<String> tokens, int expectedLength) {
+        final StringBuilder result = new StringBuilder(expectedLength + 16);
         for (final String token : tokens) {
             result.append(token);
         }
@@ -284,11 +341,50 @@ public class StandardQuerystringPreprocessor implements QuerystringPreprocessor
     private static class PreprocessorContext {
         List<String> tokens = new ArrayList<>();
         StringBuilder phrase = null;
-        String token;
         boolean isPhrase = false;
         boolean isEscape = false;
     }
 
+    /**
+     * Settings of the single pass tokenizer derived from the preprocessor settings: delimiter lookup table, synonym trie and the cache of processed
+     * query strings.
+     */
+    private static class Tokenizer {
+
+        private static final String[] ASCII_TOKENS = new String[128];
+
+        static {
+            for (char c = 0; c < ASCII_TOKENS.length; c++) {
+                ASCII_TOKENS[c] = String.valueOf(c);
+            }
+        }
+
+        final String delimiters;
+        final boolean[] asciiDelimiters = new boolean[128];
+        final SynonymTrie synonyms;
+        final LruCache<String, String> cache;
+
+        Tokenizer(String delimiters, SynonymTrie synonyms, int cacheSize) {
+            this.delimiters = delimiters;
+            for (int i = 0; i < delimiters.length(); i++) {
+                final char c = delimiters.charAt(i);
+                if (c < asciiDelimiters.length) {
+                    asciiDelimiters[c] = true;
+                }
+            }
+            this.synonyms = synonyms;
+            this.cache = (cacheSize > 0) ? new LruCache<>(cacheSize, 0, TimeUnit.SECONDS) : null;
+        }
+
+        boolean isDelimiter(char c) {
+            return (c < asciiDelimiters.length) ? asciiDelimiters[c] : delimiters.indexOf(c) >= 0;
+        }
+
+        String token(char[] chars, int start, int end) {
+            return (end - start == 1 && chars[start] < ASCII_TOKENS.length) ? ASCII_TOKENS[chars[start]] : new String(chars, start, end - start);
+        }
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this, new CustomJsonToStringStyle()) //--
@@ -299,6 +395,7 @@ public class StandardQuerystringPreprocessor implements QuerystringPreprocessor
                 .append("synonymsForAnd", synonymsForAnd) //--
                 .append("synonymsForOr", synonymsForOr) //--
                 .append("synonymsForNot", synonymsForNot) //--
+                .append("cacheSize", cacheSize) //--
                 .toString();
     }
 }
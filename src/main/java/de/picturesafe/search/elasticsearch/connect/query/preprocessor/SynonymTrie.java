@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.query.preprocessor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static de.picturesafe.search.elasticsearch.connect.query.preprocessor.StandardQuerystringPreprocessor.REPLACEMENT_LOCALE;
+
+/**
+ * Trie of the synonyms replaced by the query string preprocessor. Tokens are looked up in lower case directly from the query characters, so
+ * no lower case copy of every token has to be created.
+ */
+class SynonymTrie {
+
+    private final Node root = new Node();
+
+    /**
+     * Adds a synonym, replacing the replacement of an already added equal synonym.
+     *
+     * @param synonym       Synonym (matched against lower case tokens)
+     * @param replacement   Replacement of the synonym
+     */
+    void put(String synonym, String replacement) {
+        Node node = root;
+        for (int i = 0; i < synonym.length(); i++) {
+            node = node.children.computeIfAbsent(synonym.charAt(i), c -> new Node());
+        }
+        node.replacement = replacement;
+    }
+
+    /**
+     * Gets the replacement of a token.
+     *
+     * @param chars Query characters
+     * @param start Start index of the token (inclusive)
+     * @param end   End index of the token (exclusive)
+     * @return      Replacement of the lower case token or null if the token is no synonym
+     */
+    String get(char[] chars, int start, int end) {
+        Node node = root;
+        for (int i = start; i < end && node != null; i++) {
+            final char c = chars[i];
+            if (c >= 0x80) {
+                // Lower case conversion of non ASCII characters may depend on the surrounding characters
+                return get(new String(chars, start, end - start).toLowerCase(REPLACEMENT_LOCALE));
+            }
+            node = node.children.get((c >= 'A' && c <= 'Z') ? (char) (c + ('a' - 'A')) : c);
+        }
+        return (node != null) ? node.replacement : null;
+    }
+
+    private String get(String token) {
+        Node node = root;
+        for (int i = 0; i < token.length() && node != null; i++) {
+            node = node.children.get(token.charAt(i));
+        }
+        return (node != null) ? node.replacement : null;
+    }
+
+    private static class Node {
+        final Map<Character, Node> children = new HashMap<>(4);
+        String replacement;
+    }
+}
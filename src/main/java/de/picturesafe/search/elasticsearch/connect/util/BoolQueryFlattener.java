@@ -0,0 +1,347 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.index.query.AbstractQueryBuilder;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites generated bool queries into a flat, minimal form.
+ * <p>
+ * The query factories and filter builders nest a bool query per operation expression, which leads to deeply nested and verbose queries. The
+ * flattener pulls the clauses of nested bool queries up into their parent, moves clauses that do not contribute to the score into filter context,
+ * collapses bool queries with a single clause and merges term queries on the same field into a terms query.
+ * <p>
+ * Only rewrites that neither change the matching documents nor the scores are applied: nested bool queries with a boost, a query name or a
+ * minimum should match setting are left untouched. Clauses are not pulled up into a bool query with should clauses if this would add its first
+ * or remove its last must or filter clause, since this decides if at least one of the should clauses has to match.
+ */
+public class BoolQueryFlattener {
+
+    private static final Logger QUERY_LOGGER = LoggerFactory.getLogger("elasticsearch-query");
+    // Serializing a query to JSON recurses, deeper queries are not serialized for the log
+    private static final int MAX_LOGGED_JSON_DEPTH = 100;
+
+    private BoolQueryFlattener() {
+    }
+
+    /**
+     * Flattens a query.
+     *
+     * @param query Query to flatten (will not be modified)
+     * @return      Flattened query
+     */
+    public static QueryBuilder flatten(QueryBuilder query) {
+        final long start = System.nanoTime();
+        final QueryBuilder flattened = flatten(query, true);
+        if (QUERY_LOGGER.isDebugEnabled() && flattened != query) {
+            final long rewriteTimeNanos = System.nanoTime() - start;
+            final QueryStats stats = new QueryStats(query);
+            final QueryStats flattenedStats = new QueryStats(flattened);
+            if (stats.depth <= MAX_LOGGED_JSON_DEPTH) {
+                QUERY_LOGGER.debug("Flattened query in {} ns: {} -> {} queries, {} -> {} bytes JSON", rewriteTimeNanos, stats.count, flattenedStats.count,
+                        jsonSize(query), jsonSize(flattened));
+            } else {
+                QUERY_LOGGER.debug("Flattened query in {} ns: {} -> {} queries", rewriteTimeNanos, stats.count, flattenedStats.count);
+            }
+        }
+        return flattened;
+    }
+
+    private static int jsonSize(QueryBuilder query) {
+        return Strings.toString(query).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static QueryBuilder flatten(QueryBuilder query, boolean scoring) {
+        if (!(query instanceof BoolQueryBuilder)) {
+            return query;
+        }
+
+        // Explicit stack instead of recursion, generated bool queries may be nested very deeply
+        final Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame((BoolQueryBuilder) query, scoring));
+        while (true) {
+            final Frame frame = stack.peek();
+            if (frame.children.size() < frame.clauseCount) {
+                final int index = frame.children.size();
+                final QueryBuilder clause = frame.clause(index);
+                if (clause instanceof BoolQueryBuilder) {
+                    stack.push(new Frame((BoolQueryBuilder) clause, frame.isScoring(index)));
+                } else {
+                    frame.children.add(clause);
+                }
+                continue;
+            }
+
+            stack.pop();
+            final QueryBuilder flattened = flatten(frame.bool, frame.scoring, frame.children);
+            if (stack.isEmpty()) {
+                return flattened;
+            }
+            stack.peek().children.add(flattened);
+        }
+    }
+
+    private static QueryBuilder flatten(BoolQueryBuilder bool, boolean scoring, List<QueryBuilder> children) {
+        final BoolQueryBuilder flat = flatten(bool, scoring, children, true);
+        if (bool.minimumShouldMatch() == null && !bool.should().isEmpty() && hasRequiredClauses(flat) != hasRequiredClauses(bool)) {
+            // Without required clauses at least one should clause has to match, pulling up clauses must not change this
+            return collapse(flatten(bool, scoring, children, false), scoring);
+        }
+        return collapse(flat, scoring);
+    }
+
+    private static BoolQueryBuilder flatten(BoolQueryBuilder bool, boolean scoring, List<QueryBuilder> children, boolean pullUp) {
+        final BoolQueryBuilder flat = new BoolQueryBuilder()
+                .boost(bool.boost())
+                .queryName(bool.queryName())
+                .minimumShouldMatch(bool.minimumShouldMatch())
+                .adjustPureNegative(bool.adjustPureNegative());
+        int index = 0;
+
+        for (int i = 0; i < bool.must().size(); i++) {
+            final QueryBuilder child = children.get(index++);
+            if (pullUp && isPlain(child) && ((BoolQueryBuilder) child).should().isEmpty() && (!scoring || !isPureNegative((BoolQueryBuilder) child))) {
+                // A pure negative bool query matches all other documents with a constant score, so it has to be kept in scoring context
+                final BoolQueryBuilder childBool = (BoolQueryBuilder) child;
+                (scoring ? flat.must() : flat.filter()).addAll(childBool.must());
+                flat.filter().addAll(childBool.filter());
+                flat.mustNot().addAll(childBool.mustNot());
+            } else {
+                (scoring ? flat.must() : flat.filter()).add(child);
+            }
+        }
+
+        for (int i = 0; i < bool.filter().size(); i++) {
+            final QueryBuilder child = children.get(index++);
+            if (pullUp && isPlain(child) && ((BoolQueryBuilder) child).should().isEmpty()) {
+                final BoolQueryBuilder childBool = (BoolQueryBuilder) child;
+                flat.filter().addAll(childBool.must());
+                flat.filter().addAll(childBool.filter());
+                flat.mustNot().addAll(childBool.mustNot());
+            } else {
+                flat.filter().add(child);
+            }
+        }
+
+        for (int i = 0; i < bool.mustNot().size(); i++) {
+            final QueryBuilder child = children.get(index++);
+            if (isPlain(child) && hasOnly((BoolQueryBuilder) child, ClauseType.SHOULD)) {
+                // not (a or b) = not a and not b
+                flat.mustNot().addAll(((BoolQueryBuilder) child).should());
+            } else if (pullUp && isPlain(child) && hasOnly((BoolQueryBuilder) child, ClauseType.MUST_NOT) && ((BoolQueryBuilder) child).mustNot().size() == 1) {
+                // not (not a) = a
+                flat.filter().add(((BoolQueryBuilder) child).mustNot().get(0));
+            } else {
+                flat.mustNot().add(child);
+            }
+        }
+
+        for (int i = 0; i < bool.should().size(); i++) {
+            final QueryBuilder child = children.get(index++);
+            if (bool.minimumShouldMatch() == null && isPlain(child) && hasOnly((BoolQueryBuilder) child, ClauseType.SHOULD)) {
+                flat.should().addAll(((BoolQueryBuilder) child).should());
+            } else {
+                flat.should().add(child);
+            }
+        }
+
+        mergeTermQueries(flat.mustNot());
+        if (!scoring && hasOnly(flat, ClauseType.SHOULD) && isAtMostOneShouldMatch(flat.minimumShouldMatch())) {
+            mergeTermQueries(flat.should());
+        }
+        return flat;
+    }
+
+    private static QueryBuilder collapse(BoolQueryBuilder bool, boolean scoring) {
+        if (isPlain(bool)) {
+            if (hasOnly(bool, ClauseType.MUST) && bool.must().size() == 1) {
+                return bool.must().get(0);
+            } else if (hasOnly(bool, ClauseType.SHOULD) && bool.should().size() == 1) {
+                return bool.should().get(0);
+            } else if (!scoring && hasOnly(bool, ClauseType.FILTER) && bool.filter().size() == 1) {
+                return bool.filter().get(0);
+            }
+        }
+        return bool;
+    }
+
+    private static void mergeTermQueries(List<QueryBuilder> clauses) {
+        if (clauses.size() < 2) {
+            return;
+        }
+
+        final Map<String, List<Object>> valuesByField = new LinkedHashMap<>();
+        for (QueryBuilder clause : clauses) {
+            final String fieldName = termFieldName(clause);
+            if (fieldName != null) {
+                valuesByField.computeIfAbsent(fieldName, f -> new ArrayList<>()).addAll(termValues(clause));
+            }
+        }
+
+        final List<QueryBuilder> merged = new ArrayList<>(clauses.size());
+        for (QueryBuilder clause : clauses) {
+            final String fieldName = termFieldName(clause);
+            if (fieldName == null) {
+                merged.add(clause);
+            } else {
+                final List<Object> values = valuesByField.remove(fieldName);
+                if (values != null) {
+                    merged.add((values.size() == 1) ? clause : new TermsQueryBuilder(fieldName, values));
+                }
+            }
+        }
+        clauses.clear();
+        clauses.addAll(merged);
+    }
+
+    private static String termFieldName(QueryBuilder clause) {
+        if (!isNeutral(clause)) {
+            return null;
+        } else if (clause instanceof TermQueryBuilder) {
+            return ((TermQueryBuilder) clause).fieldName();
+        } else if (clause instanceof TermsQueryBuilder && ((TermsQueryBuilder) clause).termsLookup() == null) {
+            return ((TermsQueryBuilder) clause).fieldName();
+        } else {
+            return null;
+        }
+    }
+
+    private static List<?> termValues(QueryBuilder clause) {
+        return (clause instanceof TermQueryBuilder)
+                ? Collections.singletonList(((TermQueryBuilder) clause).value())
+                : ((TermsQueryBuilder) clause).values();
+    }
+
+    private static boolean isPlain(QueryBuilder query) {
+        return query instanceof BoolQueryBuilder && isNeutral(query) && ((BoolQueryBuilder) query).minimumShouldMatch() == null
+                && ((BoolQueryBuilder) query).adjustPureNegative();
+    }
+
+    private static boolean isPureNegative(BoolQueryBuilder bool) {
+        return !hasRequiredClauses(bool);
+    }
+
+    private static boolean hasRequiredClauses(BoolQueryBuilder bool) {
+        return !bool.must().isEmpty() || !bool.filter().isEmpty();
+    }
+
+    private static boolean isNeutral(QueryBuilder query) {
+        return query.boost() == AbstractQueryBuilder.DEFAULT_BOOST && query.queryName() == null;
+    }
+
+    private static boolean isAtMostOneShouldMatch(String minimumShouldMatch) {
+        return minimumShouldMatch == null || StringUtils.equals(minimumShouldMatch, "1");
+    }
+
+    private static boolean hasOnly(BoolQueryBuilder bool, ClauseType type) {
+        return bool.must().isEmpty() == (type != ClauseType.MUST)
+                && bool.filter().isEmpty() == (type != ClauseType.FILTER)
+                && bool.mustNot().isEmpty() == (type != ClauseType.MUST_NOT)
+                && bool.should().isEmpty() == (type != ClauseType.SHOULD);
+    }
+
+    private static class Frame {
+
+        private final BoolQueryBuilder bool;
+        private final boolean scoring;
+        private final int clauseCount;
+        private final List<QueryBuilder> children;
+
+        Frame(BoolQueryBuilder bool, boolean scoring) {
+            this.bool = bool;
+            this.scoring = scoring;
+            this.clauseCount = bool.must().size() + bool.filter().size() + bool.mustNot().size() + bool.should().size();
+            this.children = new ArrayList<>(clauseCount);
+        }
+
+        /**
+         * Gets a clause by its index within must, filter, must not and should clauses.
+         */
+        QueryBuilder clause(int index) {
+            if (index < bool.must().size()) {
+                return bool.must().get(index);
+            }
+            index -= bool.must().size();
+            if (index < bool.filter().size()) {
+                return bool.filter().get(index);
+            }
+            index -= bool.filter().size();
+            if (index < bool.mustNot().size()) {
+                return bool.mustNot().get(index);
+            }
+            return bool.should().get(index - bool.mustNot().size());
+        }
+
+        /**
+         * Checks if a clause is executed in scoring context: filter and must not clauses never are.
+         */
+        boolean isScoring(int index) {
+            return scoring && (index < bool.must().size() || index >= bool.must().size() + bool.filter().size() + bool.mustNot().size());
+        }
+    }
+
+    private enum ClauseType {
+        MUST, FILTER, MUST_NOT, SHOULD
+    }
+
+    private static class QueryStats {
+
+        int count;
+        int depth;
+
+        QueryStats(QueryBuilder query) {
+            final Deque<QueryBuilder> stack = new ArrayDeque<>();
+            final Deque<Integer> depths = new ArrayDeque<>();
+            stack.push(query);
+            depths.push(1);
+            while (!stack.isEmpty()) {
+                final QueryBuilder current = stack.pop();
+                final int currentDepth = depths.pop();
+                count++;
+                depth = Math.max(depth, currentDepth);
+                if (current instanceof BoolQueryBuilder) {
+                    final BoolQueryBuilder bool = (BoolQueryBuilder) current;
+                    for (final List<QueryBuilder> clauses : Arrays.asList(bool.must(), bool.filter(), bool.mustNot(), bool.should())) {
+                        for (final QueryBuilder clause : clauses) {
+                            stack.push(clause);
+                            depths.push(currentDepth + 1);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -19,8 +19,11 @@ package de.picturesafe.search.elasticsearch.connect.util;
 import de.picturesafe.search.elasticsearch.model.IdFormat;
 import org.apache.commons.collections.MapUtils;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -88,4 +91,37 @@ public class ElasticDocumentUtils {
         final Object value = doc.get(name);
         return (value instanceof Collection) ? (Collection<Map<String, Object>>) value : null;
     }
+
+    /**
+     * Copies a document, so the copy can be modified without affecting the original. Nested maps, lists and dates are copied as well,
+     * a {@link LazySourceMap} is copied without parsing its source.
+     *
+     * @param doc   Document to copy
+     * @return      Copy of the document
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> copyDocument(Map<String, Object> doc) {
+        if (doc instanceof LazySourceMap) {
+            return ((LazySourceMap) doc).copy();
+        }
+        return (doc != null) ? (Map<String, Object>) copyValue(doc) : null;
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof LazySourceMap) {
+            return ((LazySourceMap) value).copy();
+        } else if (value instanceof Map) {
+            final Map<Object, Object> copy = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> copy.put(k, copyValue(v)));
+            return copy;
+        } else if (value instanceof Collection) {
+            final List<Object> copy = new ArrayList<>(((Collection<?>) value).size());
+            ((Collection<?>) value).forEach(v -> copy.add(copyValue(v)));
+            return copy;
+        } else if (value instanceof Date) {
+            return new Date(((Date) value).getTime());
+        } else {
+            return value;
+        }
+    }
 }
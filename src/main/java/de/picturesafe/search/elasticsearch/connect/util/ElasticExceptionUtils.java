@@ -19,6 +19,7 @@ package de.picturesafe.search.elasticsearch.connect.util;
 import de.picturesafe.search.elasticsearch.connect.error.ElasticExceptionCause;
 import org.apache.commons.lang3.StringUtils;
 import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.client.ResponseException;
 
 public class ElasticExceptionUtils {
 
@@ -38,6 +39,13 @@ public class ElasticExceptionUtils {
                     return new ElasticExceptionCause(ElasticExceptionCause.Type.QUERY_SYNTAX, invalidQueryString);
                 }
             }
+        } else if (e.getCause() instanceof ResponseException) {
+            // Low level rest client: the error response is part of the message
+            final String message = e.getCause().getMessage();
+            if (message != null && message.contains("Failed to parse query")) {
+                final String invalidQueryString = StringUtils.substringBetween(message, "Failed to parse query [", "]");
+                return new ElasticExceptionCause(ElasticExceptionCause.Type.QUERY_SYNTAX, invalidQueryString);
+            }
         }
         return new ElasticExceptionCause(ElasticExceptionCause.Type.COMMON, "");
     }
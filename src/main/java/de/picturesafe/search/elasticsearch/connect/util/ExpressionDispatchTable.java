@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.util;
+
+import de.picturesafe.search.expression.Expression;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiPredicate;
+
+/**
+ * Dispatch table of expression handlers (e.g. query factories or expression filter builders) keyed by expression class.
+ * <p>
+ * The handlers which may support an expression class are determined once per class and kept in their original order, so the first handler
+ * supporting an expression is still the one chosen by a linear scan. Handlers are only skipped if they can never support the class of an
+ * expression, the final decision is still made by the handlers themselves.
+ *
+ * @param <T> Type of the handlers
+ */
+public class ExpressionDispatchTable<T> {
+
+    private final List<T> handlers;
+    private final ClassValue<List<T>> candidates;
+
+    /**
+     * Constructor
+     *
+     * @param handlers      Handlers in order of precedence
+     * @param supportsClass Predicate checking if a handler may support expressions of a class
+     */
+    public ExpressionDispatchTable(List<T> handlers, BiPredicate<T, Class<? extends Expression>> supportsClass) {
+        this.handlers = (handlers != null) ? Collections.unmodifiableList(new ArrayList<>(handlers)) : Collections.emptyList();
+        this.candidates = new ClassValue<List<T>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected List<T> computeValue(Class<?> type) {
+                final List<T> result = new ArrayList<>();
+                for (T handler : ExpressionDispatchTable.this.handlers) {
+                    if (supportsClass.test(handler, (Class<? extends Expression>) type)) {
+                        result.add(handler);
+                    }
+                }
+                return Collections.unmodifiableList(result);
+            }
+        };
+    }
+
+    /**
+     * Gets all handlers.
+     *
+     * @return Handlers in order of precedence
+     */
+    public List<T> getHandlers() {
+        return handlers;
+    }
+
+    /**
+     * Gets the handlers which may support an expression.
+     *
+     * @param expression    Expression
+     * @return              Handlers in order of precedence (all handlers if the expression is null)
+     */
+    public List<T> getCandidates(Expression expression) {
+        return (expression != null) ? candidates.get(expression.getClass()) : handlers;
+    }
+}
@@ -24,15 +24,28 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
+import static de.picturesafe.search.elasticsearch.config.ElasticsearchType.BOOLEAN;
+import static de.picturesafe.search.elasticsearch.config.ElasticsearchType.BYTE;
+import static de.picturesafe.search.elasticsearch.config.ElasticsearchType.DATE;
+import static de.picturesafe.search.elasticsearch.config.ElasticsearchType.DOUBLE;
+import static de.picturesafe.search.elasticsearch.config.ElasticsearchType.FLOAT;
+import static de.picturesafe.search.elasticsearch.config.ElasticsearchType.INTEGER;
+import static de.picturesafe.search.elasticsearch.config.ElasticsearchType.KEYWORD;
+import static de.picturesafe.search.elasticsearch.config.ElasticsearchType.LONG;
+import static de.picturesafe.search.elasticsearch.config.ElasticsearchType.SHORT;
 import static de.picturesafe.search.elasticsearch.connect.mapping.MappingConstants.KEYWORD_FIELD;
 import static de.picturesafe.search.elasticsearch.connect.mapping.MappingConstants.MULTILINGUAL_KEYWORD_FIELD;
 
 @SuppressWarnings("unused")
 public class FieldConfigurationUtils {
 
+    private static final List<ElasticsearchType> DOC_VALUE_TYPES = Arrays.asList(KEYWORD, LONG, INTEGER, SHORT, BYTE, DOUBLE, FLOAT, DATE, BOOLEAN);
+
     public static FieldConfiguration fieldConfiguration(List<? extends FieldConfiguration> fieldConfigurations, String elasticFieldName) {
         if (CollectionUtils.isEmpty(fieldConfigurations)) {
             return null;
@@ -92,6 +105,24 @@ public class FieldConfigurationUtils {
         return fieldConfig.getElasticsearchType().equalsIgnoreCase(ElasticsearchType.TEXT.toString());
     }
 
+    /**
+     * Checks if the values of a field can be resolved from doc values: the field must be a single language keyword, numeric, date or boolean field
+     * with enabled doc values.
+     *
+     * @param fieldConfig   Field configuration
+     * @return              TRUE if the values of the field can be resolved from doc values
+     */
+    public static boolean hasDocValues(FieldConfiguration fieldConfig) {
+        if (fieldConfig == null || fieldConfig.isMultilingual() || fieldConfig.isWithoutIndexing() || fieldConfig.hasInnerFields()) {
+            return false;
+        }
+        final Map<String, Object> additionalParameters = fieldConfig.getAdditionalParameters();
+        if (additionalParameters != null && Boolean.FALSE.toString().equals(String.valueOf(additionalParameters.get("doc_values")))) {
+            return false;
+        }
+        return DOC_VALUE_TYPES.stream().anyMatch(type -> type.getElasticType().equalsIgnoreCase(fieldConfig.getElasticsearchType()));
+    }
+
     public static String rootFieldName(FieldConfiguration fieldConfig) {
         return StringUtils.substringBefore(fieldConfig.getName(), ".");
     }
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.util;
+
+import org.apache.commons.lang3.Validate;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Map view on the raw source of a search hit. The source bytes are not parsed until they are accessed: single attributes are read by streaming over
+ * the source without building the complete map, the complete map is parsed only if more than a few attributes are read or the map is iterated
+ * or modified. Values of document fields (e.g. doc values) take precedence over source values.
+ */
+public class LazySourceMap extends AbstractMap<String, Object> {
+
+    private static final int MAX_FIELD_LOOKUPS = 4;
+    private static final Object ABSENT = new Object();
+
+    private final BytesReference source;
+    private final Map<String, Object> fields;
+    private Map<String, Object> fieldLookups;
+    private Map<String, Object> map;
+    private boolean modified;
+
+    /**
+     * Constructor
+     *
+     * @param source    Raw JSON source of the search hit
+     */
+    public LazySourceMap(BytesReference source) {
+        this(source, Collections.emptyMap());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param source    Raw JSON source of the search hit
+     * @param fields    Values of document fields which are merged into the source values
+     */
+    public LazySourceMap(BytesReference source, Map<String, Object> fields) {
+        Validate.notNull(source, "Parameter 'source' may not be null!");
+        this.source = source;
+        this.fields = (fields != null) ? fields : Collections.emptyMap();
+    }
+
+    /**
+     * Gets the raw JSON source.
+     *
+     * @return Raw JSON source
+     */
+    public BytesReference getSource() {
+        return source;
+    }
+
+    /**
+     * Checks if the map exactly represents the raw source, i.e. there are no additional document fields and the map has not been modified by
+     * {@link #put}, {@link #remove} or {@link #clear}. Modifications via the entry set are not tracked.
+     *
+     * @return TRUE if the raw source can be used instead of the map
+     */
+    public synchronized boolean isSourceUnchanged() {
+        return fields.isEmpty() && !modified;
+    }
+
+    /**
+     * Creates a copy which can be modified without affecting this map. The source is not parsed again until the copy is accessed, the values of
+     * document fields and modified values are copied.
+     *
+     * @return Copy of the map
+     */
+    public synchronized LazySourceMap copy() {
+        final LazySourceMap copy = new LazySourceMap(source, ElasticDocumentUtils.copyDocument(fields));
+        if (modified) {
+            copy.map = ElasticDocumentUtils.copyDocument(map);
+            copy.modified = true;
+        }
+        return copy;
+    }
+
+    /**
+     * Checks if the complete source has been parsed.
+     *
+     * @return TRUE if the complete source has been parsed
+     */
+    public synchronized boolean isParsed() {
+        return map != null;
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+        if (map != null) {
+            return map.get(key);
+        } else if (fields.containsKey(key)) {
+            return fields.get(key);
+        } else if (!(key instanceof String)) {
+            return null;
+        }
+        final Object value = lookup((String) key);
+        return (value != ABSENT) ? value : null;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        if (map != null) {
+            return map.containsKey(key);
+        } else if (fields.containsKey(key)) {
+            return true;
+        } else if (!(key instanceof String)) {
+            return false;
+        }
+        return lookup((String) key) != ABSENT;
+    }
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+        modified = true;
+        return parse().put(key, value);
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        modified = true;
+        return parse().remove(key);
+    }
+
+    @Override
+    public synchronized void clear() {
+        modified = true;
+        parse().clear();
+    }
+
+    @Override
+    public synchronized int size() {
+        return parse().size();
+    }
+
+    @Override
+    public synchronized Set<Entry<String, Object>> entrySet() {
+        return parse().entrySet();
+    }
+
+    private Object lookup(String key) {
+        if (fieldLookups == null) {
+            fieldLookups = new HashMap<>();
+        } else if (fieldLookups.containsKey(key)) {
+            return fieldLookups.get(key);
+        } else if (fieldLookups.size() >= MAX_FIELD_LOOKUPS) {
+            final Map<String, Object> parsed = parse();
+            return parsed.containsKey(key) ? parsed.get(key) : ABSENT;
+        }
+
+        final Object value = readField(key);
+        fieldLookups.put(key, value);
+        return value;
+    }
+
+    private Object readField(String key) {
+        try (XContentParser parser = createParser()) {
+            if (parser.nextToken() != XContentParser.Token.START_OBJECT) {
+                return ABSENT;
+            }
+            while (parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                final String name = parser.currentName();
+                final XContentParser.Token token = parser.nextToken();
+                if (name.equals(key)) {
+                    return readValue(parser, token);
+                }
+                parser.skipChildren();
+            }
+            return ABSENT;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read field '" + key + "' from search hit source!", e);
+        }
+    }
+
+    private Object readValue(XContentParser parser, XContentParser.Token token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return parser.map();
+            case START_ARRAY:
+                return parser.list();
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.objectText();
+        }
+    }
+
+    private Map<String, Object> parse() {
+        if (map == null) {
+            final Map<String, Object> parsed = XContentHelper.convertToMap(source, false, XContentType.JSON).v2();
+            parsed.putAll(fields);
+            map = parsed;
+            fieldLookups = null;
+        }
+        return map;
+    }
+
+    private XContentParser createParser() throws IOException {
+        return XContentHelper.createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, source, XContentType.JSON);
+    }
+}
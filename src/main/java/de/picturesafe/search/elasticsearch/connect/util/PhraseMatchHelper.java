@@ -16,10 +16,12 @@
 
 package de.picturesafe.search.elasticsearch.connect.util;
 
+import de.picturesafe.search.parameter.TemplateParameter;
+
 public class PhraseMatchHelper {
 
     public static boolean matchPhrase(String value) {
-        return value.startsWith("\"") && value.endsWith("\"") || value.startsWith("{") && value.endsWith("}");
+        return value.startsWith("\"") && value.endsWith("\"") || isBraced(value);
     }
 
     public static String escapePhraseMatchChars(String value) {
@@ -27,10 +29,15 @@ public class PhraseMatchHelper {
     }
 
     public static String replacePhraseMatchChars(String value) {
-        if (value.startsWith("{") && value.endsWith("}")) {
+        if (isBraced(value)) {
             return "\"" + value.substring(1, value.length() - 1) + "\"";
         }
 
         return value;
     }
+
+    private static boolean isBraced(String value) {
+        // Search template placeholders must be kept as they are
+        return value.startsWith("{") && value.endsWith("}") && !TemplateParameter.isPlaceholder(value);
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.util;
+
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+
+/**
+ * Classifies query strings by the query string syntax they use.
+ * <p>
+ * Query strings consisting of plain terms only, optionally combined with the default operator and grouped by brackets, are equivalent to a match query
+ * with the default operator: the terms are analyzed the same way and the grouping does not matter as long as only one operator is involved. Such query
+ * strings can be executed as match query, saving the query string parsing, wildcard analysis and field expansion on every shard.
+ * <p>
+ * Query strings with several terms are only equivalent on text fields: the query string parser splits the terms at whitespace before analyzing them,
+ * a match query on a keyword field would search the whole text as a single term.
+ */
+public class QueryStringClassifier {
+
+    private static final String SPECIAL_CHARACTERS = "+-=&|><!(){}[]^\"~*?:\\/";
+
+    private enum Token {START, TERM, OPERATOR, OPEN_BRACKET, CLOSE_BRACKET}
+
+    private QueryStringClassifier() {
+    }
+
+    /**
+     * Gets the text of the match query equivalent to a query string.
+     *
+     * @param queryString       Query string
+     * @param defaultOperator   Default operator of the query string
+     * @param multipleTerms     TRUE if the query string may consist of several terms
+     * @return                  Text of the equivalent match query or null if the query string uses query string syntax
+     */
+    public static String matchText(String queryString, Operator defaultOperator, boolean multipleTerms) {
+        final String operator = (defaultOperator == Operator.OR) ? "||" : "&&";
+        final StringBuilder result = new StringBuilder(queryString.length());
+        Token previous = Token.START;
+        int depth = 0;
+
+        int end;
+        for (int start = 0; start < queryString.length(); start = end) {
+            final char c = queryString.charAt(start);
+            end = start + 1;
+            if (isWhitespace(c)) {
+                continue;
+            } else if (c == '(') {
+                depth++;
+                previous = Token.OPEN_BRACKET;
+                continue;
+            } else if (c == ')') {
+                if (depth-- == 0 || (previous != Token.TERM && previous != Token.CLOSE_BRACKET)) {
+                    return null;
+                }
+                previous = Token.CLOSE_BRACKET;
+                continue;
+            }
+
+            while (end < queryString.length() && !isWhitespace(queryString.charAt(end)) && queryString.charAt(end) != '(' && queryString.charAt(end) != ')') {
+                end++;
+            }
+            if (queryString.startsWith(operator, start) && end - start == operator.length()) {
+                if (previous != Token.TERM && previous != Token.CLOSE_BRACKET) {
+                    return null;
+                }
+                previous = Token.OPERATOR;
+            } else if (isTerm(queryString, start, end)) {
+                if (result.length() > 0) {
+                    if (!multipleTerms) {
+                        return null;
+                    }
+                    result.append(' ');
+                }
+                result.append(queryString, start, end);
+                previous = Token.TERM;
+            } else {
+                return null;
+            }
+        }
+
+        return (depth == 0 && (previous == Token.TERM || previous == Token.CLOSE_BRACKET)) ? result.toString() : null;
+    }
+
+    /**
+     * Creates a match query if the query string does not use query string syntax, otherwise a query string query.
+     *
+     * @param queryString       Query string
+     * @param fieldName         Name of the field to query
+     * @param defaultOperator   Default operator of the query string
+     * @param textField         TRUE if the field is a text field
+     * @param downgrade         TRUE if query strings without query string syntax should be executed as match query
+     * @return                  Match query or query string query
+     */
+    public static QueryBuilder createQuery(String queryString, String fieldName, Operator defaultOperator, boolean textField, boolean downgrade) {
+        final String matchText = downgrade ? matchText(queryString, defaultOperator, textField) : null;
+        return (matchText != null)
+                ? QueryBuilders.matchQuery(fieldName, matchText).operator(defaultOperator)
+                : QueryBuilders.queryStringQuery(queryString).field(fieldName).defaultOperator(defaultOperator);
+    }
+
+    private static boolean isTerm(String queryString, int start, int end) {
+        if (end - start <= 3) {
+            final String token = queryString.substring(start, end);
+            if (token.equals("AND") || token.equals("OR") || token.equals("NOT")) {
+                return false;
+            }
+        }
+        for (int i = start; i < end; i++) {
+            if (SPECIAL_CHARACTERS.indexOf(queryString.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        // Whitespace as defined by the query string parser
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\u3000';
+    }
+}
@@ -25,6 +25,7 @@ import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
 import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
 import de.picturesafe.search.elasticsearch.config.LanguageSortConfiguration;
 import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.impl.SuggestFieldConfiguration;
 import de.picturesafe.search.elasticsearch.connect.Elasticsearch;
 import de.picturesafe.search.elasticsearch.connect.dto.FacetDto;
 import de.picturesafe.search.elasticsearch.connect.dto.FacetEntryDto;
@@ -32,6 +33,8 @@ import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
 import de.picturesafe.search.elasticsearch.connect.dto.QueryRangeDto;
 import de.picturesafe.search.elasticsearch.connect.dto.SearchHitDto;
 import de.picturesafe.search.elasticsearch.connect.dto.SearchResultDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchTemplateDto;
+import de.picturesafe.search.elasticsearch.connect.error.ElasticsearchException;
 import de.picturesafe.search.elasticsearch.error.ElasticsearchServiceException;
 import de.picturesafe.search.elasticsearch.model.ElasticsearchInfo;
 import de.picturesafe.search.elasticsearch.model.IdFormat;
@@ -43,14 +46,20 @@ import de.picturesafe.search.elasticsearch.model.SearchResult;
 import de.picturesafe.search.elasticsearch.model.SearchResultItem;
 import de.picturesafe.search.elasticsearch.model.SuggestResult;
 import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.ExpressionFingerprint;
 import de.picturesafe.search.expression.SuggestExpression;
+import de.picturesafe.search.expression.optimizer.ExpressionOptimizer;
 import de.picturesafe.search.parameter.AccountContext;
+import de.picturesafe.search.parameter.SearchAggregation;
 import de.picturesafe.search.parameter.SearchParameter;
+import de.picturesafe.search.util.LruCache;
+import de.picturesafe.search.util.SingleFlight;
 import de.picturesafe.search.util.logging.StopWatchPrettyPrint;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang3.LocaleUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,14 +68,22 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StopWatch;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
@@ -76,6 +93,17 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
     private static final Logger LOGGER = LoggerFactory.getLogger(ElasticsearchServiceImpl.class);
     protected static final int DEFAULT_PAGE_SIZE = 100;
     protected static final int DEFAULT_MAX_PAGE_SIZE = 2000;
+    protected static final int DEFAULT_RESULT_CACHE_MAX_SIZE = 1000;
+    protected static final int DEFAULT_RESULT_CACHE_TTL_SECONDS = 60;
+    protected static final int DEFAULT_SEARCH_TEMPLATE_CACHE_SIZE = 100;
+    protected static final int DEFAULT_FACET_CACHE_MAX_SIZE = 100;
+    protected static final int DEFAULT_FACET_CACHE_TTL_SECONDS = 60;
+    protected static final int DEFAULT_SUGGEST_CACHE_MAX_SIZE = 0;
+    protected static final int DEFAULT_SUGGEST_CACHE_TTL_SECONDS = 60;
+    // Default maximum input length of completion fields
+    protected static final int COMPLETION_MAX_INPUT_LENGTH = 50;
+    protected static final String SEARCH_TEMPLATE_ID_PREFIX = "picturesafe-search-template-";
+    protected static final String ACCOUNT_PREFERENCE_PREFIX = "account-";
 
     protected final Elasticsearch elasticsearch;
     protected final IndexPresetConfigurationProvider indexPresetConfigurationProvider;
@@ -90,7 +118,48 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
     @Value("${elasticsearch.service.optimize_expressions.enabled:true}")
     protected boolean optimizeExpressionsEnabled = true;
 
+    @Value("${elasticsearch.service.track_total_hits:}")
+    protected String trackTotalHits = "";
+
+    @Value("${elasticsearch.service.single_flight.enabled:false}")
+    protected boolean singleFlightEnabled = false;
+
+    @Value("${elasticsearch.service.result_cache.enabled:false}")
+    protected boolean resultCacheEnabled = false;
+
+    @Value("${elasticsearch.service.result_cache.max_size:" + DEFAULT_RESULT_CACHE_MAX_SIZE + "}")
+    protected int resultCacheMaxSize = DEFAULT_RESULT_CACHE_MAX_SIZE;
+
+    @Value("${elasticsearch.service.result_cache.ttl_seconds:" + DEFAULT_RESULT_CACHE_TTL_SECONDS + "}")
+    protected int resultCacheTtlSeconds = DEFAULT_RESULT_CACHE_TTL_SECONDS;
+
+    @Value("${elasticsearch.service.account_preference.enabled:false}")
+    protected boolean accountPreferenceEnabled = false;
+
+    @Value("${elasticsearch.service.search_template.cache_size:" + DEFAULT_SEARCH_TEMPLATE_CACHE_SIZE + "}")
+    protected int searchTemplateCacheSize = DEFAULT_SEARCH_TEMPLATE_CACHE_SIZE;
+
+    @Value("${elasticsearch.service.facet_cache.max_size:" + DEFAULT_FACET_CACHE_MAX_SIZE + "}")
+    protected int facetCacheMaxSize = DEFAULT_FACET_CACHE_MAX_SIZE;
+
+    @Value("${elasticsearch.service.facet_cache.ttl_seconds:" + DEFAULT_FACET_CACHE_TTL_SECONDS + "}")
+    protected int facetCacheTtlSeconds = DEFAULT_FACET_CACHE_TTL_SECONDS;
+
+    @Value("${elasticsearch.service.suggest_cache.max_size:" + DEFAULT_SUGGEST_CACHE_MAX_SIZE + "}")
+    protected int suggestCacheMaxSize = DEFAULT_SUGGEST_CACHE_MAX_SIZE;
+
+    @Value("${elasticsearch.service.suggest_cache.ttl_seconds:" + DEFAULT_SUGGEST_CACHE_TTL_SECONDS + "}")
+    protected int suggestCacheTtlSeconds = DEFAULT_SUGGEST_CACHE_TTL_SECONDS;
+
     protected IdFormat idFormat = IdFormat.DEFAULT;
+    protected ExpressionOptimizer expressionOptimizer = new ExpressionOptimizer();
+
+    protected final SingleFlight<String, SearchResult> searchSingleFlight = new SingleFlight<>();
+    protected final ConcurrentMap<String, AtomicLong> writeEpochs = new ConcurrentHashMap<>();
+    private volatile LruCache<String, SearchResult> searchResultCache;
+    private volatile LruCache<String, SearchTemplateDto> searchTemplateCache;
+    private volatile LruCache<String, List<ResultFacet>> facetCache;
+    private volatile LruCache<String, CachedSuggestions> suggestCache;
 
     @Autowired
     public ElasticsearchServiceImpl(Elasticsearch elasticsearch, IndexPresetConfigurationProvider indexPresetConfigurationProvider,
@@ -121,7 +190,7 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
     /**
      * Sets if expressions should be optimized.
      *
-     * @see Expression#optimize()
+     * @see ExpressionOptimizer
      * @see SearchParameter#isOptimizeExpressions()
      *
      * @param optimizeExpressionsEnabled true if expressions should be optimized
@@ -130,11 +199,183 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
         this.optimizeExpressionsEnabled = optimizeExpressionsEnabled;
     }
 
+    /**
+     * Sets the default for tracking total hits if not defined by {@link SearchParameter#getMaxTrackTotalHits()}.
+     *
+     * @param trackTotalHits "true" to track total hits accurately, "false" to disable tracking, a number to track total hits up to this number or an empty
+     *                       string to use the elasticsearch default
+     */
+    public void setTrackTotalHits(String trackTotalHits) {
+        this.trackTotalHits = trackTotalHits;
+    }
+
+    /**
+     * Sets if identical concurrent searches should share one request to elasticsearch.
+     * Searches are identical if they address the same index alias and result in the same query JSON (including the account specific filters).
+     * Concurrent callers of identical searches will receive the same {@link SearchResult} instance.
+     *
+     * @param singleFlightEnabled true if identical concurrent searches should be deduplicated
+     */
+    public void setSingleFlightEnabled(boolean singleFlightEnabled) {
+        this.singleFlightEnabled = singleFlightEnabled;
+    }
+
+    /**
+     * Gets the number of searches which joined an identical search already in flight.
+     *
+     * @return Number of deduplicated searches
+     */
+    public long getSingleFlightHitCount() {
+        return searchSingleFlight.getHitCount();
+    }
+
+    /**
+     * Gets the number of searches which have been sent to elasticsearch while single flight was enabled.
+     *
+     * @return Number of executed searches
+     */
+    public long getSingleFlightMissCount() {
+        return searchSingleFlight.getMissCount();
+    }
+
+    /**
+     * Sets if search results should be cached on the client side per default.
+     * The default can be overridden per search via {@link SearchParameter#getResultCache()}.
+     * Cached results of an index alias are invalidated by any write operation on the alias through this service. Changes made by other clients will only
+     * become visible after the cache entries have expired.
+     *
+     * @param resultCacheEnabled true if search results should be cached per default
+     */
+    public void setResultCacheEnabled(boolean resultCacheEnabled) {
+        this.resultCacheEnabled = resultCacheEnabled;
+    }
+
+    /**
+     * Sets the maximum number of cached search results.
+     *
+     * @param resultCacheMaxSize Maximum number of cached search results
+     */
+    public void setResultCacheMaxSize(int resultCacheMaxSize) {
+        this.resultCacheMaxSize = resultCacheMaxSize;
+        searchResultCache = null;
+    }
+
+    /**
+     * Sets the time to live of cached search results.
+     *
+     * @param resultCacheTtlSeconds Time to live of cached search results in seconds (less or equal 0 = results do not expire)
+     */
+    public void setResultCacheTtlSeconds(int resultCacheTtlSeconds) {
+        this.resultCacheTtlSeconds = resultCacheTtlSeconds;
+        searchResultCache = null;
+    }
+
+    /**
+     * Sets if searches should use a preference derived from the account context (ID or user name) when no preference is given via
+     * {@link SearchParameter#getPreference()}. Searches of the same account will then be executed on the same shard copies, which keeps the
+     * caches warm and the paging consistent.
+     *
+     * @param accountPreferenceEnabled true if searches should use an account based preference
+     */
+    public void setAccountPreferenceEnabled(boolean accountPreferenceEnabled) {
+        this.accountPreferenceEnabled = accountPreferenceEnabled;
+    }
+
+    /**
+     * Gets the number of searches served from the result cache.
+     *
+     * @return Number of result cache hits
+     */
+    public long getResultCacheHitCount() {
+        return searchResultCache().getHitCount();
+    }
+
+    /**
+     * Gets the number of searches not found in the result cache.
+     *
+     * @return Number of result cache misses
+     */
+    public long getResultCacheMissCount() {
+        return searchResultCache().getMissCount();
+    }
+
+    /**
+     * Gets the ratio of result cache hits to all searches using the result cache.
+     *
+     * @return Result cache hit rate
+     */
+    public double getResultCacheHitRate() {
+        return searchResultCache().getHitRate();
+    }
+
+    /**
+     * Sets the maximum number of cached facet results (see {@link #facets(String, AccountContext, Expression, List)}).
+     *
+     * @param facetCacheMaxSize Maximum number of cached facet results (less or equal 0 = facet results are not cached)
+     */
+    public void setFacetCacheMaxSize(int facetCacheMaxSize) {
+        this.facetCacheMaxSize = facetCacheMaxSize;
+        facetCache = null;
+    }
+
+    /**
+     * Sets the time to live of cached facet results.
+     *
+     * @param facetCacheTtlSeconds Time to live of cached facet results in seconds (less or equal 0 = facet results do not expire)
+     */
+    public void setFacetCacheTtlSeconds(int facetCacheTtlSeconds) {
+        this.facetCacheTtlSeconds = facetCacheTtlSeconds;
+        facetCache = null;
+    }
+
+    /**
+     * Sets the maximum number of suggest prefixes cached locally (see {@link #suggest(String, SuggestExpression...)}). The suggestions of a prefix
+     * are also used to answer longer prefixes if the cached suggestions are complete, i.e. elasticsearch returned fewer options than requested.
+     * Longer prefixes are only answered locally if they consist of letters and the suggest field is mapped without additional parameters, so the
+     * local matching equals the matching of the default analyzer of completion fields (see {@link #isPrefixFilterable(String, SuggestExpression)}).
+     *
+     * @param suggestCacheMaxSize Maximum number of cached suggest prefixes (less or equal 0 = suggestions are not cached)
+     */
+    public void setSuggestCacheMaxSize(int suggestCacheMaxSize) {
+        this.suggestCacheMaxSize = suggestCacheMaxSize;
+        suggestCache = null;
+    }
+
+    /**
+     * Sets the time to live of cached suggestions.
+     *
+     * @param suggestCacheTtlSeconds Time to live of cached suggestions in seconds (less or equal 0 = suggestions do not expire)
+     */
+    public void setSuggestCacheTtlSeconds(int suggestCacheTtlSeconds) {
+        this.suggestCacheTtlSeconds = suggestCacheTtlSeconds;
+        suggestCache = null;
+    }
+
+    /**
+     * Sets the maximum number of compiled search templates kept locally.
+     *
+     * @param searchTemplateCacheSize Maximum number of compiled search templates
+     */
+    public void setSearchTemplateCacheSize(int searchTemplateCacheSize) {
+        this.searchTemplateCacheSize = searchTemplateCacheSize;
+        searchTemplateCache = null;
+    }
+
     @Autowired(required = false)
     public void setIdFormat(IdFormat idFormat) {
         this.idFormat = idFormat;
     }
 
+    /**
+     * Sets the optimizer of expressions, e.g. to add custom {@link de.picturesafe.search.expression.optimizer.OptimizationRule}s.
+     *
+     * @param expressionOptimizer Optimizer of expressions
+     */
+    @Autowired(required = false)
+    public void setExpressionOptimizer(ExpressionOptimizer expressionOptimizer) {
+        this.expressionOptimizer = expressionOptimizer;
+    }
+
     @Override
     public ElasticsearchInfo getElasticsearchInfo() {
         return elasticsearch.getElasticsearchInfo();
@@ -169,7 +410,11 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
     public void addFieldConfiguration(String indexAlias, FieldConfiguration... fieldConfigs) {
         final IndexPresetConfiguration indexPresetConfiguration = indexPresetConfigurationProvider.getIndexPresetConfiguration(indexAlias);
         final MappingConfiguration mappingConfiguration = getMappingConfiguration(indexAlias, false);
-        elasticsearch.updateMapping(indexPresetConfiguration, mappingConfiguration, Arrays.asList(fieldConfigs));
+        try {
+            elasticsearch.updateMapping(indexPresetConfiguration, mappingConfiguration, Arrays.asList(fieldConfigs));
+        } finally {
+            indexChanged(indexAlias);
+        }
     }
 
     @Override
@@ -185,6 +430,7 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
             deleteIndex(indexName);
         }
         removeAlias(indexAlias);
+        indexChanged(indexAlias);
     }
 
     @Override
@@ -209,6 +455,7 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
     public void createAlias(String indexAlias, String indexName) {
         LOGGER.info("Creating elasticsearch alias '{}' for index '{}'", indexAlias, indexName);
         elasticsearch.createAlias(indexAlias, indexName);
+        indexChanged(indexAlias);
     }
 
     @Override
@@ -216,7 +463,11 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
         if (elasticsearch.aliasExists(indexAlias)) {
             LOGGER.info("Removing elasticsearch alias '{}'", indexAlias);
             final IndexPresetConfiguration indexPresetConfiguration = indexPresetConfigurationProvider.getIndexPresetConfiguration(indexAlias);
-            return elasticsearch.removeAlias(indexPresetConfiguration);
+            try {
+                return elasticsearch.removeAlias(indexPresetConfiguration);
+            } finally {
+                indexChanged(indexAlias);
+            }
         } else {
             return null;
         }
@@ -224,7 +475,11 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
 
     @Override
     public void setIndexVersion(String indexAlias, int indexVersion) {
-        elasticsearch.setIndexVersion(indexAlias, indexVersion);
+        try {
+            elasticsearch.setIndexVersion(indexAlias, indexVersion);
+        } finally {
+            indexChanged(indexAlias);
+        }
     }
 
     @Override
@@ -238,7 +493,11 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
         Validate.notNull(dataChangeProcessingMode, "Parameter 'dataChangeProcessingMode' may not be null!");
         Validate.notNull(document, "Parameter 'document' may not be null!");
 
-        elasticsearch.addToIndex(indexAlias, dataChangeProcessingMode.isRefresh(), document);
+        try {
+            elasticsearch.addToIndex(indexAlias, dataChangeProcessingMode.isRefresh(), document);
+        } finally {
+            indexChanged(indexAlias);
+        }
     }
 
     @Override
@@ -261,7 +520,11 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
         Validate.notNull(dataChangeProcessingMode, "Parameter 'dataChangeProcessingMode' may not be null!");
         Validate.notNull(documents, "Parameter 'documents' may not be null!");
 
-        elasticsearch.addToIndex(indexAlias, dataChangeProcessingMode.isRefresh(), true, documents);
+        try {
+            elasticsearch.addToIndex(indexAlias, dataChangeProcessingMode.isRefresh(), true, documents);
+        } finally {
+            indexChanged(indexAlias);
+        }
     }
 
     @Override
@@ -275,7 +538,11 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
         Validate.notEmpty(indexAlias, "Parameter 'indexAlias' may not be null or empty!");
         Validate.notNull(dataChangeProcessingMode, "Parameter 'dataChangeProcessingMode' may not be null!");
 
-        elasticsearch.removeFromIndex(indexAlias, dataChangeProcessingMode.isRefresh(), id);
+        try {
+            elasticsearch.removeFromIndex(indexAlias, dataChangeProcessingMode.isRefresh(), id);
+        } finally {
+            indexChanged(indexAlias);
+        }
     }
 
     @Override
@@ -284,7 +551,11 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
         Validate.notNull(dataChangeProcessingMode, "Parameter 'dataChangeProcessingMode' may not be null!");
         Validate.notNull(ids, "Parameter 'ids' may not be null!");
 
-        elasticsearch.removeFromIndex(indexAlias, dataChangeProcessingMode.isRefresh(), ids);
+        try {
+            elasticsearch.removeFromIndex(indexAlias, dataChangeProcessingMode.isRefresh(), ids);
+        } finally {
+            indexChanged(indexAlias);
+        }
     }
 
     @Override
@@ -295,8 +566,12 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
         Validate.notNull(locale, "Parameter 'locale' may not be null!");
 
         final IndexPresetConfiguration indexPresetConfiguration = indexPresetConfigurationProvider.getIndexPresetConfiguration(indexAlias);
-        elasticsearch.removeFromIndex(new QueryDto(expression, locale), getMappingConfiguration(indexAlias, true), indexPresetConfiguration,
-                dataChangeProcessingMode.isRefresh());
+        try {
+            elasticsearch.removeFromIndex(new QueryDto(expression, locale), getMappingConfiguration(indexAlias, true), indexPresetConfiguration,
+                    dataChangeProcessingMode.isRefresh());
+        } finally {
+            indexChanged(indexAlias);
+        }
     }
 
     @Override
@@ -308,12 +583,50 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
     public SearchResult search(String indexAlias, AccountContext<?> accountContext, Expression expression, SearchParameter searchParameter) {
         Validate.notEmpty(indexAlias, "Parameter 'indexAlias' may not be null or empty!");
 
-        final StopWatch sw = new StopWatch();
-
         final IndexPresetConfiguration indexPresetConfiguration = indexPresetConfigurationProvider.getIndexPresetConfiguration(indexAlias);
         final int pageSize = getPageSize(searchParameter);
-        final SearchResultDto searchResultDto
-                = getElasticsearchResult(new InternalSearchContext(indexPresetConfiguration, accountContext, expression, searchParameter, pageSize), sw);
+        final InternalSearchContext context = new InternalSearchContext(indexPresetConfiguration, accountContext, expression, searchParameter, pageSize);
+        final boolean useResultCache = isResultCacheEnabled(searchParameter);
+        if (!singleFlightEnabled && !useResultCache) {
+            return search(context);
+        }
+
+        context.mappingConfiguration(context.mappingConfiguration());
+        context.queryDto(createQueryDto(context));
+        final String searchKey = searchKey(context);
+        if (useResultCache) {
+            final SearchResult cachedResult = searchResultCache().get(searchKey);
+            if (cachedResult != null) {
+                LOGGER.debug("Serving search on index '{}' from result cache", indexAlias);
+                return cachedResult.copy();
+            }
+        }
+
+        final SearchResult result = singleFlightEnabled ? searchSingleFlight.execute(searchKey, () -> search(context)) : search(context);
+        if (useResultCache) {
+            searchResultCache().put(searchKey, result);
+        }
+        // The result is shared by concurrent and later callers, every caller gets a copy it may modify
+        return result.copy();
+    }
+
+    protected SearchResult search(InternalSearchContext context) {
+        final SearchResult result = search(context, sw -> getElasticsearchResult(context, sw));
+        if (context.searchParameter != null && context.searchParameter.isLazyTotalHitCount() && !result.isExactHitCount()) {
+            final Integer maxResults = context.searchParameter.getMaxResults();
+            final int maxResultCount = (maxResults != null) ? maxResults : context.indexPresetConfiguration.getMaxResultWindow();
+            result.lazyTotalHitCount(() -> elasticsearch.count(context.queryDto(), context.mappingConfiguration(), context.indexPresetConfiguration),
+                    maxResultCount);
+        }
+        return result;
+    }
+
+    protected SearchResult search(InternalSearchContext context, Function<StopWatch, SearchResultDto> searchFunction) {
+        final StopWatch sw = new StopWatch();
+
+        final String indexAlias = context.indexPresetConfiguration.getIndexAlias();
+        final SearchParameter searchParameter = context.searchParameter;
+        final SearchResultDto searchResultDto = searchFunction.apply(sw);
         final List<SearchResultItem> resultItems = searchResultDto.getHits().stream().map(this::searchResultItem).collect(Collectors.toList());
 
         sw.start("get max results");
@@ -323,8 +636,287 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
 
         LOGGER.debug("Performed search on index '{}':\n{}", indexAlias, new StopWatchPrettyPrint(sw));
         final int pageIndex = (searchParameter.getPageIndex() != null) ? searchParameter.getPageIndex() : 1;
-        return new SearchResult(resultItems, pageIndex, pageSize, resultCount, totalHitCount, searchResultDto.isExactCount(),
-                convertFacets(searchResultDto.getFacetDtoList()));
+        final SearchResult searchResult = new SearchResult(resultItems, pageIndex, context.pageSize, resultCount, totalHitCount,
+                searchResultDto.isExactCount(), convertFacets(searchResultDto.getFacetDtoList()));
+        searchResult.setProfile(searchResultDto.getProfile());
+        return searchResult;
+    }
+
+    /**
+     * Creates the key identifying a search for deduplication and caching. The key contains the current write epoch of the index alias, so keys of searches
+     * issued before a write operation will not match keys of searches issued after it.
+     *
+     * @param context   Search context
+     * @return          Search key
+     */
+    protected String searchKey(InternalSearchContext context) {
+        final String indexAlias = context.indexPresetConfiguration.getIndexAlias();
+        final String queryJson = elasticsearch.createQueryJson(context.queryDto(), context.mappingConfiguration(), context.indexPresetConfiguration, false);
+        final Integer maxResults = (context.searchParameter != null) ? context.searchParameter.getMaxResults() : null;
+        final boolean lazyTotalHitCount = context.searchParameter != null && context.searchParameter.isLazyTotalHitCount();
+        final String routing = (context.queryDto() != null) ? context.queryDto().getRouting() : null;
+        return indexAlias + "|" + getWriteEpoch(indexAlias) + "|" + maxResults + "|" + lazyTotalHitCount + "|" + routing + "|" + queryJson;
+    }
+
+    protected boolean isResultCacheEnabled(SearchParameter searchParameter) {
+        if (searchParameter != null && searchParameter.isProfile()) {
+            return false;
+        }
+        return (searchParameter != null && searchParameter.getResultCache() != null) ? searchParameter.getResultCache() : resultCacheEnabled;
+    }
+
+    protected LruCache<String, SearchResult> searchResultCache() {
+        LruCache<String, SearchResult> cache = searchResultCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = searchResultCache;
+                if (cache == null) {
+                    cache = new LruCache<>(resultCacheMaxSize, resultCacheTtlSeconds, TimeUnit.SECONDS);
+                    searchResultCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Gets the write epoch of an index alias. The write epoch is incremented on every write operation on the alias through this service.
+     *
+     * @param indexAlias    Name of the alias of the index
+     * @return              Current write epoch of the alias
+     */
+    protected long getWriteEpoch(String indexAlias) {
+        final AtomicLong writeEpoch = writeEpochs.get(indexAlias);
+        return (writeEpoch != null) ? writeEpoch.get() : 0;
+    }
+
+    /**
+     * Notifies the service about a write operation on an index alias: increments the write epoch of the alias and drops its cached search results.
+     *
+     * @param indexAlias Name of the alias of the index
+     */
+    protected void indexChanged(String indexAlias) {
+        writeEpochs.computeIfAbsent(indexAlias, k -> new AtomicLong()).incrementAndGet();
+        final String keyPrefix = indexAlias + "|";
+        final LruCache<String, SearchResult> cache = searchResultCache;
+        if (cache != null) {
+            cache.removeIf(key -> key.startsWith(keyPrefix));
+        }
+        final LruCache<String, List<ResultFacet>> facets = facetCache;
+        if (facets != null) {
+            facets.removeIf(key -> key.startsWith(keyPrefix));
+        }
+        final LruCache<String, CachedSuggestions> suggestions = suggestCache;
+        if (suggestions != null) {
+            suggestions.removeIf(key -> key.startsWith(keyPrefix));
+        }
+    }
+
+    @Override
+    public long count(String indexAlias, Expression expression) {
+        return count(indexAlias, null, expression);
+    }
+
+    @Override
+    public long count(String indexAlias, AccountContext<?> accountContext, Expression expression) {
+        Validate.notEmpty(indexAlias, "Parameter 'indexAlias' may not be null or empty!");
+
+        final IndexPresetConfiguration indexPresetConfiguration = indexPresetConfigurationProvider.getIndexPresetConfiguration(indexAlias);
+        final QueryDto queryDto = createCountQueryDto(accountContext, expression);
+        return elasticsearch.count(queryDto, getMappingConfiguration(indexAlias, true), indexPresetConfiguration);
+    }
+
+    @Override
+    public boolean exists(String indexAlias, Expression expression) {
+        return exists(indexAlias, null, expression);
+    }
+
+    @Override
+    public boolean exists(String indexAlias, AccountContext<?> accountContext, Expression expression) {
+        Validate.notEmpty(indexAlias, "Parameter 'indexAlias' may not be null or empty!");
+
+        final IndexPresetConfiguration indexPresetConfiguration = indexPresetConfigurationProvider.getIndexPresetConfiguration(indexAlias);
+        final QueryDto queryDto = createCountQueryDto(accountContext, expression);
+        return elasticsearch.exists(queryDto, getMappingConfiguration(indexAlias, true), indexPresetConfiguration);
+    }
+
+    protected QueryDto createCountQueryDto(AccountContext<?> accountContext, Expression expression) {
+        return createQueryDto((accountContext != null) ? accountContext : new AccountContext<>(), expression, 0, 0, SearchParameter.DEFAULT);
+    }
+
+    @Override
+    public List<ResultFacet> facets(String indexAlias, Expression expression, List<SearchAggregation> aggregations) {
+        return facets(indexAlias, null, expression, aggregations);
+    }
+
+    @Override
+    public List<ResultFacet> facets(String indexAlias, AccountContext<?> accountContext, Expression expression, List<SearchAggregation> aggregations) {
+        Validate.notEmpty(indexAlias, "Parameter 'indexAlias' may not be null or empty!");
+        Validate.notEmpty(aggregations, "Parameter 'aggregations' may not be null or empty!");
+
+        final IndexPresetConfiguration indexPresetConfiguration = indexPresetConfigurationProvider.getIndexPresetConfiguration(indexAlias);
+        final MappingConfiguration mappingConfiguration = getMappingConfiguration(indexAlias, true);
+        final QueryDto queryDto = createFacetQueryDto(accountContext, expression, aggregations);
+
+        final boolean useFacetCache = facetCacheMaxSize > 0;
+        final String facetKey = useFacetCache ? facetKey(indexPresetConfiguration, mappingConfiguration, queryDto) : null;
+        if (useFacetCache) {
+            final List<ResultFacet> cachedFacets = facetCache().get(facetKey);
+            if (cachedFacets != null) {
+                LOGGER.debug("Serving facets on index '{}' from facet cache", indexAlias);
+                return copyFacets(cachedFacets);
+            }
+        }
+
+        final SearchResultDto searchResultDto = elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration);
+        final List<ResultFacet> facets = convertFacets(searchResultDto.getFacetDtoList());
+        if (useFacetCache) {
+            // The cached facets are shared by later callers, every caller gets a copy it may modify
+            facetCache().put(facetKey, copyFacets(facets));
+        }
+        return facets;
+    }
+
+    /**
+     * Creates the key identifying a facets query for caching without building the query: the key consists of the index alias, the current write
+     * epoch of the alias, the hash code of the mapping configuration, the locale, the fingerprint of the filter expression (see
+     * {@link ExpressionFingerprint}) and the aggregations. Expressions that cannot be fingerprinted are keyed by the query JSON.
+     *
+     * @param indexPresetConfiguration  Index preset configuration
+     * @param mappingConfiguration      Mapping configuration
+     * @param queryDto                  Query data of the facets query
+     * @return                          Facet key
+     */
+    protected String facetKey(IndexPresetConfiguration indexPresetConfiguration, MappingConfiguration mappingConfiguration, QueryDto queryDto) {
+        final String indexAlias = indexPresetConfiguration.getIndexAlias();
+        final String fingerprint = queryDto.getExpressionFingerprint();
+        final String filter = (fingerprint != null)
+                ? fingerprint
+                : elasticsearch.createQueryJson(queryDto, mappingConfiguration, indexPresetConfiguration, false);
+        return indexAlias + "|" + getWriteEpoch(indexAlias) + "|" + mappingConfiguration.hashCode() + "|" + queryDto.getLocale() + "|" + filter
+                + "|" + queryDto.getAggregations();
+    }
+
+    protected List<ResultFacet> copyFacets(List<ResultFacet> facets) {
+        return facets.stream().map(ResultFacet::copy).collect(Collectors.toList());
+    }
+
+    protected QueryDto createFacetQueryDto(AccountContext<?> accountContext, Expression expression, List<SearchAggregation> aggregations) {
+        return createCountQueryDto(accountContext, expression)
+                .queryRange(new QueryRangeDto(0, 0, SearchParameter.TRACK_TOTAL_HITS_DISABLED))
+                .aggregations(aggregations)
+                .requestCache(true);
+    }
+
+    protected LruCache<String, List<ResultFacet>> facetCache() {
+        LruCache<String, List<ResultFacet>> cache = facetCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = facetCache;
+                if (cache == null) {
+                    cache = new LruCache<>(facetCacheMaxSize, facetCacheTtlSeconds, TimeUnit.SECONDS);
+                    facetCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    @Override
+    public SearchResult searchTemplate(String indexAlias, AccountContext<?> accountContext, Expression expression, SearchParameter searchParameter,
+                                       Map<String, Object> templateParameters) {
+        Validate.notEmpty(indexAlias, "Parameter 'indexAlias' may not be null or empty!");
+        Validate.notNull(expression, "Parameter 'expression' may not be null!");
+        Validate.notNull(searchParameter, "Parameter 'searchParameter' may not be null!");
+        Validate.notNull(templateParameters, "Parameter 'templateParameters' may not be null!");
+
+        final IndexPresetConfiguration indexPresetConfiguration = indexPresetConfigurationProvider.getIndexPresetConfiguration(indexAlias);
+        final int pageSize = getPageSize(searchParameter);
+        final InternalSearchContext context = new InternalSearchContext(indexPresetConfiguration, accountContext, expression, searchParameter, pageSize);
+        context.mappingConfiguration(context.mappingConfiguration());
+
+        return search(context, sw -> {
+            sw.start("get search template");
+            final String templateKey = searchTemplateKey(context, templateParameters);
+            SearchTemplateDto template = searchTemplateCache().get(templateKey);
+            if (template == null) {
+                context.queryDto(createQueryDto(context));
+                template = compileSearchTemplate(context, templateKey, templateParameters);
+            } else {
+                // The query is already compiled into the template, the query data only provides the request options and result settings
+                context.queryDto(createQueryDto(context, false));
+            }
+            sw.stop();
+
+            sw.start("process search template");
+            try {
+                return elasticsearch.searchTemplate(template, templateParameters, context.queryDto(), context.mappingConfiguration(),
+                        indexPresetConfiguration);
+            } catch (ElasticsearchException e) {
+                if (!isMissingSearchTemplate(e)) {
+                    throw e;
+                }
+                LOGGER.info("Search template '{}' is missing in cluster, storing it again", template.getId());
+                template = compileSearchTemplate(context, templateKey, templateParameters);
+                return elasticsearch.searchTemplate(template, templateParameters, context.queryDto(), context.mappingConfiguration(),
+                        indexPresetConfiguration);
+            } finally {
+                sw.stop();
+            }
+        });
+    }
+
+    /**
+     * Creates the key identifying a compiled search template without building the query: the key consists of the index alias, the hash code of the
+     * mapping configuration, the fingerprint of the expression (see {@link ExpressionFingerprint}), the template parameter names and the search
+     * parameters defining the template source. Expressions that cannot be fingerprinted are keyed by the query JSON. Request options which are not
+     * part of the template (e.g. routing or preference) are taken from the current search parameters when the template is executed.
+     *
+     * @param context               Search context
+     * @param templateParameters    Template parameters
+     * @return                      Search template key
+     */
+    protected String searchTemplateKey(InternalSearchContext context, Map<String, Object> templateParameters) {
+        final SearchParameter searchParameter = (context.searchParameter != null) ? context.searchParameter : SearchParameter.DEFAULT;
+        final String fingerprint = ExpressionFingerprint.of(context.expression);
+        final String query = (fingerprint != null)
+                ? fingerprint
+                : elasticsearch.createQueryJson(context.queryDto(), context.mappingConfiguration(), context.indexPresetConfiguration, false);
+        final Locale userLanguage = (context.accountContext != null) ? context.accountContext.getUserLanguage() : null;
+        return context.indexPresetConfiguration.getIndexAlias() + "|" + context.mappingConfiguration().hashCode() + "|" + query
+                + "|" + new TreeMap<>(templateParameters).keySet() + "|" + searchParameter.getPageIndex() + "|" + context.pageSize
+                + "|" + searchParameter.getMaxResults() + "|" + getMaxTrackTotalHits(searchParameter) + "|" + searchParameter.getLanguage()
+                + "|" + userLanguage + "|" + searchParameter.getSortOptions() + "|" + searchParameter.getCollapseOption()
+                + "|" + searchParameter.getAggregations() + "|" + searchParameter.getFieldsToResolve() + "|" + searchParameter.getFieldResolverType()
+                + "|" + searchParameter.isProfile() + "|" + (optimizeExpressionsEnabled && searchParameter.isOptimizeExpressions());
+    }
+
+    protected SearchTemplateDto compileSearchTemplate(InternalSearchContext context, String templateKey, Map<String, Object> templateParameters) {
+        final String templateId = SEARCH_TEMPLATE_ID_PREFIX + UUID.nameUUIDFromBytes(templateKey.getBytes(StandardCharsets.UTF_8));
+        final SearchTemplateDto template = elasticsearch.putSearchTemplate(templateId, context.queryDto(), context.mappingConfiguration(),
+                context.indexPresetConfiguration, templateParameters.keySet());
+        LOGGER.debug("Stored search template '{}' for index '{}'", templateId, context.indexPresetConfiguration.getIndexAlias());
+
+        searchTemplateCache().put(templateKey, template);
+        return template;
+    }
+
+    protected boolean isMissingSearchTemplate(Exception e) {
+        return ExceptionUtils.getThrowableList(e).stream().anyMatch(t -> StringUtils.contains(t.getMessage(), "unable to find script"));
+    }
+
+    protected LruCache<String, SearchTemplateDto> searchTemplateCache() {
+        LruCache<String, SearchTemplateDto> cache = searchTemplateCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = searchTemplateCache;
+                if (cache == null) {
+                    cache = new LruCache<>(searchTemplateCacheSize, 0, TimeUnit.SECONDS);
+                    searchTemplateCache = cache;
+                }
+            }
+        }
+        return cache;
     }
 
     protected SearchResultItem searchResultItem(SearchHitDto hit) {
@@ -367,7 +959,93 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
     public SuggestResult suggest(String indexAlias, SuggestExpression... expressions) {
         Validate.notEmpty(indexAlias, "Parameter 'indexAlias' may not be null or empty!");
         Validate.notEmpty(expressions, "Parameter 'expressions' may not be null or empty!");
-        return new SuggestResult(elasticsearch.suggest(indexAlias, expressions));
+        final boolean distinctNames = Arrays.stream(expressions).map(SuggestExpression::getName).distinct().count() == expressions.length;
+        if (suggestCacheMaxSize <= 0 || !distinctNames) {
+            return new SuggestResult(elasticsearch.suggest(indexAlias, expressions));
+        }
+
+        final long writeEpoch = getWriteEpoch(indexAlias);
+        final Map<String, List<String>> result = new HashMap<>();
+        final List<SuggestExpression> uncachedExpressions = new ArrayList<>();
+        for (SuggestExpression expression : expressions) {
+            final List<String> cachedSuggestions = cachedSuggestions(indexAlias, writeEpoch, expression);
+            if (cachedSuggestions != null) {
+                result.put(expression.getName(), cachedSuggestions);
+            } else {
+                uncachedExpressions.add(expression);
+            }
+        }
+
+        if (!uncachedExpressions.isEmpty()) {
+            final Map<String, List<String>> suggestions = elasticsearch.suggest(indexAlias, uncachedExpressions.toArray(new SuggestExpression[0]));
+            for (SuggestExpression expression : uncachedExpressions) {
+                final List<String> options = suggestions.getOrDefault(expression.getName(), Collections.emptyList());
+                suggestCache().put(suggestKey(indexAlias, writeEpoch, expression.getName(), expression.getText()),
+                        new CachedSuggestions(options, expression.getCount()));
+                result.put(expression.getName(), options);
+            }
+        }
+        return new SuggestResult(result);
+    }
+
+    protected List<String> cachedSuggestions(String indexAlias, long writeEpoch, SuggestExpression expression) {
+        final String text = expression.getText();
+        final int count = expression.getCount();
+        final CachedSuggestions exactMatch = suggestCache().get(suggestKey(indexAlias, writeEpoch, expression.getName(), text));
+        if (exactMatch != null && (exactMatch.isComplete() || exactMatch.requestedCount >= count)) {
+            return exactMatch.firstOptions(count);
+        }
+
+        if (!isPrefixFilterable(indexAlias, expression)) {
+            return null;
+        }
+        // Complete suggestions of a shorter prefix contain all suggestions of the longer prefix
+        for (int length = text.length() - 1; length > 0; length--) {
+            final CachedSuggestions prefixMatch = suggestCache().get(suggestKey(indexAlias, writeEpoch, expression.getName(), text.substring(0, length)));
+            if (prefixMatch != null && prefixMatch.isComplete()) {
+                final CachedSuggestions suggestions = prefixMatch.filter(text);
+                suggestCache().put(suggestKey(indexAlias, writeEpoch, expression.getName(), text), suggestions);
+                return suggestions.firstOptions(count);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the suggestions of a suggest expression may be filtered from the cached suggestions of a shorter prefix. Elasticsearch matches the
+     * analyzed prefix, so the suggestions can only be filtered locally if the analyzed prefixes are known: the suggest field must be mapped with
+     * the default (simple) analyzer, i.e. without additional parameters, and the prefix must consist of letters not exceeding the maximum input
+     * length. Digits, punctuation and whitespace are removed or treated as separators by the analyzer and are not handled locally.
+     *
+     * @param indexAlias    Name of the alias of the index
+     * @param expression    Suggest expression
+     * @return              TRUE if the suggestions may be filtered locally
+     */
+    protected boolean isPrefixFilterable(String indexAlias, SuggestExpression expression) {
+        final String text = expression.getText();
+        if (text.length() > COMPLETION_MAX_INPUT_LENGTH || !text.codePoints().allMatch(Character::isLetter)) {
+            return false;
+        }
+        final FieldConfiguration fieldConfiguration = getMappingConfiguration(indexAlias, true).getFieldConfiguration(expression.getName());
+        return fieldConfiguration instanceof SuggestFieldConfiguration && MapUtils.isEmpty(fieldConfiguration.getAdditionalParameters());
+    }
+
+    protected String suggestKey(String indexAlias, long writeEpoch, String name, String text) {
+        return indexAlias + "|" + writeEpoch + "|" + name + "|" + text;
+    }
+
+    protected LruCache<String, CachedSuggestions> suggestCache() {
+        LruCache<String, CachedSuggestions> cache = suggestCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = suggestCache;
+                if (cache == null) {
+                    cache = new LruCache<>(suggestCacheMaxSize, suggestCacheTtlSeconds, TimeUnit.SECONDS);
+                    suggestCache = cache;
+                }
+            }
+        }
+        return cache;
     }
 
     protected int getPageSize(SearchParameter searchParameter) {
@@ -392,7 +1070,7 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
 
     protected SearchResultDto getElasticsearchResult(InternalSearchContext context, StopWatch sw) {
         sw.start("create query");
-        final QueryDto queryDto = createQueryDto(context);
+        final QueryDto queryDto = context.queryDto();
         sw.stop();
 
         sw.start("process search");
@@ -403,6 +1081,17 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
     }
 
     protected QueryDto createQueryDto(InternalSearchContext context) {
+        return createQueryDto(context, true);
+    }
+
+    /**
+     * Creates the query data of a search.
+     *
+     * @param context               Search context
+     * @param optimizeExpression    false if the expression must not be optimized, e.g. if the query data is not used to build the query
+     * @return                      Query data
+     */
+    protected QueryDto createQueryDto(InternalSearchContext context, boolean optimizeExpression) {
         SearchParameter searchParameter = context.searchParameter;
         if (searchParameter == null) {
             searchParameter = SearchParameter.DEFAULT;
@@ -418,20 +1107,26 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
                 ? searchParameter.getMaxResults() : context.indexPresetConfiguration.getMaxResultWindow();
         final int resultLimit = Math.min(context.pageSize, maxResults - start);
 
-        return createQueryDto(accountContext, context.expression, start, resultLimit, searchParameter);
+        return createQueryDto(accountContext, context.expression, start, resultLimit, searchParameter, optimizeExpression);
     }
 
     protected QueryDto createQueryDto(AccountContext<?> accountContext, Expression expression, int start, int limit, SearchParameter searchParameter) {
+        return createQueryDto(accountContext, expression, start, limit, searchParameter, true);
+    }
+
+    protected QueryDto createQueryDto(AccountContext<?> accountContext, Expression expression, int start, int limit, SearchParameter searchParameter,
+                                      boolean optimizeExpression) {
         Validate.notNull(accountContext, "Parameter 'accountContext' may not be null!");
         Validate.notNull(expression, "Parameter 'expression' may not be null!");
         Validate.notNull(searchParameter, "Parameter 'searchParameter' may not be null!");
 
-        if (optimizeExpressionsEnabled && searchParameter.isOptimizeExpressions()) {
-            expression = expression.optimize();
+        if (optimizeExpression && optimizeExpressionsEnabled && searchParameter.isOptimizeExpressions()) {
+            expression = expressionOptimizer.optimize(expression);
         }
-        final QueryRangeDto queryRangeDto = new QueryRangeDto(start, limit, searchParameter.getMaxTrackTotalHits());
+        final QueryRangeDto queryRangeDto = new QueryRangeDto(start, limit, getMaxTrackTotalHits(searchParameter));
         final List<String> fieldsToResolve = searchParameter.getFieldsToResolve();
-        final QueryDto.FieldResolverType fieldResolverType = QueryDto.FieldResolverType.SOURCE_VALUES;
+        final QueryDto.FieldResolverType fieldResolverType = (searchParameter.getFieldResolverType() != null)
+                ? QueryDto.FieldResolverType.valueOf(searchParameter.getFieldResolverType().name()) : QueryDto.FieldResolverType.SOURCE_VALUES;
         final Locale locale = StringUtils.isNotBlank(searchParameter.getLanguage())
                 ? LocaleUtils.toLocale(searchParameter.getLanguage())
                 : accountContext.getUserLanguage();
@@ -442,7 +1137,39 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
                 .aggregations(searchParameter.getAggregations())
                 .fieldsToResolve(fieldsToResolve)
                 .fieldResolverType(fieldResolverType)
-                .accountContext(accountContext);
+                .accountContext(accountContext)
+                .requestCache(searchParameter.getRequestCache())
+                .preference((searchParameter.getPreference() != null) ? searchParameter.getPreference() : getAccountPreference(accountContext))
+                .routing(searchParameter.getRouting())
+                .profile(searchParameter.isProfile());
+    }
+
+    protected String getAccountPreference(AccountContext<?> accountContext) {
+        if (!accountPreferenceEnabled) {
+            return null;
+        } else if (accountContext.getId() != null) {
+            return ACCOUNT_PREFERENCE_PREFIX + accountContext.getId();
+        } else if (StringUtils.isNotBlank(accountContext.getUserName())) {
+            return ACCOUNT_PREFERENCE_PREFIX + accountContext.getUserName();
+        } else {
+            return null;
+        }
+    }
+
+    protected Long getMaxTrackTotalHits(SearchParameter searchParameter) {
+        if (searchParameter.isLazyTotalHitCount()) {
+            return SearchParameter.TRACK_TOTAL_HITS_DISABLED;
+        } else if (searchParameter.getMaxTrackTotalHits() != null) {
+            return searchParameter.getMaxTrackTotalHits();
+        } else if (StringUtils.isBlank(trackTotalHits)) {
+            return null;
+        } else if (trackTotalHits.trim().equalsIgnoreCase(Boolean.TRUE.toString())) {
+            return SearchParameter.TRACK_TOTAL_HITS_ACCURATE;
+        } else if (trackTotalHits.trim().equalsIgnoreCase(Boolean.FALSE.toString())) {
+            return SearchParameter.TRACK_TOTAL_HITS_DISABLED;
+        } else {
+            return Long.valueOf(trackTotalHits.trim());
+        }
     }
 
     protected int getMaxResults(String indexAlias, Integer maxResults, long totalHitCount) {
@@ -482,6 +1209,55 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
         return elasticsearch.getRestClient();
     }
 
+    /**
+     * Suggestions of a prefix. The suggestions are complete if elasticsearch returned fewer options than requested.
+     */
+    protected static class CachedSuggestions {
+
+        final List<String> options;
+        final int requestedCount;
+
+        public CachedSuggestions(List<String> options, int requestedCount) {
+            this.options = Collections.unmodifiableList(options);
+            this.requestedCount = requestedCount;
+        }
+
+        boolean isComplete() {
+            return options.size() < requestedCount;
+        }
+
+        List<String> firstOptions(int count) {
+            return (options.size() > count) ? options.subList(0, count) : options;
+        }
+
+        CachedSuggestions filter(String prefix) {
+            final String analyzedPrefix = analyze(prefix);
+            final List<String> filteredOptions = options.stream().filter(option -> analyze(option).startsWith(analyzedPrefix)).collect(Collectors.toList());
+            // A subset of complete suggestions is complete as well
+            return new CachedSuggestions(filteredOptions, Math.max(requestedCount, filteredOptions.size() + 1));
+        }
+
+        // Analyzes a text like the simple analyzer: runs of letters are lower cased, other characters separate them
+        static String analyze(String text) {
+            final StringBuilder sb = new StringBuilder(text.length());
+            boolean separate = false;
+            for (int i = 0; i < text.length(); ) {
+                final int codePoint = text.codePointAt(i);
+                if (Character.isLetter(codePoint)) {
+                    if (separate && sb.length() > 0) {
+                        sb.append(' ');
+                    }
+                    sb.appendCodePoint(Character.toLowerCase(codePoint));
+                    separate = false;
+                } else {
+                    separate = true;
+                }
+                i += Character.charCount(codePoint);
+            }
+            return sb.toString();
+        }
+    }
+
     protected class InternalSearchContext {
 
         final IndexPresetConfiguration indexPresetConfiguration;
@@ -491,6 +1267,7 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
         final int pageSize;
 
         MappingConfiguration mappingConfiguration;
+        QueryDto queryDto;
 
         public InternalSearchContext(IndexPresetConfiguration indexPresetConfiguration, AccountContext<?> accountContext, Expression expression,
                                      SearchParameter searchParameter, int pageSize) {
@@ -509,5 +1286,14 @@ public class ElasticsearchServiceImpl implements ElasticsearchService {
         public MappingConfiguration mappingConfiguration() {
             return mappingConfiguration != null ? mappingConfiguration : getMappingConfiguration(indexPresetConfiguration.getIndexAlias(), true);
         }
+
+        public InternalSearchContext queryDto(QueryDto queryDto) {
+            this.queryDto = queryDto;
+            return this;
+        }
+
+        public QueryDto queryDto() {
+            return queryDto != null ? queryDto : createQueryDto(this);
+        }
     }
 }
@@ -24,11 +24,13 @@ import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
 import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
 import de.picturesafe.search.elasticsearch.model.ElasticsearchInfo;
 import de.picturesafe.search.elasticsearch.model.IndexObject;
+import de.picturesafe.search.elasticsearch.model.ResultFacet;
 import de.picturesafe.search.elasticsearch.model.SearchResult;
 import de.picturesafe.search.elasticsearch.model.SuggestResult;
 import de.picturesafe.search.expression.Expression;
 import de.picturesafe.search.expression.SuggestExpression;
 import de.picturesafe.search.parameter.AccountContext;
+import de.picturesafe.search.parameter.SearchAggregation;
 import de.picturesafe.search.parameter.SearchParameter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -159,6 +161,42 @@ public class SingleIndexElasticsearchServiceImpl implements SingleIndexElasticse
         return elasticsearchService.search(getIndexAlias(), accountContext, expression, searchParameter);
     }
 
+    @Override
+    public long count(Expression expression) {
+        return elasticsearchService.count(getIndexAlias(), expression);
+    }
+
+    @Override
+    public long count(AccountContext<?> accountContext, Expression expression) {
+        return elasticsearchService.count(getIndexAlias(), accountContext, expression);
+    }
+
+    @Override
+    public boolean exists(Expression expression) {
+        return elasticsearchService.exists(getIndexAlias(), expression);
+    }
+
+    @Override
+    public boolean exists(AccountContext<?> accountContext, Expression expression) {
+        return elasticsearchService.exists(getIndexAlias(), accountContext, expression);
+    }
+
+    @Override
+    public List<ResultFacet> facets(Expression expression, List<SearchAggregation> aggregations) {
+        return elasticsearchService.facets(getIndexAlias(), expression, aggregations);
+    }
+
+    @Override
+    public List<ResultFacet> facets(AccountContext<?> accountContext, Expression expression, List<SearchAggregation> aggregations) {
+        return elasticsearchService.facets(getIndexAlias(), accountContext, expression, aggregations);
+    }
+
+    @Override
+    public SearchResult searchTemplate(AccountContext<?> accountContext, Expression expression, SearchParameter searchParameter,
+                                       Map<String, Object> templateParameters) {
+        return elasticsearchService.searchTemplate(getIndexAlias(), accountContext, expression, searchParameter, templateParameters);
+    }
+
     @Override
     public Map<String, Object> getDocument(Object id) {
         return elasticsearchService.getDocument(getIndexAlias(), id);
@@ -20,6 +20,7 @@ import de.picturesafe.search.util.logging.CustomJsonToStringStyle;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -83,6 +84,15 @@ public class ResultFacet {
         return facetItems;
     }
 
+    /**
+     * Creates a copy of the facet, which can be modified without affecting this facet, e.g. to hand out a cached facet to several callers.
+     *
+     * @return Copy of the facet
+     */
+    public ResultFacet copy() {
+        return new ResultFacet(name, fieldName, count, (facetItems != null) ? new ArrayList<>(facetItems) : null);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.model;
+
+import de.picturesafe.search.util.logging.CustomJsonToStringStyle;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Profile of a search execution: timings of the query clauses, collectors and aggregations per shard
+ */
+public class SearchProfile {
+
+    private final List<SearchProfileEntry> entries;
+    private final long rewriteTimeNanos;
+
+    /**
+     * Constructor
+     *
+     * @param entries Profile entries (in tree order per shard)
+     */
+    public SearchProfile(List<SearchProfileEntry> entries) {
+        this(entries, 0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param entries           Profile entries (in tree order per shard)
+     * @param rewriteTimeNanos  Time spent on rewriting the query (summed over all shards)
+     */
+    public SearchProfile(List<SearchProfileEntry> entries, long rewriteTimeNanos) {
+        this.entries = entries;
+        this.rewriteTimeNanos = rewriteTimeNanos;
+    }
+
+    /**
+     * Gets all profile entries (in tree order per shard).
+     *
+     * @return Profile entries
+     */
+    public List<SearchProfileEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Gets the time elasticsearch spent on rewriting the query into lucene queries (summed over all shards).
+     *
+     * @return Rewrite time in nanoseconds
+     */
+    public long getRewriteTimeNanos() {
+        return rewriteTimeNanos;
+    }
+
+    /**
+     * Gets the profile entries of a type (in tree order per shard).
+     *
+     * @param type  Type of the entries
+     * @return      Profile entries
+     */
+    public List<SearchProfileEntry> getEntries(SearchProfileEntry.Type type) {
+        return entries.stream().filter(e -> e.getType() == type).collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the most expensive query clauses and aggregations, ordered by the time spent excluding their children.
+     *
+     * @param n Maximum number of entries
+     * @return  Most expensive entries
+     */
+    public List<SearchProfileEntry> getTopEntries(int n) {
+        return entries.stream()
+                .filter(e -> e.getType() != SearchProfileEntry.Type.COLLECTOR)
+                .sorted(Comparator.comparingLong(SearchProfileEntry::getSelfTimeNanos).reversed())
+                .limit(n)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Prints the most expensive query clauses and aggregations, one line per entry.
+     *
+     * @param n Maximum number of entries
+     * @return  Printed entries
+     */
+    public String printTopEntries(int n) {
+        final StringBuilder sb = new StringBuilder();
+        int rank = 1;
+        for (SearchProfileEntry entry : getTopEntries(n)) {
+            sb.append(String.format(Locale.ROOT, "%2d. %10.3f ms (total %10.3f ms) %s %s [%s] %s", rank++, entry.getSelfTimeNanos() / 1e6,
+                    entry.getTimeNanos() / 1e6, entry.getType(), entry.getName(), entry.getDescription(), entry.getShardId()));
+            if (entry.getExpression() != null) {
+                sb.append(" <- ").append(entry.getExpression());
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, new CustomJsonToStringStyle()) //--
+                .append("entries", entries) //--
+                .append("rewriteTimeNanos", rewriteTimeNanos) //--
+                .toString();
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.model;
+
+import de.picturesafe.search.util.logging.CustomJsonToStringStyle;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Timing of a single query clause, collector or aggregation on a shard, as reported by the elasticsearch profile API
+ */
+public class SearchProfileEntry {
+
+    public enum Type {
+        QUERY,
+        COLLECTOR,
+        AGGREGATION
+    }
+
+    private final String shardId;
+    private final Type type;
+    private final String name;
+    private final String description;
+    private final long timeNanos;
+    private final long selfTimeNanos;
+    private final int depth;
+    private final String expression;
+
+    private SearchProfileEntry(Builder builder) {
+        shardId = builder.shardId;
+        type = builder.type;
+        name = builder.name;
+        description = builder.description;
+        timeNanos = builder.timeNanos;
+        selfTimeNanos = builder.selfTimeNanos;
+        depth = builder.depth;
+        expression = builder.expression;
+    }
+
+    /**
+     * Gets the ID of the shard.
+     *
+     * @return ID of the shard ([nodeId][indexName][shardId])
+     */
+    public String getShardId() {
+        return shardId;
+    }
+
+    /**
+     * Gets the type of the entry.
+     *
+     * @return Type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the name of the lucene query, collector or aggregation.
+     *
+     * @return Name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the description (lucene query description, collector reason or aggregation name).
+     *
+     * @return Description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Gets the time spent including the children.
+     *
+     * @return Time in nanoseconds
+     */
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    /**
+     * Gets the time spent excluding the children.
+     *
+     * @return Time in nanoseconds
+     */
+    public long getSelfTimeNanos() {
+        return selfTimeNanos;
+    }
+
+    /**
+     * Gets the depth within the profiled tree.
+     *
+     * @return Depth (0 = root)
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Gets the description of the expression the query clause originates from.
+     *
+     * @return Description of the expression (null if the clause could not be mapped to an expression)
+     */
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this, new CustomJsonToStringStyle()) //--
+                .append("shardId", shardId) //--
+                .append("type", type) //--
+                .append("name", name) //--
+                .append("description", description) //--
+                .append("timeNanos", timeNanos) //--
+                .append("selfTimeNanos", selfTimeNanos) //--
+                .append("depth", depth) //--
+                .append("expression", expression) //--
+                .toString();
+    }
+
+    /**
+     * Creates a builder for a profile entry.
+     *
+     * @param shardId   ID of the shard ([nodeId][indexName][shardId])
+     * @param type      Type of the entry
+     * @return          Builder
+     */
+    public static Builder builder(String shardId, Type type) {
+        return new Builder(shardId, type);
+    }
+
+    public static class Builder {
+        private final String shardId;
+        private final Type type;
+        private String name;
+        private String description;
+        private long timeNanos;
+        private long selfTimeNanos;
+        private int depth;
+        private String expression;
+
+        private Builder(String shardId, Type type) {
+            this.shardId = shardId;
+            this.type = type;
+        }
+
+        /**
+         * Sets the name and the description.
+         *
+         * @param name          Name of the lucene query, collector or aggregation
+         * @param description   Description (lucene query description, collector reason or aggregation name)
+         * @return              Builder
+         */
+        public Builder name(String name, String description) {
+            this.name = name;
+            this.description = description;
+            return this;
+        }
+
+        /**
+         * Sets the timings.
+         *
+         * @param timeNanos     Time spent including the children in nanoseconds
+         * @param selfTimeNanos Time spent excluding the children in nanoseconds
+         * @return              Builder
+         */
+        public Builder time(long timeNanos, long selfTimeNanos) {
+            this.timeNanos = timeNanos;
+            this.selfTimeNanos = selfTimeNanos;
+            return this;
+        }
+
+        /**
+         * Sets the depth within the profiled tree.
+         *
+         * @param depth Depth (0 = root)
+         * @return      Builder
+         */
+        public Builder depth(int depth) {
+            this.depth = depth;
+            return this;
+        }
+
+        /**
+         * Sets the description of the originating expression.
+         *
+         * @param expression    Description of the expression (may be null)
+         * @return              Builder
+         */
+        public Builder expression(String expression) {
+            this.expression = expression;
+            return this;
+        }
+
+        public SearchProfileEntry build() {
+            return new SearchProfileEntry(this);
+        }
+    }
+}
@@ -16,15 +16,20 @@
 
 package de.picturesafe.search.elasticsearch.model;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import de.picturesafe.search.util.logging.CustomJsonToStringStyle;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 
 /**
@@ -35,11 +40,14 @@ public class SearchResult implements Iterable<SearchResultItem> {
     private final List<SearchResultItem> searchResultItems;
     private final int pageIndex;
     private final int pageSize;
-    private final int resultCount;
-    private final long totalHitCount;
-    private final boolean exactHitCount;
+    private int resultCount;
+    private long totalHitCount;
+    private boolean exactHitCount;
 
     private List<ResultFacet> facets = Collections.emptyList();
+    private LongSupplier totalHitCountResolver;
+    private int maxResultCount;
+    private SearchProfile profile;
 
     /**
      * Constructor
@@ -77,6 +85,43 @@ public class SearchResult implements Iterable<SearchResultItem> {
         this.facets = facets;
     }
 
+    /**
+     * Sets a resolver to determine the exact total hit count on demand. The resolver will be called once when the total hit count, the result count or
+     * the page count is requested for the first time.
+     *
+     * @param totalHitCountResolver Resolver of the exact total hit count
+     * @param maxResultCount        Upper limit for the result count
+     * @return                      This search result
+     */
+    public SearchResult lazyTotalHitCount(LongSupplier totalHitCountResolver, int maxResultCount) {
+        synchronized (this) {
+            this.totalHitCountResolver = totalHitCountResolver;
+            this.maxResultCount = maxResultCount;
+        }
+        return this;
+    }
+
+    /**
+     * Creates a copy of the search result, which can be modified without affecting this result, e.g. to hand out a cached result to several callers.
+     * The result items are copied by {@link SearchResultItem#copy()}. A lazy total hit count is resolved at most once for this result and all copies.
+     *
+     * @return Copy of the search result
+     */
+    public synchronized SearchResult copy() {
+        final List<SearchResultItem> copiedItems = new ArrayList<>(searchResultItems.size());
+        searchResultItems.forEach(item -> copiedItems.add(item.copy()));
+        final SearchResult copy = new SearchResult(copiedItems, pageIndex, pageSize, resultCount, totalHitCount, exactHitCount,
+                (facets != null) ? facets.stream().map(ResultFacet::copy).collect(Collectors.toList()) : null);
+        if (totalHitCountResolver != null) {
+            if (!(totalHitCountResolver instanceof SharedTotalHitCountResolver)) {
+                totalHitCountResolver = new SharedTotalHitCountResolver(totalHitCountResolver);
+            }
+            copy.lazyTotalHitCount(totalHitCountResolver, maxResultCount);
+        }
+        copy.setProfile(profile);
+        return copy;
+    }
+
     /**
      * Gets the search result items.
      *
@@ -115,11 +160,13 @@ public class SearchResult implements Iterable<SearchResultItem> {
     }
 
     /**
-     * Gets the page count.
+     * Gets the page count. If the total hit count is not exact, the page count is a lower bound: it includes the current page and, if the current page is
+     * full, at least one following page.
      *
      * @return  Page count (number of result pages) depending on the result count and the page size
      */
     public int getPageCount() {
+        resolveTotalHitCount();
         int pageCount = 1;
         if (resultCount > 0 && pageSize > 0) {
             pageCount = resultCount / pageSize;
@@ -127,15 +174,19 @@ public class SearchResult implements Iterable<SearchResultItem> {
                 pageCount += 1;
             }
         }
+        if (!exactHitCount) {
+            pageCount = Math.max(pageCount, (pageSize > 0 && searchResultItems.size() >= pageSize) ? pageIndex + 1 : pageIndex);
+        }
         return Math.max(1, pageCount);
     }
 
     /**
      * Gets the count of result items.
      *
-     * @return Count of result items
+     * @return Count of result items (lower bound if the total hit count is not exact)
      */
     public int getResultCount() {
+        resolveTotalHitCount();
         return resultCount;
     }
 
@@ -145,16 +196,20 @@ public class SearchResult implements Iterable<SearchResultItem> {
      * @return Total hit count
      */
     public long getTotalHitCount() {
+        resolveTotalHitCount();
         return totalHitCount;
     }
 
     /**
      * Checks if total hit count exact number.
      *
-     * @return TRUE if total hit count exact number, FALSE if total hit count is greater or equal the given number
+     * @return TRUE if total hit count exact number (or will be resolved lazily as exact number), FALSE if total hit count is greater or equal the given
+     *         number
      */
     public boolean isExactHitCount() {
-        return exactHitCount;
+        synchronized (this) {
+            return exactHitCount || totalHitCountResolver != null;
+        }
     }
 
     /**
@@ -175,6 +230,24 @@ public class SearchResult implements Iterable<SearchResultItem> {
         this.facets = facets;
     }
 
+    /**
+     * Gets the profile of the search execution.
+     *
+     * @return Search profile (null if the search was not profiled, see {@link de.picturesafe.search.parameter.SearchParameter#isProfile()})
+     */
+    public SearchProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Sets the profile of the search execution.
+     *
+     * @param profile Search profile
+     */
+    public void setProfile(SearchProfile profile) {
+        this.profile = profile;
+    }
+
     /**
      * Gets the IDs of the result items.
      *
@@ -195,6 +268,36 @@ public class SearchResult implements Iterable<SearchResultItem> {
         return searchResultItems.stream().map(item -> item.getId(type)).collect(Collectors.toList());
     }
 
+    /**
+     * Writes the search result as JSON: paging information, the result items with ID, attributes and inner hits and the facets. The attributes
+     * of result items are copied verbatim from the source of the search hits as long as they have not been modified or merged with doc values.
+     *
+     * @param out           Output stream to write to (will not be closed)
+     * @throws IOException  if writing fails
+     */
+    public void writeJson(OutputStream out) throws IOException {
+        SearchResultJsonWriter.write(this, out);
+    }
+
+    /**
+     * Writes the search result as JSON object to a JSON generator (see {@link #writeJson(OutputStream)}).
+     *
+     * @param generator     JSON generator to write to
+     * @throws IOException  if writing fails
+     */
+    public void writeJson(JsonGenerator generator) throws IOException {
+        SearchResultJsonWriter.write(this, generator);
+    }
+
+    private synchronized void resolveTotalHitCount() {
+        if (totalHitCountResolver != null) {
+            totalHitCount = totalHitCountResolver.getAsLong();
+            resultCount = (int) Math.min(totalHitCount, (long) maxResultCount);
+            exactHitCount = true;
+            totalHitCountResolver = null;
+        }
+    }
+
     @Override
     public Iterator<SearchResultItem> iterator() {
         return searchResultItems.iterator();
@@ -221,4 +324,22 @@ public class SearchResult implements Iterable<SearchResultItem> {
                 .append("facets", facets) //--
                 .toString();
     }
+
+    private static class SharedTotalHitCountResolver implements LongSupplier {
+
+        private final LongSupplier resolver;
+        private Long totalHitCount;
+
+        SharedTotalHitCountResolver(LongSupplier resolver) {
+            this.resolver = resolver;
+        }
+
+        @Override
+        public synchronized long getAsLong() {
+            if (totalHitCount == null) {
+                totalHitCount = resolver.getAsLong();
+            }
+            return totalHitCount;
+        }
+    }
 }
@@ -17,10 +17,13 @@
 package de.picturesafe.search.elasticsearch.model;
 
 import de.picturesafe.search.elasticsearch.connect.util.ElasticDateUtils;
+import de.picturesafe.search.elasticsearch.connect.util.ElasticDocumentUtils;
 import de.picturesafe.search.util.logging.CustomJsonToStringStyle;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -164,6 +167,25 @@ public class SearchResultItem {
         return this;
     }
 
+    /**
+     * Creates a copy of the result item, which can be modified without affecting this item. Attributes and inner hits are copied as well.
+     *
+     * @return Copy of the result item
+     */
+    public SearchResultItem copy() {
+        final SearchResultItem copy = new SearchResultItem(id, ElasticDocumentUtils.copyDocument(attributes), idFormat);
+        if (innerHits != null) {
+            final Map<String, List<SearchResultItem>> copiedInnerHits = new LinkedHashMap<>();
+            innerHits.forEach((name, hits) -> {
+                final List<SearchResultItem> copiedHits = new ArrayList<>(hits.size());
+                hits.forEach(hit -> copiedHits.add(hit.copy()));
+                copiedInnerHits.put(name, copiedHits);
+            });
+            copy.innerHits = copiedInnerHits;
+        }
+        return copy;
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this, new CustomJsonToStringStyle()) //--
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.picturesafe.search.elasticsearch.connect.util.LazySourceMap;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link SearchResult} as JSON. Attributes backed by the unchanged raw source of a search hit are copied verbatim, without converting
+ * them into maps and back.
+ */
+class SearchResultJsonWriter {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private SearchResultJsonWriter() {
+    }
+
+    static void write(SearchResult searchResult, OutputStream out) throws IOException {
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            write(searchResult, generator);
+        }
+    }
+
+    static void write(SearchResult searchResult, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("totalHitCount", searchResult.getTotalHitCount());
+        generator.writeBooleanField("exactHitCount", searchResult.isExactHitCount());
+        generator.writeNumberField("resultCount", searchResult.getResultCount());
+        generator.writeNumberField("pageIndex", searchResult.getPageIndex());
+        generator.writeNumberField("pageSize", searchResult.getPageSize());
+        generator.writeNumberField("pageCount", searchResult.getPageCount());
+
+        generator.writeArrayFieldStart("items");
+        writeItems(searchResult.getSearchResultItems(), generator);
+        generator.writeEndArray();
+
+        generator.writeArrayFieldStart("facets");
+        if (searchResult.getFacets() != null) {
+            for (final ResultFacet facet : searchResult.getFacets()) {
+                writeFacet(facet, generator);
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static void writeItems(List<SearchResultItem> items, JsonGenerator generator) throws IOException {
+        if (items != null) {
+            for (final SearchResultItem item : items) {
+                writeItem(item, generator);
+            }
+        }
+    }
+
+    private static void writeItem(SearchResultItem item, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", item.getId());
+
+        generator.writeFieldName("attributes");
+        final Map<String, Object> attributes = item.getAttributes();
+        if (attributes instanceof LazySourceMap && ((LazySourceMap) attributes).isSourceUnchanged()) {
+            generator.writeRawValue(new RawJsonValue(((LazySourceMap) attributes).getSource()));
+        } else {
+            OBJECT_MAPPER.writeValue(generator, attributes);
+        }
+
+        if (item.getInnerHits() != null) {
+            generator.writeObjectFieldStart("innerHits");
+            for (final Map.Entry<String, List<SearchResultItem>> innerHits : item.getInnerHits().entrySet()) {
+                generator.writeArrayFieldStart(innerHits.getKey());
+                writeItems(innerHits.getValue(), generator);
+                generator.writeEndArray();
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeFacet(ResultFacet facet, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("name", facet.getName());
+        generator.writeStringField("fieldName", facet.getFieldName());
+        generator.writeNumberField("count", facet.getCount());
+        generator.writeArrayFieldStart("items");
+        if (facet.getFacetItems() != null) {
+            for (final ResultFacetItem facetItem : facet.getFacetItems()) {
+                generator.writeStartObject();
+                generator.writeFieldName("value");
+                OBJECT_MAPPER.writeValue(generator, facetItem.getValue());
+                generator.writeNumberField("count", facetItem.getCount());
+                if (facetItem instanceof ResultRangeFacetItem) {
+                    generator.writeStringField("from", ((ResultRangeFacetItem) facetItem).getFrom());
+                    generator.writeStringField("to", ((ResultRangeFacetItem) facetItem).getTo());
+                }
+                generator.writeEndObject();
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * Raw JSON value which is written from the UTF-8 bytes of the source without decoding them.
+     */
+    private static class RawJsonValue implements SerializableString {
+
+        private final BytesReference bytes;
+        private String value;
+
+        RawJsonValue(BytesReference bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String getValue() {
+            if (value == null) {
+                value = bytes.utf8ToString();
+            }
+            return value;
+        }
+
+        @Override
+        public int charLength() {
+            return getValue().length();
+        }
+
+        @Override
+        public char[] asQuotedChars() {
+            return new SerializedString(getValue()).asQuotedChars();
+        }
+
+        @Override
+        public byte[] asUnquotedUTF8() {
+            return BytesReference.toBytes(bytes);
+        }
+
+        @Override
+        public byte[] asQuotedUTF8() {
+            return new SerializedString(getValue()).asQuotedUTF8();
+        }
+
+        @Override
+        public int appendQuotedUTF8(byte[] buffer, int offset) {
+            return new SerializedString(getValue()).appendQuotedUTF8(buffer, offset);
+        }
+
+        @Override
+        public int appendQuoted(char[] buffer, int offset) {
+            return new SerializedString(getValue()).appendQuoted(buffer, offset);
+        }
+
+        @Override
+        public int appendUnquotedUTF8(byte[] buffer, int offset) {
+            final BytesRef ref = bytes.toBytesRef();
+            if (ref.length > buffer.length - offset) {
+                return -1;
+            }
+            System.arraycopy(ref.bytes, ref.offset, buffer, offset, ref.length);
+            return ref.length;
+        }
+
+        @Override
+        public int appendUnquoted(char[] buffer, int offset) {
+            return new SerializedString(getValue()).appendUnquoted(buffer, offset);
+        }
+
+        @Override
+        public int writeQuotedUTF8(OutputStream out) throws IOException {
+            return new SerializedString(getValue()).writeQuotedUTF8(out);
+        }
+
+        @Override
+        public int writeUnquotedUTF8(OutputStream out) throws IOException {
+            bytes.writeTo(out);
+            return bytes.length();
+        }
+
+        @Override
+        public int putQuotedUTF8(ByteBuffer buffer) throws IOException {
+            return new SerializedString(getValue()).putQuotedUTF8(buffer);
+        }
+
+        @Override
+        public int putUnquotedUTF8(ByteBuffer buffer) throws IOException {
+            final BytesRef ref = bytes.toBytesRef();
+            if (ref.length > buffer.remaining()) {
+                return -1;
+            }
+            buffer.put(ref.bytes, ref.offset, ref.length);
+            return ref.length;
+        }
+
+        @Override
+        public String toString() {
+            return new String(asUnquotedUTF8(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.expression;
+
+import de.picturesafe.search.expression.internal.EmptyExpression;
+import de.picturesafe.search.expression.internal.FalseExpression;
+import de.picturesafe.search.expression.internal.TrueExpression;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Creates stable fingerprints of expression trees, e.g. to use them as cache keys or as dimensions for logging and metrics.
+ * <p>
+ * A fingerprint is a 128 bit hash of the normalized structure of the tree: operands of AND/OR operations are normalized by order, so trees only differing
+ * in the order of operands have the same fingerprint. Only the expression types of this package are supported, a tree containing other (custom)
+ * expression types or values of unknown types has no fingerprint.
+ */
+public final class ExpressionFingerprint {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private ExpressionFingerprint() {
+    }
+
+    /**
+     * Creates the fingerprint of an expression tree.
+     *
+     * @param expression    Root expression of the tree
+     * @return              Fingerprint as 32 hex characters or null if the tree cannot be fingerprinted
+     */
+    public static String of(Expression expression) {
+        if (expression == null) {
+            return null;
+        }
+
+        final Deque<Node> stack = new ArrayDeque<>();
+        stack.push(new Node(expression));
+        while (true) {
+            final Node node = stack.peek();
+            if (node.hasNextChild()) {
+                final Expression child = node.nextChild();
+                if (child == null) {
+                    return null;
+                } else if (Node.isComposite(child)) {
+                    stack.push(new Node(child));
+                } else {
+                    final long[] hash = new Node(child).hash();
+                    if (hash == null) {
+                        return null;
+                    }
+                    node.childHashes.add(hash);
+                }
+                continue;
+            }
+
+            stack.pop();
+            final long[] hash = node.hash();
+            if (hash == null) {
+                return null;
+            } else if (stack.isEmpty()) {
+                return toHex(hash[0]) + toHex(hash[1]);
+            }
+            stack.peek().childHashes.add(hash);
+        }
+    }
+
+    private static String toHex(long value) {
+        final char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX_DIGITS[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    private static String canonicalLeaf(Expression expression) {
+        final StringBuilder sb = new StringBuilder(64);
+        final Class<?> type = expression.getClass();
+        final boolean valid;
+        if (type == ValueExpression.class || type == KeywordExpression.class || type == FulltextExpression.class) {
+            final ValueExpression valueExpression = (ValueExpression) expression;
+            sb.append((type == ValueExpression.class) ? 'V' : (type == KeywordExpression.class) ? 'K' : 'F');
+            valid = appendCondition(sb, valueExpression)
+                    && appendValue(sb, valueExpression.getValue())
+                    && appendValue(sb, valueExpression.isMatchPhrase())
+                    && appendValue(sb, valueExpression.getBoost());
+        } else if (type == RangeValueExpression.class) {
+            final RangeValueExpression rangeExpression = (RangeValueExpression) expression;
+            sb.append('R');
+            valid = appendCondition(sb, rangeExpression)
+                    && appendValue(sb, rangeExpression.getMinValue())
+                    && appendValue(sb, rangeExpression.getMaxValue());
+        } else if (type == DayExpression.class) {
+            final DayExpression dayExpression = (DayExpression) expression;
+            sb.append('D');
+            valid = appendCondition(sb, dayExpression) && appendValue(sb, dayExpression.getDay());
+        } else if (type == DayRangeExpression.class) {
+            final DayRangeExpression dayRangeExpression = (DayRangeExpression) expression;
+            sb.append('E');
+            valid = appendCondition(sb, dayRangeExpression)
+                    && appendValue(sb, dayRangeExpression.getFromDay())
+                    && appendValue(sb, dayRangeExpression.getUntilDay());
+        } else if (type == InExpression.class) {
+            final InExpression inExpression = (InExpression) expression;
+            sb.append('I');
+            valid = appendValue(sb, inExpression.getName())
+                    && appendValue(sb, inExpression.getValues())
+                    && appendValue(sb, inExpression.getBoost());
+        } else if (type == IsNullExpression.class) {
+            final IsNullExpression isNullExpression = (IsNullExpression) expression;
+            sb.append('N');
+            valid = appendValue(sb, isNullExpression.getName()) && appendValue(sb, isNullExpression.isMatchNull());
+        } else if (type == SuggestExpression.class) {
+            final SuggestExpression suggestExpression = (SuggestExpression) expression;
+            sb.append('S');
+            valid = appendValue(sb, suggestExpression.getText()) && appendValue(sb, suggestExpression.getCount());
+        } else {
+            sb.append(type.getName());
+            valid = type == FindAllExpression.class || type == TrueExpression.class || type == FalseExpression.class || type == EmptyExpression.class;
+        }
+        return valid ? sb.toString() : null;
+    }
+
+    private static boolean appendCondition(StringBuilder sb, ConditionExpression expression) {
+        final ConditionExpression.Comparison comparison = expression.getComparison();
+        sb.append((comparison != null) ? comparison.name() : "n").append(';');
+        return appendValue(sb, expression.getName());
+    }
+
+    private static boolean appendValue(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append('n');
+        } else if (value instanceof String) {
+            final String string = (String) value;
+            sb.append('s').append(string.length()).append(':').append(string);
+        } else if ((value instanceof Number || value instanceof Boolean || value instanceof Character) && value.getClass().getName().startsWith("java.")) {
+            sb.append(value.getClass().getName()).append(':').append(value);
+        } else if (value.getClass() == Date.class) {
+            sb.append("Date:").append(((Date) value).getTime());
+        } else if (value instanceof Enum) {
+            sb.append(value.getClass().getName()).append(':').append(((Enum<?>) value).name());
+        } else if (value instanceof Object[] || value instanceof Collection) {
+            final Collection<?> values = (value instanceof Object[]) ? Arrays.asList((Object[]) value) : (Collection<?>) value;
+            sb.append('[').append(values.size()).append(':');
+            for (final Object element : values) {
+                if (!appendValue(sb, element)) {
+                    return false;
+                }
+            }
+            sb.append(']');
+        } else {
+            return false;
+        }
+        sb.append(';');
+        return true;
+    }
+
+    private static class Node {
+
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private final Expression expression;
+        private final List<Expression> children;
+        private final List<long[]> childHashes;
+        private int nextChild;
+        private long h1 = 0x9368e53c2f6af274L;
+        private long h2 = 0x586dcd208f7cd3fdL;
+
+        Node(Expression expression) {
+            this.expression = expression;
+            if (expression.getClass() == OperationExpression.class) {
+                children = ((OperationExpression) expression).getOperands();
+            } else if (expression.getClass() == MustNotExpression.class) {
+                final Expression negated = ((MustNotExpression) expression).getExpression();
+                children = (negated != null) ? Collections.singletonList(negated) : Collections.emptyList();
+            } else {
+                children = Collections.emptyList();
+            }
+            childHashes = children.isEmpty() ? Collections.emptyList() : new ArrayList<>(children.size());
+        }
+
+        static boolean isComposite(Expression expression) {
+            return expression.getClass() == OperationExpression.class || expression.getClass() == MustNotExpression.class;
+        }
+
+        boolean hasNextChild() {
+            return nextChild < children.size();
+        }
+
+        Expression nextChild() {
+            return children.get(nextChild++);
+        }
+
+        long[] hash() {
+            if (expression.getClass() == OperationExpression.class) {
+                childHashes.sort(Node::compare);
+                update("op|" + ((OperationExpression) expression).getOperator());
+                updateChildHashes();
+            } else if (expression.getClass() == MustNotExpression.class) {
+                update("not|");
+                updateChildHashes();
+            } else {
+                final String canonical = canonicalLeaf(expression);
+                if (canonical == null) {
+                    return null;
+                }
+                update(canonical);
+            }
+            return new long[] {fmix(h1 ^ h2), fmix(h2 + h1)};
+        }
+
+        private void updateChildHashes() {
+            update(childHashes.size());
+            for (final long[] childHash : childHashes) {
+                update(childHash[0]);
+                update(childHash[1]);
+            }
+        }
+
+        private void update(String string) {
+            final int length = string.length();
+            update(length);
+            int i = 0;
+            for (; i + 3 < length; i += 4) {
+                update(((long) string.charAt(i) << 48) | ((long) string.charAt(i + 1) << 32) | ((long) string.charAt(i + 2) << 16) | string.charAt(i + 3));
+            }
+            for (; i < length; i++) {
+                update(string.charAt(i));
+            }
+        }
+
+        private void update(long value) {
+            h1 = Long.rotateLeft(h1 ^ (value * C1), 31) * C2 + h2;
+            h2 = Long.rotateLeft(h2 ^ (value * C2), 33) * C1 + h1;
+        }
+
+        private static long fmix(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+
+        private static int compare(long[] a, long[] b) {
+            final int cmp = Long.compare(a[0], b[0]);
+            return (cmp != 0) ? cmp : Long.compare(a[1], b[1]);
+        }
+    }
+}
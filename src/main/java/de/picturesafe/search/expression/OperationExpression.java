@@ -237,8 +237,9 @@ public class OperationExpression extends AbstractExpression {
             final OptimizationStrategy strategy = getStrategy(operator, false);
 
             if (strategy != OptimizationStrategy.NONE) {
+                // Merge into a new expression, the operands may be owned by the caller
                 final Object[] values = optimize(optimizedExpression.getValues(), inExpression.getValues(), strategy);
-                optimizedExpression.setValues(values);
+                expressionsHolder.getCollectedInExpressions().put(name, new InExpression(name, values).boost(optimizedExpression.getBoost()));
             } else {
                 ret.add(inExpression);
             }
@@ -263,7 +264,8 @@ public class OperationExpression extends AbstractExpression {
                 if (strategy != OptimizationStrategy.NONE) {
                     final InExpression collectedNotInExpression = (InExpression) collectedExpression.getExpression();
                     final Object[] values = optimize(collectedNotInExpression.getValues(), notInExpression.getValues(), strategy);
-                    collectedNotInExpression.setValues(values);
+                    expressionsHolder.getCollectedNotInExpressions().put(name,
+                            new MustNotExpression(new InExpression(name, values).boost(collectedNotInExpression.getBoost())));
                 } else {
                     ret.add(mustNotExpression);
                 }
@@ -279,24 +281,14 @@ public class OperationExpression extends AbstractExpression {
 
         if ((valueExpression.getComparison() == GE || valueExpression.getComparison() == GT)
                 && (valueExpression.getValue() == null || valueExpression.getValue() instanceof Date)) {
-            final String normalizedFieldname = normalizeFieldname(valueExpression.getName());
-            final ValueExpression previousRememberedValue = expressionsHolder.getCollectedGreaterExpressions()
-                    .put(normalizedFieldname, valueExpression);
-            if (previousRememberedValue != null) {
-                throw new IllegalStateException("Multiple ValueExpression with same name '"
-                        + normalizedFieldname + "' and operator 'GE' or 'GT' can not be optimized to "
-                        + "RangeValueExpressions.");
-            }
+            // Multiple lower bounds on the same field: keep the tightest one
+            expressionsHolder.getCollectedGreaterExpressions().merge(normalizeFieldname(valueExpression.getName()), valueExpression,
+                    (previous, current) -> isAfter(fromDate(current), fromDate(previous)) ? current : previous);
         } else if ((valueExpression.getComparison() == LE || valueExpression.getComparison() == LT)
                 && (valueExpression.getValue() == null || valueExpression.getValue() instanceof Date)) {
-            final String normalizedFieldname = normalizeFieldname(valueExpression.getName());
-            final ValueExpression previousRememberedValue = expressionsHolder.getCollectedLesserExpressions()
-                    .put(normalizedFieldname, valueExpression);
-            if (previousRememberedValue != null) {
-                throw new IllegalStateException("Multiple ValueExpression with same name '"
-                        + normalizedFieldname + "' and operator 'LE' or 'LT' can not be optimized to "
-                        + "RangeValueExpressions.");
-            }
+            // Multiple upper bounds on the same field: keep the tightest one
+            expressionsHolder.getCollectedLesserExpressions().merge(normalizeFieldname(valueExpression.getName()), valueExpression,
+                    (previous, current) -> isAfter(untilDate(previous), untilDate(current)) ? current : previous);
         } else {
             ret.add(valueExpression);
         }
@@ -307,28 +299,47 @@ public class OperationExpression extends AbstractExpression {
                                        List<Expression> ret) {
 
         if (dayExpression.getComparison() == GE || dayExpression.getComparison() == GT) {
-            final String normalizedFieldname = normalizeFieldname(dayExpression.getName());
-            final DayExpression previousRememberedValue = expressionsHolder.getCollectedDayGreaterExpressions()
-                    .put(normalizedFieldname, dayExpression);
-            if (previousRememberedValue != null) {
-                throw new IllegalStateException("Multiple DayExpression with same name '"
-                        + normalizedFieldname + "' and operator 'GE' or 'GT' can not be optimized to "
-                        + "DayRangeExpressions.");
-            }
+            // Multiple lower bounds on the same field: keep the tightest one
+            expressionsHolder.getCollectedDayGreaterExpressions().merge(normalizeFieldname(dayExpression.getName()), dayExpression,
+                    (previous, current) -> isAfter(fromDay(current), fromDay(previous)) ? current : previous);
         } else if (dayExpression.getComparison() == LE || dayExpression.getComparison() == LT) {
-            final String normalizedFieldname = normalizeFieldname(dayExpression.getName());
-            final DayExpression previousRememberedValue = expressionsHolder.getCollectedDayLesserExpressions()
-                    .put(normalizedFieldname, dayExpression);
-            if (previousRememberedValue != null) {
-                throw new IllegalStateException("Multiple DayExpression with same name '"
-                        + normalizedFieldname + "' and operator 'LE' or 'LT' can not be optimized to "
-                        + "DayRangeExpressions.");
-            }
+            // Multiple upper bounds on the same field: keep the tightest one
+            expressionsHolder.getCollectedDayLesserExpressions().merge(normalizeFieldname(dayExpression.getName()), dayExpression,
+                    (previous, current) -> isAfter(untilDay(previous), untilDay(current)) ? current : previous);
         } else {
             ret.add(dayExpression);
         }
     }
 
+    private static Date fromDate(ValueExpression expression) {
+        return fromDate((Date) expression.getValue(), expression.getComparison());
+    }
+
+    private static Date untilDate(ValueExpression expression) {
+        return untilDate((Date) expression.getValue(), expression.getComparison());
+    }
+
+    private static Date fromDay(DayExpression expression) {
+        return fromDate(expression.getDay(), expression.getComparison());
+    }
+
+    private static Date untilDay(DayExpression expression) {
+        return untilDate(expression.getDay(), expression.getComparison());
+    }
+
+    private static Date fromDate(Date date, ConditionExpression.Comparison comparison) {
+        return (date != null && comparison == GT) ? DateUtils.addDays(date, 1) : date;
+    }
+
+    private static Date untilDate(Date date, ConditionExpression.Comparison comparison) {
+        return (date != null && comparison == LT) ? DateUtils.addDays(date, -1) : date;
+    }
+
+    // Null dates are unbounded, so any date is after a null lower bound and before a null upper bound
+    private static boolean isAfter(Date date, Date other) {
+        return date != null && (other == null || date.after(other));
+    }
+
     private void mergeRangeValueExpressions(ExpressionsHolder expressionsHolder, List<Expression> ret) {
 
         // Merge GE expressions and LE expressions with the same field name into RangeValueExpression
@@ -496,9 +507,10 @@ public class OperationExpression extends AbstractExpression {
 
     @Override
     public int hashCode() {
+        // Shallow on purpose: hashing the operands would walk the whole subtree on every call
         return new HashCodeBuilder(17, 37)
                 .append(operator)
-                .append(operands)
+                .append(operands.size())
                 .toHashCode();
     }
 
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.expression.optimizer;
+
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FieldExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Pushes negations down to the leaves of an expression tree (De Morgan's laws), so negated operands can be merged with their siblings:
+ * <ul>
+ *     <li>NOT (a AND b) becomes (NOT a) OR (NOT b)</li>
+ *     <li>NOT (a OR b) becomes (NOT a) AND (NOT b)</li>
+ *     <li>NOT (NOT a) becomes a</li>
+ * </ul>
+ * Negations of expressions on fields of nested objects are not rewritten: a negated nested expression matches if any nested object does not match,
+ * so e.g. a document with the nested objects [{f: a}, {f: b}] does not match NOT (f = a AND f = b), but matches (NOT f = a) OR (NOT f = b).
+ * Without the nested paths (see {@link #DeMorganRule(Set)}), every field name containing a dot is considered to be a field of a nested object.
+ */
+public class DeMorganRule implements OptimizationRule {
+
+    private final Set<String> nestedPaths;
+
+    /**
+     * Constructor for unknown nested paths: negations of expressions on fields containing a dot are not rewritten.
+     */
+    public DeMorganRule() {
+        this.nestedPaths = null;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param nestedPaths Paths of the nested objects, negations of expressions on fields of these objects are not rewritten
+     */
+    public DeMorganRule(Set<String> nestedPaths) {
+        this.nestedPaths = Collections.unmodifiableSet(new HashSet<>(nestedPaths));
+    }
+
+    @Override
+    public Expression apply(Expression expression) {
+        if (expression.getClass() != MustNotExpression.class) {
+            return expression;
+        }
+
+        final Expression negated = ((MustNotExpression) expression).getExpression();
+        if (negated == null || containsNestedField(negated)) {
+            return expression;
+        } else if (negated.getClass() == MustNotExpression.class && ((MustNotExpression) negated).getExpression() != null) {
+            return ((MustNotExpression) negated).getExpression();
+        } else if (negated.getClass() == OperationExpression.class && ((OperationExpression) negated).getOperator() != null) {
+            final OperationExpression operationExpression = (OperationExpression) negated;
+            final OperationExpression.Operator operator = (operationExpression.getOperator() == OperationExpression.Operator.AND)
+                    ? OperationExpression.Operator.OR : OperationExpression.Operator.AND;
+            final OperationExpression rewritten = new OperationExpression(operator);
+            for (final Expression operand : operationExpression.getOperands()) {
+                if (operand != null) {
+                    rewritten.add(apply(new MustNotExpression(operand)));
+                }
+            }
+            return rewritten;
+        }
+        return expression;
+    }
+
+    private boolean containsNestedField(Expression expression) {
+        final Deque<Expression> pending = new ArrayDeque<>();
+        pending.push(expression);
+        while (!pending.isEmpty()) {
+            final Expression current = pending.pop();
+            if (current instanceof FieldExpression && isNestedField(((FieldExpression) current).getName())) {
+                return true;
+            } else if (current instanceof OperationExpression) {
+                for (final Expression operand : ((OperationExpression) current).getOperands()) {
+                    if (operand != null) {
+                        pending.push(operand);
+                    }
+                }
+            } else if (current instanceof MustNotExpression && ((MustNotExpression) current).getExpression() != null) {
+                pending.push(((MustNotExpression) current).getExpression());
+            }
+        }
+        return false;
+    }
+
+    private boolean isNestedField(String fieldName) {
+        if (fieldName == null) {
+            return false;
+        } else if (nestedPaths == null) {
+            return fieldName.indexOf('.') > 0;
+        }
+        for (int i = fieldName.indexOf('.'); i > 0; i = fieldName.indexOf('.', i + 1)) {
+            if (nestedPaths.contains(fieldName.substring(0, i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.expression.optimizer;
+
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.OperationExpression;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Removes redundant operands of AND/OR operations:
+ * <ul>
+ *     <li>Duplicates: a AND a becomes a, a OR a becomes a</li>
+ *     <li>Subsumed operations (absorption): a AND (a OR b) becomes a, a OR (a AND b) becomes a</li>
+ * </ul>
+ */
+public class DuplicateOperandRule implements OptimizationRule {
+
+    @Override
+    public Expression apply(Expression expression) {
+        if (expression.getClass() != OperationExpression.class) {
+            return expression;
+        }
+
+        final OperationExpression operationExpression = (OperationExpression) expression;
+        final List<Expression> operands = operationExpression.getOperands();
+        final Set<Expression> siblings = new HashSet<>(operands);
+        final Set<Expression> seen = new HashSet<>();
+        final List<Expression> remaining = new ArrayList<>(operands.size());
+        for (final Expression operand : operands) {
+            if (operand != null && seen.add(operand) && !isSubsumed(operand, operationExpression.getOperator(), siblings)) {
+                remaining.add(operand);
+            }
+        }
+        return (remaining.size() < operands.size()) ? new OperationExpression(operationExpression.getOperator()).addAll(remaining) : expression;
+    }
+
+    private boolean isSubsumed(Expression operand, OperationExpression.Operator operator, Set<Expression> siblings) {
+        if (operand.getClass() != OperationExpression.class || ((OperationExpression) operand).getOperator() == operator) {
+            return false;
+        }
+
+        for (final Expression nestedOperand : ((OperationExpression) operand).getOperands()) {
+            if (nestedOperand != null && siblings.contains(nestedOperand)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
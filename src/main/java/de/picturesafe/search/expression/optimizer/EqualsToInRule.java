@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.expression.optimizer;
+
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.expression.ConditionExpression;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FieldExpression;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Folds OR operations of equality comparisons on the same field into a single {@link InExpression}, e.g. (id = 1 OR id = 2 OR id IN (3, 4)) becomes
+ * id IN (1, 2, 3, 4).
+ * <p>
+ * Only integral values are folded: equality comparisons of strings are full text matches on text fields, while an {@link InExpression} matches terms.
+ */
+public class EqualsToInRule implements OptimizationRule {
+
+    @Override
+    public Expression apply(Expression expression) {
+        if (expression.getClass() != OperationExpression.class
+                || ((OperationExpression) expression).getOperator() != OperationExpression.Operator.OR) {
+            return expression;
+        }
+
+        final OperationExpression operationExpression = (OperationExpression) expression;
+        final Map<String, FieldValues> valuesByField = new HashMap<>();
+        boolean foldable = false;
+        for (final Expression operand : operationExpression.getOperands()) {
+            final Object[] values = foldableValues(operand);
+            if (values != null) {
+                final FieldValues fieldValues = valuesByField.computeIfAbsent(((FieldExpression) operand).getName(), k -> new FieldValues());
+                fieldValues.add(operand, values);
+                foldable |= fieldValues.members.size() > 1;
+            }
+        }
+        if (!foldable) {
+            return expression;
+        }
+
+        final OperationExpression rewritten = OperationExpression.or();
+        for (final Expression operand : operationExpression.getOperands()) {
+            final FieldValues fieldValues = (operand instanceof FieldExpression) ? valuesByField.get(((FieldExpression) operand).getName()) : null;
+            if (fieldValues == null || !fieldValues.members.contains(operand) || fieldValues.members.size() == 1) {
+                rewritten.add(operand);
+            } else if (!fieldValues.emitted) {
+                rewritten.add(new InExpression(((FieldExpression) operand).getName(), fieldValues.values.toArray()));
+                fieldValues.emitted = true;
+            }
+        }
+        return rewritten;
+    }
+
+    private Object[] foldableValues(Expression operand) {
+        if (operand == null) {
+            return null;
+        } else if (operand.getClass() == ValueExpression.class) {
+            final ValueExpression valueExpression = (ValueExpression) operand;
+            return (valueExpression.getComparison() == ConditionExpression.Comparison.EQ && valueExpression.getBoost() == null
+                    && !valueExpression.isMatchPhrase() && isFoldableField(valueExpression.getName()) && isIntegral(valueExpression.getValue()))
+                    ? new Object[] {valueExpression.getValue()} : null;
+        } else if (operand.getClass() == InExpression.class) {
+            final InExpression inExpression = (InExpression) operand;
+            final Object[] values = inExpression.getValues();
+            if (inExpression.getBoost() != null || !isFoldableField(inExpression.getName()) || values == null || values.length == 0) {
+                return null;
+            }
+            for (final Object value : values) {
+                if (!isIntegral(value)) {
+                    return null;
+                }
+            }
+            return values;
+        }
+        return null;
+    }
+
+    private boolean isFoldableField(String name) {
+        return name != null && !name.isEmpty() && !name.equals(FieldConfiguration.FIELD_NAME_FULLTEXT);
+    }
+
+    private boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte || value instanceof BigInteger;
+    }
+
+    private static class FieldValues {
+
+        private final Set<Expression> members = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Set<Object> values = new LinkedHashSet<>();
+        private boolean emitted;
+
+        void add(Expression member, Object[] memberValues) {
+            members.add(member);
+            Collections.addAll(values, memberValues);
+        }
+    }
+}
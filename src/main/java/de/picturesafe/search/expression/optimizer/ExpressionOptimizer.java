@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.expression.optimizer;
+
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Optimizes expressions by {@link Expression#optimize()} and a list of {@link OptimizationRule}s. Rules and {@link Expression#optimize()} are applied
+ * alternately until the expression does not change anymore (at most {@link #MAX_PASSES} times).
+ * <p>
+ * Both process the expression tree recursively, so trees deeper than {@link #MAX_DEPTH} levels are not optimized.
+ */
+public class ExpressionOptimizer {
+
+    public static final int MAX_PASSES = 8;
+    public static final int MAX_DEPTH = 200;
+
+    private final List<OptimizationRule> rules;
+
+    /**
+     * Constructor using the {@link #defaultRules()}
+     */
+    public ExpressionOptimizer() {
+        this(defaultRules());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param rules Rules to apply in the given order
+     */
+    public ExpressionOptimizer(List<OptimizationRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+    }
+
+    /**
+     * Gets the default rules: {@link DeMorganRule}, {@link DuplicateOperandRule}, {@link RangeMergeRule} and {@link EqualsToInRule}.
+     *
+     * @return Default rules
+     */
+    public static List<OptimizationRule> defaultRules() {
+        return Arrays.asList(new DeMorganRule(), new DuplicateOperandRule(), new RangeMergeRule(), new EqualsToInRule());
+    }
+
+    /**
+     * Gets the rules of the optimizer.
+     *
+     * @return Rules in the order they are applied
+     */
+    public List<OptimizationRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Optimizes an expression.
+     *
+     * @param expression    Expression to optimize
+     * @return              Optimized expression (may be null if {@link Expression#optimize()} returns null), the expression itself if the tree is
+     *                      deeper than {@link #MAX_DEPTH} levels
+     */
+    public Expression optimize(Expression expression) {
+        if (expression != null && exceedsMaxDepth(expression)) {
+            return expression;
+        }
+
+        Expression optimized = (expression != null) ? expression.optimize() : null;
+        for (int pass = 0; pass < MAX_PASSES && optimized != null; pass++) {
+            final Expression rewritten = rewrite(optimized);
+            if (rewritten == optimized) {
+                break;
+            }
+            optimized = rewritten.optimize();
+        }
+        return optimized;
+    }
+
+    // Walks the tree level by level, so deep trees do not overflow the stack
+    static boolean exceedsMaxDepth(Expression expression) {
+        List<Expression> level = Collections.singletonList(expression);
+        for (int depth = 1; !level.isEmpty(); depth++) {
+            if (depth > MAX_DEPTH) {
+                return true;
+            }
+            final List<Expression> nextLevel = new ArrayList<>();
+            for (final Expression levelExpression : level) {
+                if (levelExpression instanceof OperationExpression) {
+                    ((OperationExpression) levelExpression).getOperands().stream().filter(Objects::nonNull).forEach(nextLevel::add);
+                } else if (levelExpression instanceof MustNotExpression && ((MustNotExpression) levelExpression).getExpression() != null) {
+                    nextLevel.add(((MustNotExpression) levelExpression).getExpression());
+                }
+            }
+            level = nextLevel;
+        }
+        return false;
+    }
+
+    private Expression rewrite(Expression expression) {
+        Expression rewritten = expression;
+        if (expression.getClass() == OperationExpression.class) {
+            final OperationExpression operationExpression = (OperationExpression) expression;
+            final List<Expression> operands = new ArrayList<>(operationExpression.getOperands().size());
+            boolean changed = false;
+            for (final Expression operand : operationExpression.getOperands()) {
+                final Expression rewrittenOperand = (operand != null) ? rewrite(operand) : null;
+                changed |= rewrittenOperand != operand;
+                operands.add(rewrittenOperand);
+            }
+            if (changed) {
+                rewritten = new OperationExpression(operationExpression.getOperator()).addAll(operands);
+            }
+        } else if (expression.getClass() == MustNotExpression.class && ((MustNotExpression) expression).getExpression() != null) {
+            final Expression negated = ((MustNotExpression) expression).getExpression();
+            final Expression rewrittenNegated = rewrite(negated);
+            if (rewrittenNegated != negated) {
+                rewritten = new MustNotExpression(rewrittenNegated);
+            }
+        }
+
+        for (final OptimizationRule rule : rules) {
+            rewritten = rule.apply(rewritten);
+        }
+        return rewritten;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.expression.optimizer;
+
+import de.picturesafe.search.expression.Expression;
+
+/**
+ * Rule rewriting an expression into an equivalent expression which is cheaper to execute. Rules are applied by the {@link ExpressionOptimizer} to every
+ * node of an expression tree, operands before the operations containing them.
+ * <p>
+ * Rules must not modify the given expressions, because these may be owned by the caller of a search. Rewritten parts have to be new instances.
+ */
+public interface OptimizationRule {
+
+    /**
+     * Applies the rule to an expression.
+     *
+     * @param expression    Expression, its operands have already been rewritten
+     * @return              Rewritten expression or the given expression instance if the rule does not apply
+     */
+    Expression apply(Expression expression);
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.expression.optimizer;
+
+import de.picturesafe.search.expression.ConditionExpression;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.GE;
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.GT;
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.LE;
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.LT;
+
+/**
+ * Merges numeric bounds on the same field (comparisons GE, GT, LE and LT of {@link ValueExpression}s):
+ * <ul>
+ *     <li>AND: only the tightest lower and the tightest upper bound are kept</li>
+ *     <li>OR: only the loosest lower and the loosest upper bound are kept</li>
+ * </ul>
+ * Lower and upper bounds are not combined per default: a document matches a bound if any value of a multi-valued field matches, so a lower and an
+ * upper bound may be matched by different values. E.g. a document with the values [2, 6] matches <code>x &gt;= 5 AND x &lt;= 3</code>, but not the
+ * range [5, 3]. For fields known to hold a single value only (see {@link #RangeMergeRule(Set)}), {@link RangeValueExpression}s are merged into the
+ * bounds as well and inclusive lower and upper bounds combined by AND are merged into a {@link RangeValueExpression}.
+ * <p>
+ * Date bounds are merged by {@link OperationExpression#optimize()}.
+ */
+public class RangeMergeRule implements OptimizationRule {
+
+    private final Set<String> singleValuedFields;
+
+    /**
+     * Constructor for fields which may hold multiple values: only bounds on the same side are merged.
+     */
+    public RangeMergeRule() {
+        this(Collections.emptySet());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param singleValuedFields Names of the fields holding a single value only, lower and upper bounds on these fields are merged
+     */
+    public RangeMergeRule(Set<String> singleValuedFields) {
+        this.singleValuedFields = Collections.unmodifiableSet(new HashSet<>(singleValuedFields));
+    }
+
+    @Override
+    public Expression apply(Expression expression) {
+        if (expression.getClass() != OperationExpression.class) {
+            return expression;
+        }
+
+        final OperationExpression operationExpression = (OperationExpression) expression;
+        final boolean and = operationExpression.getOperator() == OperationExpression.Operator.AND;
+        final Map<String, FieldBounds> boundsByField = new HashMap<>();
+        boolean mergeable = false;
+        for (final Expression operand : operationExpression.getOperands()) {
+            final FieldBounds fieldBounds = addBounds(operand, and, boundsByField);
+            mergeable |= fieldBounds != null && fieldBounds.members.size() > 1;
+        }
+        if (!mergeable) {
+            return expression;
+        }
+
+        final OperationExpression rewritten = new OperationExpression(operationExpression.getOperator());
+        for (final Expression operand : operationExpression.getOperands()) {
+            final FieldBounds fieldBounds = (operand instanceof ConditionExpression) ? boundsByField.get(((ConditionExpression) operand).getName()) : null;
+            if (fieldBounds == null || !fieldBounds.members.contains(operand)) {
+                rewritten.add(operand);
+            } else if (fieldBounds.members.size() == 1) {
+                rewritten.add(operand);
+            } else if (!fieldBounds.emitted) {
+                rewritten.addAll(fieldBounds.merge(and));
+                fieldBounds.emitted = true;
+            }
+        }
+        return rewritten;
+    }
+
+    private FieldBounds addBounds(Expression operand, boolean and, Map<String, FieldBounds> boundsByField) {
+        if (operand == null) {
+            return null;
+        } else if (operand.getClass() == ValueExpression.class) {
+            final ValueExpression valueExpression = (ValueExpression) operand;
+            final BigDecimal key = decimal(valueExpression.getValue());
+            final ConditionExpression.Comparison comparison = valueExpression.getComparison();
+            if (key == null || valueExpression.getBoost() != null || valueExpression.getName() == null
+                    || (comparison != GE && comparison != GT && comparison != LE && comparison != LT)) {
+                return null;
+            }
+
+            final FieldBounds fieldBounds = fieldBounds(valueExpression.getName(), boundsByField);
+            final Bound bound = new Bound(key, valueExpression.getValue(), comparison == GE || comparison == LE, valueExpression);
+            if (comparison == GE || comparison == GT) {
+                fieldBounds.addLower(bound, and);
+            } else {
+                fieldBounds.addUpper(bound, and);
+            }
+            fieldBounds.add(operand);
+            return fieldBounds;
+        } else if (and && operand.getClass() == RangeValueExpression.class && singleValuedFields.contains(((RangeValueExpression) operand).getName())) {
+            // A range has to be matched by a single value, splitting it into bounds is only equivalent for single valued fields
+            final RangeValueExpression rangeExpression = (RangeValueExpression) operand;
+            final BigDecimal minKey = decimal(rangeExpression.getMinValue());
+            final BigDecimal maxKey = decimal(rangeExpression.getMaxValue());
+            if ((minKey == null && rangeExpression.getMinValue() != null)
+                    || (maxKey == null && rangeExpression.getMaxValue() != null) || (minKey == null && maxKey == null)) {
+                return null;
+            }
+
+            final FieldBounds fieldBounds = fieldBounds(rangeExpression.getName(), boundsByField);
+            if (minKey != null) {
+                fieldBounds.addLower(new Bound(minKey, rangeExpression.getMinValue(), true, null), true);
+            }
+            if (maxKey != null) {
+                fieldBounds.addUpper(new Bound(maxKey, rangeExpression.getMaxValue(), true, null), true);
+            }
+            fieldBounds.add(operand);
+            return fieldBounds;
+        }
+        return null;
+    }
+
+    private FieldBounds fieldBounds(String name, Map<String, FieldBounds> boundsByField) {
+        return boundsByField.computeIfAbsent(name, n -> new FieldBounds(n, singleValuedFields.contains(n)));
+    }
+
+    static BigDecimal decimal(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        } else if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        } else if (value instanceof Double || value instanceof Float) {
+            final double doubleValue = ((Number) value).doubleValue();
+            return (!Double.isNaN(doubleValue) && !Double.isInfinite(doubleValue)) ? new BigDecimal(doubleValue) : null;
+        } else {
+            return null;
+        }
+    }
+
+    private static class Bound {
+
+        private final BigDecimal key;
+        private final Object value;
+        private final boolean inclusive;
+        private final ValueExpression source;
+
+        Bound(BigDecimal key, Object value, boolean inclusive, ValueExpression source) {
+            this.key = key;
+            this.value = value;
+            this.inclusive = inclusive;
+            this.source = source;
+        }
+
+        Expression toExpression(String name, boolean lower) {
+            if (source != null) {
+                return source;
+            }
+            final ConditionExpression.Comparison comparison = lower ? (inclusive ? GE : GT) : (inclusive ? LE : LT);
+            return new ValueExpression(name, comparison, value);
+        }
+    }
+
+    private static class FieldBounds {
+
+        private final String name;
+        private final boolean singleValued;
+        private final Set<Expression> members = Collections.newSetFromMap(new IdentityHashMap<>());
+        private Bound lower;
+        private Bound upper;
+        private boolean emitted;
+
+        FieldBounds(String name, boolean singleValued) {
+            this.name = name;
+            this.singleValued = singleValued;
+        }
+
+        void add(Expression member) {
+            members.add(member);
+        }
+
+        // AND keeps the tightest bound, OR the loosest one; on equal values the exclusive bound is tighter
+        void addLower(Bound bound, boolean tightest) {
+            if (lower == null) {
+                lower = bound;
+            } else {
+                final int cmp = bound.key.compareTo(lower.key);
+                final boolean tighter = cmp > 0 || (cmp == 0 && !bound.inclusive && lower.inclusive);
+                final boolean looser = cmp < 0 || (cmp == 0 && bound.inclusive && !lower.inclusive);
+                if (tightest ? tighter : looser) {
+                    lower = bound;
+                }
+            }
+        }
+
+        void addUpper(Bound bound, boolean tightest) {
+            if (upper == null) {
+                upper = bound;
+            } else {
+                final int cmp = bound.key.compareTo(upper.key);
+                final boolean tighter = cmp < 0 || (cmp == 0 && !bound.inclusive && upper.inclusive);
+                final boolean looser = cmp > 0 || (cmp == 0 && bound.inclusive && !upper.inclusive);
+                if (tightest ? tighter : looser) {
+                    upper = bound;
+                }
+            }
+        }
+
+        List<Expression> merge(boolean and) {
+            final List<Expression> merged = new ArrayList<>(2);
+            if (and && singleValued && lower != null && upper != null && lower.inclusive && upper.inclusive && lower.key.compareTo(upper.key) <= 0) {
+                merged.add(new RangeValueExpression(name, lower.value, upper.value));
+                return merged;
+            }
+            if (lower != null) {
+                merged.add(lower.toExpression(name, true));
+            }
+            if (upper != null) {
+                merged.add(upper.toExpression(name, false));
+            }
+            return merged;
+        }
+    }
+}
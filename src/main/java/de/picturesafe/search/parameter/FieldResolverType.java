@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.parameter;
+
+/**
+ * Defines how the values of the fields to resolve are fetched from Elasticsearch.
+ *
+ * @see SearchParameter#getFieldsToResolve()
+ */
+public enum FieldResolverType {
+
+    /**
+     * Values are taken from the filtered document source
+     */
+    SOURCE_VALUES,
+
+    /**
+     * Values are taken from the doc values of the fields, the document source is not fetched. Fields with multiple doc values are returned as list of
+     * all values, fields with a single doc value as single value.
+     */
+    DOC_VALUES,
+
+    /**
+     * Values of keyword, numeric, date and boolean fields are taken from doc values, values of all other fields from the filtered document source.
+     * If no fields to resolve are defined the document source will not be fetched at all.
+     * <p>
+     * Doc values may differ from the values in the document source: keywords are returned normalized (e.g. lowercased by a normalizer), dates in the
+     * format of the field mapping, numbers in the precision of the field type (e.g. scaled floats), multiple values sorted and without duplicates.
+     * Fields with multiple doc values are returned as list, fields with a single doc value as single value even if the source contains an array.
+     */
+    AUTO
+}
@@ -28,6 +28,16 @@ import java.util.List;
  */
 public class SearchParameter {
 
+    /**
+     * Value for {@link #getMaxTrackTotalHits()} to disable tracking of total hits
+     */
+    public static final long TRACK_TOTAL_HITS_DISABLED = -1;
+
+    /**
+     * Value for {@link #getMaxTrackTotalHits()} to track total hits accurately
+     */
+    public static final long TRACK_TOTAL_HITS_ACCURATE = Integer.MAX_VALUE;
+
     public static final SearchParameter DEFAULT = builder().build();
 
     private final List<SortOption> sortOptions;
@@ -43,6 +53,13 @@ public class SearchParameter {
     private final List<SearchAggregation> aggregations;
     private final List<String> fieldsToResolve;
     private final boolean optimizeExpressions;
+    private final Boolean resultCache;
+    private final boolean lazyTotalHitCount;
+    private final FieldResolverType fieldResolverType;
+    private final Boolean requestCache;
+    private final String preference;
+    private final String routing;
+    private final boolean profile;
 
     private SearchParameter(Builder builder) {
         sortOptions = builder.sortOptions;
@@ -58,6 +75,13 @@ public class SearchParameter {
         aggregations = builder.aggregations;
         fieldsToResolve = builder.fieldsToResolve;
         optimizeExpressions = builder.optimizeExpressions;
+        resultCache = builder.resultCache;
+        lazyTotalHitCount = builder.lazyTotalHitCount;
+        fieldResolverType = builder.fieldResolverType;
+        requestCache = builder.requestCache;
+        preference = builder.preference;
+        routing = builder.routing;
+        profile = builder.profile;
     }
 
     /**
@@ -91,7 +115,8 @@ public class SearchParameter {
      * Gets the maximum number of total hits to track. If this number is exceeded by the number of current search hits tracking will be stopped and the total
      * hits count will be marked as not exact.
      *
-     * @return Maximum number of total hits to track (null = use default value)
+     * @return Maximum number of total hits to track (null = use default value, see {@link #TRACK_TOTAL_HITS_DISABLED} and
+     *         {@link #TRACK_TOTAL_HITS_ACCURATE})
      */
     public Long getMaxTrackTotalHits() {
         return maxTrackTotalHits;
@@ -185,6 +210,72 @@ public class SearchParameter {
         return optimizeExpressions;
     }
 
+    /**
+     * Gets if the search result may be served from and stored in the client side result cache.
+     *
+     * @return true if the result cache should be used, false if it should be bypassed (null = use service default)
+     */
+    public Boolean getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Gets if the total hit count should be resolved lazily. If enabled, total hits will not be tracked by the search itself. The exact total hit
+     * count will be determined by a separate count request when it is requested from the {@link de.picturesafe.search.elasticsearch.model.SearchResult}.
+     *
+     * @return true if the total hit count should be resolved lazily
+     */
+    public boolean isLazyTotalHitCount() {
+        return lazyTotalHitCount;
+    }
+
+    /**
+     * Gets how the values of the fields to resolve are fetched (default=SOURCE_VALUES).
+     *
+     * @return {@link FieldResolverType}
+     */
+    public FieldResolverType getFieldResolverType() {
+        return fieldResolverType;
+    }
+
+    /**
+     * Gets if the shard request cache of elasticsearch should be used for the search.
+     *
+     * @return true to use the shard request cache, false to bypass it (null = default: enabled for size=0 searches with aggregations)
+     */
+    public Boolean getRequestCache() {
+        return requestCache;
+    }
+
+    /**
+     * Gets the preference controlling which shard copies execute the search, e.g. a custom string to route searches of the same user
+     * to the same replicas.
+     *
+     * @return Search preference (null = default: account based preference if enabled)
+     */
+    public String getPreference() {
+        return preference;
+    }
+
+    /**
+     * Gets the routing value(s) limiting the search to the shards of the given routing keys.
+     *
+     * @return Comma separated routing values
+     */
+    public String getRouting() {
+        return routing;
+    }
+
+    /**
+     * Gets if the search should be profiled. The timings of the query clauses, collectors and aggregations will be attached to the search result
+     * (see {@link de.picturesafe.search.elasticsearch.model.SearchResult#getProfile()}). Profiled searches bypass the result cache.
+     *
+     * @return true if the search should be profiled
+     */
+    public boolean isProfile() {
+        return profile;
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this, new CustomJsonToStringStyle()) //--
@@ -201,6 +292,13 @@ public class SearchParameter {
                 .append("aggregations", aggregations) //--
                 .append("fieldsToResolve", fieldsToResolve) //--
                 .append("optimizeExpressions", optimizeExpressions) //--
+                .append("resultCache", resultCache) //--
+                .append("lazyTotalHitCount", lazyTotalHitCount) //--
+                .append("fieldResolverType", fieldResolverType) //--
+                .append("requestCache", requestCache) //--
+                .append("preference", preference) //--
+                .append("routing", routing) //--
+                .append("profile", profile) //--
                 .toString();
     }
 
@@ -222,6 +320,13 @@ public class SearchParameter {
         List<SearchAggregation> aggregations = new ArrayList<>();
         List<String> fieldsToResolve = new ArrayList<>();
         boolean optimizeExpressions;
+        Boolean resultCache;
+        boolean lazyTotalHitCount;
+        FieldResolverType fieldResolverType = FieldResolverType.SOURCE_VALUES;
+        Boolean requestCache;
+        String preference;
+        String routing;
+        boolean profile;
 
         private Builder() {
         }
@@ -285,7 +390,8 @@ public class SearchParameter {
          * Sets the maximum number of total hits to track. If this number is exceeded by the number of current search hits tracking will be stopped and the
          * total hits count will be marked as not exact.
          *
-         * @param maxTrackTotalHits Maximum number of total hits to track (null = use default value)
+         * @param maxTrackTotalHits Maximum number of total hits to track (null = use default value, see {@link #TRACK_TOTAL_HITS_DISABLED} and
+         *                          {@link #TRACK_TOTAL_HITS_ACCURATE})
          * @return Builder
          */
         public Builder maxTrackTotalHits(Long maxTrackTotalHits) {
@@ -421,6 +527,86 @@ public class SearchParameter {
             return this;
         }
 
+        /**
+         * Sets if the search result may be served from and stored in the client side result cache.
+         *
+         * @param resultCache true if the result cache should be used, false if it should be bypassed (null = use service default)
+         * @return Builder
+         */
+        public Builder resultCache(Boolean resultCache) {
+            this.resultCache = resultCache;
+            return this;
+        }
+
+        /**
+         * Sets if the total hit count should be resolved lazily. If enabled, total hits will not be tracked by the search itself. The exact total hit
+         * count will be determined by a separate count request when it is requested from the {@link de.picturesafe.search.elasticsearch.model.SearchResult}.
+         *
+         * @param lazyTotalHitCount true if the total hit count should be resolved lazily
+         * @return Builder
+         */
+        public Builder lazyTotalHitCount(boolean lazyTotalHitCount) {
+            this.lazyTotalHitCount = lazyTotalHitCount;
+            return this;
+        }
+
+        /**
+         * Sets how the values of the fields to resolve are fetched (default=SOURCE_VALUES).
+         *
+         * @param fieldResolverType {@link FieldResolverType}
+         * @return Builder
+         */
+        public Builder fieldResolverType(FieldResolverType fieldResolverType) {
+            this.fieldResolverType = fieldResolverType;
+            return this;
+        }
+
+        /**
+         * Sets if the shard request cache of elasticsearch should be used for the search.
+         *
+         * @param requestCache true to use the shard request cache, false to bypass it (null = default: enabled for size=0 searches with aggregations)
+         * @return Builder
+         */
+        public Builder requestCache(Boolean requestCache) {
+            this.requestCache = requestCache;
+            return this;
+        }
+
+        /**
+         * Sets the preference controlling which shard copies execute the search, e.g. a custom string to route searches of the same user
+         * to the same replicas.
+         *
+         * @param preference Search preference (null = default: account based preference if enabled)
+         * @return Builder
+         */
+        public Builder preference(String preference) {
+            this.preference = preference;
+            return this;
+        }
+
+        /**
+         * Sets the routing value(s) limiting the search to the shards of the given routing keys.
+         *
+         * @param routing Comma separated routing values
+         * @return Builder
+         */
+        public Builder routing(String routing) {
+            this.routing = routing;
+            return this;
+        }
+
+        /**
+         * Sets if the search should be profiled. The timings of the query clauses, collectors and aggregations will be attached to the search result.
+         * Profiling adds a significant overhead and should only be used to analyze slow searches.
+         *
+         * @param profile true if the search should be profiled
+         * @return Builder
+         */
+        public Builder profile(boolean profile) {
+            this.profile = profile;
+            return this;
+        }
+
         public SearchParameter build() {
             return new SearchParameter(this);
         }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.parameter;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Placeholders for parameters of search templates.
+ * <p>
+ * A placeholder can be used as the value of an expression which is executed as search template (see
+ * {@link de.picturesafe.search.elasticsearch.ElasticsearchService#searchTemplate}). The actual parameter value will be substituted by Elasticsearch
+ * on execution. Parameter values are rendered as JSON strings, so placeholders are only supported for single values which are passed unmodified
+ * into the query (e.g. keyword, numeric and date values, but not fulltext query strings or lists).
+ */
+public final class TemplateParameter {
+
+    private static final String PREFIX = "{{";
+    private static final String SUFFIX = "}}";
+
+    private TemplateParameter() {
+    }
+
+    /**
+     * Creates the placeholder for a template parameter.
+     *
+     * @param name  Name of the parameter (letters, digits and underscores)
+     * @return      Placeholder to be used as expression value
+     */
+    public static String placeholder(String name) {
+        Validate.isTrue(name != null && name.matches("\\w+"), "Parameter 'name' must consist of letters, digits and underscores only!");
+        return PREFIX + name + SUFFIX;
+    }
+
+    /**
+     * Checks if a value is a template parameter placeholder.
+     *
+     * @param value Value to check
+     * @return      TRUE if the value is a placeholder
+     */
+    public static boolean isPlaceholder(String value) {
+        return value != null && value.startsWith(PREFIX) && value.endsWith(SUFFIX)
+                && value.substring(PREFIX.length(), value.length() - SUFFIX.length()).matches("\\w+");
+    }
+}
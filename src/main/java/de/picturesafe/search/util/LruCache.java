@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Thread safe, size bounded cache evicting the least recently used entries. Entries may optionally expire after a time to live.
+ *
+ * @param <K> Type of the cache keys
+ * @param <V> Type of the cache values
+ */
+public class LruCache<K, V> {
+
+    private final int maxSize;
+    private final long timeToLiveNanos;
+    private final Map<K, CacheEntry<V>> entries;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param maxSize       Maximum number of cache entries
+     * @param timeToLive    Time to live of cache entries (less or equal 0 = entries do not expire)
+     * @param timeUnit      Time unit of the time to live
+     */
+    public LruCache(int maxSize, long timeToLive, TimeUnit timeUnit) {
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = (timeToLive > 0) ? timeUnit.toNanos(timeToLive) : 0;
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                return size() > LruCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets a cached value.
+     *
+     * @param key   Key of the value
+     * @return      Cached value or null if the key is not cached or the entry has expired
+     */
+    public synchronized V get(K key) {
+        final CacheEntry<V> entry = entries.get(key);
+        if (entry != null && isExpired(entry)) {
+            entries.remove(key);
+        } else if (entry != null) {
+            hitCount.incrementAndGet();
+            return entry.value;
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Puts a value into the cache.
+     *
+     * @param key   Key of the value
+     * @param value Value to cache
+     */
+    public synchronized void put(K key, V value) {
+        if (maxSize > 0) {
+            entries.put(key, new CacheEntry<>(value, nanoTime()));
+        }
+    }
+
+    /**
+     * Removes a cached value.
+     *
+     * @param key Key of the value
+     */
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes all cached values with matching keys.
+     *
+     * @param keyPredicate Predicate matching the keys to remove
+     */
+    public synchronized void removeIf(Predicate<K> keyPredicate) {
+        entries.keySet().removeIf(keyPredicate);
+    }
+
+    /**
+     * Removes all cached values.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of cache entries (including expired entries not yet evicted).
+     *
+     * @return Number of cache entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all expired entries.
+     */
+    public synchronized void evictExpired() {
+        if (timeToLiveNanos > 0) {
+            final Iterator<CacheEntry<V>> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (isExpired(it.next())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of cache hits.
+     *
+     * @return Number of cache hits
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of cache misses.
+     *
+     * @return Number of cache misses
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the ratio of cache hits to all cache requests.
+     *
+     * @return Cache hit rate (0 if the cache was not requested yet)
+     */
+    public double getHitRate() {
+        final long hits = hitCount.get();
+        final long requests = hits + missCount.get();
+        return (requests > 0) ? (double) hits / requests : 0;
+    }
+
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private boolean isExpired(CacheEntry<V> entry) {
+        return timeToLiveNanos > 0 && nanoTime() - entry.created > timeToLiveNanos;
+    }
+
+    private static class CacheEntry<V> {
+        final V value;
+        final long created;
+
+        CacheEntry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+}
@@ -34,6 +34,7 @@ import de.picturesafe.search.expression.InExpression;
 import de.picturesafe.search.expression.IsNullExpression;
 import de.picturesafe.search.expression.KeywordExpression;
 import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
 import de.picturesafe.search.expression.RangeValueExpression;
 import de.picturesafe.search.expression.ValueExpression;
 import de.picturesafe.search.parameter.SearchParameter;
@@ -57,6 +58,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static de.picturesafe.search.elasticsearch.config.FieldConfiguration.FIELD_NAME_ID;
 import static org.junit.Assert.assertEquals;
@@ -184,6 +186,18 @@ public abstract class AbstractElasticsearchServiceInnerFieldsIT {
         assertEquals(3, result.getSearchResultItems().get(0).getId(Long.class).longValue());
     }
 
+    @Test
+    public void testOptimizedNegatedOperation() {
+        // Pushing the negation down to the operands changes the semantics for nested objects and must not alter the result
+        final Expression expression = new MustNotExpression(OperationExpression.and(
+                new ValueExpression(articleFieldName + ".rubric", "News"), new ValueExpression(articleFieldName + ".page", 1)));
+        final SearchResult result = elasticsearchService.search(indexAlias, expression,
+                SearchParameter.builder().sortOptions(SortOption.asc("id")).build());
+        final SearchResult optimizedResult = elasticsearchService.search(indexAlias, expression,
+                SearchParameter.builder().sortOptions(SortOption.asc("id")).optimizeExpressions(true).build());
+        assertEquals(ids(result), ids(optimizedResult));
+    }
+
     @Test
     public void testFulltextExpression() {
         final Expression expression = new FulltextExpression("another test");
@@ -323,6 +337,10 @@ public abstract class AbstractElasticsearchServiceInnerFieldsIT {
         assertEquals(2, result.getSearchResultItems().get(1).getId(Long.class).longValue());
     }
 
+    private List<Long> ids(SearchResult result) {
+        return result.getSearchResultItems().stream().map(item -> item.getId(Long.class)).collect(Collectors.toList());
+    }
+
     private Date parseDate(String date) {
         try {
             return new SimpleDateFormat("dd.MM.yyyy").parse(date);
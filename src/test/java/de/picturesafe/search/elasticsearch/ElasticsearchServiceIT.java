@@ -26,6 +26,8 @@ import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
 import de.picturesafe.search.elasticsearch.model.IndexObject;
 import de.picturesafe.search.elasticsearch.model.ResultFacet;
 import de.picturesafe.search.elasticsearch.model.ResultFacetItem;
+import de.picturesafe.search.elasticsearch.model.SearchProfile;
+import de.picturesafe.search.elasticsearch.model.SearchProfileEntry;
 import de.picturesafe.search.elasticsearch.model.SearchResult;
 import de.picturesafe.search.elasticsearch.model.SearchResultItem;
 import de.picturesafe.search.expression.DayExpression;
@@ -39,9 +41,12 @@ import de.picturesafe.search.expression.OperationExpression;
 import de.picturesafe.search.expression.RangeValueExpression;
 import de.picturesafe.search.expression.ValueExpression;
 import de.picturesafe.search.parameter.CollapseOption;
+import de.picturesafe.search.parameter.FieldResolverType;
 import de.picturesafe.search.parameter.InnerHitsOption;
+import de.picturesafe.search.parameter.SearchAggregation;
 import de.picturesafe.search.parameter.SearchParameter;
 import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.parameter.TemplateParameter;
 import de.picturesafe.search.parameter.aggregation.DateHistogramAggregation;
 import de.picturesafe.search.parameter.aggregation.DefaultAggregation;
 import de.picturesafe.search.spring.configuration.TestConfiguration;
@@ -60,6 +65,7 @@ import org.springframework.test.context.support.AnnotationConfigContextLoader;
 
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -70,7 +76,10 @@ import static de.picturesafe.search.elasticsearch.connect.util.ElasticDocumentUt
 import static de.picturesafe.search.elasticsearch.connect.util.ElasticDocumentUtils.getString;
 import static de.picturesafe.search.parameter.aggregation.DateHistogramAggregation.IntervalType.CALENDAR;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(classes = {TestConfiguration.class, ElasticsearchServiceIT.Config.class, ElasticsearchServiceImpl.class},
@@ -486,6 +495,140 @@ public class ElasticsearchServiceIT extends AbstractElasticsearchServiceIT {
         assertEquals(2, innerHit.getAttribute("count"));
     }
 
+    @Test
+    public void testCountAndExists() {
+        indexName = elasticsearchService.createIndexWithAlias(indexAlias);
+        final List<Map<String, Object>> docs = Arrays.asList(
+                DocumentBuilder.id(1).put("title", "count").put("keyword", "Elastic").build(),
+                DocumentBuilder.id(2).put("title", "count").put("keyword", "Elastic").build(),
+                DocumentBuilder.id(3).put("title", "count").put("keyword", "Java").build()
+        );
+        elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BLOCKING, docs);
+
+        assertEquals(3, elasticsearchService.count(indexAlias, new ValueExpression("title", "count")));
+        assertEquals(2, elasticsearchService.count(indexAlias, new KeywordExpression("keyword", "Elastic")));
+        assertEquals(0, elasticsearchService.count(indexAlias, new KeywordExpression("keyword", "Kotlin")));
+        assertEquals(3, elasticsearchService.count(indexAlias, new FindAllExpression()));
+
+        assertTrue(elasticsearchService.exists(indexAlias, new KeywordExpression("keyword", "Java")));
+        assertFalse(elasticsearchService.exists(indexAlias, new KeywordExpression("keyword", "Kotlin")));
+    }
+
+    @Test
+    public void testFacets() {
+        indexName = elasticsearchService.createIndexWithAlias(indexAlias);
+        final List<Map<String, Object>> docs = Arrays.asList(
+                DocumentBuilder.id(1).put("title", "facets").put("location", "Hamburg").build(),
+                DocumentBuilder.id(2).put("title", "facets").put("location", "Hamburg").build(),
+                DocumentBuilder.id(3).put("title", "facets").put("location", "Buchholz").build()
+        );
+        elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BLOCKING, docs);
+
+        final List<SearchAggregation> aggregations = Collections.singletonList(DefaultAggregation.field("location"));
+        List<ResultFacet> facets = elasticsearchService.facets(indexAlias, new ValueExpression("title", "facets"), aggregations);
+        assertEquals(1, facets.size());
+        assertEquals(3, facets.get(0).getCount());
+        assertEquals("Hamburg", facets.get(0).getFacetItems().get(0).getValue());
+        assertEquals(2, facets.get(0).getFacetItems().get(0).getCount());
+        assertEquals(facets, elasticsearchService.facets(indexAlias, new ValueExpression("title", "facets"), aggregations));
+
+        elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BLOCKING,
+                DocumentBuilder.id(4).put("title", "facets").put("location", "Buchholz").build());
+        facets = elasticsearchService.facets(indexAlias, new ValueExpression("title", "facets"), aggregations);
+        assertEquals(4, facets.get(0).getCount());
+    }
+
+    @Test
+    public void testProfile() {
+        indexName = elasticsearchService.createIndexWithAlias(indexAlias);
+        elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BLOCKING,
+                DocumentBuilder.id(1).put("title", "profile").put("keyword", "Elastic").build());
+
+        final Expression expression = OperationExpression.and(new ValueExpression("title", "profile"), new KeywordExpression("keyword", "Elastic"));
+        SearchResult result = elasticsearchService.search(indexAlias, expression, SearchParameter.DEFAULT);
+        assertNull(result.getProfile());
+
+        result = elasticsearchService.search(indexAlias, expression, SearchParameter.builder().profile(true).build());
+        assertEquals(1, result.getTotalHitCount());
+        final SearchProfile profile = result.getProfile();
+        assertNotNull(profile);
+        assertFalse(profile.getEntries(SearchProfileEntry.Type.QUERY).isEmpty());
+        assertFalse(profile.getEntries(SearchProfileEntry.Type.COLLECTOR).isEmpty());
+        assertTrue(profile.getEntries(SearchProfileEntry.Type.QUERY).stream().anyMatch(e -> e.getExpression() != null));
+        LOGGER.debug("Most expensive clauses:\n{}", profile.printTopEntries(5));
+    }
+
+    @Test
+    public void testLazyTotalHitCount() {
+        indexName = elasticsearchService.createIndexWithAlias(indexAlias);
+        final List<Map<String, Object>> docs = Arrays.asList(
+                DocumentBuilder.id(1).put("title", "lazy").build(),
+                DocumentBuilder.id(2).put("title", "lazy").build(),
+                DocumentBuilder.id(3).put("title", "lazy").build()
+        );
+        elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BLOCKING, docs);
+
+        SearchResult result = elasticsearchService.search(indexAlias, new ValueExpression("title", "lazy"),
+                SearchParameter.builder().pageSize(2).lazyTotalHitCount(true).build());
+        assertEquals(2, result.getSearchResultItems().size());
+        assertEquals(3, result.getTotalHitCount());
+        assertEquals(2, result.getPageCount());
+        assertTrue(result.isExactHitCount());
+
+        result = elasticsearchService.search(indexAlias, new ValueExpression("title", "lazy"),
+                SearchParameter.builder().pageSize(2).maxTrackTotalHits(SearchParameter.TRACK_TOTAL_HITS_DISABLED).build());
+        assertEquals(2, result.getTotalHitCount());
+        assertFalse(result.isExactHitCount());
+        assertEquals(2, result.getPageCount());
+    }
+
+    @Test
+    public void testAutoFieldResolverType() {
+        indexName = elasticsearchService.createIndexWithAlias(indexAlias);
+        elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BLOCKING,
+                DocumentBuilder.id(1).put("title", "auto resolver").put("keyword", "Elastic").put("count", 7).put("caption", "caption").build());
+
+        final SearchResult result = elasticsearchService.search(indexAlias, new ValueExpression("title", "auto"),
+                SearchParameter.builder().fieldResolverType(FieldResolverType.AUTO).fieldsToResolve("keyword", "count", "title").build());
+        assertEquals(1, result.getTotalHitCount());
+        final SearchResultItem item = result.getSearchResultItems().get(0);
+        assertEquals("Elastic", item.getAttribute("keyword"));
+        assertEquals(7, ((Number) item.getAttribute("count")).intValue());
+        assertEquals("auto resolver", item.getAttribute("title"));
+        assertNull(item.getAttribute("caption"));
+    }
+
+    @Test
+    public void testSearchTemplate() {
+        indexName = elasticsearchService.createIndexWithAlias(indexAlias);
+        final List<Map<String, Object>> docs = Arrays.asList(
+                DocumentBuilder.id(1).put("title", "template").put("keyword", "Elastic").put("count", 1).build(),
+                DocumentBuilder.id(2).put("title", "template").put("keyword", "Elastic").put("count", 2).build(),
+                DocumentBuilder.id(3).put("title", "template").put("keyword", "Java").put("count", 3).build()
+        );
+        elasticsearchService.addToIndex(indexAlias, DataChangeProcessingMode.BLOCKING, docs);
+
+        final Expression expression = OperationExpression.and(
+                new KeywordExpression("keyword", TemplateParameter.placeholder("keyword")),
+                new ValueExpression("count", ValueExpression.Comparison.GE, TemplateParameter.placeholder("minCount")));
+        final SearchParameter searchParameter = SearchParameter.builder().sortOptions(SortOption.asc("count")).build();
+
+        SearchResult result = elasticsearchService.searchTemplate(indexAlias, null, expression, searchParameter,
+                DocumentBuilder.withoutId().put("keyword", "Elastic").put("minCount", 1).build());
+        assertEquals(2, result.getTotalHitCount());
+        assertEquals(1, result.getSearchResultItems().get(0).getId(Long.class).longValue());
+
+        result = elasticsearchService.searchTemplate(indexAlias, null, expression, searchParameter,
+                DocumentBuilder.withoutId().put("keyword", "Elastic").put("minCount", 2).build());
+        assertEquals(1, result.getTotalHitCount());
+        assertEquals(2, result.getSearchResultItems().get(0).getId(Long.class).longValue());
+
+        result = elasticsearchService.searchTemplate(indexAlias, null, expression, searchParameter,
+                DocumentBuilder.withoutId().put("keyword", "Java").put("minCount", 1).build());
+        assertEquals(1, result.getTotalHitCount());
+        assertEquals(3, result.getSearchResultItems().get(0).getId(Long.class).longValue());
+    }
+
     private Date parseDate(String date) {
         try {
             return new SimpleDateFormat("dd.MM.yyyy").parse(date);
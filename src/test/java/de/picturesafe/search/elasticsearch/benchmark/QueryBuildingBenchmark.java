@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.benchmark;
+
+import de.picturesafe.search.elasticsearch.config.ElasticsearchType;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
+import de.picturesafe.search.elasticsearch.config.impl.StandardFieldConfiguration;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
+import de.picturesafe.search.elasticsearch.connect.filter.DefaultExpressionFilterFactory;
+import de.picturesafe.search.elasticsearch.connect.filter.FilterFactory;
+import de.picturesafe.search.elasticsearch.connect.impl.ElasticsearchImpl;
+import de.picturesafe.search.elasticsearch.connect.query.FindAllQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.FulltextQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.NestedQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.OperationExpressionQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.QueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.RelevanceSortQueryFactory;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures query building for expression trees of growing size, with and without the query builder cache, and compares processed-expression
+ * tracking by equality with tracking by identity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBuildingBenchmark {
+
+    private static final int FAN_OUT = 10;
+
+    @Param({"10", "1000", "50000"})
+    public int leaves;
+
+    private QueryBuildingElasticsearch elasticsearch;
+    private QueryBuildingElasticsearch cachingElasticsearch;
+    private MappingConfiguration mappingConfiguration;
+    private Expression expression;
+    private List<Expression> nodes;
+
+    @Setup
+    public void setup() {
+        final QueryConfiguration queryConfiguration = new QueryConfiguration();
+        final List<FilterFactory> filterFactories
+                = Collections.singletonList(new DefaultExpressionFilterFactory(queryConfiguration, "Europe/Berlin"));
+        final List<QueryFactory> queryFactories = Arrays.asList(new FindAllQueryFactory(), new FulltextQueryFactory(queryConfiguration),
+                new OperationExpressionQueryFactory(), new NestedQueryFactory(filterFactories), new RelevanceSortQueryFactory(filterFactories));
+        elasticsearch = new QueryBuildingElasticsearch(queryFactories, filterFactories);
+        cachingElasticsearch = new QueryBuildingElasticsearch(queryFactories, filterFactories);
+        cachingElasticsearch.setQueryCacheMaxSize(10);
+
+        final List<FieldConfiguration> fields = new ArrayList<>();
+        fields.add(FieldConfiguration.ID_FIELD);
+        fields.add(FieldConfiguration.FULLTEXT_FIELD);
+        fields.add(StandardFieldConfiguration.builder("caption", ElasticsearchType.TEXT).copyToFulltext(true).build());
+        fields.add(StandardFieldConfiguration.builder("number", ElasticsearchType.INTEGER).build());
+        mappingConfiguration = new MappingConfiguration(fields);
+
+        final List<Expression> level = new ArrayList<>();
+        for (int i = 0; i < leaves; i++) {
+            level.add((i % 2 == 0) ? new ValueExpression("caption", "term" + (i % 100)) : new ValueExpression("number", i % 100));
+        }
+        nodes = new ArrayList<>(level);
+        expression = group(level, false);
+    }
+
+    private Expression group(List<Expression> level, boolean and) {
+        if (level.size() == 1) {
+            return level.get(0);
+        }
+        final List<Expression> next = new ArrayList<>();
+        for (int i = 0; i < level.size(); i += FAN_OUT) {
+            final List<Expression> operands = level.subList(i, Math.min(i + FAN_OUT, level.size()));
+            final OperationExpression operation = and ? OperationExpression.and(operands) : OperationExpression.or(operands);
+            nodes.add(operation);
+            next.add(operation);
+        }
+        return group(next, !and);
+    }
+
+    @Benchmark
+    public QueryBuilder buildQuery() {
+        return elasticsearch.buildQuery(new QueryDto(expression, Locale.GERMAN), mappingConfiguration);
+    }
+
+    @Benchmark
+    public QueryBuilder buildQueryCached() {
+        return cachingElasticsearch.buildQuery(new QueryDto(expression, Locale.GERMAN), mappingConfiguration);
+    }
+
+    @Benchmark
+    public void trackByEquality(Blackhole blackhole) {
+        track(new HashSet<>(), blackhole);
+    }
+
+    @Benchmark
+    public void trackByIdentity(Blackhole blackhole) {
+        track(Collections.newSetFromMap(new IdentityHashMap<>()), blackhole);
+    }
+
+    private void track(Set<Expression> processed, Blackhole blackhole) {
+        for (final Expression node : nodes) {
+            blackhole.consume(processed.contains(node));
+            processed.add(node);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(QueryBuildingBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static class QueryBuildingElasticsearch extends ElasticsearchImpl {
+
+        QueryBuildingElasticsearch(List<QueryFactory> queryFactories, List<FilterFactory> filterFactories) {
+            super(null, null, queryFactories, filterFactories, "Europe/Berlin");
+        }
+
+        QueryBuilder buildQuery(QueryDto queryDto, MappingConfiguration mappingConfiguration) {
+            return createQueryAndFilter(queryDto, mappingConfiguration);
+        }
+    }
+}
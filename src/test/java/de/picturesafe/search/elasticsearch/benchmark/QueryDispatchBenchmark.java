@@ -0,0 +1,221 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.benchmark;
+
+import de.picturesafe.search.elasticsearch.config.ElasticsearchType;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
+import de.picturesafe.search.elasticsearch.config.impl.StandardFieldConfiguration;
+import de.picturesafe.search.elasticsearch.connect.context.SearchContext;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
+import de.picturesafe.search.elasticsearch.connect.filter.ExpressionFilterFactory;
+import de.picturesafe.search.elasticsearch.connect.filter.FilterFactory;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.DayExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.DayRangeExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.ExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.ExpressionFilterBuilderContext;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.InExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.IsNullExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.KeywordExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.MustNotExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.OperationExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.RangeValueExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.ValueExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.valuepreparation.KeywordValuePreparer;
+import de.picturesafe.search.elasticsearch.connect.impl.ElasticsearchImpl;
+import de.picturesafe.search.elasticsearch.connect.query.FindAllQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.FulltextQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.NestedQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.OperationExpressionQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.QueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.RelevanceSortQueryFactory;
+import de.picturesafe.search.expression.DayExpression;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.expression.IsNullExpression;
+import de.picturesafe.search.expression.KeywordExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares query building with class-indexed dispatch of query factories and expression filter builders against a linear scan of their
+ * supports() methods, for an expression of about 200 nodes mixing the expression types of typical search forms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryDispatchBenchmark {
+
+    private static final String TIME_ZONE = "Europe/Berlin";
+
+    private DispatchElasticsearch dispatchElasticsearch;
+    private DispatchElasticsearch linearElasticsearch;
+    private MappingConfiguration mappingConfiguration;
+    private Expression expression;
+
+    @Setup
+    public void setup() {
+        final QueryConfiguration queryConfiguration = new QueryConfiguration();
+        dispatchElasticsearch = elasticsearch(queryConfiguration, false);
+        linearElasticsearch = elasticsearch(queryConfiguration, true);
+
+        final List<FieldConfiguration> fields = new ArrayList<>();
+        fields.add(FieldConfiguration.ID_FIELD);
+        fields.add(FieldConfiguration.FULLTEXT_FIELD);
+        fields.add(StandardFieldConfiguration.builder("caption", ElasticsearchType.TEXT).copyToFulltext(true).build());
+        fields.add(StandardFieldConfiguration.builder("keyword", ElasticsearchType.KEYWORD).build());
+        fields.add(StandardFieldConfiguration.builder("number", ElasticsearchType.INTEGER).build());
+        fields.add(StandardFieldConfiguration.builder("created", ElasticsearchType.DATE).build());
+        mappingConfiguration = new MappingConfiguration(fields);
+
+        // 20 groups of 9 predicates plus the operations: about 200 nodes
+        final Date day = new Date(1600000000000L);
+        final List<Expression> groups = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            groups.add(OperationExpression.and(
+                    new FulltextExpression("term" + i),
+                    OperationExpression.or(new ValueExpression("caption", "caption" + i), new KeywordExpression("keyword", "keyword" + i)),
+                    new InExpression("number", i, i + 1, i + 2),
+                    new RangeValueExpression("number", i, i + 100),
+                    new DayExpression("created", day),
+                    new MustNotExpression(new KeywordExpression("keyword", "excluded" + i)),
+                    new IsNullExpression("caption", false)));
+        }
+        expression = OperationExpression.or(groups);
+    }
+
+    private DispatchElasticsearch elasticsearch(QueryConfiguration queryConfiguration, boolean linear) {
+        final List<ExpressionFilterBuilder> builders = Arrays.asList(
+                new OperationExpressionFilterBuilder(),
+                new MustNotExpressionFilterBuilder(),
+                new IsNullExpressionFilterBuilder(),
+                new InExpressionFilterBuilder(),
+                new RangeValueExpressionFilterBuilder(TIME_ZONE),
+                new DayRangeExpressionFilterBuilder(TIME_ZONE),
+                new DayExpressionFilterBuilder(TIME_ZONE),
+                new KeywordExpressionFilterBuilder(),
+                new ValueExpressionFilterBuilder(Collections.singletonList(new KeywordValuePreparer()), queryConfiguration, TIME_ZONE));
+        final List<FilterFactory> filterFactories = Collections.singletonList(
+                linear ? new LinearExpressionFilterFactory(builders) : new ExpressionFilterFactory(builders));
+        final List<QueryFactory> queryFactories = Arrays.asList(new FindAllQueryFactory(), new FulltextQueryFactory(queryConfiguration),
+                new OperationExpressionQueryFactory(), new NestedQueryFactory(filterFactories), new RelevanceSortQueryFactory(filterFactories));
+        return new DispatchElasticsearch(queryFactories, filterFactories, linear);
+    }
+
+    @Benchmark
+    public QueryBuilder classDispatch() {
+        return dispatchElasticsearch.buildQuery(new QueryDto(expression, Locale.GERMAN), mappingConfiguration);
+    }
+
+    @Benchmark
+    public QueryBuilder linearScan() {
+        return linearElasticsearch.buildQuery(new QueryDto(expression, Locale.GERMAN), mappingConfiguration);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(QueryDispatchBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static class DispatchElasticsearch extends ElasticsearchImpl {
+
+        private final boolean linear;
+
+        DispatchElasticsearch(List<QueryFactory> queryFactories, List<FilterFactory> filterFactories, boolean linear) {
+            super(null, null, queryFactories, filterFactories, TIME_ZONE);
+            this.linear = linear;
+            setQueryFlatteningEnabled(false);
+        }
+
+        QueryBuilder buildQuery(QueryDto queryDto, MappingConfiguration mappingConfiguration) {
+            return createQueryAndFilter(queryDto, mappingConfiguration);
+        }
+
+        @Override
+        public QueryBuilder createQuery(SearchContext context) {
+            if (!linear) {
+                return super.createQuery(context);
+            }
+
+            for (QueryFactory queryFactory : queryFactories) {
+                if (queryFactory.supports(context)) {
+                    final QueryBuilder result = queryFactory.create(this, context);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Expression filter factory scanning all builders like before the introduction of the dispatch table.
+     */
+    private static class LinearExpressionFilterFactory extends ExpressionFilterFactory {
+
+        private final List<ExpressionFilterBuilder> builders;
+
+        LinearExpressionFilterFactory(List<ExpressionFilterBuilder> builders) {
+            super(builders);
+            this.builders = builders;
+        }
+
+        @Override
+        public QueryBuilder buildFilter(Expression expression, SearchContext context) {
+            final ExpressionFilterBuilderContext builderContext = new ExpressionFilterBuilderContext(expression, context, this);
+            for (ExpressionFilterBuilder builder : builders) {
+                if (builder.supports(builderContext)) {
+                    final QueryBuilder filterBuilder = builder.buildFilter(builderContext);
+                    if (filterBuilder != null) {
+                        return filterBuilder;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
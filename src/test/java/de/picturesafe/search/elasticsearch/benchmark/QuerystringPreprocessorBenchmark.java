@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.benchmark;
+
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
+import de.picturesafe.search.elasticsearch.connect.query.preprocessor.StandardQuerystringPreprocessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the preprocessing of typical fulltext query strings with and without the cache of processed query strings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QuerystringPreprocessorBenchmark {
+
+    private static final String[] QUERIES = {
+        "term",
+        "term1 term2 term3",
+        "term1 und term2 oder term3",
+        "(term1 & term2) | term3 nicht term4",
+        "\"a phrase with words\" and term1 -term2",
+        "NDR \\- DAS\\! am Nachmittag",
+        "caption:term1 or keyword:[a TO b] ~ term2",
+        "Ärzte oder Ärztinnen und Krankenhäuser nicht Kliniken, Pflege"
+    };
+
+    private StandardQuerystringPreprocessor uncachedPreprocessor;
+    private StandardQuerystringPreprocessor cachedPreprocessor;
+
+    @Setup
+    public void setup() {
+        uncachedPreprocessor = new StandardQuerystringPreprocessor(new QueryConfiguration());
+        uncachedPreprocessor.setCacheSize(0);
+        cachedPreprocessor = new StandardQuerystringPreprocessor(new QueryConfiguration());
+    }
+
+    @Benchmark
+    public void uncached(Blackhole blackhole) {
+        for (String query : QUERIES) {
+            blackhole.consume(uncachedPreprocessor.process(query));
+        }
+    }
+
+    @Benchmark
+    public void cached(Blackhole blackhole) {
+        for (String query : QUERIES) {
+            blackhole.consume(cachedPreprocessor.process(query));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(QuerystringPreprocessorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.benchmark;
+
+import de.picturesafe.search.elasticsearch.connect.util.LazySourceMap;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares eager parsing of search hit sources with {@link LazySourceMap} for result pages where only two attributes are read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchHitConversionBenchmark {
+
+    @Param({"100", "2000"})
+    public int pageSize;
+
+    private BytesReference[] sources;
+
+    @Setup
+    public void setup() {
+        sources = new BytesReference[pageSize];
+        for (int i = 0; i < pageSize; i++) {
+            final StringBuilder sb = new StringBuilder("{\"id\":").append(i).append(",\"title\":\"Title ").append(i).append("\"");
+            for (int f = 0; f < 30; f++) {
+                sb.append(",\"field").append(f).append("\":\"Lorem ipsum dolor sit amet, consectetur adipiscing elit ").append(f).append("\"");
+            }
+            sb.append(",\"nested\":{\"a\":[1,2,3],\"b\":{\"c\":\"d\"}},\"count\":").append(i * 7).append("}");
+            sources[i] = new BytesArray(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Benchmark
+    public void eager(Blackhole blackhole) {
+        for (final BytesReference source : sources) {
+            final SearchHit hit = new SearchHit(0, "id", null, Collections.emptyMap(), Collections.emptyMap()).sourceRef(source);
+            final Map<String, Object> attributes = new HashMap<>(hit.getSourceAsMap());
+            blackhole.consume(attributes.get("id"));
+            blackhole.consume(attributes.get("title"));
+        }
+    }
+
+    @Benchmark
+    public void lazy(Blackhole blackhole) {
+        for (final BytesReference source : sources) {
+            final SearchHit hit = new SearchHit(0, "id", null, Collections.emptyMap(), Collections.emptyMap()).sourceRef(source);
+            final Map<String, Object> attributes = new LazySourceMap(hit.getSourceRef());
+            blackhole.consume(attributes.get("id"));
+            blackhole.consume(attributes.get("title"));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SearchHitConversionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
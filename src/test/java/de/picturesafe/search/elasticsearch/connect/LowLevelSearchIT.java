@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect;
+
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryRangeDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchHitDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchResultDto;
+import de.picturesafe.search.elasticsearch.connect.impl.ElasticsearchImpl;
+import de.picturesafe.search.elasticsearch.connect.support.IndexSetup;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.SearchAggregation;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.parameter.aggregation.DefaultAggregation;
+import de.picturesafe.search.parameter.aggregation.TermsAggregation;
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class LowLevelSearchIT extends AbstractElasticIntegrationTest {
+
+    @Autowired
+    IndexSetup indexSetup;
+
+    @Autowired
+    MappingConfiguration mappingConfiguration;
+
+    @Autowired
+    ElasticsearchImpl elasticsearch;
+
+    @Before
+    public void setup() {
+        indexSetup.createIndex(indexAlias);
+
+        final Date today = new Date();
+        final List<Map<String, Object>> docs = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            docs.add(DocumentBuilder.id(i)
+                    .put("title.de", "low level " + i)
+                    .put("caption", "caption" + (i % 4))
+                    .put("facetDate", DateUtils.addDays(today, -i * 20))
+                    .put("released", i % 2 == 0)
+                    .build());
+        }
+        elasticsearch.addToIndex(indexAlias, true, true, docs);
+    }
+
+    @After
+    public void tearDown() {
+        elasticsearch.setLowLevelSearchEnabled(false);
+        indexSetup.tearDownIndex(indexAlias);
+    }
+
+    @Test
+    public void testSameResultAsHighLevelSearch() {
+        final List<SearchAggregation> aggregations = Arrays.asList(TermsAggregation.field("caption"), TermsAggregation.field("released"),
+                DefaultAggregation.field("facetDate"));
+        final QueryDto queryDto = new QueryDto(new FulltextExpression("low"), new QueryRangeDto(0, 20), Collections.singletonList(SortOption.asc("id")),
+                aggregations, Locale.GERMAN);
+
+        final SearchResultDto highLevelResult = elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration);
+        elasticsearch.setLowLevelSearchEnabled(true);
+        final SearchResultDto lowLevelResult = elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration);
+
+        assertEquals(30, lowLevelResult.getTotalHitCount());
+        assertEquals(highLevelResult.getTotalHitCount(), lowLevelResult.getTotalHitCount());
+        assertEquals(highLevelResult.isExactCount(), lowLevelResult.isExactCount());
+        assertEquals(20, lowLevelResult.getHits().size());
+        for (int i = 0; i < highLevelResult.getHits().size(); i++) {
+            final SearchHitDto expected = highLevelResult.getHits().get(i);
+            final SearchHitDto actual = lowLevelResult.getHits().get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(new HashMap<>(expected.getAttributes()), new HashMap<>(actual.getAttributes()));
+        }
+
+        assertFalse(lowLevelResult.getFacetDtoList().isEmpty());
+        assertEquals(highLevelResult.getFacetDtoList(), lowLevelResult.getFacetDtoList());
+    }
+}
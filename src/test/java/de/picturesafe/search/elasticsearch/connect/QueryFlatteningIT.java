@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect;
+
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryRangeDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchHitDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchResultDto;
+import de.picturesafe.search.elasticsearch.connect.impl.ElasticsearchImpl;
+import de.picturesafe.search.elasticsearch.connect.support.IndexSetup;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SortOption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryFlatteningIT extends AbstractElasticIntegrationTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryFlatteningIT.class);
+
+    @Autowired
+    IndexSetup indexSetup;
+
+    @Autowired
+    MappingConfiguration mappingConfiguration;
+
+    @Autowired
+    ElasticsearchImpl elasticsearch;
+
+    @Before
+    public void setup() {
+        indexSetup.createIndex(indexAlias);
+
+        final List<Map<String, Object>> docs = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            docs.add(DocumentBuilder.id(i)
+                    .put("title.de", "flat query " + i)
+                    .put("caption", "caption" + (i % 4))
+                    .put("released", i % 2 == 0)
+                    .build());
+        }
+        elasticsearch.addToIndex(indexAlias, true, true, docs);
+    }
+
+    @After
+    public void tearDown() {
+        elasticsearch.setQueryFlatteningEnabled(true);
+        indexSetup.tearDownIndex(indexAlias);
+    }
+
+    @Test
+    public void testSameResultAsNestedQuery() {
+        final Expression expression = OperationExpression.and(
+                new FulltextExpression("flat"),
+                OperationExpression.or(new ValueExpression("caption", "caption1"), new ValueExpression("caption", "caption2"),
+                        new ValueExpression("caption", "caption3")),
+                OperationExpression.and(new MustNotExpression(new ValueExpression("released", true)),
+                        new MustNotExpression(new ValueExpression("id", 7))));
+        final QueryDto queryDto = new QueryDto(expression, new QueryRangeDto(0, 30), Collections.singletonList(SortOption.relevance()),
+                null, Locale.GERMAN).profile(true);
+
+        elasticsearch.setQueryFlatteningEnabled(false);
+        final String nestedJson = elasticsearch.createQueryJson(queryDto, mappingConfiguration, indexPresetConfiguration, false);
+        final SearchResultDto nestedResult = elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration);
+        elasticsearch.setQueryFlatteningEnabled(true);
+        final String flatJson = elasticsearch.createQueryJson(queryDto, mappingConfiguration, indexPresetConfiguration, false);
+        final SearchResultDto flatResult = elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration);
+
+        assertEquals(nestedResult.getTotalHitCount(), flatResult.getTotalHitCount());
+        assertEquals(ids(nestedResult), ids(flatResult));
+        assertNotNull(flatResult.getProfile());
+        assertTrue("Flat query JSON should be smaller: " + flatJson, flatJson.length() < nestedJson.length());
+        LOGGER.info("Query JSON size: nested = {} bytes, flat = {} bytes", nestedJson.length(), flatJson.length());
+        LOGGER.info("Query rewrite time: nested = {} ns, flat = {} ns", nestedResult.getProfile().getRewriteTimeNanos(),
+                flatResult.getProfile().getRewriteTimeNanos());
+    }
+
+    private List<String> ids(SearchResultDto result) {
+        return result.getHits().stream().map(SearchHitDto::getId).sorted().collect(Collectors.toList());
+    }
+}
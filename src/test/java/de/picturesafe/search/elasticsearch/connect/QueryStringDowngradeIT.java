@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect;
+
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryRangeDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchHitDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchResultDto;
+import de.picturesafe.search.elasticsearch.connect.impl.ElasticsearchImpl;
+import de.picturesafe.search.elasticsearch.connect.support.IndexSetup;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SortOption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.LIKE;
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.NOT_LIKE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QueryStringDowngradeIT extends AbstractElasticIntegrationTest {
+
+    private static final String[] CITIES = {"Berlin", "Hamburg", "München", "Köln"};
+
+    @Autowired
+    IndexSetup indexSetup;
+
+    @Autowired
+    MappingConfiguration mappingConfiguration;
+
+    @Autowired
+    QueryConfiguration queryConfiguration;
+
+    @Autowired
+    ElasticsearchImpl elasticsearch;
+
+    private boolean downgradeSimpleQueryStrings;
+
+    @Before
+    public void setup() {
+        downgradeSimpleQueryStrings = queryConfiguration.isDowngradeSimpleQueryStrings();
+        indexSetup.createIndex(indexAlias);
+
+        final List<Map<String, Object>> docs = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            final String city = CITIES[i % CITIES.length];
+            docs.add(DocumentBuilder.id(i)
+                    .put("title.de", ((i % 3 == 0) ? "Sunset in " : "Morning in ") + city + " " + (2018 + i % 4))
+                    .put("caption", "Caption " + city + " " + (2018 + i % 4) + ((i % 5 == 0) ? " sunset sunset" : ""))
+                    .put("keywordField", (i % 2 == 0) ? city : city + " " + (2018 + i % 4))
+                    .build());
+        }
+        elasticsearch.addToIndex(indexAlias, true, true, docs);
+    }
+
+    @After
+    public void tearDown() {
+        queryConfiguration.setDowngradeSimpleQueryStrings(downgradeSimpleQueryStrings);
+        indexSetup.tearDownIndex(indexAlias);
+    }
+
+    @Test
+    public void testSameResultsAsQueryString() {
+        final List<Expression> expressions = Arrays.asList(
+                new FulltextExpression("sunset"),
+                new FulltextExpression("Berlin 2020"),
+                new FulltextExpression("berlin und 2019"),
+                new FulltextExpression("(Sunset Hamburg)"),
+                new FulltextExpression("Berlin oder Hamburg"),
+                new FulltextExpression("Sun*"),
+                new ValueExpression("caption", "Berlin 2020"),
+                new ValueExpression("caption", "sunset"),
+                new ValueExpression("keywordField", "Hamburg"),
+                new ValueExpression("keywordField", "Hamburg 2019"),
+                new ValueExpression("title", LIKE, "sunset köln"),
+                new ValueExpression("title", NOT_LIKE, "sunset köln"),
+                new ValueExpression("caption", LIKE, "2018"),
+                new ValueExpression("caption", NOT_LIKE, "berlin"));
+
+        for (Expression expression : expressions) {
+            final QueryDto queryDto = new QueryDto(expression, new QueryRangeDto(0, 40), Collections.singletonList(SortOption.relevance()),
+                    null, Locale.GERMAN);
+
+            queryConfiguration.setDowngradeSimpleQueryStrings(false);
+            final SearchResultDto queryStringResult = elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration);
+            queryConfiguration.setDowngradeSimpleQueryStrings(true);
+            final SearchResultDto matchResult = elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration);
+
+            assertEquals(expression.toString(), queryStringResult.getTotalHitCount(), matchResult.getTotalHitCount());
+            assertEquals(expression.toString(), ids(queryStringResult), ids(matchResult));
+        }
+    }
+
+    @Test
+    public void testMatchQuery() {
+        final QueryDto queryDto = new QueryDto(new FulltextExpression("Berlin 2020"), new QueryRangeDto(0, 40), null, null, Locale.GERMAN);
+        final String json = elasticsearch.createQueryJson(queryDto, mappingConfiguration, indexPresetConfiguration, true);
+        assertTrue(json, json.contains("\"match\""));
+        assertTrue(json, !json.contains("\"query_string\""));
+    }
+
+    private List<String> ids(SearchResultDto result) {
+        // Same hits in the same order of relevance
+        return result.getHits().stream().map(SearchHitDto::getId).collect(Collectors.toList());
+    }
+}
@@ -17,6 +17,7 @@
 package de.picturesafe.search.elasticsearch.connect;
 
 import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
 import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
 import de.picturesafe.search.elasticsearch.connect.dto.QueryRangeDto;
 import de.picturesafe.search.elasticsearch.connect.dto.SearchHitDto;
@@ -62,6 +63,9 @@ public class ReferenceIT extends AbstractElasticIntegrationTest {
     @Autowired
     Elasticsearch elasticsearch;
 
+    @Autowired
+    QueryConfiguration queryConfiguration;
+
     /**
      * Spezifische Daten im Index eintragen und indexieren
      */
@@ -363,6 +367,29 @@ public class ReferenceIT extends AbstractElasticIntegrationTest {
         assertEquals("result is not sorted", "20", sortedResult.getHits().get(1).getId());
     }
 
+    @Test
+    public void testGroupedNestedExpressions() {
+        // Document 20 references target 10 and, with another reference, linking time 1
+        final Expression expression = OperationExpression.and(
+                new ValueExpression("referenceWithSort." + FIELD_TARGET_ID, 10),
+                new ValueExpression("referenceWithSort." + FIELD_LINKING_TIME, 1L));
+        final QueryDto queryDto = new QueryDto(expression, new QueryRangeDto(0, 40), null, null, Locale.GERMAN);
+
+        final boolean groupNestedQueries = queryConfiguration.isGroupNestedQueries();
+        try {
+            queryConfiguration.setGroupNestedQueries(true);
+            SearchResultDto result = elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration);
+            assertEquals("expressions must match the same reference", 0, result.getTotalHitCount());
+
+            queryConfiguration.setGroupNestedQueries(false);
+            result = elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration);
+            assertEquals("expressions may match different references", 1, result.getTotalHitCount());
+            assertEquals("20", result.getHits().get(0).getId());
+        } finally {
+            queryConfiguration.setGroupNestedQueries(groupNestedQueries);
+        }
+    }
+
     @After
     public void end() {
         indexSetup.tearDownIndex(indexAlias);
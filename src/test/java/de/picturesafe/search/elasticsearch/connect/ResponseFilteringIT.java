@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect;
+
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryRangeDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchResultDto;
+import de.picturesafe.search.elasticsearch.connect.error.ElasticsearchException;
+import de.picturesafe.search.elasticsearch.connect.impl.ElasticsearchImpl;
+import de.picturesafe.search.elasticsearch.connect.impl.LowLevelBulkExecutor;
+import de.picturesafe.search.elasticsearch.connect.impl.SearchResponseStreamParser;
+import de.picturesafe.search.elasticsearch.connect.support.IndexSetup;
+import de.picturesafe.search.elasticsearch.model.DocumentBuilder;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.parameter.aggregation.TermsAggregation;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RestClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseFilteringIT extends AbstractElasticIntegrationTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseFilteringIT.class);
+
+    @Autowired
+    IndexSetup indexSetup;
+
+    @Autowired
+    MappingConfiguration mappingConfiguration;
+
+    @Autowired
+    ElasticsearchImpl elasticsearch;
+
+    @Before
+    public void setup() {
+        indexSetup.createIndex(indexAlias);
+    }
+
+    @After
+    public void tearDown() {
+        elasticsearch.setLowLevelSearchEnabled(false);
+        elasticsearch.setLowLevelBulkEnabled(false);
+        indexSetup.tearDownIndex(indexAlias);
+    }
+
+    @Test
+    public void testResponseSize() throws Exception {
+        final RestClient lowLevelClient = elasticsearch.getRestClient().getLowLevelClient();
+        final StringBuilder bulkBody = new StringBuilder();
+        for (int i = 1; i <= 100; i++) {
+            bulkBody.append("{\"index\":{\"_index\":\"").append(indexAlias).append("\",\"_id\":\"").append(i).append("\"}}\n")
+                    .append("{\"id\":").append(i).append(",\"title\":{\"de\":\"Filter ").append(i).append("\"},\"caption\":\"caption").append(i % 5)
+                    .append("\"}\n");
+        }
+
+        final int bulkSize = bulkResponseSize(lowLevelClient, bulkBody.toString(), null);
+        final int filteredBulkSize = bulkResponseSize(lowLevelClient, bulkBody.toString(), LowLevelBulkExecutor.ITEM_RESULTS_FILTER_PATH);
+        final int errorsOnlyBulkSize = bulkResponseSize(lowLevelClient, bulkBody.toString(), LowLevelBulkExecutor.ERRORS_FILTER_PATH);
+        LOGGER.info("Bulk response size for 100 items: unfiltered={}, item results={}, errors only={}", bulkSize, filteredBulkSize, errorsOnlyBulkSize);
+        assertTrue(filteredBulkSize < bulkSize / 3);
+        assertTrue(errorsOnlyBulkSize < filteredBulkSize / 2);
+
+        final String searchBody = "{\"size\":50,\"query\":{\"match\":{\"title.de\":\"filter\"}},"
+                + "\"aggs\":{\"caption\":{\"terms\":{\"field\":\"caption.keyword\"}}}}";
+        final int searchSize = searchResponseSize(lowLevelClient, searchBody, null);
+        final int filteredSearchSize = searchResponseSize(lowLevelClient, searchBody, SearchResponseStreamParser.FILTER_PATH);
+        LOGGER.info("Search response size for 50 hits: unfiltered={}, filtered={}", searchSize, filteredSearchSize);
+        assertTrue(filteredSearchSize < searchSize);
+    }
+
+    @Test
+    public void testFilteredRequests() {
+        elasticsearch.setLowLevelBulkEnabled(true);
+        final List<Map<String, Object>> docs = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            docs.add(DocumentBuilder.id(i).put("title.de", "filtered " + i).put("caption", "caption" + (i % 2)).build());
+        }
+        final Map<String, Boolean> results = elasticsearch.addToIndex(indexAlias, true, true, docs);
+        assertEquals(20, results.size());
+        assertTrue(results.values().stream().allMatch(Boolean::booleanValue));
+
+        elasticsearch.setLowLevelSearchEnabled(true);
+        final QueryDto queryDto = new QueryDto(new FulltextExpression("filtered"), new QueryRangeDto(0, 10), null,
+                Collections.singletonList(TermsAggregation.field("caption")), Locale.GERMAN);
+        final SearchResultDto result = elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration);
+        assertEquals(20, result.getTotalHitCount());
+        assertEquals(10, result.getHits().size());
+        assertEquals(20, result.getFacetDtoList().get(0).getCount());
+
+        elasticsearch.removeFromIndex(indexAlias, true, Collections.singletonList(1));
+        elasticsearch.removeFromIndex(indexAlias, true, new ArrayList<>(results.keySet()));
+        assertEquals(0, elasticsearch.search(queryDto, mappingConfiguration, indexPresetConfiguration).getTotalHitCount());
+    }
+
+    @Test
+    public void testBulkFailureMessages() {
+        final List<Map<String, Object>> docs = new ArrayList<>();
+        docs.add(DocumentBuilder.id(1).put("title.de", "valid").build());
+        docs.add(DocumentBuilder.id(2).put("released", "invalid").build());
+
+        final String highLevelMessage = bulkFailureMessage(docs);
+        elasticsearch.setLowLevelBulkEnabled(true);
+        final String lowLevelMessage = bulkFailureMessage(docs);
+        LOGGER.info("Bulk failure message: {}", lowLevelMessage);
+        assertTrue(lowLevelMessage.contains("[1]: index [" + indexAlias + "-"));
+        assertEquals(highLevelMessage, lowLevelMessage);
+    }
+
+    private String bulkFailureMessage(List<Map<String, Object>> docs) {
+        try {
+            elasticsearch.addToIndex(indexAlias, true, true, docs);
+        } catch (ElasticsearchException e) {
+            return e.getCause().getMessage();
+        }
+        throw new AssertionError("Bulk request should fail");
+    }
+
+    private int bulkResponseSize(RestClient client, String body, String filterPath) throws Exception {
+        final Request request = new Request("POST", "/_bulk");
+        request.addParameter("refresh", "true");
+        if (filterPath != null) {
+            request.addParameter("filter_path", filterPath);
+        }
+        request.setJsonEntity(body);
+        return EntityUtils.toByteArray(client.performRequest(request).getEntity()).length;
+    }
+
+    private int searchResponseSize(RestClient client, String body, String filterPath) throws Exception {
+        final Request request = new Request("POST", "/" + indexAlias + "/_search");
+        request.addParameter("typed_keys", "true");
+        if (filterPath != null) {
+            request.addParameter("filter_path", filterPath);
+        }
+        request.setJsonEntity(body);
+        return EntityUtils.toByteArray(client.performRequest(request).getEntity()).length;
+    }
+}
@@ -135,6 +135,20 @@ public class SortIT extends AbstractElasticIntegrationTest {
         assertTrue(isOneOf(idOf(result, 3), 1, 3));
     }
 
+    @Test
+    public void testFieldSortWithoutScoring() {
+        // Field sort only: built in filter context without scoring
+        final SearchResultDto scoreFreeResult = search("sorting", SortOption.desc("id"));
+        // Relevance as tie breaker: built with scoring
+        final SearchResultDto scoredResult = search("sorting", SortOption.desc("id"), SortOption.relevance());
+
+        assertEquals(scoredResult.getTotalHitCount(), scoreFreeResult.getTotalHitCount());
+        assertEquals(4, scoreFreeResult.getHits().size());
+        for (int i = 0; i < scoredResult.getHits().size(); i++) {
+            assertEquals(idOf(scoredResult, i), idOf(scoreFreeResult, i));
+        }
+    }
+
     private SearchResultDto search(String query, SortOption... sortOptions) {
         final Expression expression = new FulltextExpression(query);
         final QueryDto queryDto = new QueryDto(expression, defaultRange(), Arrays.asList(sortOptions), null, Locale.GERMAN);
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.asyncaction;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class AbstractRestClientHedgedActionTest {
+
+    private static final long SYNC_FAILURE = Long.MIN_VALUE;
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testHedgeWins() {
+        final HedgingPolicy policy = warmPolicy(1.0);
+        final TestAction action = new TestAction(policy, 2000, 10);
+        assertEquals("hedge-response", action.action(null, "request"));
+
+        verify(action.cancellables.get("request")).cancel();
+        verify(action.cancellables.get("hedge"), never()).cancel();
+        assertEquals(1, policy.getHedgesFired());
+        assertEquals(1, policy.getHedgesWon());
+    }
+
+    @Test
+    public void testPrimaryWins() {
+        final HedgingPolicy policy = warmPolicy(1.0);
+        final TestAction action = new TestAction(policy, 100, 2000);
+        assertEquals("request-response", action.action(null, "request"));
+
+        verify(action.cancellables.get("hedge")).cancel();
+        verify(action.cancellables.get("request"), never()).cancel();
+        assertEquals(1, policy.getHedgesFired());
+        assertEquals(0, policy.getHedgesWon());
+    }
+
+    @Test
+    public void testBudgetExhausted() {
+        final HedgingPolicy policy = warmPolicy(0);
+        final TestAction action = new TestAction(policy, 100, 10);
+        assertEquals("request-response", action.action(null, "request"));
+        assertFalse(action.cancellables.containsKey("hedge"));
+        assertEquals(0, policy.getHedgesFired());
+    }
+
+    @Test
+    public void testSystemPreferenceNotHedged() {
+        final HedgingPolicy policy = warmPolicy(1.0);
+        final TestAction action = new TestAction(policy, 100, 10);
+        action.preference = "_local";
+        assertEquals("request-response", action.action(null, "request"));
+        assertFalse(action.cancellables.containsKey("hedge"));
+        assertEquals(0, policy.getHedgesFired());
+    }
+
+    @Test
+    public void testNoLatenciesMeasured() {
+        final HedgingPolicy policy = new HedgingPolicy(50, 1.0, 10, 10);
+        final TestAction action = new TestAction(policy, 100, 10);
+        assertEquals("request-response", action.action(null, "request"));
+        assertFalse(action.cancellables.containsKey("hedge"));
+    }
+
+    @Test
+    public void testPrimaryFails() {
+        final HedgingPolicy policy = warmPolicy(1.0);
+        final TestAction action = new TestAction(policy, -100, 10);
+        assertEquals("hedge-response", action.action(null, "request"));
+    }
+
+    @Test
+    public void testPrimaryFailsSynchronously() {
+        final HedgingPolicy policy = warmPolicy(1.0);
+        final TestAction action = new TestAction(policy, SYNC_FAILURE, 10);
+        try {
+            action.action(null, "request");
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("request failed", e.getMessage());
+        }
+        assertFalse(action.cancellables.containsKey("hedge"));
+        assertEquals(0, policy.getHedgesFired());
+    }
+
+    @Test
+    public void testHedgeFailsSynchronously() {
+        final HedgingPolicy policy = warmPolicy(1.0);
+        final TestAction action = new TestAction(policy, 2000, SYNC_FAILURE);
+        final long start = System.nanoTime();
+        try {
+            action.action(null, "request");
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("hedge failed", e.getMessage());
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        verify(action.cancellables.get("request")).cancel();
+    }
+
+    private HedgingPolicy warmPolicy(double budget) {
+        final HedgingPolicy policy = new HedgingPolicy(50, budget, 10, 1);
+        policy.recordLatency(20);
+        policy.requestStarted();
+        return policy;
+    }
+
+    private class TestAction extends AbstractRestClientHedgedAction<String, String> {
+
+        private final Map<String, Long> delays = new HashMap<>();
+        private final Map<String, Cancellable> cancellables = new HashMap<>();
+        private String preference;
+
+        /**
+         * @param primaryDelay  Delay of the primary response in ms (negative = primary fails after the delay,
+         *                      {@link #SYNC_FAILURE} = primary fails when sent)
+         * @param hedgeDelay    Delay of the hedged response in ms ({@link #SYNC_FAILURE} = hedge fails when sent)
+         */
+        TestAction(HedgingPolicy hedgingPolicy, long primaryDelay, long hedgeDelay) {
+            super(hedgingPolicy);
+            delays.put("request", primaryDelay);
+            delays.put("hedge", hedgeDelay);
+        }
+
+        @Override
+        Cancellable asyncAction(RestHighLevelClient client, String request, ActionListener<String> listener) {
+            final long delay = delays.get(request);
+            if (delay == SYNC_FAILURE) {
+                throw new IllegalStateException(request + " failed");
+            }
+            // Creating the first mock takes a while, so it must be done before the response is scheduled
+            final Cancellable cancellable = mock(Cancellable.class);
+            cancellables.put(request, cancellable);
+            executor.schedule(() -> {
+                if (delay < 0) {
+                    listener.onFailure(new IllegalStateException("failed"));
+                } else {
+                    listener.onResponse(request + "-response");
+                }
+            }, Math.abs(delay), TimeUnit.MILLISECONDS);
+            return cancellable;
+        }
+
+        @Override
+        String hedgeRequest(String request) {
+            return "hedge";
+        }
+
+        @Override
+        String preference(String request) {
+            return preference;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.asyncaction;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HedgingPolicyTest {
+
+    @Test
+    public void testHedgeDelay() {
+        final HedgingPolicy policy = new HedgingPolicy(90, 0.1, 100, 10);
+        for (int i = 1; i < 10; i++) {
+            policy.recordLatency(i);
+        }
+        assertEquals(-1, policy.getHedgeDelayMillis());
+
+        policy.recordLatency(10);
+        assertEquals(9, policy.getHedgeDelayMillis());
+        for (int i = 11; i <= 100; i++) {
+            policy.recordLatency(i);
+        }
+        assertEquals(90, policy.getHedgeDelayMillis());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        final HedgingPolicy policy = new HedgingPolicy(50, 0.1, 20, 1);
+        for (int i = 0; i < 20; i++) {
+            policy.recordLatency(1000);
+        }
+        assertEquals(1000, policy.getHedgeDelayMillis());
+        for (int i = 0; i < 20; i++) {
+            policy.recordLatency(10);
+        }
+        assertEquals(10, policy.getHedgeDelayMillis());
+    }
+
+    @Test
+    public void testBudget() {
+        final HedgingPolicy policy = new HedgingPolicy(95, 0.05);
+        for (int i = 0; i < 19; i++) {
+            policy.requestStarted();
+        }
+        assertFalse(policy.tryHedge());
+        policy.requestStarted();
+        assertTrue(policy.tryHedge());
+        assertFalse(policy.tryHedge());
+        assertEquals(20, policy.getRequestCount());
+        assertEquals(1, policy.getHedgesFired());
+
+        policy.hedgeWon();
+        assertEquals(1, policy.getHedgesWon());
+    }
+
+    @Test
+    public void testHedgePreference() {
+        final HedgingPolicy policy = new HedgingPolicy(95, 0.05);
+        assertTrue(policy.hedgePreference(null).startsWith("hedge-"));
+        assertEquals("_local", policy.hedgePreference("_local"));
+        assertEquals("_shards:0,1|account-1", policy.hedgePreference("_shards:0,1|account-1"));
+        assertTrue(policy.hedgePreference("account-1").startsWith("account-1-hedge-"));
+        assertNotEquals("account-1", policy.hedgePreference("account-1"));
+    }
+
+    @Test
+    public void testIsHedgeable() {
+        final HedgingPolicy policy = new HedgingPolicy(95, 0.05);
+        assertTrue(policy.isHedgeable(null));
+        assertTrue(policy.isHedgeable("account-1"));
+        assertFalse(policy.isHedgeable("_local"));
+        assertFalse(policy.isHedgeable("_only_nodes:node-1"));
+        assertFalse(policy.isHedgeable("_prefer_nodes:node-1,node-2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new HedgingPolicy(0, 0.05);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.context;
+
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryRangeDto;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.CollapseOption;
+import de.picturesafe.search.parameter.ScriptDefinition;
+import de.picturesafe.search.parameter.ScriptSortOption;
+import de.picturesafe.search.parameter.SortOption;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SearchContextTest {
+
+    @Test
+    public void testProcessedByIdentity() {
+        final Expression first = new ValueExpression("caption", "test");
+        final Expression second = new ValueExpression("caption", "test");
+        assertEquals(first, second);
+
+        final OperationExpression root = OperationExpression.or(OperationExpression.and(first), OperationExpression.and(second));
+        final SearchContext context = new SearchContext(new QueryDto(root, Locale.GERMAN), new MappingConfiguration(Collections.emptyList()));
+        final SearchContext firstContext = new SearchContext(context, first);
+        firstContext.setRootExpressionProcessed();
+
+        assertTrue(firstContext.isRootExpressionProcessed());
+        assertTrue(context.isProcessed(first));
+        assertFalse(context.isProcessed(second));
+        assertFalse(new SearchContext(context, second).isRootExpressionProcessed());
+        assertFalse(context.isRootExpressionProcessed());
+    }
+
+    @Test
+    public void testScoreRequired() {
+        final Expression expression = new ValueExpression("caption", "test");
+        assertTrue(SearchContext.isScoreRequired(new QueryDto(expression, Locale.GERMAN)));
+        assertTrue(SearchContext.isScoreRequired(queryDto(expression, SortOption.asc("id"), SortOption.relevance())));
+        assertTrue(SearchContext.isScoreRequired(queryDto(expression, ScriptSortOption.asc(ScriptDefinition.inline("_score * 2")))));
+        assertTrue(SearchContext.isScoreRequired(queryDto(expression, SortOption.asc("id")).collapseOption(CollapseOption.field("caption"))));
+
+        final QueryDto queryDto = queryDto(OperationExpression.and(expression), SortOption.asc("id"), SortOption.desc("caption"));
+        assertFalse(SearchContext.isScoreRequired(queryDto));
+        final SearchContext context = new SearchContext(queryDto, new MappingConfiguration(Collections.emptyList()));
+        assertFalse(context.isScoreRequired());
+        assertFalse(new SearchContext(context, expression).isScoreRequired());
+        assertFalse(new SearchContext(context, true).isScoreRequired());
+    }
+
+    private QueryDto queryDto(Expression expression, SortOption... sortOptions) {
+        return new QueryDto(expression, new QueryRangeDto(0, 10), Arrays.asList(sortOptions), null, Locale.GERMAN);
+    }
+}
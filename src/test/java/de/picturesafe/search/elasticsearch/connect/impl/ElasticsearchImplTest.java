@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.elasticsearch.connect.impl;
+
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.RestClientConfiguration;
+import de.picturesafe.search.elasticsearch.connect.ElasticsearchAdmin;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchHitDto;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.document.DocumentField;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class ElasticsearchImplTest {
+
+    private final MappingConfiguration mappingConfiguration = new MappingConfiguration(Collections.singletonList(FieldConfiguration.ID_FIELD));
+
+    private ElasticsearchImpl elasticsearch;
+
+    @Before
+    public void setup() {
+        elasticsearch = new ElasticsearchImpl(mock(ElasticsearchAdmin.class), mock(RestClientConfiguration.class), Collections.emptyList(),
+                Collections.emptyList(), "Europe/Berlin");
+    }
+
+    @Test
+    public void testConvertDocValues() {
+        final Map<String, DocumentField> fields = new HashMap<>();
+        fields.put("keywords", new DocumentField("keywords", Arrays.asList("a", "b")));
+        fields.put("count", new DocumentField("count", Collections.singletonList(3L)));
+        final SearchHit hit = new SearchHit(1, "1", null, fields, Collections.emptyMap());
+
+        final SearchHitDto searchHitDto = elasticsearch.convertSearchHit(hit, mappingConfiguration);
+        // Multi-valued doc values are returned as list of all values, single values as value
+        assertEquals(Arrays.asList("a", "b"), searchHitDto.getAttributes().get("keywords"));
+        assertEquals(3L, searchHitDto.getAttributes().get("count"));
+    }
+
+    @Test
+    public void testConvertSourceAndDocValues() {
+        final Map<String, DocumentField> fields = new HashMap<>();
+        fields.put("keywords", new DocumentField("keywords", Arrays.asList("a", "b")));
+        final SearchHit hit = new SearchHit(1, "1", null, fields, Collections.emptyMap())
+                .sourceRef(new BytesArray("{\"title\":\"Title\",\"keywords\":[\"A\",\"B\"]}"));
+
+        final SearchHitDto searchHitDto = elasticsearch.convertSearchHit(hit, mappingConfiguration);
+        assertEquals("Title", searchHitDto.getAttributes().get("title"));
+        assertEquals(Arrays.asList("a", "b"), searchHitDto.getAttributes().get("keywords"));
+    }
+}
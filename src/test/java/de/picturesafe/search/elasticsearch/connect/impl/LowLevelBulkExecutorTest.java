@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.impl;
+
+import de.picturesafe.search.elasticsearch.connect.dto.BulkResultDto;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.common.xcontent.DeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LowLevelBulkExecutorTest {
+
+    @Test
+    public void testRequest() throws Exception {
+        final BulkRequest bulkRequest = new BulkRequest().setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE)
+                .add(new IndexRequest("alias").id("1").source("{\"title\":\"one\"}", XContentType.JSON))
+                .add(new DeleteRequest("alias", "2"));
+        assertTrue(LowLevelBulkExecutor.isSupported(bulkRequest));
+
+        final Request request = new LowLevelBulkExecutor().request(bulkRequest, true);
+        assertEquals("/_bulk", request.getEndpoint());
+        assertEquals("true", request.getParameters().get("refresh"));
+        assertEquals(LowLevelBulkExecutor.ITEM_RESULTS_FILTER_PATH, request.getParameters().get("filter_path"));
+        assertEquals("{\"index\":{\"_index\":\"alias\",\"_id\":\"1\"}}\n{\"title\":\"one\"}\n{\"delete\":{\"_index\":\"alias\",\"_id\":\"2\"}}\n",
+                EntityUtils.toString(request.getEntity(), StandardCharsets.UTF_8));
+
+        assertEquals(LowLevelBulkExecutor.ERRORS_FILTER_PATH, new LowLevelBulkExecutor().request(bulkRequest, false).getParameters().get("filter_path"));
+        assertFalse(LowLevelBulkExecutor.isSupported(new BulkRequest().add(new UpdateRequest("alias", "1").doc("{}", XContentType.JSON))));
+    }
+
+    @Test
+    public void testParseItemResults() throws Exception {
+        final String response = "{\"took\":1,\"errors\":true,\"items\":["
+                + "{\"index\":{\"_index\":\"index-1\",\"_type\":\"_doc\",\"_id\":\"1\",\"_version\":1,\"result\":\"created\",\"status\":201}},"
+                + "{\"index\":{\"_index\":\"index-1\",\"_type\":\"_doc\",\"_id\":\"2\",\"status\":400,\"error\":{\"type\":\"mapper_parsing_exception\","
+                + "\"reason\":\"failed to parse\",\"caused_by\":{\"type\":\"illegal_argument_exception\",\"reason\":\"bad value\"}}}}]}";
+        final BulkResultDto result = new LowLevelBulkExecutor().parse(response.getBytes(StandardCharsets.UTF_8), bulkRequest(), true);
+        assertTrue(result.getItemResults().get("1"));
+        assertFalse(result.getItemResults().get("2"));
+        assertTrue(result.hasFailures());
+        assertEquals(highLevelFailures(response), result.getFailures());
+        assertTrue(result.getFailures().get(0).startsWith("[1]: index [index-1], id [2], message ["));
+    }
+
+    @Test
+    public void testParseErrorsOnly() throws Exception {
+        BulkResultDto result = new LowLevelBulkExecutor().parse("{\"errors\":false}".getBytes(StandardCharsets.UTF_8), bulkRequest(), false);
+        assertFalse(result.hasFailures());
+        assertTrue(result.getItemResults().isEmpty());
+
+        final String response = "{\"errors\":true,\"items\":[{\"index\":{\"status\":201}},"
+                + "{\"delete\":{\"status\":404,\"error\":{\"type\":\"t\",\"reason\":\"r\"}}}]}";
+        result = new LowLevelBulkExecutor().parse(response.getBytes(StandardCharsets.UTF_8), bulkRequest(), false);
+        assertTrue(result.hasFailures());
+        assertTrue(result.getItemResults().isEmpty());
+        final String fullResponse = "{\"took\":1,\"errors\":true,\"items\":["
+                + "{\"index\":{\"_index\":\"index-1\",\"_type\":\"_doc\",\"_id\":\"1\",\"_version\":1,\"result\":\"created\",\"status\":201}},"
+                + "{\"delete\":{\"_index\":\"alias\",\"_type\":\"_doc\",\"_id\":\"2\",\"status\":404,\"error\":{\"type\":\"t\",\"reason\":\"r\"}}}]}";
+        assertEquals(highLevelFailures(fullResponse), result.getFailures());
+    }
+
+    private BulkRequest bulkRequest() {
+        return new BulkRequest().add(new IndexRequest("alias").id("1").source("{\"title\":\"one\"}", XContentType.JSON))
+                .add(new DeleteRequest("alias", "2"));
+    }
+
+    private List<String> highLevelFailures(String response) throws Exception {
+        try (XContentParser parser = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION,
+                response)) {
+            final List<String> failures = new ArrayList<>();
+            for (final BulkItemResponse itemResponse : BulkResponse.fromXContent(parser)) {
+                if (itemResponse.isFailed()) {
+                    failures.add(BulkResultDto.failure(itemResponse.getItemId(), itemResponse.getIndex(), itemResponse.getId(),
+                            itemResponse.getFailureMessage()));
+                }
+            }
+            return failures;
+        }
+    }
+}
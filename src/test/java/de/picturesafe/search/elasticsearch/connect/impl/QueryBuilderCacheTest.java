@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.impl;
+
+import de.picturesafe.search.elasticsearch.config.ElasticsearchType;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
+import de.picturesafe.search.elasticsearch.config.impl.StandardFieldConfiguration;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.CollapseOption;
+import de.picturesafe.search.parameter.SortOption;
+import org.elasticsearch.index.query.Operator;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class QueryBuilderCacheTest {
+
+    private final MappingConfiguration mappingConfiguration = new MappingConfiguration(Arrays.asList(FieldConfiguration.ID_FIELD,
+            StandardFieldConfiguration.builder("title", ElasticsearchType.TEXT).build()));
+
+    @Test
+    public void testCache() {
+        final QueryBuilderCache cache = new QueryBuilderCache(10, 0);
+        final String key = cache.key(queryDto("test", Locale.GERMAN), mappingConfiguration);
+        assertNotNull(key);
+        assertNull(cache.get(key, mappingConfiguration));
+
+        final QueryBuilder queryBuilder = QueryBuilders.matchAllQuery();
+        cache.put(key, mappingConfiguration, queryBuilder);
+        assertEquals(key, cache.key(queryDto("test", Locale.GERMAN), mappingConfiguration));
+        assertSame(queryBuilder, cache.get(key, mappingConfiguration).getQueryBuilder());
+        assertNull(cache.get(key, new MappingConfiguration(Collections.singletonList(FieldConfiguration.ID_FIELD))));
+    }
+
+    @Test
+    public void testKey() {
+        final QueryBuilderCache cache = new QueryBuilderCache(10, 0);
+        final String key = cache.key(queryDto("test", Locale.GERMAN), mappingConfiguration);
+        assertNotEquals(key, cache.key(queryDto("other", Locale.GERMAN), mappingConfiguration));
+        assertNotEquals(key, cache.key(queryDto("test", Locale.ENGLISH), mappingConfiguration));
+        assertNotEquals(key, cache.key(queryDto("test", Locale.GERMAN).sortOptions(Collections.singletonList(SortOption.relevance())),
+                mappingConfiguration));
+        assertNull(cache.key(new QueryDto(new ValueExpression("title", new Object()), Locale.GERMAN), mappingConfiguration));
+    }
+
+    @Test
+    public void testKeyScoreRequired() {
+        final QueryBuilderCache cache = new QueryBuilderCache(10, 0);
+        final QueryDto sorted = queryDto("test", Locale.GERMAN).sortOptions(SortOption.asc("title"));
+        final QueryDto collapsed = queryDto("test", Locale.GERMAN).sortOptions(SortOption.asc("title"))
+                .collapseOption(CollapseOption.field("title"));
+        assertNotEquals(cache.key(sorted, mappingConfiguration), cache.key(collapsed, mappingConfiguration));
+    }
+
+    @Test
+    public void testKeyQueryConfiguration() {
+        final QueryConfiguration queryConfiguration = new QueryConfiguration();
+        final QueryBuilderCache cache = new QueryBuilderCache(10, 0, queryConfiguration);
+        final String key = cache.key(queryDto("test", Locale.GERMAN), mappingConfiguration);
+
+        queryConfiguration.setGroupNestedQueries(!queryConfiguration.isGroupNestedQueries());
+        final String groupNestedQueriesKey = cache.key(queryDto("test", Locale.GERMAN), mappingConfiguration);
+        assertNotEquals(key, groupNestedQueriesKey);
+
+        queryConfiguration.setDowngradeSimpleQueryStrings(!queryConfiguration.isDowngradeSimpleQueryStrings());
+        final String downgradeKey = cache.key(queryDto("test", Locale.GERMAN), mappingConfiguration);
+        assertNotEquals(groupNestedQueriesKey, downgradeKey);
+
+        queryConfiguration.setDefaultQueryStringOperator(Operator.OR);
+        assertNotEquals(downgradeKey, cache.key(queryDto("test", Locale.GERMAN), mappingConfiguration));
+    }
+
+    private QueryDto queryDto(String value, Locale locale) {
+        return new QueryDto(OperationExpression.and(new ValueExpression("title", value), new ValueExpression("id", 1)), locale);
+    }
+}
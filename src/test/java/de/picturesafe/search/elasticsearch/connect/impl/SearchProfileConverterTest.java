@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.impl;
+
+import de.picturesafe.search.elasticsearch.model.SearchProfile;
+import de.picturesafe.search.elasticsearch.model.SearchProfileEntry;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.KeywordExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import org.elasticsearch.search.profile.ProfileResult;
+import org.elasticsearch.search.profile.ProfileShardResult;
+import org.elasticsearch.search.profile.aggregation.AggregationProfileShardResult;
+import org.elasticsearch.search.profile.query.CollectorResult;
+import org.elasticsearch.search.profile.query.QueryProfileShardResult;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchProfileConverterTest {
+
+    private static final String SHARD_ID = "[node][index][0]";
+
+    private final Expression titleExpression = new ValueExpression("title", "hund");
+    private final Expression keywordExpression = new KeywordExpression("keyword", "Elastic");
+    private final Expression expression = OperationExpression.and(titleExpression, keywordExpression);
+
+    @Test
+    public void testConvert() {
+        final SearchProfile profile = new SearchProfileConverter(expression).convert(profileResults());
+
+        final List<SearchProfileEntry> queries = profile.getEntries(SearchProfileEntry.Type.QUERY);
+        assertEquals(3, queries.size());
+        final SearchProfileEntry bool = queries.get(0);
+        assertEquals("BooleanQuery", bool.getName());
+        assertEquals(0, bool.getDepth());
+        assertEquals(1000, bool.getTimeNanos());
+        assertEquals(100, bool.getSelfTimeNanos());
+        assertNull(bool.getExpression());
+
+        final SearchProfileEntry title = queries.get(1);
+        assertEquals(1, title.getDepth());
+        assertEquals(SHARD_ID, title.getShardId());
+        assertEquals(titleExpression.toString(), title.getExpression());
+        assertEquals(keywordExpression.toString(), queries.get(2).getExpression());
+
+        assertEquals(1, profile.getEntries(SearchProfileEntry.Type.COLLECTOR).size());
+        assertEquals(1, profile.getEntries(SearchProfileEntry.Type.AGGREGATION).size());
+        assertEquals(50, profile.getRewriteTimeNanos());
+    }
+
+    @Test
+    public void testTopEntries() {
+        final SearchProfile profile = new SearchProfileConverter(expression).convert(profileResults());
+        final List<SearchProfileEntry> topEntries = profile.getTopEntries(2);
+        assertEquals(2, topEntries.size());
+        assertEquals("TermQuery", topEntries.get(0).getName());
+        assertEquals(600, topEntries.get(0).getSelfTimeNanos());
+        assertEquals("TermsAggregator", topEntries.get(1).getName());
+
+        final String printed = profile.printTopEntries(2);
+        assertEquals(2, printed.split("\n").length);
+        assertTrue(printed, printed.contains("title.de:hund"));
+        assertTrue(printed, printed.contains(titleExpression.toString()));
+    }
+
+    private Map<String, ProfileShardResult> profileResults() {
+        final ProfileResult titleQuery = profileResult("TermQuery", "title.de:hund", 600);
+        final ProfileResult keywordQuery = profileResult("TermQuery", "keyword:Elastic", 300);
+        final ProfileResult boolQuery = new ProfileResult("BooleanQuery", "+title.de:hund #keyword:Elastic", Collections.emptyMap(),
+                Collections.emptyMap(), 1000, Arrays.asList(titleQuery, keywordQuery));
+        final CollectorResult collector = new CollectorResult("SimpleTopScoreDocCollector", "search_top_hits", 200L, Collections.emptyList());
+        final QueryProfileShardResult queryResult = new QueryProfileShardResult(Collections.singletonList(boolQuery), 50, collector);
+        final AggregationProfileShardResult aggregationResult
+                = new AggregationProfileShardResult(Collections.singletonList(profileResult("TermsAggregator", "location", 400)));
+        return Collections.singletonMap(SHARD_ID, new ProfileShardResult(Collections.singletonList(queryResult), aggregationResult));
+    }
+
+    private ProfileResult profileResult(String name, String description, long time) {
+        return new ProfileResult(name, description, Collections.emptyMap(), Collections.emptyMap(), time, Collections.emptyList());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.impl;
+
+import de.picturesafe.search.elasticsearch.connect.aggregation.resolve.FacetConverter;
+import de.picturesafe.search.elasticsearch.connect.aggregation.resolve.FacetConverterChain;
+import de.picturesafe.search.elasticsearch.connect.aggregation.resolve.FacetResolver;
+import de.picturesafe.search.elasticsearch.connect.aggregation.resolve.HistogramFacetConverter;
+import de.picturesafe.search.elasticsearch.connect.aggregation.resolve.RangeFacetConverter;
+import de.picturesafe.search.elasticsearch.connect.aggregation.resolve.TermsFacetConverter;
+import de.picturesafe.search.elasticsearch.connect.dto.FacetDto;
+import de.picturesafe.search.elasticsearch.connect.dto.FacetEntryDto;
+import de.picturesafe.search.elasticsearch.connect.dto.RangeFacetEntryDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchHitDto;
+import de.picturesafe.search.elasticsearch.connect.util.LazySourceMap;
+import org.apache.lucene.search.TotalHits;
+import org.elasticsearch.search.aggregations.Aggregation;
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.Avg;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SearchResponseStreamParserTest {
+
+    private static final String RESPONSE = "{\"took\":3,\"timed_out\":false,\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0},"
+            + "\"hits\":{\"total\":{\"value\":42,\"relation\":\"gte\"},\"max_score\":1.0,\"hits\":["
+            + "{\"_index\":\"test\",\"_type\":\"_doc\",\"_id\":\"1\",\"_score\":1.0,\"_source\":{\"id\":1,\"title\":\"One\",\"tags\":[\"a\",\"b\"]},"
+            + "\"fields\":{\"keyword\":[\"k1\"],\"numbers\":[1,2]},\"sort\":[1],"
+            + "\"inner_hits\":{\"nested\":{\"hits\":{\"total\":{\"value\":1,\"relation\":\"eq\"},\"max_score\":null,\"hits\":["
+            + "{\"_index\":\"test\",\"_type\":\"_doc\",\"_id\":\"1\",\"_nested\":{\"field\":\"n\",\"offset\":0},\"_score\":null,"
+            + "\"_source\":{\"x\":\"y\"}}]}}}},"
+            + "{\"_index\":\"test\",\"_type\":\"_doc\",\"_id\":\"2\",\"_score\":1.0,\"fields\":{\"keyword\":[\"k2\"]}}]},"
+            + "\"aggregations\":{"
+            + "\"sterms#caption\":{\"doc_count_error_upper_bound\":0,\"sum_other_doc_count\":0,\"buckets\":"
+            + "[{\"key\":\"c1\",\"doc_count\":3},{\"key\":\"c2\",\"doc_count\":1},{\"key\":\"c3\",\"doc_count\":0}]},"
+            + "\"lterms#released\":{\"buckets\":[{\"key\":1,\"key_as_string\":\"true\",\"doc_count\":2},{\"key\":7,\"doc_count\":1}]},"
+            + "\"avg#average\":{\"value\":1.5},"
+            + "\"date_range#date.ranges\":{\"buckets\":[{\"key\":\"today\",\"from\":1.5778368E12,\"from_as_string\":\"2020-01-01\",\"doc_count\":4}]},"
+            + "\"date_histogram#date.histogram\":{\"buckets\":[{\"key_as_string\":\"2020\",\"key\":1577836800000,\"doc_count\":5}]}}}";
+
+    private static final FacetConverterChain DEFAULT_CONVERTERS
+            = FacetConverterChain.of(new TermsFacetConverter(), new RangeFacetConverter(), new HistogramFacetConverter());
+
+    @Test
+    public void testParseHits() throws Exception {
+        final SearchResponseStreamParser.ParsedSearchResponse response = new SearchResponseStreamParser().parse(RESPONSE.getBytes(StandardCharsets.UTF_8));
+
+        final TotalHits totalHits = response.getTotalHits();
+        assertEquals(42, totalHits.value);
+        assertEquals(TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO, totalHits.relation);
+
+        final List<SearchHitDto> hits = response.getHits();
+        assertEquals(2, hits.size());
+        final SearchHitDto first = hits.get(0);
+        assertEquals("1", first.getId());
+        assertTrue(first.getAttributes() instanceof LazySourceMap);
+        assertEquals("{\"id\":1,\"title\":\"One\",\"tags\":[\"a\",\"b\"]}", ((LazySourceMap) first.getAttributes()).getSource().utf8ToString());
+        assertEquals("One", first.get("title"));
+        assertEquals(Arrays.asList("a", "b"), first.get("tags"));
+        assertEquals("k1", first.get("keyword"));
+        assertEquals(Arrays.asList(1, 2), first.get("numbers"));
+        assertEquals(5, first.size());
+
+        final List<SearchHitDto> innerHits = first.getInnerHits().get("nested");
+        assertEquals(1, innerHits.size());
+        assertEquals("y", innerHits.get(0).get("x"));
+
+        final SearchHitDto second = hits.get(1);
+        assertEquals("2", second.getId());
+        assertEquals(Collections.singletonMap("keyword", "k2"), second.getAttributes());
+        assertNull(second.getInnerHits());
+    }
+
+    @Test
+    public void testParseFacets() throws Exception {
+        final List<FacetDto> facets = facets(DEFAULT_CONVERTERS, Collections.emptyList());
+        assertEquals(4, facets.size());
+
+        assertEquals(new FacetDto("caption", "caption", 4, Arrays.asList(new FacetEntryDto("c1", 3), new FacetEntryDto("c2", 1))), facets.get(0));
+        assertEquals(new FacetDto("released", null, 3, Arrays.asList(new FacetEntryDto("true", 2), new FacetEntryDto("7", 1))), facets.get(1));
+
+        final FacetDto ranges = facets.get(2);
+        assertEquals("date.ranges", ranges.getName());
+        assertEquals("date", ranges.getFieldName());
+        final RangeFacetEntryDto range = (RangeFacetEntryDto) ranges.getFacetEntryDtos().get(0);
+        assertEquals("today", range.getValue());
+        assertEquals(4, range.getCount());
+        assertEquals("2020-01-01", range.getFrom());
+        assertNull(range.getTo());
+
+        assertEquals(new FacetDto("date.histogram", "date", 5, Collections.singletonList(new FacetEntryDto("2020", 5))), facets.get(3));
+    }
+
+    @Test
+    public void testFacetResolver() throws Exception {
+        final FacetResolver facetResolver = new FacetResolver() {
+            @Override
+            public boolean isResponsible(String aggregationName) {
+                return aggregationName.equals("released") || aggregationName.equals("date.histogram");
+            }
+
+            @Override
+            public String resolve(String value, Number numberValue, Locale locale) {
+                return value + "/" + numberValue + "/" + locale.getLanguage();
+            }
+        };
+        final List<FacetDto> facets = facets(DEFAULT_CONVERTERS, Collections.singletonList(facetResolver));
+        assertEquals(Arrays.asList(new FacetEntryDto("true/1/de", 2), new FacetEntryDto("7/7/de", 1)), facets.get(1).getFacetEntryDtos());
+        assertEquals("2020/1577836800000/de", facets.get(3).getFacetEntryDtos().get(0).getValue());
+    }
+
+    @Test
+    public void testCustomFacetConverter() throws Exception {
+        final FacetConverter averageConverter = new FacetConverter() {
+            @Override
+            public boolean isResponsible(Aggregation aggregation) {
+                return aggregation instanceof Avg;
+            }
+
+            @Override
+            public FacetDto convert(Aggregation aggregation, FacetResolver facetResolver, String fieldName, Locale locale) {
+                final String value = Double.toString(((Avg) aggregation).getValue());
+                return new FacetDto(aggregation.getName(), fieldName, 1, Collections.singletonList(new FacetEntryDto(value, 1)));
+            }
+        };
+        final FacetConverterChain converters = FacetConverterChain.of(averageConverter, new TermsFacetConverter());
+
+        final List<FacetDto> facets = facets(converters, Collections.emptyList());
+        assertEquals(3, facets.size());
+        assertEquals("caption", facets.get(0).getName());
+        assertEquals(new FacetDto("average", null, 1, Collections.singletonList(new FacetEntryDto("1.5", 1))), facets.get(2));
+    }
+
+    @Test
+    public void testUnknownAggregationType() throws Exception {
+        final String response = "{\"aggregations\":{\"unknown#test\":{\"value\":{\"a\":[1,2]}},\"sterms#caption\":{\"buckets\":"
+                + "[{\"key\":\"c1\",\"doc_count\":3}]}}}";
+        final Aggregations aggregations = new SearchResponseStreamParser().parse(response.getBytes(StandardCharsets.UTF_8)).getAggregations();
+        assertEquals(1, aggregations.asList().size());
+        assertTrue(aggregations.get("caption") instanceof Terms);
+    }
+
+    private List<FacetDto> facets(FacetConverterChain converters, List<FacetResolver> facetResolvers) throws Exception {
+        final Map<String, String> aggregationFields = new HashMap<>();
+        aggregationFields.put("caption", "caption.keyword");
+        aggregationFields.put("date.ranges", "date");
+        aggregationFields.put("date.histogram", "date");
+
+        // Same conversion as ElasticsearchImpl.convertFacets
+        final List<FacetDto> facets = new ArrayList<>();
+        for (Aggregation aggregation : new SearchResponseStreamParser().parse(RESPONSE.getBytes(StandardCharsets.UTF_8)).getAggregations()) {
+            final FacetConverter converter = converters.getFirstResponsible(aggregation);
+            if (converter != null) {
+                final FacetResolver facetResolver
+                        = facetResolvers.stream().filter(resolver -> resolver.isResponsible(aggregation.getName())).findFirst().orElse(null);
+                facets.add(converter.convert(aggregation, facetResolver, aggregationFields.get(aggregation.getName()), Locale.GERMAN));
+            }
+        }
+        return facets;
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.query;
+
+import de.picturesafe.search.elasticsearch.config.ElasticsearchType;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
+import de.picturesafe.search.elasticsearch.config.impl.StandardFieldConfiguration;
+import de.picturesafe.search.elasticsearch.connect.context.SearchContext;
+import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
+import de.picturesafe.search.elasticsearch.connect.filter.ExpressionFilterFactory;
+import de.picturesafe.search.elasticsearch.connect.filter.FilterFactory;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.DayExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.DayRangeExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.ExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.ExpressionFilterBuilderContext;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.InExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.IsNullExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.KeywordExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.MustNotExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.OperationExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.RangeValueExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.ValueExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.valuepreparation.KeywordValuePreparer;
+import de.picturesafe.search.elasticsearch.connect.util.BoolQueryFlattener;
+import de.picturesafe.search.elasticsearch.connect.util.ExpressionDispatchTable;
+import de.picturesafe.search.expression.DayExpression;
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.expression.IsNullExpression;
+import de.picturesafe.search.expression.KeywordExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.parameter.TemplateParameter;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.NestedQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static de.picturesafe.search.elasticsearch.connect.filter.util.FilterFactoryUtils.createFilter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryCompilerTest {
+
+    private static final String TIME_ZONE = "Europe/Berlin";
+    private static final Date DAY = new Date(1600000000000L);
+
+    private final QueryConfiguration queryConfiguration = new QueryConfiguration();
+    private final MappingConfiguration mappingConfiguration = new MappingConfiguration(Arrays.asList(
+            FieldConfiguration.ID_FIELD,
+            FieldConfiguration.FULLTEXT_FIELD,
+            StandardFieldConfiguration.builder("caption", ElasticsearchType.TEXT).copyToFulltext(true).build(),
+            StandardFieldConfiguration.builder("keyword", ElasticsearchType.KEYWORD).build(),
+            StandardFieldConfiguration.builder("number", ElasticsearchType.INTEGER).build(),
+            StandardFieldConfiguration.builder("created", ElasticsearchType.DATE).build(),
+            StandardFieldConfiguration.builder("reference", ElasticsearchType.NESTED).innerFields(Arrays.asList(
+                    StandardFieldConfiguration.builder("targetId", ElasticsearchType.INTEGER).build(),
+                    StandardFieldConfiguration.builder("note", ElasticsearchType.TEXT).build())).build()));
+
+    @Test
+    public void testSameQueryAndFilterAsFactoryChain() {
+        final List<Expression> expressions = Arrays.asList(
+                new FulltextExpression("test"),
+                new KeywordExpression("keyword", "test"),
+                OperationExpression.and(),
+                OperationExpression.and(new FulltextExpression("test")),
+                OperationExpression.and(new FulltextExpression("test"), new ValueExpression("caption", "caption")),
+                OperationExpression.or(new FulltextExpression("test"), new KeywordExpression("keyword", "test")),
+                OperationExpression.and(new KeywordExpression("keyword", "a"), new InExpression("number", 1, 2, 3)),
+                OperationExpression.or(new IsNullExpression("caption"), new RangeValueExpression("number", 1, 10)),
+                OperationExpression.and(new DayExpression("created", DAY), OperationExpression.or(new FulltextExpression("a"),
+                        OperationExpression.and(new ValueExpression("caption", "b"), new MustNotExpression(new KeywordExpression("keyword", "c"))))),
+                new MustNotExpression(OperationExpression.or(new FulltextExpression("a"), new KeywordExpression("keyword", "b"))),
+                OperationExpression.or(OperationExpression.and(new KeywordExpression("keyword", "a"), new InExpression("number", 1)),
+                        OperationExpression.and(new IsNullExpression("caption", false), new MustNotExpression(new InExpression("number", 2)))),
+                mixedExpression());
+
+        for (Expression expression : expressions) {
+            assertSameAsFactoryChain(new QueryDto(expression, Locale.GERMAN));
+            assertSameAsFactoryChain(new QueryDto(expression, null, Collections.singletonList(SortOption.relevance()), null, Locale.GERMAN));
+            assertSameAsFactoryChain(new QueryDto(expression, null, Collections.singletonList(SortOption.asc("number")), null, Locale.GERMAN));
+        }
+    }
+
+    @Test
+    public void testDeepExpression() throws Exception {
+        // Alternating operations of 10,000 levels, compiled on a thread with a small stack
+        Expression expression = new KeywordExpression("keyword", "leaf");
+        for (int i = 0; i < 10000; i++) {
+            final Expression operand = (i % 3 == 0) ? new FulltextExpression("term" + i) : new ValueExpression("caption", "caption" + i);
+            expression = (i % 2 == 0) ? OperationExpression.and(operand, expression) : OperationExpression.or(operand, expression);
+        }
+        final QueryDto queryDto = new QueryDto(expression, Locale.GERMAN);
+
+        final AtomicReference<QueryCompiler.CompiledQuery> result = new AtomicReference<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread thread = new Thread(null, () -> {
+            try {
+                final QueryCompiler.CompiledQuery compiledQuery = compiler().compile(new SearchContext(queryDto, mappingConfiguration));
+                BoolQueryFlattener.flatten(compiledQuery.getQuery());
+                result.set(compiledQuery);
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        }, "deep-expression", 1024 * 1024);
+        thread.start();
+        thread.join();
+
+        assertNull(error.get());
+        assertNotNull(result.get().getQuery());
+        assertNotNull(result.get().getFilter());
+    }
+
+    @Test
+    public void testNestedGroups() {
+        final Expression andExpression = OperationExpression.and(new ValueExpression("reference.targetId", 1), new FulltextExpression("test"),
+                new ValueExpression("reference.note", "note"), new InExpression("reference.targetId", 2, 3), new KeywordExpression("keyword", "a"));
+        final Expression orExpression = OperationExpression.or(new ValueExpression("reference.targetId", 1), new ValueExpression("reference.note", "note"));
+        final Expression singleExpression = OperationExpression.and(new ValueExpression("reference.targetId", 1), new FulltextExpression("test"));
+
+        assertFalse(queryConfiguration.isGroupNestedQueries());
+        for (Expression expression : Arrays.asList(andExpression, orExpression, singleExpression)) {
+            assertSameAsFactoryChain(new QueryDto(expression, Locale.GERMAN));
+        }
+        assertEquals(3, countNestedQueries(compiler().compile(new SearchContext(new QueryDto(andExpression, Locale.GERMAN), mappingConfiguration)).getQuery()));
+
+        queryConfiguration.setGroupNestedQueries(true);
+        final QueryCompiler.CompiledQuery andQuery = compiler().compile(new SearchContext(new QueryDto(andExpression, Locale.GERMAN), mappingConfiguration));
+        assertEquals(1, countNestedQueries(andQuery.getQuery()));
+        final NestedQueryBuilder nestedAndQuery = (NestedQueryBuilder) ((BoolQueryBuilder) andQuery.getQuery()).must().get(0);
+        assertEquals(3, ((BoolQueryBuilder) nestedAndQuery.query()).filter().size());
+        assertEquals(0, countNestedQueries(andQuery.getFilter()));
+
+        final QueryCompiler.CompiledQuery orQuery = compiler().compile(new SearchContext(new QueryDto(orExpression, Locale.GERMAN), mappingConfiguration));
+        assertEquals(1, countNestedQueries(orQuery.getQuery()));
+        final BoolQueryBuilder nestedOrQuery = (BoolQueryBuilder) ((NestedQueryBuilder) ((BoolQueryBuilder) orQuery.getQuery()).should().get(0)).query();
+        assertEquals(2, ((BoolQueryBuilder) nestedOrQuery.filter().get(0)).should().size());
+
+        // A single expression on a nested object is not grouped
+        assertSameAsFactoryChain(new QueryDto(singleExpression, Locale.GERMAN));
+    }
+
+    @Test
+    public void testTemplateParameterPlaceholders() {
+        final Expression expression = OperationExpression.and(
+                new KeywordExpression("keyword", TemplateParameter.placeholder("keyword")),
+                new ValueExpression("keyword", TemplateParameter.placeholder("value")),
+                new ValueExpression("number", ValueExpression.Comparison.GE, TemplateParameter.placeholder("minCount")));
+        final QueryCompiler.CompiledQuery compiledQuery = compiler().compile(new SearchContext(new QueryDto(expression, Locale.GERMAN),
+                mappingConfiguration));
+
+        // Placeholders must not be treated as phrase match values
+        final String json = toJson(compiledQuery.getQuery()) + toJson(compiledQuery.getFilter());
+        for (String name : Arrays.asList("keyword", "value", "minCount")) {
+            assertTrue(json, json.contains("\"" + TemplateParameter.placeholder(name) + "\""));
+        }
+    }
+
+    private String toJson(QueryBuilder query) {
+        return (query != null) ? Strings.toString(query) : "";
+    }
+
+    private int countNestedQueries(QueryBuilder query) {
+        final String json = Strings.toString(query);
+        return json.split("\"nested\"", -1).length - 1;
+    }
+
+    private void assertSameAsFactoryChain(QueryDto queryDto) {
+        final SearchContext chainContext = new SearchContext(queryDto, mappingConfiguration);
+        final List<FilterFactory> chainFilterFactories = Collections.singletonList(new RecursiveExpressionFilterFactory(expressionFilterBuilders()));
+        final QueryBuilder chainQuery = new FactoryChainCaller(queryFactories(chainFilterFactories)).createQuery(chainContext);
+        final QueryBuilder chainFilter = createFilter(chainFilterFactories, chainContext);
+
+        final QueryCompiler.CompiledQuery compiledQuery = compiler().compile(new SearchContext(queryDto, mappingConfiguration));
+        assertEquals(queryDto.getExpression().toString(), chainQuery, compiledQuery.getQuery());
+        assertEquals(queryDto.getExpression().toString(), chainFilter, compiledQuery.getFilter());
+    }
+
+    private QueryCompiler compiler() {
+        final List<FilterFactory> filterFactories = Collections.singletonList(new ExpressionFilterFactory(expressionFilterBuilders()));
+        final List<QueryFactory> queryFactories = queryFactories(filterFactories);
+        final CompilerCaller caller = new CompilerCaller();
+        caller.compiler = new QueryCompiler(caller, new ExpressionDispatchTable<>(queryFactories, QueryFactory::supportsExpressionClass),
+                filterFactories);
+        return caller.compiler;
+    }
+
+    private List<QueryFactory> queryFactories(List<FilterFactory> filterFactories) {
+        return Arrays.asList(new FindAllQueryFactory(), new FulltextQueryFactory(queryConfiguration), new OperationExpressionQueryFactory(),
+                new NestedQueryFactory(filterFactories, queryConfiguration), new RelevanceSortQueryFactory(filterFactories));
+    }
+
+    private List<ExpressionFilterBuilder> expressionFilterBuilders() {
+        return Arrays.asList(
+                new OperationExpressionFilterBuilder(),
+                new MustNotExpressionFilterBuilder(),
+                new IsNullExpressionFilterBuilder(),
+                new InExpressionFilterBuilder(),
+                new RangeValueExpressionFilterBuilder(TIME_ZONE),
+                new DayRangeExpressionFilterBuilder(TIME_ZONE),
+                new DayExpressionFilterBuilder(TIME_ZONE),
+                new KeywordExpressionFilterBuilder(),
+                new ValueExpressionFilterBuilder(Collections.singletonList(new KeywordValuePreparer()), queryConfiguration, TIME_ZONE));
+    }
+
+    private Expression mixedExpression() {
+        final List<Expression> groups = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            groups.add(OperationExpression.and(
+                    new FulltextExpression("term" + i),
+                    OperationExpression.or(new ValueExpression("caption", "caption" + i), new KeywordExpression("keyword", "keyword" + i)),
+                    new InExpression("number", i, i + 1, i + 2),
+                    new RangeValueExpression("number", i, i + 100),
+                    new DayExpression("created", DAY),
+                    new MustNotExpression(new KeywordExpression("keyword", "excluded" + i)),
+                    new IsNullExpression("caption", false)));
+        }
+        return OperationExpression.or(groups);
+    }
+
+    private static class CompilerCaller implements QueryFactoryCaller {
+
+        private QueryCompiler compiler;
+
+        @Override
+        public QueryBuilder createQuery(SearchContext context) {
+            return compiler.createQuery(context);
+        }
+    }
+
+    /**
+     * Runs the query factories one after another, recursing for the operands like before the introduction of the query compiler.
+     */
+    private static class FactoryChainCaller implements QueryFactoryCaller {
+
+        private final List<QueryFactory> queryFactories;
+
+        FactoryChainCaller(List<QueryFactory> queryFactories) {
+            this.queryFactories = queryFactories;
+        }
+
+        @Override
+        public QueryBuilder createQuery(SearchContext context) {
+            for (QueryFactory queryFactory : queryFactories) {
+                if (queryFactory.supports(context)) {
+                    final QueryBuilder result = queryFactory.create(this, context);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Runs the expression filter builders one after another, recursing for the operands like before the introduction of the query compiler.
+     */
+    private static class RecursiveExpressionFilterFactory extends ExpressionFilterFactory {
+
+        private final List<ExpressionFilterBuilder> builders;
+
+        RecursiveExpressionFilterFactory(List<ExpressionFilterBuilder> builders) {
+            super(builders);
+            this.builders = builders;
+        }
+
+        @Override
+        public QueryBuilder buildFilter(Expression expression, SearchContext context) {
+            final ExpressionFilterBuilderContext builderContext = new ExpressionFilterBuilderContext(expression, context, this);
+            for (ExpressionFilterBuilder builder : builders) {
+                if (builder.supports(builderContext)) {
+                    final QueryBuilder filter = builder.buildFilter(builderContext);
+                    if (filter != null) {
+                        return filter;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.util;
+
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BoolQueryFlattenerTest {
+
+    @Test
+    public void testFlattenNestedMust() {
+        final QueryBuilder query = boolQuery()
+                .must(boolQuery().must(matchQuery("title", "hund")).must(boolQuery().must(matchQuery("caption", "katze"))))
+                .filter(boolQuery().must(termQuery("keyword", "a")).mustNot(termQuery("keyword", "b")));
+
+        final BoolQueryBuilder flattened = (BoolQueryBuilder) BoolQueryFlattener.flatten(query);
+        assertEquals(Arrays.asList(matchQuery("title", "hund"), matchQuery("caption", "katze")), flattened.must());
+        assertEquals(Arrays.asList(termQuery("keyword", "a")), flattened.filter());
+        assertEquals(Arrays.asList(termQuery("keyword", "b")), flattened.mustNot());
+        assertTrue(flattened.should().isEmpty());
+        assertTrue(Strings.toString(flattened).length() < Strings.toString(query).length());
+    }
+
+    @Test
+    public void testFlattenShould() {
+        final QueryBuilder query = boolQuery()
+                .should(matchQuery("title", "hund"))
+                .should(boolQuery().should(matchQuery("title", "katze")).should(matchQuery("title", "maus")));
+
+        final BoolQueryBuilder flattened = (BoolQueryBuilder) BoolQueryFlattener.flatten(query);
+        assertEquals(Arrays.asList(matchQuery("title", "hund"), matchQuery("title", "katze"), matchQuery("title", "maus")), flattened.should());
+    }
+
+    @Test
+    public void testCollapseSingleClause() {
+        final QueryBuilder query = boolQuery().must(boolQuery().should(boolQuery().must(matchQuery("title", "hund"))));
+        assertEquals(matchQuery("title", "hund"), BoolQueryFlattener.flatten(query));
+    }
+
+    @Test
+    public void testFilterContext() {
+        final QueryBuilder query = boolQuery()
+                .must(matchQuery("title", "hund"))
+                .filter(boolQuery().should(termQuery("keyword", "a")).should(termQuery("keyword", "b")).should(termsQuery("keyword", "c", "d")))
+                .mustNot(boolQuery().should(termQuery("id", 1)).should(termQuery("id", 2)))
+                .mustNot(boolQuery().mustNot(termQuery("flag", true)));
+
+        final BoolQueryBuilder flattened = (BoolQueryBuilder) BoolQueryFlattener.flatten(query);
+        assertEquals(Arrays.asList(matchQuery("title", "hund")), flattened.must());
+        assertEquals(Arrays.asList(new TermsQueryBuilder("keyword", "a", "b", "c", "d"), termQuery("flag", true)), flattened.filter());
+        assertEquals(Arrays.asList(new TermsQueryBuilder("id", Arrays.asList(1, 2))), flattened.mustNot());
+    }
+
+    @Test
+    public void testKeepScoringStructure() {
+        final QueryBuilder boosted = boolQuery().must(matchQuery("title", "hund")).must(matchQuery("caption", "hund")).boost(2);
+        final QueryBuilder named = boolQuery().should(termQuery("keyword", "a")).should(termQuery("keyword", "b")).queryName("keywords");
+        final QueryBuilder minimumShouldMatch = boolQuery().should(termQuery("keyword", "a")).should(termQuery("keyword", "b")).minimumShouldMatch(2);
+        final QueryBuilder pureNegative = boolQuery().mustNot(termQuery("keyword", "a"));
+        final QueryBuilder scoringTerms = boolQuery().should(termQuery("keyword", "a")).should(termQuery("keyword", "b"));
+        final QueryBuilder query = boolQuery().must(boosted).must(named).must(minimumShouldMatch).must(pureNegative).must(scoringTerms);
+
+        final BoolQueryBuilder flattened = (BoolQueryBuilder) BoolQueryFlattener.flatten(query);
+        assertEquals(Arrays.asList(boosted, named, minimumShouldMatch, pureNegative, scoringTerms), flattened.must());
+    }
+
+    @Test
+    public void testKeepRequiredClausesWithShould() {
+        // Pulling up the pure negative filter would remove the last required clause and make the should clause mandatory
+        final QueryBuilder pureNegative = boolQuery().mustNot(termQuery("keyword", "a"));
+        final QueryBuilder query = boolQuery().filter(pureNegative).should(matchQuery("title", "hund"));
+
+        final BoolQueryBuilder flattened = (BoolQueryBuilder) BoolQueryFlattener.flatten(query);
+        assertEquals(Arrays.asList(pureNegative), flattened.filter());
+        assertTrue(flattened.mustNot().isEmpty());
+        assertEquals(Arrays.asList(matchQuery("title", "hund")), flattened.should());
+    }
+
+    @Test
+    public void testKeepPureNegativeMustWithShouldInFilterContext() {
+        final QueryBuilder pureNegative = boolQuery().mustNot(termQuery("keyword", "a"));
+        final QueryBuilder should = boolQuery().must(pureNegative).should(termQuery("keyword", "b")).should(termQuery("keyword", "c"));
+        final QueryBuilder query = boolQuery().must(matchQuery("title", "hund")).filter(should);
+
+        final BoolQueryBuilder flattened = (BoolQueryBuilder) BoolQueryFlattener.flatten(query);
+        final BoolQueryBuilder flattenedShould = (BoolQueryBuilder) flattened.filter().get(0);
+        assertEquals(Arrays.asList(pureNegative), flattenedShould.filter());
+        assertTrue(flattenedShould.mustNot().isEmpty());
+        assertEquals(2, flattenedShould.should().size());
+    }
+
+    @Test
+    public void testKeepDoubleNegationWithShould() {
+        // Rewriting not (not a) to a filter would add a required clause and make the should clause optional
+        final QueryBuilder doubleNegation = boolQuery().mustNot(termQuery("flag", true));
+        final QueryBuilder query = boolQuery().mustNot(doubleNegation).should(matchQuery("title", "hund"));
+
+        final BoolQueryBuilder flattened = (BoolQueryBuilder) BoolQueryFlattener.flatten(query);
+        assertTrue(flattened.filter().isEmpty());
+        assertEquals(Arrays.asList(doubleNegation), flattened.mustNot());
+        assertEquals(Arrays.asList(matchQuery("title", "hund")), flattened.should());
+    }
+
+    @Test
+    public void testFlattenWithShouldKeepingRequiredClauses() {
+        final QueryBuilder query = boolQuery()
+                .filter(boolQuery().must(termQuery("keyword", "a")).mustNot(termQuery("keyword", "b")))
+                .mustNot(boolQuery().mustNot(termQuery("flag", true)))
+                .should(matchQuery("title", "hund"));
+
+        final BoolQueryBuilder flattened = (BoolQueryBuilder) BoolQueryFlattener.flatten(query);
+        assertEquals(Arrays.asList(termQuery("keyword", "a"), termQuery("flag", true)), flattened.filter());
+        assertEquals(Arrays.asList(termQuery("keyword", "b")), flattened.mustNot());
+        assertEquals(Arrays.asList(matchQuery("title", "hund")), flattened.should());
+    }
+
+    @Test
+    public void testNoBoolQuery() {
+        final QueryBuilder query = matchQuery("title", "hund");
+        assertSame(query, BoolQueryFlattener.flatten(query));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.util;
+
+import de.picturesafe.search.elasticsearch.config.QueryConfiguration;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.DayExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.ExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.InExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.KeywordExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.MustNotExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.OperationExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.filter.expression.ValueExpressionFilterBuilder;
+import de.picturesafe.search.elasticsearch.connect.query.FindAllQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.FulltextQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.NestedQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.OperationExpressionQueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.QueryFactory;
+import de.picturesafe.search.elasticsearch.connect.query.RelevanceSortQueryFactory;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.expression.IsNullExpression;
+import de.picturesafe.search.expression.KeywordExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionDispatchTableTest {
+
+    private final QueryFactory findAll = new FindAllQueryFactory();
+    private final QueryFactory fulltext = new FulltextQueryFactory(new QueryConfiguration());
+    private final QueryFactory operation = new OperationExpressionQueryFactory();
+    private final QueryFactory nested = new NestedQueryFactory(Collections.emptyList());
+    private final QueryFactory relevanceSort = new RelevanceSortQueryFactory(Collections.emptyList());
+    private final ExpressionDispatchTable<QueryFactory> queryFactories = new ExpressionDispatchTable<>(
+            Arrays.asList(findAll, fulltext, operation, nested, relevanceSort), QueryFactory::supportsExpressionClass);
+
+    @Test
+    public void testQueryFactoryCandidates() {
+        assertEquals(Arrays.asList(operation, relevanceSort), queryFactories.getCandidates(OperationExpression.and()));
+        assertEquals(Arrays.asList(fulltext, nested, relevanceSort), queryFactories.getCandidates(new FulltextExpression("test")));
+        assertEquals(Arrays.asList(fulltext, nested, relevanceSort), queryFactories.getCandidates(new ValueExpression("caption", "test")));
+        assertEquals(Arrays.asList(fulltext, nested, relevanceSort), queryFactories.getCandidates(new KeywordExpression("keyword", "test")));
+        assertEquals(Arrays.asList(relevanceSort), queryFactories.getCandidates(new IsNullExpression("caption")));
+        assertEquals(Arrays.asList(fulltext, nested, relevanceSort),
+                queryFactories.getCandidates(new MustNotExpression(new ValueExpression("caption", "test"))));
+        assertSame(queryFactories.getHandlers(), queryFactories.getCandidates(null));
+    }
+
+    @Test
+    public void testExpressionFilterBuilderCandidates() {
+        final ExpressionFilterBuilder operationBuilder = new OperationExpressionFilterBuilder();
+        final ExpressionFilterBuilder mustNotBuilder = new MustNotExpressionFilterBuilder();
+        final ExpressionFilterBuilder inBuilder = new InExpressionFilterBuilder();
+        final ExpressionFilterBuilder dayBuilder = new DayExpressionFilterBuilder("Europe/Berlin");
+        final ExpressionFilterBuilder keywordBuilder = new KeywordExpressionFilterBuilder();
+        final ExpressionFilterBuilder valueBuilder = new ValueExpressionFilterBuilder(Collections.emptyList(), new QueryConfiguration(), "Europe/Berlin");
+        final ExpressionDispatchTable<ExpressionFilterBuilder> builders = new ExpressionDispatchTable<>(
+                Arrays.asList(operationBuilder, mustNotBuilder, inBuilder, dayBuilder, keywordBuilder, valueBuilder),
+                ExpressionFilterBuilder::supportsExpressionClass);
+
+        assertEquals(Collections.singletonList(valueBuilder), builders.getCandidates(new ValueExpression("caption", "test")));
+        assertEquals(Collections.singletonList(keywordBuilder), builders.getCandidates(new KeywordExpression("keyword", "test")));
+        assertEquals(Collections.singletonList(inBuilder), builders.getCandidates(new InExpression("id", 1, 2)));
+        assertEquals(Collections.singletonList(mustNotBuilder), builders.getCandidates(new MustNotExpression(new ValueExpression("caption", "x"))));
+        assertTrue(builders.getCandidates(new FulltextExpression("test")).contains(valueBuilder));
+    }
+
+    @Test
+    public void testKeepOrder() {
+        final List<String> handlers = Arrays.asList("c", "a", "b", "d");
+        final ExpressionDispatchTable<String> table = new ExpressionDispatchTable<>(handlers, (handler, type) -> !handler.equals("a"));
+        assertEquals(Arrays.asList("c", "b", "d"), table.getCandidates(new ValueExpression("caption", "test")));
+    }
+}
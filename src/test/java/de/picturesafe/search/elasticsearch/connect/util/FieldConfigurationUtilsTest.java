@@ -0,0 +1,43 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.picturesafe.search.elasticsearch.connect.util;
+
+import de.picturesafe.search.elasticsearch.config.ElasticsearchType;
+import de.picturesafe.search.elasticsearch.config.impl.StandardFieldConfiguration;
+import org.junit.Test;
+
+import static de.picturesafe.search.elasticsearch.connect.util.FieldConfigurationUtils.hasDocValues;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FieldConfigurationUtilsTest {
+
+    @Test
+    public void testHasDocValues() {
+        assertTrue(hasDocValues(StandardFieldConfiguration.builder("keyword", ElasticsearchType.KEYWORD).build()));
+        assertTrue(hasDocValues(StandardFieldConfiguration.builder("count", ElasticsearchType.INTEGER).build()));
+        assertTrue(hasDocValues(StandardFieldConfiguration.builder("created", ElasticsearchType.DATE).build()));
+        assertTrue(hasDocValues(StandardFieldConfiguration.builder("flag", ElasticsearchType.BOOLEAN).build()));
+
+        assertFalse(hasDocValues(null));
+        assertFalse(hasDocValues(StandardFieldConfiguration.builder("title", ElasticsearchType.TEXT).build()));
+        assertFalse(hasDocValues(StandardFieldConfiguration.builder("caption", ElasticsearchType.KEYWORD).multilingual(true).build()));
+        assertFalse(hasDocValues(StandardFieldConfiguration.builder("hidden", ElasticsearchType.KEYWORD).withoutIndexing().build()));
+        assertFalse(hasDocValues(StandardFieldConfiguration.builder("nodocs", ElasticsearchType.LONG).additionalParameter("doc_values", false).build()));
+        assertFalse(hasDocValues(StandardFieldConfiguration.builder("nested", ElasticsearchType.NESTED).build()));
+    }
+}
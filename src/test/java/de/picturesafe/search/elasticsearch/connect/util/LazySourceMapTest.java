@@ -0,0 +1,84 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.util;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LazySourceMapTest {
+
+    private static final String SOURCE = "{\"id\":1,\"title\":\"Title\",\"nested\":{\"a\":[1,2],\"b\":\"x\"},\"tags\":[\"t1\",\"t2\"],"
+            + "\"price\":1.5,\"flag\":true,\"empty\":null,\"big\":12345678901}";
+
+    @Test
+    public void testFieldLookup() {
+        final LazySourceMap map = new LazySourceMap(new BytesArray(SOURCE));
+        assertEquals(1, map.get("id"));
+        assertEquals("Title", map.get("title"));
+        assertEquals(Arrays.asList("t1", "t2"), map.get("tags"));
+        assertNull(map.get("missing"));
+        assertFalse(map.containsKey("missing"));
+        assertFalse(map.isParsed());
+
+        assertEquals(12345678901L, map.get("big"));
+        assertEquals(1.5, map.get("price"));
+        assertTrue(map.containsKey("empty"));
+        assertTrue(map.isParsed());
+        assertEquals(true, map.get("flag"));
+        assertEquals(8, map.size());
+    }
+
+    @Test
+    public void testNestedValue() {
+        final LazySourceMap map = new LazySourceMap(new BytesArray(SOURCE));
+        final Map<String, Object> expected = new HashMap<>();
+        expected.put("a", Arrays.asList(1, 2));
+        expected.put("b", "x");
+        assertEquals(expected, map.get("nested"));
+        assertFalse(map.isParsed());
+    }
+
+    @Test
+    public void testFieldsTakePrecedence() {
+        final LazySourceMap map = new LazySourceMap(new BytesArray(SOURCE), Collections.singletonMap("title", "Doc value"));
+        assertEquals("Doc value", map.get("title"));
+        map.put("added", "value");
+        assertTrue(map.isParsed());
+        assertEquals("Doc value", map.get("title"));
+        assertEquals("value", map.get("added"));
+        assertEquals(9, map.size());
+    }
+
+    @Test
+    public void testEqualsParsedMap() {
+        final Map<String, Object> expected = new HashMap<>();
+        expected.put("id", 1);
+        expected.put("title", "Title");
+        assertEquals(expected, new LazySourceMap(new BytesArray("{\"id\":1,\"title\":\"Title\"}")));
+    }
+}
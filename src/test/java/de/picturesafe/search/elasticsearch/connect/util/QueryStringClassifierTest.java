@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.elasticsearch.connect.util;
+
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.QueryStringQueryBuilder;
+import org.junit.Test;
+
+import static org.elasticsearch.index.query.Operator.AND;
+import static org.elasticsearch.index.query.Operator.OR;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class QueryStringClassifierTest {
+
+    @Test
+    public void testSimpleQueryStrings() {
+        assertEquals("sunset", QueryStringClassifier.matchText("sunset", AND, true));
+        assertEquals("Berlin 2020", QueryStringClassifier.matchText("Berlin 2020", AND, true));
+        assertEquals("Berlin 2020", QueryStringClassifier.matchText("(Berlin && 2020)", AND, true));
+        assertEquals("a b c", QueryStringClassifier.matchText(" (a && b)\t&& c ", AND, true));
+        assertEquals("a b c", QueryStringClassifier.matchText("a || (b c)", OR, true));
+        assertEquals("Ärzte", QueryStringClassifier.matchText("(Ärzte)", AND, false));
+    }
+
+    @Test
+    public void testQueryStringSyntax() {
+        final String[] queryStrings = {"", "a*", "a?b", "title:a", "\"a b\"", "a~2", "a^2", "a AND b", "a OR b", "NOT a", "-a", "+a", "a\\!", "a/b",
+            "[a TO b]", "{a TO b}", "a=b", "a>b", "a!", "a&&b", "a || b", "a &&", "&& a", "a && && b", "(a", "a)", "()", "(&& a)", "(a &&) b"};
+        for (String queryString : queryStrings) {
+            assertNull(queryString, QueryStringClassifier.matchText(queryString, AND, true));
+        }
+        assertNull(QueryStringClassifier.matchText("a && b", OR, true));
+        assertNull(QueryStringClassifier.matchText("a b", AND, false));
+        assertNull(QueryStringClassifier.matchText("(a && b)", AND, false));
+    }
+
+    @Test
+    public void testCreateQuery() {
+        assertEquals(QueryBuilders.matchQuery("caption", "a b").operator(AND),
+                QueryStringClassifier.createQuery("(a && b)", "caption", AND, true, true));
+        assertEquals(QueryBuilders.matchQuery("keyword", "a").operator(OR),
+                QueryStringClassifier.createQuery("a", "keyword", OR, false, true));
+        assertTrue(QueryStringClassifier.createQuery("a b", "keyword", AND, false, true) instanceof QueryStringQueryBuilder);
+        assertTrue(QueryStringClassifier.createQuery("a*", "caption", AND, true, true) instanceof QueryStringQueryBuilder);
+        assertTrue(QueryStringClassifier.createQuery("a", "caption", AND, true, false) instanceof QueryStringQueryBuilder);
+        assertTrue(QueryStringClassifier.createQuery("a", "caption", AND, true, true) instanceof MatchQueryBuilder);
+    }
+}
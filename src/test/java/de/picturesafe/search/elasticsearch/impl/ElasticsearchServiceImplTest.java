@@ -17,21 +17,44 @@
 package de.picturesafe.search.elasticsearch.impl;
 
 import de.picturesafe.search.elasticsearch.FieldConfigurationProvider;
+import de.picturesafe.search.elasticsearch.DataChangeProcessingMode;
 import de.picturesafe.search.elasticsearch.IndexPresetConfigurationProvider;
+import de.picturesafe.search.elasticsearch.config.ElasticsearchType;
+import de.picturesafe.search.elasticsearch.config.FieldConfiguration;
 import de.picturesafe.search.elasticsearch.config.IndexPresetConfiguration;
+import de.picturesafe.search.elasticsearch.config.MappingConfiguration;
+import de.picturesafe.search.elasticsearch.config.impl.StandardFieldConfiguration;
+import de.picturesafe.search.elasticsearch.config.impl.SuggestFieldConfiguration;
 import de.picturesafe.search.elasticsearch.connect.Elasticsearch;
+import de.picturesafe.search.elasticsearch.connect.dto.FacetDto;
+import de.picturesafe.search.elasticsearch.connect.dto.FacetEntryDto;
 import de.picturesafe.search.elasticsearch.connect.dto.QueryDto;
 import de.picturesafe.search.elasticsearch.connect.dto.QueryRangeDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchHitDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchResultDto;
+import de.picturesafe.search.elasticsearch.connect.dto.SearchTemplateDto;
+import de.picturesafe.search.elasticsearch.model.ResultFacet;
+import de.picturesafe.search.elasticsearch.model.SearchResult;
 import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.FulltextExpression;
+import de.picturesafe.search.expression.KeywordExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.SuggestExpression;
+import de.picturesafe.search.expression.ValueExpression;
 import de.picturesafe.search.expression.internal.EmptyExpression;
+import de.picturesafe.search.expression.optimizer.ExpressionOptimizer;
 import de.picturesafe.search.parameter.AccountContext;
+import de.picturesafe.search.parameter.FieldResolverType;
 import de.picturesafe.search.parameter.SearchAggregation;
 import de.picturesafe.search.parameter.SearchParameter;
 import de.picturesafe.search.parameter.SortOption;
+import de.picturesafe.search.parameter.TemplateParameter;
 import de.picturesafe.search.parameter.aggregation.TermsAggregation;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -39,8 +62,24 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -96,4 +135,270 @@ public class ElasticsearchServiceImplTest {
         queryDto = elasticsearchService.createQueryDto(new AccountContext(), expression, start, limit, searchParameter);
         assertEquals(Locale.GERMANY, queryDto.getLocale());
     }
+
+    @Test
+    public void testMaxTrackTotalHits() {
+        final Expression expression = new EmptyExpression();
+        assertNull(createQueryDto(expression, SearchParameter.DEFAULT).getQueryRange().getMaxTrackTotalHits());
+
+        elasticsearchService.setTrackTotalHits("false");
+        assertEquals(SearchParameter.TRACK_TOTAL_HITS_DISABLED, (long) createQueryDto(expression, SearchParameter.DEFAULT).getQueryRange()
+                .getMaxTrackTotalHits());
+        elasticsearchService.setTrackTotalHits("true");
+        assertEquals(SearchParameter.TRACK_TOTAL_HITS_ACCURATE, (long) createQueryDto(expression, SearchParameter.DEFAULT).getQueryRange()
+                .getMaxTrackTotalHits());
+        elasticsearchService.setTrackTotalHits("500");
+        assertEquals(500, (long) createQueryDto(expression, SearchParameter.DEFAULT).getQueryRange().getMaxTrackTotalHits());
+        assertEquals(100, (long) createQueryDto(expression, SearchParameter.builder().maxTrackTotalHits(100L).build()).getQueryRange()
+                .getMaxTrackTotalHits());
+        assertEquals(SearchParameter.TRACK_TOTAL_HITS_DISABLED, (long) createQueryDto(expression, SearchParameter.builder().lazyTotalHitCount(true).build())
+                .getQueryRange().getMaxTrackTotalHits());
+    }
+
+    @Test
+    public void testFieldResolverType() {
+        final Expression expression = new KeywordExpression("keyword", "value");
+        assertEquals(QueryDto.FieldResolverType.SOURCE_VALUES, createQueryDto(expression, SearchParameter.DEFAULT).getFieldResolverType());
+        assertEquals(QueryDto.FieldResolverType.AUTO,
+                createQueryDto(expression, SearchParameter.builder().fieldResolverType(FieldResolverType.AUTO).build()).getFieldResolverType());
+        assertEquals(QueryDto.FieldResolverType.DOC_VALUES,
+                createQueryDto(expression, SearchParameter.builder().fieldResolverType(FieldResolverType.DOC_VALUES).build()).getFieldResolverType());
+    }
+
+    @Test
+    public void testRequestOptions() {
+        final Expression expression = new KeywordExpression("keyword", "value");
+        QueryDto queryDto = createQueryDto(expression, SearchParameter.DEFAULT);
+        assertNull(queryDto.getRequestCache());
+        assertNull(queryDto.getPreference());
+        assertNull(queryDto.getRouting());
+
+        queryDto = createQueryDto(expression, SearchParameter.builder().requestCache(false).preference("_local").routing("r1,r2").build());
+        assertEquals(Boolean.FALSE, queryDto.getRequestCache());
+        assertEquals("_local", queryDto.getPreference());
+        assertEquals("r1,r2", queryDto.getRouting());
+    }
+
+    @Test
+    public void testAccountPreference() {
+        final Expression expression = new KeywordExpression("keyword", "value");
+        final AccountContext<Long> accountContext = new AccountContext<>();
+        accountContext.setUserName("user");
+        assertNull(elasticsearchService.createQueryDto(accountContext, expression, 0, 10, SearchParameter.DEFAULT).getPreference());
+
+        elasticsearchService.setAccountPreferenceEnabled(true);
+        assertEquals("account-user", elasticsearchService.createQueryDto(accountContext, expression, 0, 10, SearchParameter.DEFAULT).getPreference());
+        accountContext.setId(4711L);
+        assertEquals("account-4711", elasticsearchService.createQueryDto(accountContext, expression, 0, 10, SearchParameter.DEFAULT).getPreference());
+        assertEquals("_local", elasticsearchService.createQueryDto(accountContext, expression, 0, 10,
+                SearchParameter.builder().preference("_local").build()).getPreference());
+        assertNull(createQueryDto(expression, SearchParameter.DEFAULT).getPreference());
+    }
+
+    private QueryDto createQueryDto(Expression expression, SearchParameter searchParameter) {
+        return elasticsearchService.createQueryDto(new AccountContext<>(), expression, 0, 10, searchParameter);
+    }
+
+    @Test
+    public void testResultCache() {
+        final String indexAlias = indexPresetConfiguration.getIndexAlias();
+        when(elasticsearch.createQueryJson(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration), anyBoolean()))
+                .thenReturn("{\"query\":{}}");
+        when(elasticsearch.search(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration)))
+                .thenReturn(new SearchResultDto(1, true, Collections.singletonList(new SearchHitDto("1", Collections.emptyMap())),
+                        Collections.emptyList()));
+        elasticsearchService.setResultCacheEnabled(true);
+
+        final SearchResult result = elasticsearchService.search(indexAlias, new EmptyExpression(), SearchParameter.DEFAULT);
+        result.getSearchResultItem(0).getAttributes().put("modified", true);
+        final SearchResult cachedResult = elasticsearchService.search(indexAlias, new EmptyExpression(), SearchParameter.DEFAULT);
+        assertNotSame(result, cachedResult);
+        assertEquals(result.getIds(), cachedResult.getIds());
+        assertNull(cachedResult.getSearchResultItem(0).getAttribute("modified"));
+        verify(elasticsearch, times(1)).search(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration));
+        assertEquals(1, elasticsearchService.getResultCacheHitCount());
+        assertEquals(1, elasticsearchService.getResultCacheMissCount());
+
+        final SearchParameter lazyTotalHitCount = SearchParameter.builder().lazyTotalHitCount(true).build();
+        elasticsearchService.search(indexAlias, new EmptyExpression(), lazyTotalHitCount);
+        verify(elasticsearch, times(2)).search(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration));
+        assertEquals(2, elasticsearchService.getResultCacheMissCount());
+
+        final SearchParameter bypassCache = SearchParameter.builder().resultCache(false).build();
+        assertNotSame(result, elasticsearchService.search(indexAlias, new EmptyExpression(), bypassCache));
+        verify(elasticsearch, times(3)).search(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration));
+
+        elasticsearchService.removeFromIndex(indexAlias, DataChangeProcessingMode.BACKGROUND, 1);
+        assertNotSame(result, elasticsearchService.search(indexAlias, new EmptyExpression(), SearchParameter.DEFAULT));
+        verify(elasticsearch, times(4)).search(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration));
+        assertEquals(0.25, elasticsearchService.getResultCacheHitRate(), 0.01);
+    }
+
+    @Test
+    public void testDeepExpression() throws Exception {
+        when(elasticsearch.search(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration)))
+                .thenReturn(new SearchResultDto(0, true, Collections.emptyList(), Collections.emptyList()));
+
+        // Alternating operations of 10,000 levels, searched on a thread with a small stack
+        Expression expression = new KeywordExpression("keyword", "leaf");
+        for (int i = 0; i < 10000; i++) {
+            final Expression operand = (i % 3 == 0) ? new MustNotExpression(new FulltextExpression("term" + i)) : new ValueExpression("caption", i);
+            expression = (i % 2 == 0) ? OperationExpression.and(operand, expression) : OperationExpression.or(operand, expression);
+        }
+        final Expression deepExpression = expression;
+
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread thread = new Thread(null, () -> {
+            try {
+                final String indexAlias = indexPresetConfiguration.getIndexAlias();
+                elasticsearchService.search(indexAlias, deepExpression, SearchParameter.DEFAULT);
+                elasticsearchService.search(indexAlias, deepExpression, SearchParameter.builder().optimizeExpressions(true).build());
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        }, "deep-expression", 1024 * 1024);
+        thread.start();
+        thread.join();
+        assertNull(error.get());
+
+        final ArgumentCaptor<QueryDto> queryDtoCaptor = ArgumentCaptor.forClass(QueryDto.class);
+        verify(elasticsearch, times(2)).search(queryDtoCaptor.capture(), any(MappingConfiguration.class), eq(indexPresetConfiguration));
+        assertSame(deepExpression, queryDtoCaptor.getValue().getExpression());
+    }
+
+    @Test
+    public void testFacets() {
+        final String indexAlias = indexPresetConfiguration.getIndexAlias();
+        final List<SearchAggregation> aggregations = Collections.singletonList(TermsAggregation.field("keyword"));
+        when(elasticsearch.search(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration)))
+                .thenReturn(new SearchResultDto(3, true, Collections.emptyList(),
+                        Collections.singletonList(new FacetDto("keyword", "keyword", 3, Collections.singletonList(new FacetEntryDto("value", 3))))));
+
+        final List<ResultFacet> facets = elasticsearchService.facets(indexAlias, new EmptyExpression(), aggregations);
+        assertEquals(1, facets.size());
+        assertEquals("keyword", facets.get(0).getName());
+        // Every caller gets a copy of the cached facets
+        facets.get(0).getFacetItems().clear();
+        final List<ResultFacet> cachedFacets = elasticsearchService.facets(indexAlias, new EmptyExpression(), aggregations);
+        assertNotSame(facets, cachedFacets);
+        assertEquals(1, cachedFacets.get(0).getFacetItems().size());
+        assertEquals("value", cachedFacets.get(0).getFacetItems().get(0).getValue());
+        cachedFacets.clear();
+        assertEquals(1, elasticsearchService.facets(indexAlias, new EmptyExpression(), aggregations).size());
+        verify(elasticsearch, never()).createQueryJson(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration), anyBoolean());
+
+        final ArgumentCaptor<QueryDto> queryDtoCaptor = ArgumentCaptor.forClass(QueryDto.class);
+        verify(elasticsearch, times(1)).search(queryDtoCaptor.capture(), any(MappingConfiguration.class), eq(indexPresetConfiguration));
+        final QueryDto queryDto = queryDtoCaptor.getValue();
+        assertEquals(0, queryDto.getQueryRange().getLimit());
+        assertEquals(Boolean.TRUE, queryDto.getRequestCache());
+        assertEquals(aggregations, queryDto.getAggregations());
+
+        elasticsearchService.removeFromIndex(indexAlias, DataChangeProcessingMode.BACKGROUND, 1);
+        elasticsearchService.facets(indexAlias, new EmptyExpression(), aggregations);
+        verify(elasticsearch, times(2)).search(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration));
+    }
+
+    @Test
+    public void testSuggestCache() {
+        final String indexAlias = indexPresetConfiguration.getIndexAlias();
+        final String name = FieldConfiguration.FIELD_NAME_SUGGEST;
+        doReturn(Collections.singletonList(FieldConfiguration.SUGGEST_FIELD)).when(fieldConfigurationProvider).getFieldConfigurations(indexAlias);
+        when(elasticsearch.suggest(eq(indexAlias), any(SuggestExpression.class)))
+                .thenReturn(Collections.singletonMap(name, Arrays.asList("Hamburg", "Hameln", "Hannover")));
+        elasticsearchService.setSuggestCacheMaxSize(100);
+
+        assertEquals(Arrays.asList("Hamburg", "Hameln", "Hannover"),
+                elasticsearchService.suggest(indexAlias, new SuggestExpression("ha", 5)).getSuggestions(name));
+        assertEquals(Arrays.asList("Hamburg", "Hameln"), elasticsearchService.suggest(indexAlias, new SuggestExpression("ha", 2)).getSuggestions(name));
+        assertEquals(Arrays.asList("Hamburg", "Hameln"), elasticsearchService.suggest(indexAlias, new SuggestExpression("ham", 5)).getSuggestions(name));
+        assertEquals(Collections.singletonList("Hamburg"),
+                elasticsearchService.suggest(indexAlias, new SuggestExpression("hamb", 5)).getSuggestions(name));
+        verify(elasticsearch, times(1)).suggest(eq(indexAlias), any(SuggestExpression.class));
+
+        // Incomplete suggestions may not answer longer prefixes
+        elasticsearchService.suggest(indexAlias, new SuggestExpression("x", 3));
+        elasticsearchService.suggest(indexAlias, new SuggestExpression("xy", 3));
+        verify(elasticsearch, times(3)).suggest(eq(indexAlias), any(SuggestExpression.class));
+
+        elasticsearchService.removeFromIndex(indexAlias, DataChangeProcessingMode.BACKGROUND, 1);
+        elasticsearchService.suggest(indexAlias, new SuggestExpression("ha", 5));
+        verify(elasticsearch, times(4)).suggest(eq(indexAlias), any(SuggestExpression.class));
+    }
+
+    @Test
+    public void testSuggestCachePrefixMatching() {
+        final String indexAlias = indexPresetConfiguration.getIndexAlias();
+        final String name = FieldConfiguration.FIELD_NAME_SUGGEST;
+        doReturn(Collections.singletonList(FieldConfiguration.SUGGEST_FIELD)).when(fieldConfigurationProvider).getFieldConfigurations(indexAlias);
+        when(elasticsearch.suggest(eq(indexAlias), any(SuggestExpression.class)))
+                .thenReturn(Collections.singletonMap(name, Arrays.asList("(Hamburg)", "Hameln", "Hannover")));
+        elasticsearchService.setSuggestCacheMaxSize(100);
+        elasticsearchService.suggest(indexAlias, new SuggestExpression("ha", 5));
+
+        // Options are matched like analyzed by the completion suggester
+        assertEquals(Arrays.asList("(Hamburg)", "Hameln"), elasticsearchService.suggest(indexAlias, new SuggestExpression("ham", 5)).getSuggestions(name));
+        verify(elasticsearch, times(1)).suggest(eq(indexAlias), any(SuggestExpression.class));
+
+        // Prefixes containing other characters than letters are analyzed differently and not answered locally
+        elasticsearchService.suggest(indexAlias, new SuggestExpression("ha1", 5));
+        elasticsearchService.suggest(indexAlias, new SuggestExpression("ha-m", 5));
+        elasticsearchService.suggest(indexAlias, new SuggestExpression("ha m", 5));
+        verify(elasticsearch, times(4)).suggest(eq(indexAlias), any(SuggestExpression.class));
+
+        // The analyzer of a suggest field with additional parameters is unknown
+        doReturn(Collections.singletonList(SuggestFieldConfiguration.name(name).additionalParameter("analyzer", "standard")))
+                .when(fieldConfigurationProvider).getFieldConfigurations(indexAlias);
+        elasticsearchService.suggest(indexAlias, new SuggestExpression("han", 5));
+        verify(elasticsearch, times(5)).suggest(eq(indexAlias), any(SuggestExpression.class));
+
+        assertEquals("new york", ElasticsearchServiceImpl.CachedSuggestions.analyze(" New-York 2"));
+    }
+
+    @Test
+    public void testSearchTemplate() {
+        final String indexAlias = indexPresetConfiguration.getIndexAlias();
+        final ExpressionOptimizer expressionOptimizer = mock(ExpressionOptimizer.class);
+        when(expressionOptimizer.optimize(any(Expression.class))).thenAnswer(invocation -> invocation.getArguments()[0]);
+        elasticsearchService.setExpressionOptimizer(expressionOptimizer);
+        when(elasticsearch.putSearchTemplate(anyString(), any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration),
+                anyCollectionOf(String.class))).thenAnswer(invocation -> new SearchTemplateDto((String) invocation.getArguments()[0], Collections.emptyMap()));
+        when(elasticsearch.searchTemplate(any(SearchTemplateDto.class), anyMapOf(String.class, Object.class), any(QueryDto.class),
+                any(MappingConfiguration.class), eq(indexPresetConfiguration)))
+                .thenReturn(new SearchResultDto(0, true, Collections.emptyList(), Collections.emptyList()));
+
+        final Expression expression = new KeywordExpression("keyword", TemplateParameter.placeholder("keyword"));
+        final Map<String, Object> parameters = Collections.singletonMap("keyword", "value1");
+        final SearchParameter optimizingSearchParameter = SearchParameter.builder().optimizeExpressions(true).build();
+        elasticsearchService.searchTemplate(indexAlias, null, expression, optimizingSearchParameter, parameters);
+        elasticsearchService.searchTemplate(indexAlias, null, new KeywordExpression("keyword", TemplateParameter.placeholder("keyword")),
+                optimizingSearchParameter, Collections.singletonMap("keyword", "value2"));
+        verify(elasticsearch, times(1)).putSearchTemplate(anyString(), any(QueryDto.class), any(MappingConfiguration.class),
+                eq(indexPresetConfiguration), anyCollectionOf(String.class));
+        verify(elasticsearch, times(2)).searchTemplate(any(SearchTemplateDto.class), anyMapOf(String.class, Object.class), any(QueryDto.class),
+                any(MappingConfiguration.class), eq(indexPresetConfiguration));
+        // A cached template is found without building the query
+        verify(expressionOptimizer, times(1)).optimize(any(Expression.class));
+        verify(elasticsearch, never()).createQueryJson(any(QueryDto.class), any(MappingConfiguration.class), eq(indexPresetConfiguration), anyBoolean());
+
+        elasticsearchService.searchTemplate(indexAlias, null, expression, SearchParameter.builder().pageIndex(2).build(), parameters);
+        verify(elasticsearch, times(2)).putSearchTemplate(anyString(), any(QueryDto.class), any(MappingConfiguration.class),
+                eq(indexPresetConfiguration), anyCollectionOf(String.class));
+
+        // Routing is no part of the template source, the template is reused with the current query
+        elasticsearchService.searchTemplate(indexAlias, null, expression, SearchParameter.builder().pageIndex(2).routing("r1").build(), parameters);
+        verify(elasticsearch, times(2)).putSearchTemplate(anyString(), any(QueryDto.class), any(MappingConfiguration.class),
+                eq(indexPresetConfiguration), anyCollectionOf(String.class));
+        final ArgumentCaptor<QueryDto> queryDtoCaptor = ArgumentCaptor.forClass(QueryDto.class);
+        verify(elasticsearch, times(4)).searchTemplate(any(SearchTemplateDto.class), anyMapOf(String.class, Object.class), queryDtoCaptor.capture(),
+                any(MappingConfiguration.class), eq(indexPresetConfiguration));
+        assertEquals("r1", queryDtoCaptor.getValue().getRouting());
+
+        // A changed mapping results in a new template
+        doReturn(Collections.singletonList(StandardFieldConfiguration.builder("keyword", ElasticsearchType.TEXT).build()))
+                .when(fieldConfigurationProvider).getFieldConfigurations(indexAlias);
+        elasticsearchService.searchTemplate(indexAlias, null, expression, SearchParameter.builder().pageIndex(2).build(), parameters);
+        verify(elasticsearch, times(3)).putSearchTemplate(anyString(), any(QueryDto.class), any(MappingConfiguration.class),
+                eq(indexPresetConfiguration), anyCollectionOf(String.class));
+    }
 }
@@ -16,14 +16,27 @@
 
 package de.picturesafe.search.elasticsearch.model;
 
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import de.picturesafe.search.elasticsearch.connect.util.LazySourceMap;
+import org.elasticsearch.common.bytes.BytesArray;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 
 public class SearchResultTest {
 
@@ -69,6 +82,102 @@ public class SearchResultTest {
         assertEquals(1, searchResult.getPageCount());
     }
 
+    @Test
+    public void testInexactPageCount() {
+        SearchResult searchResult = new SearchResult(getTestSearchResultItems(10), 3, 10, 30, 30, false);
+        assertEquals(4, searchResult.getPageCount());
+        searchResult = new SearchResult(getTestSearchResultItems(5), 3, 10, 25, 25, false);
+        assertEquals(3, searchResult.getPageCount());
+        searchResult = new SearchResult(getTestSearchResultItems(10), 1, 10, 10000, 10000, false);
+        assertEquals(1000, searchResult.getPageCount());
+    }
+
+    @Test
+    public void testLazyTotalHitCount() {
+        final AtomicInteger resolverCalls = new AtomicInteger();
+        final SearchResult searchResult = new SearchResult(getTestSearchResultItems(10), 1, 10, 10, 10, false)
+                .lazyTotalHitCount(() -> {
+                    resolverCalls.incrementAndGet();
+                    return 1234;
+                }, 1000);
+        assertTrue(searchResult.isExactHitCount());
+        assertEquals(0, resolverCalls.get());
+
+        assertEquals(1234, searchResult.getTotalHitCount());
+        assertEquals(1000, searchResult.getResultCount());
+        assertEquals(100, searchResult.getPageCount());
+        assertTrue(searchResult.isExactHitCount());
+        assertEquals(1, resolverCalls.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCopy() {
+        final Map<String, Object> fields = new HashMap<>();
+        fields.put("keywords", new ArrayList<>(Arrays.asList("a", "b")));
+        final LazySourceMap source = new LazySourceMap(new BytesArray("{\"title\":\"Title\"}"), fields);
+        final SearchResultItem item = new SearchResultItem("1", source)
+                .innerHits(Collections.singletonMap("nested", Collections.singletonList(new SearchResultItem("2", DocumentBuilder.withoutId()
+                        .put("x", "y").build()))));
+        final AtomicInteger resolverCalls = new AtomicInteger();
+        final ResultFacet facet = new ResultFacet("keywords", "keywords", 1, new ArrayList<>(Collections.singletonList(new ResultFacetItem("a", 1))));
+        final SearchResult searchResult = new SearchResult(Collections.singletonList(item), 1, 10, 1, 1, false, Collections.singletonList(facet))
+                .lazyTotalHitCount(() -> resolverCalls.incrementAndGet() * 100, 1000);
+
+        final SearchResult copy = searchResult.copy();
+        final SearchResultItem copiedItem = copy.getSearchResultItem(0);
+        assertNotSame(item, copiedItem);
+        assertEquals("1", copiedItem.getId());
+        assertEquals("Title", copiedItem.getAttribute("title"));
+        copiedItem.getAttributes().put("title", "Changed");
+        ((List<Object>) copiedItem.getAttribute("keywords")).add("c");
+        copiedItem.getInnerHits().get("nested").get(0).getAttributes().put("x", "z");
+        assertEquals("Title", item.getAttribute("title"));
+        assertEquals(Arrays.asList("a", "b"), item.getAttribute("keywords"));
+        assertEquals("y", item.getInnerHits().get("nested").get(0).getAttribute("x"));
+        assertFalse(((LazySourceMap) item.getAttributes()).isParsed());
+        copy.getFacets().get(0).getFacetItems().clear();
+        assertEquals(1, facet.getFacetItems().size());
+
+        // The lazy total hit count is resolved once for all copies
+        assertEquals(100, copy.getTotalHitCount());
+        assertEquals(100, searchResult.copy().getTotalHitCount());
+        assertEquals(1, resolverCalls.get());
+    }
+
+    @Test
+    public void testWriteJson() throws Exception {
+        final String rawSource = "{\"title\" : \"Raw\",  \"count\":1}";
+        final LazySourceMap modifiedSource = new LazySourceMap(new BytesArray("{\"title\":\"Modified\"}"));
+        modifiedSource.put("added", true);
+        final List<SearchResultItem> items = Arrays.asList(
+                new SearchResultItem("1", new LazySourceMap(new BytesArray(rawSource)))
+                        .innerHits(Collections.singletonMap("nested", Collections.singletonList(new SearchResultItem("1", DocumentBuilder.withoutId()
+                                .put("x", "y").build())))),
+                new SearchResultItem("2", modifiedSource));
+        final List<ResultFacet> facets = Collections.singletonList(new ResultFacet("facet", "field", 3,
+                Arrays.asList(new ResultFacetItem("value", 2), new ResultRangeFacetItem("range", 1, "1", null))));
+        final SearchResult searchResult = new SearchResult(items, 1, 10, 2, 2, true, facets);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        searchResult.writeJson(out);
+        final String json = out.toString(StandardCharsets.UTF_8.name());
+        assertTrue(json, json.contains("\"attributes\":" + rawSource));
+
+        final DocumentContext doc = JsonPath.parse(json);
+        assertEquals(2, (int) doc.read("$.totalHitCount", Integer.class));
+        assertTrue(doc.read("$.exactHitCount", Boolean.class));
+        assertEquals(1, (int) doc.read("$.pageCount", Integer.class));
+        assertEquals("1", doc.read("$.items[0].id"));
+        assertEquals("Raw", doc.read("$.items[0].attributes.title"));
+        assertEquals("y", doc.read("$.items[0].innerHits.nested[0].attributes.x"));
+        assertEquals("Modified", doc.read("$.items[1].attributes.title"));
+        assertTrue(doc.read("$.items[1].attributes.added", Boolean.class));
+        assertEquals("facet", doc.read("$.facets[0].name"));
+        assertEquals("value", doc.read("$.facets[0].items[0].value"));
+        assertEquals("1", doc.read("$.facets[0].items[1].from"));
+    }
+
     private SearchResult getTestSearchResult(int pageSize, int resultCount) {
         return new SearchResult(getTestSearchResultItems(resultCount), 1, pageSize, resultCount, 1000, true);
     }
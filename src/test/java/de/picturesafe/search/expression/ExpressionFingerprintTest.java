@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.expression;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ExpressionFingerprintTest {
+
+    @Test
+    public void testFingerprint() {
+        final Date date = new Date();
+        final String fingerprint = ExpressionFingerprint.of(OperationExpression.and(
+                new ValueExpression("title", "test"),
+                new InExpression("id", 1, 2, 3),
+                new MustNotExpression(new DayExpression("createDate", date))));
+        assertNotNull(fingerprint);
+        assertEquals(32, fingerprint.length());
+
+        assertEquals(fingerprint, ExpressionFingerprint.of(OperationExpression.and(
+                new MustNotExpression(new DayExpression("createDate", new Date(date.getTime()))),
+                new InExpression("id", 1, 2, 3),
+                new ValueExpression("title", "test"))));
+        assertNotEquals(fingerprint, ExpressionFingerprint.of(OperationExpression.or(
+                new ValueExpression("title", "test"),
+                new InExpression("id", 1, 2, 3),
+                new MustNotExpression(new DayExpression("createDate", date)))));
+        assertNotEquals(fingerprint, ExpressionFingerprint.of(OperationExpression.and(
+                new ValueExpression("title", "test"),
+                new InExpression("id", 1, 2, 4),
+                new MustNotExpression(new DayExpression("createDate", date)))));
+    }
+
+    @Test
+    public void testValues() {
+        assertNotEquals(ExpressionFingerprint.of(new ValueExpression("number", 1)), ExpressionFingerprint.of(new ValueExpression("number", 1L)));
+        assertNotEquals(ExpressionFingerprint.of(new ValueExpression("number", 1)), ExpressionFingerprint.of(new ValueExpression("number", "1")));
+        assertNotEquals(ExpressionFingerprint.of(new ValueExpression("title", "test")), ExpressionFingerprint.of(new KeywordExpression("title", "test")));
+        assertNotEquals(ExpressionFingerprint.of(new ValueExpression("title", "test")),
+                ExpressionFingerprint.of(new ValueExpression("title", "test").boost(2f)));
+        assertNotEquals(ExpressionFingerprint.of(new InExpression("a", "b;", "c")), ExpressionFingerprint.of(new InExpression("a", "b", ";c")));
+    }
+
+    @Test
+    public void testUnsupported() {
+        assertNull(ExpressionFingerprint.of(null));
+        assertNull(ExpressionFingerprint.of(new ValueExpression("title", new Object())));
+        assertNull(ExpressionFingerprint.of(OperationExpression.and(new ValueExpression("title", "test"), new ValueExpression("title", "test") {
+        })));
+    }
+
+    @Test
+    public void testDeepTree() {
+        OperationExpression root = OperationExpression.and(new ValueExpression("title", "leaf"));
+        for (int i = 0; i < 10_000; i++) {
+            root = ((i % 2 == 0) ? OperationExpression.or() : OperationExpression.and()).add(root, new ValueExpression("title", "leaf" + i));
+        }
+        assertNotNull(ExpressionFingerprint.of(root));
+    }
+}
@@ -19,6 +19,7 @@ package de.picturesafe.search.expression;
 import de.picturesafe.search.expression.internal.EmptyExpression;
 import de.picturesafe.search.expression.internal.FalseExpression;
 import de.picturesafe.search.expression.internal.TrueExpression;
+import org.apache.commons.lang3.time.DateUtils;
 import org.junit.Test;
 
 import java.text.SimpleDateFormat;
@@ -254,4 +255,37 @@ public class OperationExpressionTest {
         optimzedExpression = op.optimize();
         assertTrue(optimzedExpression instanceof DayRangeExpression);
     }
+
+    @Test
+    public void testHashCodeIgnoresNestedOperands() {
+        final OperationExpression nested = OperationExpression.and(new ValueExpression("test1", "a"));
+        final OperationExpression root = OperationExpression.or(nested, new ValueExpression("test2", "b"));
+        final int hashCode = root.hashCode();
+
+        nested.add(new ValueExpression("test3", "c"));
+        assertEquals(hashCode, root.hashCode());
+        assertEquals(root, OperationExpression.or(OperationExpression.and(new ValueExpression("test1", "a"), new ValueExpression("test3", "c")),
+                new ValueExpression("test2", "b")));
+    }
+
+    @Test
+    public void testMultipleBoundsOptimization() throws Exception {
+        final Date day1 = new SimpleDateFormat(STANDARD_DAY_FORMAT).parse("26.04.2017");
+        final Date day2 = new SimpleDateFormat(STANDARD_DAY_FORMAT).parse("30.04.2017");
+        final Date day3 = new SimpleDateFormat(STANDARD_DAY_FORMAT).parse("10.05.2017");
+
+        Expression optimzedExpression = OperationExpression.and(
+                new ValueExpression("dayfield", ConditionExpression.Comparison.GE, day1),
+                new ValueExpression("dayfield", ConditionExpression.Comparison.GE, day2),
+                new ValueExpression("dayfield", ConditionExpression.Comparison.LE, day3)).optimize();
+        assertEquals(new RangeValueExpression("dayfield", day2, day3), optimzedExpression);
+
+        optimzedExpression = OperationExpression.and(
+                new DayExpression("dayfield", ConditionExpression.Comparison.LE, day3),
+                new DayExpression("dayfield", ConditionExpression.Comparison.LT, day3),
+                new DayExpression("dayfield", ConditionExpression.Comparison.GE, day1)).optimize();
+        assertTrue(optimzedExpression instanceof DayRangeExpression);
+        assertEquals(day1, ((DayRangeExpression) optimzedExpression).getFromDay());
+        assertEquals(DateUtils.addDays(day3, -1), ((DayRangeExpression) optimzedExpression).getUntilDay());
+    }
 }
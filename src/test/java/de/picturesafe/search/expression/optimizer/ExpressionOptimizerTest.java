@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.expression.optimizer;
+
+import de.picturesafe.search.expression.Expression;
+import de.picturesafe.search.expression.InExpression;
+import de.picturesafe.search.expression.KeywordExpression;
+import de.picturesafe.search.expression.MustNotExpression;
+import de.picturesafe.search.expression.OperationExpression;
+import de.picturesafe.search.expression.RangeValueExpression;
+import de.picturesafe.search.expression.ValueExpression;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.EQ;
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.GE;
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.GT;
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.LE;
+import static de.picturesafe.search.expression.ConditionExpression.Comparison.LT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExpressionOptimizerTest {
+
+    private final ExpressionOptimizer optimizer = new ExpressionOptimizer();
+
+    @Test
+    public void testRangeMerge() {
+        Expression optimized = optimizer.optimize(OperationExpression.and(
+                new ValueExpression("count", GE, 5),
+                new ValueExpression("count", GE, 10),
+                new ValueExpression("count", LE, 100L),
+                new ValueExpression("title", "test")));
+        assertEquals(OperationExpression.and(new ValueExpression("count", GE, 10), new ValueExpression("count", LE, 100L),
+                new ValueExpression("title", "test")), optimized);
+
+        optimized = optimizer.optimize(OperationExpression.and(
+                new ValueExpression("count", GT, 10),
+                new ValueExpression("count", GE, 10),
+                new ValueExpression("count", LT, 20)));
+        assertEquals(OperationExpression.and(new ValueExpression("count", GT, 10), new ValueExpression("count", LT, 20)), optimized);
+
+        optimized = optimizer.optimize(OperationExpression.or(
+                new ValueExpression("count", GE, 5),
+                new ValueExpression("count", GT, 10),
+                new ValueExpression("title", "test")));
+        assertEquals(OperationExpression.or(new ValueExpression("count", GE, 5), new ValueExpression("title", "test")), optimized);
+    }
+
+    @Test
+    public void testRangeMergeMultiValued() {
+        // Lower and upper bound may be matched by different values of a multi-valued field, e.g. [2, 6]
+        final Expression contradicting = OperationExpression.and(
+                new ValueExpression("count", GE, 5),
+                new ValueExpression("count", LE, 3),
+                new ValueExpression("title", "test"));
+        assertEquals(contradicting, optimizer.optimize(contradicting));
+
+        final Expression range = OperationExpression.and(
+                new RangeValueExpression("count", 1, 50),
+                new ValueExpression("count", LE, 20.5));
+        assertEquals(range, optimizer.optimize(range));
+    }
+
+    @Test
+    public void testRangeMergeSingleValued() {
+        final ExpressionOptimizer singleValuedOptimizer = new ExpressionOptimizer(Collections.singletonList(
+                new RangeMergeRule(Collections.singleton("count"))));
+        Expression optimized = singleValuedOptimizer.optimize(OperationExpression.and(
+                new ValueExpression("count", GE, 5),
+                new ValueExpression("count", GE, 10),
+                new ValueExpression("count", LE, 100L),
+                new ValueExpression("title", "test")));
+        assertEquals(OperationExpression.and(new RangeValueExpression("count", 10, 100L), new ValueExpression("title", "test")), optimized);
+
+        optimized = singleValuedOptimizer.optimize(OperationExpression.and(
+                new RangeValueExpression("count", 1, 50),
+                new ValueExpression("count", LE, 20.5)));
+        assertEquals(new RangeValueExpression("count", 1, 20.5), optimized);
+
+        // Contradicting bounds are kept, they are not rewritten into an expression matching nothing
+        optimized = singleValuedOptimizer.optimize(OperationExpression.and(
+                new ValueExpression("count", GE, 10),
+                new ValueExpression("count", GE, 5),
+                new ValueExpression("count", LT, 10)));
+        assertEquals(OperationExpression.and(new ValueExpression("count", GE, 10), new ValueExpression("count", LT, 10)), optimized);
+    }
+
+    @Test
+    public void testMaxDepth() {
+        final Expression maxDepthExpression = andChain(ExpressionOptimizer.MAX_DEPTH);
+        final Expression optimized = optimizer.optimize(maxDepthExpression);
+        assertEquals(ExpressionOptimizer.MAX_DEPTH, ((OperationExpression) optimized).getOperands().size());
+
+        // Deeper trees are not optimized
+        final Expression deepExpression = andChain(ExpressionOptimizer.MAX_DEPTH + 1);
+        assertSame(deepExpression, optimizer.optimize(deepExpression));
+    }
+
+    @Test
+    public void testEqualsToIn() {
+        Expression optimized = optimizer.optimize(OperationExpression.or(
+                new ValueExpression("id", 1),
+                new ValueExpression("id", 2L),
+                new InExpression("id", 3, 1),
+                new ValueExpression("title", "test")));
+        assertTrue(optimized instanceof OperationExpression);
+        final OperationExpression operation = (OperationExpression) optimized;
+        assertEquals(2, operation.getOperands().size());
+        assertTrue(operation.getOperands().contains(new ValueExpression("title", "test")));
+        final InExpression inExpression = (InExpression) operation.getOperands().stream().filter(InExpression.class::isInstance).findFirst().get();
+        assertEquals("id", inExpression.getName());
+        assertEquals(new HashSet<>(Arrays.asList(1, 2L, 3)), new HashSet<>(Arrays.asList(inExpression.getValues())));
+
+        final Expression strings = OperationExpression.or(new ValueExpression("title", "a"), new ValueExpression("title", "b"));
+        assertEquals(strings, optimizer.optimize(strings));
+        final Expression keywords = OperationExpression.or(new KeywordExpression("keyword", "a"), new KeywordExpression("keyword", "b"));
+        assertEquals(keywords, optimizer.optimize(keywords));
+        final Expression and = OperationExpression.and(new ValueExpression("id", 1), new ValueExpression("id", 2));
+        assertEquals(and, optimizer.optimize(and));
+    }
+
+    @Test
+    public void testDuplicates() {
+        final ValueExpression title = new ValueExpression("title", "test");
+        assertEquals(title, optimizer.optimize(OperationExpression.and(title, new ValueExpression("title", "test"))));
+        assertEquals(title, optimizer.optimize(OperationExpression.or(title, title)));
+
+        final ValueExpression caption = new ValueExpression("caption", "other");
+        assertEquals(title, optimizer.optimize(OperationExpression.and(title, OperationExpression.or(new ValueExpression("title", "test"), caption))));
+        assertEquals(title, optimizer.optimize(OperationExpression.or(OperationExpression.and(caption, title), title)));
+        final Expression notSubsumed = OperationExpression.and(caption, OperationExpression.or(title, new ValueExpression("location", "x")));
+        assertEquals(notSubsumed, optimizer.optimize(notSubsumed));
+    }
+
+    @Test
+    public void testDeMorgan() {
+        final ValueExpression title = new ValueExpression("title", "test");
+        assertEquals(title, optimizer.optimize(new MustNotExpression(new MustNotExpression(title))));
+
+        final Expression optimized = optimizer.optimize(new MustNotExpression(OperationExpression.or(
+                new InExpression("id", 1, 2),
+                new InExpression("id", 3),
+                new ValueExpression("caption", "test"))));
+        assertTrue(optimized instanceof OperationExpression);
+        final OperationExpression operation = (OperationExpression) optimized;
+        assertEquals(OperationExpression.Operator.AND, operation.getOperator());
+        assertEquals(2, operation.getOperands().size());
+        assertTrue(operation.getOperands().contains(new MustNotExpression(new ValueExpression("caption", "test"))));
+        assertTrue(operation.getOperands().contains(new MustNotExpression(new InExpression("id", 1, 2, 3))));
+
+        assertEquals(OperationExpression.or(new MustNotExpression(title), new ValueExpression("caption", "test")),
+                optimizer.optimize(new MustNotExpression(OperationExpression.and(title, new MustNotExpression(new ValueExpression("caption", "test"))))));
+    }
+
+    @Test
+    public void testDeMorganNested() {
+        // NOT on nested fields means "no nested object matches", pushing it down would mean "any nested object does not match"
+        final Expression nestedAnd = new MustNotExpression(OperationExpression.and(
+                new ValueExpression("reference.targetId", 1), new ValueExpression("reference.note", "note")));
+        assertEquals(nestedAnd, optimizer.optimize(nestedAnd));
+        final Expression nestedOr = new MustNotExpression(OperationExpression.or(
+                new ValueExpression("caption", "test"), new InExpression("reference.targetId", 1, 2)));
+        assertEquals(nestedOr, optimizer.optimize(nestedOr));
+        final Expression doubleNegation = new MustNotExpression(new MustNotExpression(new ValueExpression("reference.targetId", 1)));
+        assertEquals(doubleNegation, optimizer.optimize(doubleNegation));
+
+        final ExpressionOptimizer mappingOptimizer = new ExpressionOptimizer(Collections.singletonList(
+                new DeMorganRule(Collections.singleton("reference"))));
+        assertEquals(nestedAnd, mappingOptimizer.optimize(nestedAnd));
+        assertEquals(OperationExpression.or(new MustNotExpression(new ValueExpression("object.a", 1)), new MustNotExpression(new ValueExpression("b", 2))),
+                mappingOptimizer.optimize(new MustNotExpression(OperationExpression.and(new ValueExpression("object.a", 1), new ValueExpression("b", 2)))));
+    }
+
+    @Test
+    public void testCustomRules() {
+        final ValueExpression replacement = new ValueExpression("replacement", EQ, 1);
+        final ExpressionOptimizer customOptimizer = new ExpressionOptimizer(Collections.singletonList(
+                expression -> (expression instanceof ValueExpression && ((ValueExpression) expression).getName().equals("old")) ? replacement : expression));
+        final Expression optimized = customOptimizer.optimize(OperationExpression.and(new ValueExpression("old", 1), new ValueExpression("other", 2)));
+        assertEquals(OperationExpression.and(replacement, new ValueExpression("other", 2)), optimized);
+        assertEquals(1, customOptimizer.getRules().size());
+    }
+
+    @Test
+    public void testInputNotModified() {
+        final InExpression first = new InExpression("id", 1, 2);
+        final OperationExpression expression = OperationExpression.or(first, new ValueExpression("id", 3), new InExpression("id", 4),
+                new ValueExpression("count", GE, 5), new ValueExpression("count", GE, 7));
+        final String before = expression.toString();
+        final Expression optimized = optimizer.optimize(expression);
+        assertNotSame(expression, optimized);
+        assertEquals(before, expression.toString());
+        assertEquals(2, first.getValues().length);
+    }
+
+    private Expression andChain(int depth) {
+        Expression expression = new ValueExpression("id", 0);
+        for (int i = 1; i < depth; i++) {
+            expression = OperationExpression.and(new ValueExpression("caption", "caption" + i), expression);
+        }
+        return expression;
+    }
+}
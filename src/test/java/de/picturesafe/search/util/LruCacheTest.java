@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LruCacheTest {
+
+    @Test
+    public void testEviction() {
+        final LruCache<String, Integer> cache = new LruCache<>(2, 0, TimeUnit.SECONDS);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(1, (int) cache.get("a"));
+        cache.put("c", 3);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals(1, (int) cache.get("a"));
+        assertEquals(3, (int) cache.get("c"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.75, cache.getHitRate(), 0.001);
+    }
+
+    @Test
+    public void testTimeToLive() {
+        final long[] now = {0};
+        final LruCache<String, Integer> cache = new LruCache<String, Integer>(10, 1, TimeUnit.SECONDS) {
+            @Override
+            protected long nanoTime() {
+                return now[0];
+            }
+        };
+        cache.put("a", 1);
+        now[0] = TimeUnit.MILLISECONDS.toNanos(500);
+        cache.put("b", 2);
+        assertEquals(1, (int) cache.get("a"));
+
+        now[0] = TimeUnit.MILLISECONDS.toNanos(1200);
+        assertNull(cache.get("a"));
+        assertEquals(2, (int) cache.get("b"));
+
+        now[0] = TimeUnit.MILLISECONDS.toNanos(1600);
+        cache.evictExpired();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRemoveIf() {
+        final LruCache<String, Integer> cache = new LruCache<>(10, 0, TimeUnit.SECONDS);
+        cache.put("x|1", 1);
+        cache.put("x|2", 2);
+        cache.put("y|1", 3);
+        cache.removeIf(key -> key.startsWith("x|"));
+        assertEquals(1, cache.size());
+        assertEquals(3, (int) cache.get("y|1"));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 picturesafe media/data/bank GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.picturesafe.search.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsAreShared() throws Exception {
+        final SingleFlight<String, Object> singleFlight = new SingleFlight<>();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Object result = new Object();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            final List<Future<Object>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                await(release);
+                return result;
+            })));
+            started.await(10, TimeUnit.SECONDS);
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> singleFlight.execute("key", executions::incrementAndGet)));
+            }
+            while (singleFlight.getHitCount() < 4) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (final Future<Object> future : futures) {
+                assertSame(result, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, executions.get());
+        assertEquals(1, singleFlight.getMissCount());
+        assertEquals(4, singleFlight.getHitCount());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    public void testSequentialCallsAreNotShared() {
+        final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        final AtomicInteger executions = new AtomicInteger();
+        assertEquals(1, (int) singleFlight.execute("key", executions::incrementAndGet));
+        assertEquals(2, (int) singleFlight.execute("key", executions::incrementAndGet));
+        assertEquals(2, singleFlight.getMissCount());
+        assertEquals(0, singleFlight.getHitCount());
+    }
+
+    @Test
+    public void testException() {
+        final SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        try {
+            singleFlight.execute("key", () -> {
+                throw new IllegalStateException("failed");
+            });
+            fail("Exception expected");
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(0, singleFlight.getInFlightCount());
+        assertEquals(1, (int) singleFlight.execute("key", () -> 1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}